@@ -16,6 +16,7 @@
 
 package international.dmc.secom_mms_gateway;
 
+import international.dmc.secom_mms_gateway.config.TlsProviderEnvironmentListener;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -27,7 +28,9 @@ public class SecomMmsGatewayApplication {
 
     public static void main(String[] args) {
         Security.addProvider(new BouncyCastleProvider());
-        SpringApplication.run(SecomMmsGatewayApplication.class, args);
+        SpringApplication application = new SpringApplication(SecomMmsGatewayApplication.class);
+        application.addListeners(new TlsProviderEnvironmentListener());
+        application.run(args);
     }
 
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+/**
+ * The formats a payload can be compressed with before it is published. Only ZIP can be flagged to SECOM services, so
+ * a receiving gateway hands ZIP archives on as they are and decodes every other format itself. Nothing in an MMS
+ * message tells which format was used, so all gateways that exchange datasets must be configured with the same type.
+ * Every format carries its own framing, and {@link #DEFLATE} carries the id of its dictionary.
+ */
+public enum CodecType {
+    /**
+     * The payload is published as it is.
+     */
+    NONE,
+    /**
+     * A ZIP archive with a single entry called "data". This is what the gateway has always published.
+     */
+    ZIP,
+    /**
+     * A gzip stream (RFC 1952).
+     */
+    GZIP,
+    /**
+     * A zlib stream (RFC 1950). If a preset dictionary is used its Adler-32 checksum is part of the stream header, so
+     * receivers can tell which dictionary they need.
+     */
+    DEFLATE;
+
+    /**
+     * @return whether only gateways can read the format, so that they must encode every payload they publish and
+     * decode every payload they receive
+     */
+    public boolean isGatewayPrivate() {
+        return this == GZIP || this == DEFLATE;
+    }
+}
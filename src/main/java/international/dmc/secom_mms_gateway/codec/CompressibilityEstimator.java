@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cheap checks that tell whether compressing a payload is worth the CPU time.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class CompressibilityEstimator {
+
+    private static final int MAX_SAMPLED_BYTES = 64 * 1024;
+
+    private static final byte[] ZIP_MAGIC_NUMBER = {0x50, 0x4B, 0x03, 0x04};
+
+    private static final byte[][] COMPRESSED_MAGIC_NUMBERS = {
+            ZIP_MAGIC_NUMBER,                                       // ZIP
+            {0x1F, (byte) 0x8B},                                    // gzip
+            {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD},                 // Zstandard
+            {(byte) 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00},            // xz
+            {0x42, 0x5A, 0x68},                                     // bzip2
+            {0x37, 0x7A, (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C},     // 7z
+            {(byte) 0x89, 0x50, 0x4E, 0x47},                        // PNG
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},                // JPEG
+    };
+
+    /**
+     * @return whether the payload starts with the magic number of a compressed file format
+     */
+    public static boolean isCompressedFormat(byte[] data) {
+        for (byte[] magic : COMPRESSED_MAGIC_NUMBERS) {
+            if (startsWith(data, magic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the payload is a ZIP archive, which is the only compression SECOM can flag
+     */
+    public static boolean isZip(byte[] data) {
+        return startsWith(data, ZIP_MAGIC_NUMBER);
+    }
+
+    /**
+     * Estimates the Shannon entropy of the payload from the byte frequencies of evenly spread samples. Compressed or
+     * encrypted data comes close to 8 bits per byte, while text formats such as GML are usually well below 6.
+     *
+     * @return the estimated entropy in bits per byte
+     */
+    public static double estimateEntropy(byte[] data) {
+        if (data.length == 0) {
+            return 0;
+        }
+        int[] histogram = new int[256];
+        int stride = Math.max(1, data.length / MAX_SAMPLED_BYTES);
+        int samples = 0;
+        for (int i = 0; i < data.length; i += stride) {
+            histogram[data[i] & 0xFF]++;
+            samples++;
+        }
+        double entropy = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                double probability = (double) count / samples;
+                entropy -= probability * Math.log(probability);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.util.zip.Adler32;
+
+/**
+ * A preset dictionary for deflate based codecs.
+ *
+ * @param name the name of the dictionary, usually the data product type it was trained for
+ * @param data the content of the dictionary, of which deflate only uses the last 32 KiB
+ * @param id   the Adler-32 checksum of the content, which is the DICTID that zlib writes into its header
+ */
+public record CompressionDictionary(String name, byte[] data, int id) {
+
+    public static CompressionDictionary of(String name, byte[] data) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(data);
+        return new CompressionDictionary(name, data, (int) adler32.getValue());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate with a zlib header ({@link CodecType#DEFLATE}), optionally primed with a preset dictionary whose id the
+ * header carries. Idle {@link Deflater}s are kept in a small pool, so the native
+ * compression state is not allocated for every payload. A pool is used instead of one deflater per thread, as requests
+ * handled on virtual threads would otherwise each allocate the native state and hold it until the thread is collected.
+ */
+public class DeflateCodec implements PayloadCodec {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_IDLE_DEFLATERS = Runtime.getRuntime().availableProcessors();
+
+    private final int level;
+    private final BlockingQueue<Deflater> idleDeflaters = new ArrayBlockingQueue<>(MAX_IDLE_DEFLATERS);
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    /**
+     * @return the id of the dictionary the zlib stream was compressed with, or null if it was compressed without one
+     */
+    public static Integer getDictionaryId(byte[] data) {
+        if (data.length < 6 || (data[1] & 0x20) == 0) {
+            return null;
+        }
+        return (data[2] & 0xFF) << 24 | (data[3] & 0xFF) << 16 | (data[4] & 0xFF) << 8 | (data[5] & 0xFF);
+    }
+
+    @Override
+    public CodecType getType() {
+        return CodecType.DEFLATE;
+    }
+
+    @Override
+    public boolean supportsDictionary() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(byte[] data, CompressionDictionary dictionary) {
+        Deflater deflater = idleDeflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary.data());
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] chunk = new byte[CHUNK_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                outputStream.write(chunk, 0, length);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!idleDeflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    @Override
+    public byte[] decode(byte[] data, CompressionDictionary dictionary) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length * 4);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0 && !inflater.finished()) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null || dictionary.id() != inflater.getAdler()) {
+                            throw new IOException("The data was compressed with an unknown dictionary "
+                                    + Integer.toHexString(inflater.getAdler()));
+                        }
+                        inflater.setDictionary(dictionary.data());
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("The compressed data is truncated");
+                    }
+                }
+                outputStream.write(chunk, 0, length);
+            }
+            return outputStream.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("The compressed data is invalid", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Builds a preset deflate dictionary from a corpus of sample payloads of one data product type. The samples are cut
+ * into overlapping segments, and every segment is scored by how often the short byte sequences it contains occur in
+ * the whole corpus. The best segments are picked greedily, each time ignoring sequences that an already picked segment
+ * covers, and the dictionary is assembled with the best segment at the end, where deflate can reach it with the
+ * shortest distances.
+ * <p>
+ * Dictionaries are trained offline, and the file a dictionary is written to must be named after the data product type
+ * it is loaded for, e.g. {@code S124.dict}.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class DictionaryTrainer {
+
+    /**
+     * Deflate can only refer back 32 KiB, so a larger dictionary would never be used.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int SEQUENCE_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 64;
+
+    private record Candidate(int sample, int offset, long score) {
+    }
+
+    public static byte[] train(List<byte[]> samples, int dictionarySize) {
+        dictionarySize = Math.min(dictionarySize, MAX_DICTIONARY_SIZE);
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            for (int i = 0; i + SEQUENCE_LENGTH <= sample.length; i++) {
+                frequencies.merge(sequenceAt(sample, i), 1, Integer::sum);
+            }
+        }
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>((a, b) -> Long.compare(b.score(), a.score()));
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int offset = 0; offset + SEGMENT_LENGTH <= sample.length; offset += SEGMENT_LENGTH / 2) {
+                long score = score(sample, offset, frequencies);
+                if (score > 0) {
+                    candidates.add(new Candidate(s, offset, score));
+                }
+            }
+        }
+
+        List<byte[]> picked = new ArrayList<>();
+        int size = 0;
+        while (size < dictionarySize && !candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            byte[] sample = samples.get(candidate.sample());
+            // Scores only go down as more sequences get covered, so re-score lazily
+            long score = score(sample, candidate.offset(), frequencies);
+            if (score == 0) {
+                continue;
+            }
+            if (!candidates.isEmpty() && score < candidates.peek().score()) {
+                candidates.add(new Candidate(candidate.sample(), candidate.offset(), score));
+                continue;
+            }
+            int length = Math.min(SEGMENT_LENGTH, dictionarySize - size);
+            byte[] segment = new byte[length];
+            System.arraycopy(sample, candidate.offset(), segment, 0, length);
+            picked.add(segment);
+            size += length;
+            for (int i = candidate.offset(); i + SEQUENCE_LENGTH <= candidate.offset() + SEGMENT_LENGTH; i++) {
+                frequencies.put(sequenceAt(sample, i), 0);
+            }
+        }
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            dictionary.writeBytes(picked.get(i));
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * Trains a dictionary from every regular file in a directory.
+     */
+    public static byte[] train(Path sampleDirectory, int dictionarySize) throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        try (Stream<Path> files = Files.list(sampleDirectory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                samples.add(Files.readAllBytes(file));
+            }
+        }
+        return train(samples, dictionarySize);
+    }
+
+    private static long score(byte[] sample, int offset, Map<Long, Integer> frequencies) {
+        Set<Long> seen = new HashSet<>();
+        long score = 0;
+        for (int i = offset; i + SEQUENCE_LENGTH <= offset + SEGMENT_LENGTH; i++) {
+            long sequence = sequenceAt(sample, i);
+            if (seen.add(sequence)) {
+                int frequency = frequencies.getOrDefault(sequence, 0);
+                // A sequence that only occurs once is never worth a dictionary entry
+                if (frequency > 1) {
+                    score += frequency;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static long sequenceAt(byte[] data, int offset) {
+        long sequence = 0;
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            sequence = (sequence << 8) | (data[offset + i] & 0xFF);
+        }
+        return sequence;
+    }
+}
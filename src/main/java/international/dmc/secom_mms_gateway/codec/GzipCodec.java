@@ -0,0 +1,69 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses payloads into gzip streams. The gzip format has no way to refer to a preset dictionary.
+ */
+public class GzipCodec implements PayloadCodec {
+
+    private final int level;
+
+    public GzipCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public CodecType getType() {
+        return CodecType.GZIP;
+    }
+
+    @Override
+    public boolean supportsDictionary() {
+        return false;
+    }
+
+    @Override
+    public byte[] encode(byte[] data, CompressionDictionary dictionary) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (LevelGZIPOutputStream gzipOutputStream = new LevelGZIPOutputStream(outputStream, level)) {
+            gzipOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] data, CompressionDictionary dictionary) throws IOException {
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzipInputStream.readAllBytes();
+        }
+    }
+
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream outputStream, int level) throws IOException {
+            super(outputStream);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates large payloads on several cores in the way pigz does. The payload is split into blocks that are deflated
+ * concurrently as raw deflate streams. Every block is primed with the last 32 KiB of the block before it, so matches
+ * across block boundaries are not lost, and every block but the last ends with a sync flush, so the compressed blocks
+ * can simply be concatenated into a single deflate stream. The checksum of the whole payload is computed on the
+ * calling thread while the blocks are being compressed, and the stream is then framed as zlib, gzip or ZIP, which any
+ * standard inflater can read.
+ */
+public class ParallelDeflater {
+
+    private static final int WINDOW_SIZE = 32 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final String ZIP_ENTRY_NAME = "data";
+    private static final int DOS_DATE_1980_01_01 = 0x0021;
+
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private final int level;
+
+    /**
+     * @param blockSize the number of input bytes per block, at least 32 KiB
+     */
+    public ParallelDeflater(ForkJoinPool pool, int blockSize, int level) {
+        this.pool = pool;
+        this.blockSize = Math.max(blockSize, WINDOW_SIZE);
+        this.level = level;
+    }
+
+    /**
+     * @param format     one of {@link CodecType#ZIP}, {@link CodecType#GZIP} or {@link CodecType#DEFLATE}
+     * @param dictionary the preset dictionary for the first block, or null. Only used for {@link CodecType#DEFLATE}
+     */
+    public byte[] deflate(byte[] data, CodecType format, CompressionDictionary dictionary) {
+        boolean useDictionary = dictionary != null && format == CodecType.DEFLATE;
+        List<ForkJoinTask<byte[]>> blocks = new ArrayList<>();
+        for (int offset = 0; offset < data.length || offset == 0; offset += blockSize) {
+            int start = offset;
+            int length = Math.min(blockSize, data.length - offset);
+            boolean last = start + length >= data.length;
+            blocks.add(pool.submit(() -> deflateBlock(data, start, length, last,
+                    useDictionary && start == 0 ? dictionary.data() : null)));
+        }
+
+        long checksum = switch (format) {
+            case DEFLATE -> {
+                Adler32 adler32 = new Adler32();
+                adler32.update(data);
+                yield adler32.getValue();
+            }
+            case GZIP, ZIP -> {
+                CRC32 crc32 = new CRC32();
+                crc32.update(data);
+                yield crc32.getValue();
+            }
+            default -> 0;
+        };
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(256, data.length / 4));
+        int compressedSize = 0;
+        int headerSize = writeHeader(outputStream, format, useDictionary ? dictionary : null);
+        for (ForkJoinTask<byte[]> block : blocks) {
+            byte[] compressed = block.join();
+            outputStream.writeBytes(compressed);
+            compressedSize += compressed.length;
+        }
+        writeTrailer(outputStream, format, checksum, data.length, compressedSize, headerSize);
+        return outputStream.toByteArray();
+    }
+
+    private byte[] deflateBlock(byte[] data, int offset, int length, boolean last, byte[] presetDictionary) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (offset > 0) {
+                int primeLength = Math.min(WINDOW_SIZE, offset);
+                deflater.setDictionary(data, offset - primeLength, primeLength);
+            } else if (presetDictionary != null) {
+                deflater.setDictionary(presetDictionary);
+            }
+            deflater.setInput(data, offset, length);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, length / 3));
+            byte[] chunk = new byte[CHUNK_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    outputStream.write(chunk, 0, deflater.deflate(chunk));
+                }
+            } else {
+                // A sync flush ends the block on a byte boundary without marking it as the final one
+                int written;
+                do {
+                    written = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                    outputStream.write(chunk, 0, written);
+                } while (written == chunk.length);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int writeHeader(ByteArrayOutputStream outputStream, CodecType format,
+                                   CompressionDictionary dictionary) {
+        switch (format) {
+            case DEFLATE -> {
+                int cmf = 0x78; // deflate with a 32 KiB window
+                int flg = 0x80 | (dictionary != null ? 0x20 : 0); // default level, optional preset dictionary
+                flg += (31 - (cmf << 8 | flg) % 31) % 31;
+                outputStream.write(cmf);
+                outputStream.write(flg);
+                if (dictionary != null) {
+                    writeIntBigEndian(outputStream, dictionary.id());
+                    return 6;
+                }
+                return 2;
+            }
+            case GZIP -> {
+                outputStream.writeBytes(new byte[]{0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF});
+                return 10;
+            }
+            case ZIP -> {
+                // The sizes and the checksum are not known yet, so they follow the data in a data descriptor
+                byte[] name = ZIP_ENTRY_NAME.getBytes();
+                writeIntLittleEndian(outputStream, 0x04034B50);
+                writeShortLittleEndian(outputStream, 20);
+                writeShortLittleEndian(outputStream, 0x0008);
+                writeShortLittleEndian(outputStream, Deflater.DEFLATED);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, DOS_DATE_1980_01_01);
+                writeIntLittleEndian(outputStream, 0);
+                writeIntLittleEndian(outputStream, 0);
+                writeIntLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, name.length);
+                writeShortLittleEndian(outputStream, 0);
+                outputStream.writeBytes(name);
+                return 30 + name.length;
+            }
+            default -> throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    private static void writeTrailer(ByteArrayOutputStream outputStream, CodecType format, long checksum,
+                                     int uncompressedSize, int compressedSize, int headerSize) {
+        switch (format) {
+            case DEFLATE -> writeIntBigEndian(outputStream, (int) checksum);
+            case GZIP -> {
+                writeIntLittleEndian(outputStream, (int) checksum);
+                writeIntLittleEndian(outputStream, uncompressedSize);
+            }
+            case ZIP -> {
+                byte[] name = ZIP_ENTRY_NAME.getBytes();
+                writeIntLittleEndian(outputStream, 0x08074B50);
+                writeIntLittleEndian(outputStream, (int) checksum);
+                writeIntLittleEndian(outputStream, compressedSize);
+                writeIntLittleEndian(outputStream, uncompressedSize);
+
+                int centralDirectoryOffset = headerSize + compressedSize + 16;
+                writeIntLittleEndian(outputStream, 0x02014B50);
+                writeShortLittleEndian(outputStream, 20);
+                writeShortLittleEndian(outputStream, 20);
+                writeShortLittleEndian(outputStream, 0x0008);
+                writeShortLittleEndian(outputStream, Deflater.DEFLATED);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, DOS_DATE_1980_01_01);
+                writeIntLittleEndian(outputStream, (int) checksum);
+                writeIntLittleEndian(outputStream, compressedSize);
+                writeIntLittleEndian(outputStream, uncompressedSize);
+                writeShortLittleEndian(outputStream, name.length);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, 0);
+                writeIntLittleEndian(outputStream, 0);
+                writeIntLittleEndian(outputStream, 0);
+                outputStream.writeBytes(name);
+                int centralDirectorySize = 46 + name.length;
+
+                writeIntLittleEndian(outputStream, 0x06054B50);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, 0);
+                writeShortLittleEndian(outputStream, 1);
+                writeShortLittleEndian(outputStream, 1);
+                writeIntLittleEndian(outputStream, centralDirectorySize);
+                writeIntLittleEndian(outputStream, centralDirectoryOffset);
+                writeShortLittleEndian(outputStream, 0);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static void writeShortLittleEndian(ByteArrayOutputStream outputStream, int value) {
+        outputStream.write(value);
+        outputStream.write(value >>> 8);
+    }
+
+    private static void writeIntLittleEndian(ByteArrayOutputStream outputStream, int value) {
+        writeShortLittleEndian(outputStream, value);
+        writeShortLittleEndian(outputStream, value >>> 16);
+    }
+
+    private static void writeIntBigEndian(ByteArrayOutputStream outputStream, int value) {
+        outputStream.write(value >>> 24);
+        outputStream.write(value >>> 16);
+        outputStream.write(value >>> 8);
+        outputStream.write(value);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses payloads in one {@link CodecType}. Implementations are thread safe.
+ */
+public interface PayloadCodec {
+
+    CodecType getType();
+
+    /**
+     * @return whether the codec can make use of a preset dictionary
+     */
+    boolean supportsDictionary();
+
+    /**
+     * @param dictionary the preset dictionary to use, or null. Ignored if the codec does not support dictionaries
+     */
+    byte[] encode(byte[] data, CompressionDictionary dictionary) throws IOException;
+
+    /**
+     * @param dictionary the preset dictionary the data was encoded with, or null
+     */
+    byte[] decode(byte[] data, CompressionDictionary dictionary) throws IOException;
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import international.dmc.secom_mms_gateway.mms.MMSAgent;
+import international.dmc.secom_mms_gateway.utils.DataProductTypeParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.models.enums.SECOM_DataProductType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses payloads before they are published, and decodes received payloads, using the configured
+ * {@link CodecType}. Payloads below the size threshold, payloads that already are in a compressed format and payloads
+ * whose estimated entropy is too high to gain anything are not compressed. With ZIP they are published as they are,
+ * which is fine as SECOM flags ZIP archives itself. Nothing else in an MMS message could tell a receiver whether a
+ * payload was compressed, so with a {@linkplain CodecType#isGatewayPrivate() gateway private} format every payload is
+ * encoded, if need be without compression, and every received payload is decoded. Codecs that support preset
+ * dictionaries use the dictionary trained for the data product type of the payload, which are loaded from files named
+ * after the data product type, e.g. {@code S124.dict}, in the dictionary directory. Receivers look the dictionary up
+ * by the id in the stream, so they need the same dictionary files. Payloads above the parallel threshold are split
+ * into blocks that are compressed on all cores by a {@link ParallelDeflater}.
+ */
+@Component
+@Slf4j
+public class PayloadCompressor {
+
+    private static final String DICTIONARY_SUFFIX = ".dict";
+
+    @Value("${international.dmc.secom_mms_gateway.codec.type:ZIP}")
+    private CodecType codecType;
+    @Value("${international.dmc.secom_mms_gateway.codec.level:-1}")
+    private int level;
+    @Value("${international.dmc.secom_mms_gateway.codec.threshold:" + MMSAgent.PAYLOAD_SIZE_LIMIT + "}")
+    private int threshold;
+    @Value("${international.dmc.secom_mms_gateway.codec.max-entropy:7.5}")
+    private double maxEntropy;
+    @Value("${international.dmc.secom_mms_gateway.codec.dictionary-directory:}")
+    private String dictionaryDirectory;
+    @Value("${international.dmc.secom_mms_gateway.codec.parallel.threshold:1048576}")
+    private int parallelThreshold;
+    @Value("${international.dmc.secom_mms_gateway.codec.parallel.block-size:131072}")
+    private int parallelBlockSize;
+    @Value("${international.dmc.secom_mms_gateway.codec.parallel.threads:0}")
+    private int parallelThreads;
+
+    private final Map<SECOM_DataProductType, CompressionDictionary> dictionaries =
+            new EnumMap<>(SECOM_DataProductType.class);
+    private final Map<Integer, CompressionDictionary> dictionariesById = new HashMap<>();
+
+    private final Counter compressedCounter;
+    private final Counter belowThresholdCounter;
+    private final Counter incompressibleCounter;
+    private final Counter noGainCounter;
+    private final Counter inputBytesCounter;
+    private final Counter outputBytesCounter;
+
+    private PayloadCodec codec;
+    private PayloadCodec storingCodec;
+    private ForkJoinPool compressionPool;
+    private ParallelDeflater parallelDeflater;
+
+    @Autowired
+    public PayloadCompressor(MeterRegistry meterRegistry) {
+        this.compressedCounter = resultCounter("compressed", meterRegistry);
+        this.belowThresholdCounter = resultCounter("below-threshold", meterRegistry);
+        this.incompressibleCounter = resultCounter("incompressible", meterRegistry);
+        this.noGainCounter = resultCounter("no-gain", meterRegistry);
+        this.inputBytesCounter = Counter.builder("gateway.codec.bytes")
+                .description("Number of bytes before and after compressing payloads")
+                .baseUnit("bytes")
+                .tag("stage", "input")
+                .register(meterRegistry);
+        this.outputBytesCounter = Counter.builder("gateway.codec.bytes")
+                .description("Number of bytes before and after compressing payloads")
+                .baseUnit("bytes")
+                .tag("stage", "output")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        codec = createCodec(codecType, level);
+        if (codecType.isGatewayPrivate()) {
+            storingCodec = createCodec(codecType, Deflater.NO_COMPRESSION);
+        }
+        if (codec != null) {
+            int threads = parallelThreads > 0 ? parallelThreads : Runtime.getRuntime().availableProcessors();
+            compressionPool = new ForkJoinPool(threads);
+            parallelDeflater = new ParallelDeflater(compressionPool, parallelBlockSize, level);
+        }
+        if (StringUtils.hasText(dictionaryDirectory)) {
+            loadDictionaries(Path.of(dictionaryDirectory));
+        }
+        log.info("Compressing payloads larger than {} bytes with {}", threshold, codecType);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (compressionPool != null) {
+            compressionPool.shutdown();
+        }
+    }
+
+    public CodecType getCodecType() {
+        return codecType;
+    }
+
+    /**
+     * @return the dictionary with the given DICTID, or null if there is none
+     */
+    public CompressionDictionary getDictionary(int id) {
+        return dictionariesById.get(id);
+    }
+
+    /**
+     * Compresses a payload if that is worthwhile. With a gateway private format a payload that is not worth
+     * compressing is still encoded, just without compression.
+     *
+     * @param dataProductType the data product type of the payload, or null if unknown
+     * @param zipped          whether the uploader flagged the payload as a ZIP archive
+     * @return the payload to publish
+     */
+    public byte[] compress(byte[] data, SECOM_DataProductType dataProductType, boolean zipped) throws IOException {
+        if (zipped && !codecType.isGatewayPrivate()) {
+            return data;
+        }
+        if (codec == null || data.length <= threshold) {
+            belowThresholdCounter.increment();
+            return store(data);
+        }
+        if (CompressibilityEstimator.isCompressedFormat(data)
+                || CompressibilityEstimator.estimateEntropy(data) > maxEntropy) {
+            incompressibleCounter.increment();
+            return store(data);
+        }
+        CompressionDictionary dictionary = null;
+        if (codec.supportsDictionary() && dataProductType != null) {
+            dictionary = dictionaries.get(dataProductType);
+        }
+        byte[] compressed = data.length >= parallelThreshold
+                ? parallelDeflater.deflate(data, codecType, dictionary)
+                : codec.encode(data, dictionary);
+        inputBytesCounter.increment(data.length);
+        if (compressed.length >= data.length) {
+            noGainCounter.increment();
+            byte[] stored = store(data);
+            outputBytesCounter.increment(stored.length);
+            return stored;
+        }
+        compressedCounter.increment();
+        outputBytesCounter.increment(compressed.length);
+        return compressed;
+    }
+
+    /**
+     * Decodes a received payload that a gateway with the same configuration published.
+     *
+     * @return the payload as it was uploaded
+     * @throws IOException if the payload is not in the configured format or its dictionary is not loaded
+     */
+    public byte[] decompress(byte[] data) throws IOException {
+        if (!codecType.isGatewayPrivate()) {
+            return data;
+        }
+        CompressionDictionary dictionary = null;
+        if (codec.supportsDictionary()) {
+            Integer dictionaryId = DeflateCodec.getDictionaryId(data);
+            dictionary = dictionaryId != null ? dictionariesById.get(dictionaryId) : null;
+        }
+        return codec.decode(data, dictionary);
+    }
+
+    private byte[] store(byte[] data) throws IOException {
+        return storingCodec != null ? storingCodec.encode(data, null) : data;
+    }
+
+    private static PayloadCodec createCodec(CodecType codecType, int level) {
+        return switch (codecType) {
+            case NONE -> null;
+            case ZIP -> new ZipCodec(level);
+            case GZIP -> new GzipCodec(level);
+            case DEFLATE -> new DeflateCodec(level);
+        };
+    }
+
+    private void loadDictionaries(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(DICTIONARY_SUFFIX)).toList()) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - DICTIONARY_SUFFIX.length());
+                SECOM_DataProductType dataProductType = DataProductTypeParser.getDataProductType(name);
+                CompressionDictionary dictionary = CompressionDictionary.of(name, Files.readAllBytes(file));
+                dictionaries.put(dataProductType, dictionary);
+                dictionariesById.put(dictionary.id(), dictionary);
+                log.info("Loaded compression dictionary {} of {} bytes with id {}", name, dictionary.data().length,
+                        Integer.toHexString(dictionary.id()));
+            }
+        }
+    }
+
+    private static Counter resultCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.codec.payloads")
+                .description("Number of payloads by compression result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compresses payloads into a ZIP archive with a single entry called "data", which is the format existing receivers
+ * of the gateway expect.
+ */
+public class ZipCodec implements PayloadCodec {
+
+    private static final String ENTRY_NAME = "data";
+
+    private final int level;
+
+    public ZipCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public CodecType getType() {
+        return CodecType.ZIP;
+    }
+
+    @Override
+    public boolean supportsDictionary() {
+        return false;
+    }
+
+    @Override
+    public byte[] encode(byte[] data, CompressionDictionary dictionary) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(256, data.length / 4));
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            zipOutputStream.setLevel(level);
+            zipOutputStream.putNextEntry(new ZipEntry(ENTRY_NAME));
+            zipOutputStream.write(data);
+            zipOutputStream.closeEntry();
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] data, CompressionDictionary dictionary) throws IOException {
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(data))) {
+            if (zipInputStream.getNextEntry() == null) {
+                throw new IOException("The ZIP archive is empty");
+            }
+            return zipInputStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.components;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import international.dmc.secom_mms_gateway.exceptions.CertificateValidationException;
+import international.dmc.secom_mms_gateway.exceptions.CertificateValidationFailure;
+import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates the certificates uploads are signed with. The chain of a certificate is built to the MCP root certificate
+ * of the {@link KeystoreUtil}, through the intermediate certificates in the configured PEM file, and the revocation
+ * status of every certificate in the chain is looked up with the {@link RevocationClient}.
+ * <p>
+ * Both results are cached: chains until a certificate in them expires or the root certificate changes, and
+ * revocation statuses until the next update announced by the OCSP responder or CRL. Statuses that are about to reach
+ * their next update are refreshed in the background, so that once a certificate has been seen, validating it again
+ * does not have to wait for the network.
+ */
+@Slf4j
+@Component
+public class CertificateValidator {
+
+    private static final String PKIX = "PKIX";
+
+    private final KeystoreUtil keystoreUtil;
+    private final boolean enabled;
+    private final boolean revocationEnabled;
+    private final boolean softFail;
+    private final Duration maxCacheTime;
+    private final Duration unknownCacheTime;
+    private final Duration refreshAhead;
+    private final List<X509Certificate> intermediates;
+    private final RevocationClient revocationClient;
+    private final Cache<X509Certificate, Chain> chains;
+    private final AsyncCache<RevocationKey, RevocationEntry> revocationStatuses;
+    private final Counter validCounter;
+    private final Counter untrustedCounter;
+    private final Counter revokedCounter;
+    private final Counter unknownCounter;
+
+    private ExecutorService revocationExecutor;
+    private ScheduledExecutorService refreshScheduler;
+
+    private record Chain(X509Certificate root, List<X509Certificate> certificates, Instant notAfter) {
+    }
+
+    private record RevocationKey(X500Principal issuer, BigInteger serialNumber) {
+    }
+
+    private record RevocationEntry(X509Certificate certificate, X509Certificate issuer,
+                                   RevocationClient.RevocationStatus status) {
+    }
+
+    @Autowired
+    public CertificateValidator(
+            KeystoreUtil keystoreUtil,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.enabled:true}") boolean enabled,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.intermediates-path:}")
+            String intermediatesPath,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.max-chains:1000}") long maxChains,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.revocation.enabled:true}")
+            boolean revocationEnabled,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.revocation.soft-fail:false}")
+            boolean softFail,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.revocation.timeout-ms:5000}")
+            long timeoutMs,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.revocation.max-cache-seconds:86400}")
+            long maxCacheSeconds,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.revocation.unknown-cache-seconds:30}")
+            long unknownCacheSeconds,
+            @Value("${international.dmc.secom_mms_gateway.certificate-validation.revocation.refresh-ahead-seconds:300}")
+            long refreshAheadSeconds,
+            MeterRegistry meterRegistry) throws IOException, GeneralSecurityException {
+        this.keystoreUtil = keystoreUtil;
+        this.enabled = enabled;
+        this.revocationEnabled = revocationEnabled;
+        this.softFail = softFail;
+        this.maxCacheTime = Duration.ofSeconds(maxCacheSeconds);
+        this.unknownCacheTime = Duration.ofSeconds(unknownCacheSeconds);
+        this.refreshAhead = Duration.ofSeconds(refreshAheadSeconds);
+        this.intermediates = StringUtils.hasText(intermediatesPath)
+                ? loadCertificates(Path.of(intermediatesPath))
+                : List.of();
+        this.revocationClient = new RevocationClient(Duration.ofMillis(timeoutMs));
+        this.chains = Caffeine.newBuilder()
+                .maximumSize(maxChains)
+                .expireAfter(Expiry.<X509Certificate, Chain>creating((certificate, chain) ->
+                        durationUntil(chain.notAfter(), maxCacheTime)))
+                .recordStats()
+                .build();
+        this.revocationStatuses = Caffeine.newBuilder()
+                .maximumSize(maxChains)
+                .expireAfter(Expiry.<RevocationKey, RevocationEntry>writing((key, entry) -> cacheTime(entry.status())))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, chains, "gateway.certificate-chains");
+        CaffeineCacheMetrics.monitor(meterRegistry, revocationStatuses.synchronous(), "gateway.revocation-statuses");
+        this.validCounter = resultCounter("valid", meterRegistry);
+        this.untrustedCounter = resultCounter("untrusted", meterRegistry);
+        this.revokedCounter = resultCounter("revoked", meterRegistry);
+        this.unknownCounter = resultCounter("unknown", meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        // Revocation lookups wait on the network, so they do not take up the threads of the caller
+        revocationExecutor = Executors.newCachedThreadPool(ThreadFactories.create("revocation-", false));
+        refreshScheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactories.create("revocation-refresh", false));
+        long refreshPeriodSeconds = Math.max(1, refreshAhead.toSeconds() / 5);
+        refreshScheduler.scheduleWithFixedDelay(this::refreshExpiring, refreshPeriodSeconds, refreshPeriodSeconds,
+                TimeUnit.SECONDS);
+        log.info("Validating uploader certificates: {}, checking revocation: {}, {} intermediate certificates",
+                enabled, revocationEnabled, intermediates.size());
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (refreshScheduler != null) {
+            refreshScheduler.shutdownNow();
+        }
+        if (revocationExecutor != null) {
+            revocationExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Validates the chain and revocation status of a certificate. The returned future is already complete if the
+     * result is cached.
+     *
+     * @return a future that completes when the certificate is valid, or fails with a
+     * {@link CertificateValidationException} if it is not
+     */
+    public CompletableFuture<Void> validate(X509Certificate certificate) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Chain chain;
+        try {
+            chain = getChain(certificate);
+        } catch (CertificateValidationException e) {
+            untrustedCounter.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!revocationEnabled) {
+            validCounter.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<X509Certificate> certificates = chain.certificates();
+        List<CompletableFuture<RevocationEntry>> lookups = new ArrayList<>(certificates.size());
+        for (int i = 0; i < certificates.size(); i++) {
+            X509Certificate subject = certificates.get(i);
+            X509Certificate issuer = i + 1 < certificates.size() ? certificates.get(i + 1) : chain.root();
+            lookups.add(revocationStatuses.get(new RevocationKey(issuer.getSubjectX500Principal(),
+                            subject.getSerialNumber()),
+                    (key, executor) -> CompletableFuture.supplyAsync(() -> lookUp(subject, issuer),
+                            revocationExecutor)));
+        }
+        return CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            for (CompletableFuture<RevocationEntry> lookup : lookups) {
+                checkStatus(lookup.join());
+            }
+            validCounter.increment();
+            return null;
+        });
+    }
+
+    private void checkStatus(RevocationEntry entry) {
+        switch (entry.status().status()) {
+            case GOOD -> {
+            }
+            case REVOKED -> {
+                revokedCounter.increment();
+                throw new CompletionException(new CertificateValidationException(CertificateValidationFailure.REVOKED,
+                        entry.certificate().getSubjectX500Principal() + " has been revoked"));
+            }
+            case UNKNOWN -> {
+                unknownCounter.increment();
+                if (!softFail) {
+                    throw new CompletionException(new CertificateValidationException(
+                            CertificateValidationFailure.REVOCATION_UNKNOWN,
+                            "The revocation status of " + entry.certificate().getSubjectX500Principal()
+                                    + " is unknown"));
+                }
+                log.warn("Accepting {} with an unknown revocation status",
+                        entry.certificate().getSubjectX500Principal());
+            }
+        }
+    }
+
+    private Chain getChain(X509Certificate certificate) throws CertificateValidationException {
+        X509Certificate root = keystoreUtil.getRootCertificate();
+        if (root == null) {
+            throw new CertificateValidationException(CertificateValidationFailure.NO_TRUST_ANCHOR,
+                    "No root certificate is configured");
+        }
+        Chain chain = chains.getIfPresent(certificate);
+        // The root certificate is replaced when the credentials are reloaded
+        if (chain == null || !chain.root().equals(root)) {
+            chain = buildChain(certificate, root);
+            chains.put(certificate, chain);
+        }
+        return chain;
+    }
+
+    private Chain buildChain(X509Certificate certificate, X509Certificate root) throws CertificateValidationException {
+        try {
+            X509CertSelector selector = new X509CertSelector();
+            selector.setCertificate(certificate);
+            PKIXBuilderParameters parameters = new PKIXBuilderParameters(Set.of(new TrustAnchor(root, null)), selector);
+            List<X509Certificate> candidates = new ArrayList<>(intermediates);
+            candidates.add(certificate);
+            parameters.addCertStore(CertStore.getInstance("Collection",
+                    new CollectionCertStoreParameters(candidates)));
+            // Revocation is checked separately, so that the results can be cached and refreshed
+            parameters.setRevocationEnabled(false);
+            PKIXCertPathBuilderResult result =
+                    (PKIXCertPathBuilderResult) CertPathBuilder.getInstance(PKIX).build(parameters);
+
+            List<X509Certificate> certificates = new ArrayList<>();
+            Instant notAfter = root.getNotAfter().toInstant();
+            for (var pathCertificate : result.getCertPath().getCertificates()) {
+                X509Certificate x509Certificate = (X509Certificate) pathCertificate;
+                certificates.add(x509Certificate);
+                Instant certificateNotAfter = x509Certificate.getNotAfter().toInstant();
+                if (certificateNotAfter.isBefore(notAfter)) {
+                    notAfter = certificateNotAfter;
+                }
+            }
+            return new Chain(root, List.copyOf(certificates), notAfter);
+        } catch (GeneralSecurityException e) {
+            throw new CertificateValidationException(CertificateValidationFailure.UNTRUSTED_CHAIN, e);
+        }
+    }
+
+    private RevocationEntry lookUp(X509Certificate certificate, X509Certificate issuer) {
+        return new RevocationEntry(certificate, issuer, revocationClient.check(certificate, issuer));
+    }
+
+    /**
+     * Looks up the statuses that reach their next update within the refresh-ahead time again. The current status is
+     * only replaced if the new one is known, so an unreachable responder does not invalidate it before it expires.
+     */
+    private void refreshExpiring() {
+        Instant refreshBefore = Instant.now().plus(refreshAhead);
+        revocationStatuses.synchronous().asMap().forEach((key, entry) -> {
+            RevocationClient.RevocationStatus status = entry.status();
+            if (status.status() == RevocationClient.RevocationStatus.Status.UNKNOWN || status.nextUpdate() == null
+                    || status.nextUpdate().isAfter(refreshBefore)) {
+                return;
+            }
+            CompletableFuture.supplyAsync(() -> lookUp(entry.certificate(), entry.issuer()), revocationExecutor)
+                    .thenAccept(refreshed -> {
+                        if (refreshed.status().status() != RevocationClient.RevocationStatus.Status.UNKNOWN) {
+                            revocationStatuses.put(key, CompletableFuture.completedFuture(refreshed));
+                        }
+                    });
+        });
+    }
+
+    private Duration cacheTime(RevocationClient.RevocationStatus status) {
+        if (status.status() == RevocationClient.RevocationStatus.Status.UNKNOWN) {
+            return unknownCacheTime;
+        }
+        return status.nextUpdate() == null ? maxCacheTime : durationUntil(status.nextUpdate(), maxCacheTime);
+    }
+
+    private static Duration durationUntil(Instant instant, Duration max) {
+        Duration duration = Duration.between(Instant.now(), instant);
+        if (duration.isNegative()) {
+            return Duration.ZERO;
+        }
+        return duration.compareTo(max) < 0 ? duration : max;
+    }
+
+    private static List<X509Certificate> loadCertificates(Path path) throws IOException, GeneralSecurityException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            List<X509Certificate> certificates = new ArrayList<>();
+            for (var certificate : CertificateFactory.getInstance("X.509").generateCertificates(inputStream)) {
+                certificates.add((X509Certificate) certificate);
+            }
+            return certificates;
+        }
+    }
+
+    private static Counter resultCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.certificate.validations")
+                .description("Number of uploader certificate validations by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ASN1IA5String;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Looks up whether a certificate has been revoked, asking the OCSP responder named in its authority information
+ * access extension first and falling back to the CRLs of its distribution points. Only the answers of the issuer, or
+ * of an OCSP responder the issuer delegated to, are accepted. CRLs are shared by all certificates of an issuer, so
+ * they are kept until their next update.
+ */
+@Slf4j
+public class RevocationClient {
+
+    private static final String OCSP_REQUEST_TYPE = "application/ocsp-request";
+    private static final String OCSP_RESPONSE_TYPE = "application/ocsp-response";
+    private static final long MAX_CACHED_CRLS = 100;
+
+    /**
+     * The revocation status of a certificate.
+     *
+     * @param nextUpdate when newer information will be available, or null if the source did not say
+     * @param source     where the status came from, e.g. "ocsp" or "crl"
+     */
+    public record RevocationStatus(Status status, Instant thisUpdate, Instant nextUpdate, String source) {
+
+        public enum Status {
+            GOOD,
+            REVOKED,
+            UNKNOWN,
+        }
+
+        static RevocationStatus unknown() {
+            return new RevocationStatus(Status.UNKNOWN, Instant.now(), null, "none");
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final Cache<URI, X509CRL> crls;
+
+    public RevocationClient(Duration timeout) {
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.crls = Caffeine.newBuilder()
+                .maximumSize(MAX_CACHED_CRLS)
+                .expireAfter(Expiry.<URI, X509CRL>writing((uri, crl) -> crl.getNextUpdate() == null
+                        ? Duration.ZERO
+                        : durationUntil(crl.getNextUpdate().toInstant())))
+                .build();
+    }
+
+    /**
+     * Checks the revocation status of a certificate. Network and parsing errors are logged and lead to an unknown
+     * status, so that the caller can decide whether to fail open or closed.
+     *
+     * @param issuer the certificate of the CA that issued the certificate
+     */
+    public RevocationStatus check(X509Certificate certificate, X509Certificate issuer) {
+        for (String url : getOcspUrls(certificate)) {
+            try {
+                RevocationStatus status = checkOcsp(URI.create(url), certificate, issuer);
+                if (status.status() != RevocationStatus.Status.UNKNOWN) {
+                    return status;
+                }
+            } catch (IOException | GeneralSecurityException | OCSPException | OperatorCreationException
+                     | IllegalArgumentException e) {
+                log.warn("Could not get the OCSP status of {} from {}", certificate.getSubjectX500Principal(), url,
+                        e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return RevocationStatus.unknown();
+            }
+        }
+        for (String url : getCrlUrls(certificate)) {
+            try {
+                X509CRL crl = getCrl(URI.create(url), issuer);
+                Instant nextUpdate = crl.getNextUpdate() == null ? null : crl.getNextUpdate().toInstant();
+                RevocationStatus.Status status = crl.isRevoked(certificate)
+                        ? RevocationStatus.Status.REVOKED
+                        : RevocationStatus.Status.GOOD;
+                return new RevocationStatus(status, crl.getThisUpdate().toInstant(), nextUpdate, "crl");
+            } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("Could not get the CRL of {} from {}", issuer.getSubjectX500Principal(), url, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return RevocationStatus.unknown();
+            }
+        }
+        return RevocationStatus.unknown();
+    }
+
+    private RevocationStatus checkOcsp(URI uri, X509Certificate certificate, X509Certificate issuer)
+            throws IOException, InterruptedException, GeneralSecurityException, OCSPException,
+            OperatorCreationException {
+        CertificateID certificateId = new CertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(issuer), certificate.getSerialNumber());
+        // No nonce is sent, as the response is cached and reused anyway
+        byte[] request = new OCSPReqBuilder().addRequest(certificateId).build().getEncoded();
+        HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(uri)
+                        .timeout(timeout)
+                        .header("Content-Type", OCSP_REQUEST_TYPE)
+                        .header("Accept", OCSP_RESPONSE_TYPE)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("OCSP responder answered with status " + response.statusCode());
+        }
+        OCSPResp ocspResponse = new OCSPResp(response.body());
+        if (ocspResponse.getStatus() != OCSPResp.SUCCESSFUL
+                || !(ocspResponse.getResponseObject() instanceof BasicOCSPResp basicResponse)) {
+            throw new OCSPException("OCSP responder answered with status " + ocspResponse.getStatus());
+        }
+        if (!isSignedByIssuerOrDelegate(basicResponse, issuer)) {
+            throw new OCSPException("The OCSP response is not signed by the issuer or its delegate");
+        }
+        for (SingleResp singleResponse : basicResponse.getResponses()) {
+            if (!certificateId.equals(singleResponse.getCertID())) {
+                continue;
+            }
+            CertificateStatus certificateStatus = singleResponse.getCertStatus();
+            RevocationStatus.Status status;
+            if (certificateStatus == CertificateStatus.GOOD) {
+                status = RevocationStatus.Status.GOOD;
+            } else if (certificateStatus instanceof RevokedStatus) {
+                status = RevocationStatus.Status.REVOKED;
+            } else {
+                status = RevocationStatus.Status.UNKNOWN;
+            }
+            Date nextUpdate = singleResponse.getNextUpdate();
+            return new RevocationStatus(status, singleResponse.getThisUpdate().toInstant(),
+                    nextUpdate == null ? null : nextUpdate.toInstant(), "ocsp");
+        }
+        throw new OCSPException("The OCSP response does not cover the requested certificate");
+    }
+
+    private static boolean isSignedByIssuerOrDelegate(BasicOCSPResp response, X509Certificate issuer)
+            throws OCSPException, OperatorCreationException, CertificateException {
+        JcaContentVerifierProviderBuilder verifierProviderBuilder = new JcaContentVerifierProviderBuilder();
+        if (response.isSignatureValid(verifierProviderBuilder.build(issuer.getPublicKey()))) {
+            return true;
+        }
+        for (X509CertificateHolder responderCertificate : response.getCerts()) {
+            try {
+                boolean delegated = responderCertificate.isSignatureValid(verifierProviderBuilder.build(issuer))
+                        && responderCertificate.isValidOn(new Date())
+                        && hasOcspSigningUsage(responderCertificate);
+                if (delegated && response.isSignatureValid(verifierProviderBuilder.build(responderCertificate))) {
+                    return true;
+                }
+            } catch (CertException e) {
+                log.debug("Could not check the OCSP responder certificate", e);
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasOcspSigningUsage(X509CertificateHolder certificate) {
+        ExtendedKeyUsage extendedKeyUsage = ExtendedKeyUsage.fromExtensions(certificate.getExtensions());
+        return extendedKeyUsage != null && extendedKeyUsage.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning);
+    }
+
+    private X509CRL getCrl(URI uri, X509Certificate issuer)
+            throws IOException, InterruptedException, GeneralSecurityException {
+        X509CRL crl = crls.getIfPresent(uri);
+        if (crl != null) {
+            return crl;
+        }
+        HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(uri).timeout(timeout).GET().build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("CRL distribution point answered with status " + response.statusCode());
+        }
+        crl = (X509CRL) CertificateFactory.getInstance("X.509")
+                .generateCRL(new ByteArrayInputStream(response.body()));
+        if (!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+            throw new CertificateException("The CRL was not issued by " + issuer.getSubjectX500Principal());
+        }
+        crl.verify(issuer.getPublicKey());
+        crls.put(uri, crl);
+        return crl;
+    }
+
+    private static List<String> getOcspUrls(X509Certificate certificate) {
+        List<String> urls = new ArrayList<>();
+        byte[] extension = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+        if (extension == null) {
+            return urls;
+        }
+        AuthorityInformationAccess authorityInformationAccess =
+                AuthorityInformationAccess.getInstance(ASN1OctetString.getInstance(extension).getOctets());
+        for (AccessDescription accessDescription : authorityInformationAccess.getAccessDescriptions()) {
+            if (AccessDescription.id_ad_ocsp.equals(accessDescription.getAccessMethod())) {
+                addHttpUrl(accessDescription.getAccessLocation(), urls);
+            }
+        }
+        return urls;
+    }
+
+    private static List<String> getCrlUrls(X509Certificate certificate) {
+        List<String> urls = new ArrayList<>();
+        byte[] extension = certificate.getExtensionValue(Extension.cRLDistributionPoints.getId());
+        if (extension == null) {
+            return urls;
+        }
+        CRLDistPoint crlDistPoint = CRLDistPoint.getInstance(ASN1OctetString.getInstance(extension).getOctets());
+        for (DistributionPoint distributionPoint : crlDistPoint.getDistributionPoints()) {
+            DistributionPointName name = distributionPoint.getDistributionPoint();
+            if (name != null && name.getType() == DistributionPointName.FULL_NAME) {
+                for (GeneralName generalName : GeneralNames.getInstance(name.getName()).getNames()) {
+                    addHttpUrl(generalName, urls);
+                }
+            }
+        }
+        return urls;
+    }
+
+    private static void addHttpUrl(GeneralName generalName, List<String> urls) {
+        if (generalName.getTagNo() == GeneralName.uniformResourceIdentifier) {
+            String url = ASN1IA5String.getInstance(generalName.getName()).getString();
+            // LDAP distribution points are not supported
+            if (url.startsWith("http://") || url.startsWith("https://")) {
+                urls.add(url);
+            }
+        }
+    }
+
+    private static Duration durationUntil(Instant instant) {
+        Duration duration = Duration.between(Instant.now(), instant);
+        return duration.isNegative() ? Duration.ZERO : duration;
+    }
+}
@@ -16,23 +16,17 @@
 
 package international.dmc.secom_mms_gateway.components;
 
-import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.grad.secom.core.base.DigitalSignatureCertificate;
 import org.grad.secom.core.base.SecomSignatureProvider;
 import org.grad.secom.core.models.enums.DigitalSignatureAlgorithmEnum;
-import org.grad.secom.core.utils.SecomPemUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
 import java.security.InvalidKeyException;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.Signature;
 import java.security.SignatureException;
-import java.security.UnrecoverableEntryException;
 import java.security.cert.CertificateException;
 import java.util.HexFormat;
 
@@ -43,11 +37,16 @@ public class SecomSignatureProviderImpl implements SecomSignatureProvider {
     @Value("${international.dmc.secom_mms_gateway.secom.keypair.signing-algorithm:SHA3-384withECDSA}")
     private String defaultSigningAlgorithm;
 
-    private final KeystoreUtil keystoreUtil;
+    private final SigningEngine signingEngine;
+    private final SignatureVerifier signatureVerifier;
+    private final UploaderCertificateCache certificateCache;
 
     @Autowired
-    public SecomSignatureProviderImpl(KeystoreUtil keystoreUtil) {
-        this.keystoreUtil = keystoreUtil;
+    public SecomSignatureProviderImpl(SigningEngine signingEngine, SignatureVerifier signatureVerifier,
+                                      UploaderCertificateCache certificateCache) {
+        this.signingEngine = signingEngine;
+        this.signatureVerifier = signatureVerifier;
+        this.certificateCache = certificateCache;
     }
 
     @Override
@@ -58,11 +57,10 @@ public class SecomSignatureProviderImpl implements SecomSignatureProvider {
     @Override
     public byte[] generateSignature(DigitalSignatureCertificate signatureCertificate, DigitalSignatureAlgorithmEnum algorithm, byte[] payload) {
         try {
-            byte[] signature = keystoreUtil.signDataSecom(payload, defaultSigningAlgorithm);
+            byte[] signature = signingEngine.signSecom(payload, defaultSigningAlgorithm);
             log.debug(HexFormat.of().formatHex(signature));
             return signature;
-        } catch (NoSuchAlgorithmException | SignatureException | CertificateException |
-                 KeyStoreException | IOException | UnrecoverableEntryException | InvalidKeyException e) {
+        } catch (NoSuchAlgorithmException | SignatureException | InvalidKeyException e) {
             log.error("Signature generation failed:", e);
             return new byte[0];
         }
@@ -71,12 +69,10 @@ public class SecomSignatureProviderImpl implements SecomSignatureProvider {
     @Override
     public boolean validateSignature(String signatureCertificate, DigitalSignatureAlgorithmEnum algorithm, byte[] signature, byte[] content) {
         try {
-            Signature sign = Signature.getInstance(algorithm.getValue());
-            sign.initVerify(SecomPemUtils.getCertFromPem(signatureCertificate));
-            sign.update(content);
-
-            return sign.verify(signature);
-        } catch (NoSuchAlgorithmException | CertificateException | InvalidKeyException | SignatureException e) {
+            // The same few service certificates sign every response, so they are only parsed once
+            return signatureVerifier.verify(certificateCache.getFromPem(signatureCertificate).certificate()
+                    .getPublicKey(), algorithm.getValue(), signature, content);
+        } catch (NoSuchAlgorithmException | CertificateException | InvalidKeyException e) {
             log.error("Signature verification failed:", e);
             return false;
         }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.components;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.models.DigitalSignatureValue;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.grad.secom.core.models.SECOM_ExchangeMetadataObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the signatures of received data. {@link Signature} instances are kept in a pool per algorithm, like the
+ * signers of the {@link SigningEngine}, so that looking up the provider is not repeated for every upload. Hashing a
+ * large payload takes much longer than the signature check itself, so payloads above the async threshold are verified
+ * on a separate pool while the caller goes on with other work, such as compressing the payload.
+ */
+@Slf4j
+@Component
+public class SignatureVerifier {
+
+    private static final int MAX_IDLE_VERIFIERS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final List<String> ENVELOPE_FIELDS = List.of("data", "containerType", "dataProductType",
+            "exchangeMetadata", "fromSubscription", "ackRequest", "transactionIdentifier",
+            "envelopeSignatureCertificate", "envelopeRootCertificateThumbprint", "envelopeSignatureTime");
+    private static final Map<String, List<String>> NESTED_FIELDS = Map.of(
+            "exchangeMetadata", List.of("dataProtection", "protectionScheme", "digitalSignatureReference",
+                    "digitalSignatureValue", "compressionFlag"),
+            "digitalSignatureValue", List.of("publicRootCertificateThumbprint", "publicCertificate",
+                    "digitalSignature"));
+
+    @Value("${international.dmc.secom_mms_gateway.signature-verification.threads:0}")
+    private int verificationThreads;
+    @Value("${international.dmc.secom_mms_gateway.signature-verification.async-threshold:65536}")
+    private int asyncThreshold;
+
+    private final Map<String, BlockingQueue<Signature>> idleVerifiers = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final UploaderCertificateCache certificateCache;
+    private final Timer validTimer;
+    private final Timer invalidTimer;
+
+    private ExecutorService executor;
+
+    @Autowired
+    public SignatureVerifier(ObjectMapper objectMapper, UploaderCertificateCache certificateCache,
+                             MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.certificateCache = certificateCache;
+        this.validTimer = resultTimer("valid", meterRegistry);
+        this.invalidTimer = resultTimer("invalid", meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = verificationThreads > 0 ? verificationThreads : Runtime.getRuntime().availableProcessors();
+        // Like signing, verifying is CPU bound and stays on platform threads
+        executor = Executors.newFixedThreadPool(threads, ThreadFactories.create("signature-verifier-", false));
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies a signature on the calling thread.
+     *
+     * @return whether the signature is valid, which it is not if it is malformed
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     * @throws InvalidKeyException      if the key does not fit the algorithm
+     */
+    public boolean verify(PublicKey publicKey, String algorithm, byte[] signature, byte[] content)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        long start = System.nanoTime();
+        boolean valid = false;
+        BlockingQueue<Signature> verifiers =
+                idleVerifiers.computeIfAbsent(algorithm, a -> new ArrayBlockingQueue<>(MAX_IDLE_VERIFIERS));
+        Signature verifier = verifiers.poll();
+        if (verifier == null) {
+            verifier = Signature.getInstance(algorithm);
+        }
+        try {
+            // Initializing resets any state a previous use may have left behind
+            verifier.initVerify(publicKey);
+            verifier.update(content);
+            valid = verifier.verify(signature);
+            verifiers.offer(verifier);
+        } catch (SignatureException e) {
+            log.debug("Malformed signature", e);
+        } finally {
+            (valid ? validTimer : invalidTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return valid;
+    }
+
+    /**
+     * Verifies a signature on the verification pool if the content is larger than the async threshold, and on the
+     * calling thread otherwise.
+     *
+     * @return a future of whether the signature is valid, which fails if the signature could not be checked at all
+     */
+    public CompletableFuture<Boolean> verifyAsync(PublicKey publicKey, String algorithm, byte[] signature,
+                                                  byte[] content) {
+        if (content.length <= asyncThreshold) {
+            try {
+                return CompletableFuture.completedFuture(verify(publicKey, algorithm, signature, content));
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(verify(publicKey, algorithm, signature, content));
+            } catch (NoSuchAlgorithmException | InvalidKeyException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Verifies the signatures of an upload. The envelope signature is checked against the certificate the envelope was
+     * signed with, over the envelope fields as they were transmitted (see {@link #envelopeSignatureContent}). If the
+     * exchange metadata also carries a signature of the dataset, that one is checked against the certificate that
+     * comes with it, which need not be the envelope certificate.
+     *
+     * @return a future of whether the signatures are valid, which is false if the upload carries no envelope signature
+     */
+    public CompletableFuture<Boolean> verifyUpload(EnvelopeUploadObject envelope, X509Certificate certificate) {
+        SECOM_ExchangeMetadataObject exchangeMetadata = envelope.getExchangeMetadata();
+        byte[] envelopeSignature = parseSignature(envelope.getEnvelopeSignature());
+        if (exchangeMetadata == null || exchangeMetadata.getDigitalSignatureReference() == null
+                || envelopeSignature == null || envelope.getData() == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        String algorithm = exchangeMetadata.getDigitalSignatureReference().getValue();
+        CompletableFuture<Boolean> envelopeVerification;
+        if (envelope.getData().length <= asyncThreshold) {
+            envelopeVerification = verifyAsync(certificate.getPublicKey(), algorithm, envelopeSignature,
+                    envelopeSignatureContent(envelope));
+        } else {
+            // Encoding the data for the signature content takes about as long as hashing it
+            envelopeVerification = CompletableFuture.supplyAsync(() -> envelopeSignatureContent(envelope), executor)
+                    .thenCompose(content -> verifyAsync(certificate.getPublicKey(), algorithm, envelopeSignature,
+                            content));
+        }
+
+        DigitalSignatureValue signatureValue = exchangeMetadata.getDigitalSignatureValue();
+        if (signatureValue == null || signatureValue.getDigitalSignature() == null) {
+            return envelopeVerification;
+        }
+        byte[] datasetSignature = parseSignature(signatureValue.getDigitalSignature());
+        if (datasetSignature == null || signatureValue.getPublicCertificate() == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        PublicKey datasetKey;
+        try {
+            datasetKey = certificateCache.getFromPem(signatureValue.getPublicCertificate()).certificate()
+                    .getPublicKey();
+        } catch (CertificateException e) {
+            log.debug("The certificate of the dataset signature could not be parsed", e);
+            return CompletableFuture.completedFuture(false);
+        }
+        return envelopeVerification.thenCombine(
+                verifyAsync(datasetKey, algorithm, datasetSignature, envelope.getData()), Boolean::logicalAnd);
+    }
+
+    /**
+     * Builds the content the envelope signature of an upload is calculated over: the values of the envelope fields in
+     * the order SECOM defines them, each in its JSON form as it was transmitted, joined by dots. The exchange metadata
+     * and the digital signature value within it are flattened the same way, and absent values are empty.
+     */
+    byte[] envelopeSignatureContent(EnvelopeUploadObject envelope) {
+        StringBuilder content = new StringBuilder();
+        appendFields(content, objectMapper.valueToTree(envelope), ENVELOPE_FIELDS);
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendFields(StringBuilder content, JsonNode node, List<String> fields) {
+        for (String field : fields) {
+            JsonNode value = node.path(field);
+            if (NESTED_FIELDS.containsKey(field)) {
+                appendFields(content, value, NESTED_FIELDS.get(field));
+                continue;
+            }
+            if (!content.isEmpty()) {
+                content.append('.');
+            }
+            if (!value.isMissingNode() && !value.isNull()) {
+                content.append(value.asText());
+            }
+        }
+    }
+
+    private static byte[] parseSignature(String hexSignature) {
+        if (hexSignature == null) {
+            return null;
+        }
+        try {
+            return HexFormat.of().parseHex(hexSignature);
+        } catch (IllegalArgumentException e) {
+            log.debug("The signature of the upload is not a hex string", e);
+            return null;
+        }
+    }
+
+    private static Timer resultTimer(String result, MeterRegistry meterRegistry) {
+        return Timer.builder("gateway.signature.verification.time")
+                .description("Time spent verifying a signature")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
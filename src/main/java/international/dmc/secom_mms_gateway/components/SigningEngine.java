@@ -0,0 +1,225 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.components;
+
+import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the MMS and SECOM signatures of the gateway. Initialized {@link Signature} instances are kept in a pool per
+ * algorithm and reused until the credentials are rotated. A pool rather than one instance per thread is used, so that
+ * they are also reused when requests are handled on virtual threads, which only ever sign once.
+ */
+@Slf4j
+@Component
+public class SigningEngine {
+
+    private static final int MAX_IDLE_SIGNERS = 2 * Runtime.getRuntime().availableProcessors();
+
+    @Value("${international.dmc.secom_mms_gateway.mms.keypair.signing-algorithm:SHA384withECDSA}")
+    private String mmsSignatureAlgorithm;
+    @Value("${international.dmc.secom_mms_gateway.signing.threads:0}")
+    private int signingThreads;
+
+    private final KeystoreUtil keystoreUtil;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final Map<String, BlockingQueue<Signer>> idleSigners = new ConcurrentHashMap<>();
+    private final Timer mmsSigningTimer;
+    private final Timer secomSigningTimer;
+
+    private ExecutorService batchExecutor;
+
+    /**
+     * The fields of an MMS application message that are covered by its signature.
+     *
+     * @param destination the subject of the message, or the recipients of a direct message in header order
+     */
+    public record MmsSigningRequest(List<String> destination, long expires, String sender, byte[] body) {
+
+        public MmsSigningRequest(String subject, long expires, String sender, byte[] body) {
+            this(List.of(subject), expires, sender, body);
+        }
+    }
+
+    private record Signer(String key, Signature signature, PrivateKey privateKey) {
+    }
+
+    @Autowired
+    public SigningEngine(KeystoreUtil keystoreUtil, MeterRegistry meterRegistry) {
+        this.keystoreUtil = keystoreUtil;
+        this.mmsSigningTimer = Timer.builder("gateway.signing.time")
+                .description("Time spent creating a signature")
+                .tag("type", "mms")
+                .register(meterRegistry);
+        this.secomSigningTimer = Timer.builder("gateway.signing.time")
+                .description("Time spent creating a signature")
+                .tag("type", "secom")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = signingThreads > 0 ? signingThreads : Runtime.getRuntime().availableProcessors();
+        // Signing is CPU bound, so it stays on platform threads even when requests are handled on virtual threads
+        batchExecutor = Executors.newFixedThreadPool(threads, ThreadFactories.create("signer-", false));
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        batchExecutor.shutdownNow();
+    }
+
+    /**
+     * Signs an MMS application message. The signed content is the concatenation of the subject, the expiry time, the
+     * sender, the body length and the body, which are fed to the signature one after another.
+     */
+    public byte[] signMms(String subject, long expires, String sender, byte[] body) throws NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        return signMms(List.of(subject), expires, sender, body);
+    }
+
+    /**
+     * Signs a direct MMS application message. The recipients take the place of the subject in the signed content, in
+     * the order they appear in the header.
+     */
+    public byte[] signMmsDirect(List<String> recipients, long expires, String sender, byte[] body)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return signMms(recipients, expires, sender, body);
+    }
+
+    private byte[] signMms(List<String> destination, long expires, String sender, byte[] body)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        long start = System.nanoTime();
+        Signer signer = acquireSigner("mms", mmsSignatureAlgorithm, keystoreUtil.getCredentials().mmsPrivateKey());
+        try {
+            Signature signature = signer.signature();
+            for (String field : destination) {
+                signature.update(field.getBytes(StandardCharsets.UTF_8));
+            }
+            signature.update(Long.toString(expires).getBytes(StandardCharsets.UTF_8));
+            signature.update(sender.getBytes(StandardCharsets.UTF_8));
+            signature.update(Integer.toString(body.length).getBytes(StandardCharsets.UTF_8));
+            signature.update(body);
+            byte[] result = signature.sign();
+            releaseSigner(signer);
+            return result;
+        } catch (SignatureException | RuntimeException e) {
+            // A signer that failed is in an unknown state and is not handed back
+            throw e;
+        } finally {
+            mmsSigningTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Signs a number of MMS application messages in parallel.
+     *
+     * @return the signatures in the same order as the requests
+     */
+    public List<byte[]> signMmsBatch(List<MmsSigningRequest> requests) throws NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        if (requests.size() == 1) {
+            MmsSigningRequest request = requests.getFirst();
+            return List.of(signMms(request.destination(), request.expires(), request.sender(), request.body()));
+        }
+        List<Callable<byte[]>> tasks = new ArrayList<>(requests.size());
+        for (MmsSigningRequest request : requests) {
+            tasks.add(() -> signMms(request.destination(), request.expires(), request.sender(), request.body()));
+        }
+        try {
+            List<byte[]> signatures = new ArrayList<>(requests.size());
+            for (Future<byte[]> future : batchExecutor.invokeAll(tasks)) {
+                signatures.add(future.get());
+            }
+            return signatures;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SignatureException("Interrupted while signing batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NoSuchAlgorithmException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof InvalidKeyException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof SignatureException cause) {
+                throw cause;
+            }
+            throw new SignatureException("Could not sign batch", e.getCause());
+        }
+    }
+
+    public byte[] signSecom(byte[] data, String signatureAlgorithm) throws NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        long start = System.nanoTime();
+        Signer signer = acquireSigner("secom", signatureAlgorithm, keystoreUtil.getCredentials().secomPrivateKey());
+        try {
+            signer.signature().update(data);
+            byte[] result = signer.signature().sign();
+            releaseSigner(signer);
+            return result;
+        } catch (SignatureException | RuntimeException e) {
+            // A signer that failed is in an unknown state and is not handed back
+            throw e;
+        } finally {
+            secomSigningTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Signer acquireSigner(String type, String algorithm, PrivateKey privateKey)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        String key = type + ':' + algorithm;
+        Signer signer = idleSigners.computeIfAbsent(key, k -> new ArrayBlockingQueue<>(MAX_IDLE_SIGNERS)).poll();
+        if (signer == null || signer.privateKey() != privateKey) {
+            // Either all signers for this key are in use or the credentials have been rotated
+            Signature signature = signer == null ? Signature.getInstance(algorithm) : signer.signature();
+            signature.initSign(privateKey, secureRandom);
+            signer = new Signer(key, signature, privateKey);
+        }
+        return signer;
+    }
+
+    private void releaseSigner(Signer signer) {
+        idleSigners.get(signer.key()).offer(signer);
+    }
+}
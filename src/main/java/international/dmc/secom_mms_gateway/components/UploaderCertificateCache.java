@@ -0,0 +1,149 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import net.maritimeconnectivity.pki.CertificateHandler;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the certificates that uploads are signed with, keyed by a SHA-256 digest of the Base64 encoded certificate
+ * as it appears in the envelope. The same few provider certificates are sent with every upload, so after the first
+ * upload neither the certificate nor its subject DN has to be parsed again. Entries are evicted when the certificate
+ * expires, after the configured time to live or when the cache is full, whichever comes first.
+ */
+@Component
+public class UploaderCertificateCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final Pattern PEM_ARMOR = Pattern.compile("-----(BEGIN|END) CERTIFICATE-----|\\s");
+
+    private final Cache<String, UploaderCertificate> cache;
+    private final ThreadLocal<CertificateFactory> certificateFactories = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException("X.509 certificates are not supported", e);
+        }
+    });
+
+    /**
+     * A parsed uploader certificate.
+     *
+     * @param mrn the MRN in the UID of the subject DN, or null if there is none
+     */
+    public record UploaderCertificate(X509Certificate certificate, String mrn, Instant notBefore, Instant notAfter) {
+
+        public boolean isValidAt(Instant instant) {
+            return !instant.isBefore(notBefore) && !instant.isAfter(notAfter);
+        }
+    }
+
+    @Autowired
+    public UploaderCertificateCache(
+            @Value("${international.dmc.secom_mms_gateway.certificate-cache.max-size:1000}") long maxSize,
+            @Value("${international.dmc.secom_mms_gateway.certificate-cache.time-to-live-seconds:86400}")
+            long ttlSeconds,
+            MeterRegistry meterRegistry) {
+        Duration timeToLive = Duration.ofSeconds(ttlSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.<String, UploaderCertificate>creating((key, value) -> {
+                    Duration untilExpiry = Duration.between(Instant.now(), value.notAfter());
+                    return untilExpiry.compareTo(timeToLive) < 0 ? untilExpiry : timeToLive;
+                }))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.uploader-certificates");
+    }
+
+    /**
+     * Returns the parsed form of a certificate, parsing it only if it is not cached yet.
+     *
+     * @param encodedCertificate the Base64 encoded DER certificate
+     * @throws CertificateException if the certificate cannot be parsed
+     */
+    public UploaderCertificate get(String encodedCertificate) throws CertificateException {
+        String key = digest(encodedCertificate);
+        UploaderCertificate uploaderCertificate = cache.getIfPresent(key);
+        if (uploaderCertificate == null) {
+            uploaderCertificate = parse(encodedCertificate);
+            // Expired certificates are not worth keeping, they have to be rejected anyway
+            if (uploaderCertificate.notAfter().isAfter(Instant.now())) {
+                cache.put(key, uploaderCertificate);
+            }
+        }
+        return uploaderCertificate;
+    }
+
+    /**
+     * Returns the parsed form of a PEM certificate, like {@link #get(String)}. Certificates that are sent both as PEM
+     * and as bare Base64 share a cache entry.
+     *
+     * @param pemCertificate the PEM encoded certificate
+     * @throws CertificateException if the certificate cannot be parsed
+     */
+    public UploaderCertificate getFromPem(String pemCertificate) throws CertificateException {
+        return get(PEM_ARMOR.matcher(pemCertificate).replaceAll(""));
+    }
+
+    private UploaderCertificate parse(String encodedCertificate) throws CertificateException {
+        byte[] certificateBytes;
+        try {
+            certificateBytes = Base64.getDecoder().decode(encodedCertificate);
+        } catch (IllegalArgumentException e) {
+            throw new CertificateException("The certificate is not Base64 encoded", e);
+        }
+        X509Certificate certificate = (X509Certificate) certificateFactories.get()
+                .generateCertificate(new ByteArrayInputStream(certificateBytes));
+        RDN[] rdns = IETFUtils.rDNsFromString(certificate.getSubjectX500Principal().getName(), BCStyle.INSTANCE);
+        String mrn = CertificateHandler.getElement(rdns, BCStyle.UID);
+        return new UploaderCertificate(certificate, mrn, certificate.getNotBefore().toInstant(),
+                certificate.getNotAfter().toInstant());
+    }
+
+    private static String digest(String encodedCertificate) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            byte[] digest = messageDigest.digest(encodedCertificate.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported", e);
+        }
+    }
+}
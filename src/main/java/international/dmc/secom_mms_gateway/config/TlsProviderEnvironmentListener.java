@@ -0,0 +1,42 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.config;
+
+import international.dmc.secom_mms_gateway.utils.TlsProvider;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Applies the configured TLS provider to the Netty based WebClients of the SECOM clients. Netty picks OpenSSL by
+ * default whenever netty-tcnative is on the classpath, so unless OpenSSL has been chosen it is disabled before any
+ * Netty TLS class is loaded.
+ */
+public class TlsProviderEnvironmentListener implements ApplicationListener<ApplicationEnvironmentPreparedEvent> {
+
+    public static final String TLS_PROVIDER_PROPERTY = "international.dmc.secom_mms_gateway.tls.provider";
+
+    private static final String NETTY_NO_OPENSSL_PROPERTY = "io.netty.handler.ssl.noOpenSsl";
+
+    @Override
+    public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+        TlsProvider tlsProvider = event.getEnvironment()
+                .getProperty(TLS_PROVIDER_PROPERTY, TlsProvider.class, TlsProvider.JDK);
+        if (tlsProvider == TlsProvider.JDK && System.getProperty(NETTY_NO_OPENSSL_PROPERTY) == null) {
+            System.setProperty(NETTY_NO_OPENSSL_PROPERTY, Boolean.TRUE.toString());
+        }
+    }
+}
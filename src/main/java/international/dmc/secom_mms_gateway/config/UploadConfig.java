@@ -0,0 +1,53 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import international.dmc.secom_mms_gateway.utils.ByteBufferPool;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Makes Jackson read the data of uploaded envelopes with the {@link UploadDataDeserializer}. The deserializer is
+ * created by Spring through the handler instantiator of the application's object mapper, so it can use the pooled
+ * upload buffers.
+ */
+@Configuration
+public class UploadConfig {
+
+    @Bean
+    public ByteBufferPool uploadBufferPool(
+            @Value("${international.dmc.secom_mms_gateway.upload.buffer-pool.buffer-size:1048576}") int bufferSize,
+            @Value("${international.dmc.secom_mms_gateway.upload.buffer-pool.max-buffers:16}") int maxBuffers) {
+        return new ByteBufferPool(bufferSize, maxBuffers, false);
+    }
+
+    @Bean
+    public Module uploadModule() {
+        SimpleModule module = new SimpleModule("UploadModule");
+        module.setMixInAnnotation(EnvelopeUploadObject.class, EnvelopeUploadObjectMixIn.class);
+        return module;
+    }
+
+    abstract static class EnvelopeUploadObjectMixIn {
+        @JsonDeserialize(using = UploadDataDeserializer.class)
+        private byte[] data;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import international.dmc.secom_mms_gateway.utils.ByteBufferPool;
+import international.dmc.secom_mms_gateway.utils.PooledOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Deserializes the data of an uploaded envelope. The Base64 string in the JSON document is decoded while it is read
+ * into a pooled buffer, instead of first being collected as text, so the only allocation that is left is the
+ * resulting array. The result is the data exactly as it was signed by the uploader. Data that is Base64 encoded once
+ * more, as many SECOM clients do, is only decoded after that by the upload endpoints.
+ */
+public class UploadDataDeserializer extends StdDeserializer<byte[]> {
+
+    private final ByteBufferPool bufferPool;
+
+    @Autowired
+    public UploadDataDeserializer(@Qualifier("uploadBufferPool") ByteBufferPool bufferPool) {
+        super(byte[].class);
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public byte[] deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            return parser.getBinaryValue();
+        }
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return (byte[]) context.handleUnexpectedToken(byte[].class, parser);
+        }
+        try (PooledOutputStream outputStream = new PooledOutputStream(bufferPool, bufferPool.getBufferSize())) {
+            parser.readBinaryValue(context.getBase64Variant(), outputStream);
+            return Arrays.copyOf(outputStream.array(), outputStream.size());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects request bodies that are larger than the configured limit before anything is parsed. Requests that announce
+ * a larger Content-Length are answered with 413 straight away, and the bodies of requests without a Content-Length
+ * fail as soon as more than the limit has been read.
+ */
+@Component
+@Slf4j
+public class UploadSizeLimitFilter extends OncePerRequestFilter {
+
+    @Value("${international.dmc.secom_mms_gateway.upload.max-size:104857600}")
+    private long maxSize;
+
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public UploadSizeLimitFilter(MeterRegistry meterRegistry) {
+        this.rejectedCounter = Counter.builder("gateway.upload.rejected")
+                .description("Number of requests rejected because their body was too large")
+                .tag("reason", "too-large")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxSize) {
+            rejectedCounter.increment();
+            log.warn("Rejected request to {} with a body of {} bytes", request.getRequestURI(), contentLength);
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        filterChain.doFilter(contentLength < 0 ? new LimitedRequest(request) : request, response);
+    }
+
+    private class LimitedRequest extends HttpServletRequestWrapper {
+
+        private ServletInputStream inputStream;
+
+        private LimitedRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new LimitedInputStream(super.getInputStream());
+            }
+            return inputStream;
+        }
+    }
+
+    private class LimitedInputStream extends ServletInputStream {
+
+        private final ServletInputStream delegate;
+        private long read;
+
+        private LimitedInputStream(ServletInputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int length = delegate.read(b, off, len);
+            if (length > 0) {
+                count(length);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+
+        private void count(int length) throws IOException {
+            boolean withinLimit = read <= maxSize;
+            read += length;
+            if (read > maxSize) {
+                if (withinLimit) {
+                    rejectedCounter.increment();
+                }
+                throw new IOException("The request body exceeds the limit of " + maxSize + " bytes");
+            }
+        }
+    }
+}
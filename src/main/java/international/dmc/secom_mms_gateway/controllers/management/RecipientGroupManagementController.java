@@ -0,0 +1,95 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.controllers.management;
+
+import international.dmc.secom_mms_gateway.model.RecipientGroup;
+import international.dmc.secom_mms_gateway.services.RecipientGroupService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping(value = "management")
+public class RecipientGroupManagementController {
+
+    private final RecipientGroupService recipientGroupService;
+
+    @Autowired
+    public RecipientGroupManagementController(RecipientGroupService recipientGroupService) {
+        this.recipientGroupService = recipientGroupService;
+    }
+
+    @PutMapping(
+            value = "/recipient-group",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<RecipientGroup> saveRecipientGroup(@RequestBody RecipientGroup recipientGroup) {
+        if (!StringUtils.hasText(recipientGroup.getName()) || recipientGroup.getRecipients() == null
+                || recipientGroup.getRecipients().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(recipientGroupService.saveRecipientGroup(recipientGroup));
+    }
+
+    @GetMapping(
+            value = "/recipient-group/{name}",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<RecipientGroup> getRecipientGroup(@PathVariable String name) {
+        RecipientGroup recipientGroup = recipientGroupService.getRecipientGroup(name);
+        if (recipientGroup == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(recipientGroup);
+    }
+
+    @GetMapping(
+            value = "/recipient-groups",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<RecipientGroup>> getAllRecipientGroups() {
+        return ResponseEntity.ok(recipientGroupService.getAllRecipientGroups());
+    }
+
+    @DeleteMapping(
+            value = "/recipient-group/{name}",
+            produces = MediaType.TEXT_PLAIN_VALUE
+    )
+    public ResponseEntity<Void> deleteRecipientGroup(@PathVariable String name) {
+        if (!recipientGroupService.existsRecipientGroup(name)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!recipientGroupService.removeRecipientGroup(name)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
@@ -58,7 +58,8 @@ public class SubscriptionManagementController {
         } catch (SubscriptionException e) {
             return switch (e.getSubscriptionFailure()) {
                 case SUBSCRIPTION_ALREADY_EXISTS -> ResponseEntity.status(HttpStatus.CONFLICT).build();
-                case SECOM_CLIENT_CREATION_FAILED -> ResponseEntity.badRequest().build();
+                case SECOM_CLIENT_CREATION_FAILED, UNKNOWN_RECIPIENT_GROUP, NO_DESTINATION ->
+                        ResponseEntity.badRequest().build();
             };
         }
         return ResponseEntity.ok(newSubscription);
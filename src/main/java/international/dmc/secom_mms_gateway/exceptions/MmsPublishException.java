@@ -0,0 +1,39 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class MmsPublishException extends Exception {
+    private final MmsPublishFailure mmsPublishFailure;
+
+    public MmsPublishException(MmsPublishFailure mmsPublishFailure) {
+        super(mmsPublishFailure.name());
+        this.mmsPublishFailure = mmsPublishFailure;
+    }
+
+    public MmsPublishException(MmsPublishFailure mmsPublishFailure, String message) {
+        super(message);
+        this.mmsPublishFailure = mmsPublishFailure;
+    }
+
+    public MmsPublishException(MmsPublishFailure mmsPublishFailure, Throwable cause) {
+        super(mmsPublishFailure.name(), cause);
+        this.mmsPublishFailure = mmsPublishFailure;
+    }
+}
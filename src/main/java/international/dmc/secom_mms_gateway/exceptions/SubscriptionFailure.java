@@ -19,4 +19,6 @@ package international.dmc.secom_mms_gateway.exceptions;
 public enum SubscriptionFailure {
     SUBSCRIPTION_ALREADY_EXISTS,
     SECOM_CLIENT_CREATION_FAILED,
+    UNKNOWN_RECIPIENT_GROUP,
+    NO_DESTINATION,
 }
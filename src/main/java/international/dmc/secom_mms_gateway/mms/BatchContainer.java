@@ -0,0 +1,111 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The container format used to carry several datasets in the body of one MMS message. The MMTP application message
+ * header has no field that could flag a container, and any plain payload may happen to start with the same bytes as
+ * one, so bodies are never inspected to guess whether they are containers. Instead, a gateway that batches or
+ * fragments publishes every message in a container, with a single dataset as a batch of one, and the receiving side
+ * is configured with the subjects that carry containers (see {@link InboundReceiver}). The magic number only tells a
+ * batch from a {@link FragmentContainer} fragment and catches a misconfigured subject:
+ * <pre>
+ * +--------------+---------+----------------+---------------------+-----------------+-----
+ * | magic "MMSB" | version | count (uint32) | length #1 (uint32)  | dataset #1      | ...
+ * | 4 bytes      | 1 byte  | 4 bytes        | 4 bytes             | length #1 bytes |
+ * +--------------+---------+----------------+---------------------+-----------------+-----
+ * </pre>
+ * All integers are big-endian. The datasets follow each other in the order they were received.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BatchContainer {
+
+    public static final int HEADER_SIZE = 4 + 1 + Integer.BYTES;
+    public static final int ENTRY_OVERHEAD = Integer.BYTES;
+
+    private static final int MAGIC = 0x4D4D5342; // "MMSB"
+    private static final byte VERSION = 1;
+
+    /**
+     * @return the size of a container holding the given number of datasets with the given total size
+     */
+    public static int containerSize(int count, int totalPayloadSize) {
+        return HEADER_SIZE + count * ENTRY_OVERHEAD + totalPayloadSize;
+    }
+
+    public static byte[] pack(List<byte[]> payloads) {
+        int totalPayloadSize = 0;
+        for (byte[] payload : payloads) {
+            totalPayloadSize += payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(containerSize(payloads.size(), totalPayloadSize));
+        buffer.putInt(MAGIC).put(VERSION).putInt(payloads.size());
+        for (byte[] payload : payloads) {
+            buffer.putInt(payload.length).put(payload);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Tells a batch from a fragment in the body of a message that is known to be a container.
+     *
+     * @return whether the body starts like a batch container
+     */
+    public static boolean isBatch(ByteBuffer body) {
+        return body.remaining() >= HEADER_SIZE && body.getInt(body.position()) == MAGIC;
+    }
+
+    /**
+     * Splits a batch container into its datasets. The returned buffers share the memory of the given body.
+     *
+     * @throws IllegalArgumentException if the body is not a valid batch container
+     */
+    public static List<ByteBuffer> unpack(ByteBuffer body) {
+        if (!isBatch(body)) {
+            throw new IllegalArgumentException("The body is not a batch container");
+        }
+        ByteBuffer buffer = body.duplicate();
+        buffer.getInt();
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported batch container version " + version);
+        }
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * ENTRY_OVERHEAD > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid number of datasets in batch container: " + count);
+        }
+        List<ByteBuffer> payloads = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                payloads.add(buffer.slice(buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Truncated batch container", e);
+        }
+        return payloads;
+    }
+}
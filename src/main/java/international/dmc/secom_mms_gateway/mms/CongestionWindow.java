@@ -0,0 +1,318 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of messages that may be sent to the edge router without having been responded to. The window
+ * grows by one message per window of good responses and is halved when the router responds with an error, when a
+ * response times out or when the round trip time rises well above the lowest one recently observed (AIMD). The window
+ * is decreased at most once per round trip time so that a single burst of bad responses does not collapse it.
+ * <p>
+ * The lowest round trip time is only kept for a limited time, after which the next sample replaces it. Otherwise a
+ * single fast response, or a route to the edge router that has since become slower, would make every later response
+ * look like congestion and pin the window at its minimum.
+ * <p>
+ * Slots can be taken either by blocking in {@link #acquire()} or, on a non-blocking transport, by waiting on the
+ * future returned by {@link #acquireAsync()}. Callers waiting on futures are given slots in the order they asked.
+ */
+class CongestionWindow {
+
+    private final int minWindow;
+    private final int maxWindow;
+    private final double rttThreshold;
+    private final long minRttWindowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+    private double window;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long minRttTimestamp;
+    private double smoothedRttNanos;
+    private long lastDecrease;
+
+    private final Counter errorThrottles;
+    private final Counter latencyThrottles;
+    private final Counter timeoutThrottles;
+
+    /**
+     * @param rttThreshold the factor over the minimum round trip time above which a response counts as a sign of
+     *                     congestion
+     * @param minRttWindow the time for which the minimum round trip time is kept before a new sample replaces it
+     */
+    CongestionWindow(String name, int initialWindow, int minWindow, int maxWindow, double rttThreshold,
+                     Duration minRttWindow, MeterRegistry meterRegistry) {
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.rttThreshold = rttThreshold;
+        this.minRttWindowNanos = minRttWindow.toNanos();
+        this.window = Math.clamp(initialWindow, minWindow, maxWindow);
+
+        Gauge.builder("gateway.mms.window.size", this, CongestionWindow::getWindow)
+                .description("Number of unacknowledged messages that may currently be sent to the edge router")
+                .tag("connection", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.mms.window.used", this, CongestionWindow::getInFlight)
+                .description("Number of sent messages that have not been responded to")
+                .tag("connection", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.mms.window.rtt", this, c -> c.getSmoothedRtt(TimeUnit.MILLISECONDS))
+                .description("Smoothed round trip time used for congestion control")
+                .tag("connection", name)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("gateway.mms.window.rtt.min", this, c -> c.getMinRtt(TimeUnit.MILLISECONDS))
+                .description("Lowest recent round trip time that latency is compared against")
+                .tag("connection", name)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.errorThrottles = throttleCounter(name, "error", meterRegistry);
+        this.latencyThrottles = throttleCounter(name, "latency", meterRegistry);
+        this.timeoutThrottles = throttleCounter(name, "timeout", meterRegistry);
+    }
+
+    /**
+     * Waits until the window allows another message to be sent and takes a slot.
+     */
+    void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) window) {
+                permitReleased.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot without blocking the caller. The returned future completes once the window allows another message
+     * to be sent. A caller that no longer needs the slot cancels the future, and if it was granted in the meantime it
+     * is given back.
+     */
+    CompletableFuture<Void> acquireAsync() {
+        lock.lock();
+        try {
+            while (!waiting.isEmpty() && waiting.peek().isDone()) {
+                waiting.poll();
+            }
+            if (waiting.isEmpty() && inFlight < (int) window) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> slot = new CompletableFuture<>();
+            waiting.add(slot);
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a slot of a message that could not be sent, without adjusting the window.
+     */
+    void release() {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signal();
+            granted = grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    void onGoodResponse(long rttNanos) {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            updateMinRtt(rttNanos);
+            smoothedRttNanos = smoothedRttNanos == 0 ? rttNanos : 0.875 * smoothedRttNanos + 0.125 * rttNanos;
+            if (rttNanos > minRttNanos * rttThreshold) {
+                if (decrease()) {
+                    latencyThrottles.increment();
+                }
+            } else {
+                window = Math.min(maxWindow, window + 1 / window);
+            }
+            permitReleased.signalAll();
+            granted = grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Frees the slot of a message that has been written once it is responded to, adjusting the window to how the
+     * response went. A message that fails for a reason that says nothing about congestion only gives back its slot.
+     *
+     * @param sentAt the {@link System#nanoTime()} at which the message was written
+     */
+    void onSent(CompletableFuture<ResponseMessage> response, long sentAt) {
+        response.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                onGoodResponse(System.nanoTime() - sentAt);
+            } else if (throwable instanceof MmsPublishException e
+                    && e.getMmsPublishFailure() == MmsPublishFailure.TIMEOUT) {
+                onTimeout();
+            } else if (throwable instanceof MmsPublishException e
+                    && e.getMmsPublishFailure() == MmsPublishFailure.ERROR_RESPONSE) {
+                onErrorResponse();
+            } else {
+                release();
+            }
+        });
+    }
+
+    void onErrorResponse() {
+        onCongestion(errorThrottles);
+    }
+
+    void onTimeout() {
+        onCongestion(timeoutThrottles);
+    }
+
+    double getWindow() {
+        lock.lock();
+        try {
+            return window;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double getSmoothedRtt(TimeUnit unit) {
+        lock.lock();
+        try {
+            return smoothedRttNanos / unit.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the lowest round trip time within the current window, or -1 if there has not been a response yet
+     */
+    double getMinRtt(TimeUnit unit) {
+        lock.lock();
+        try {
+            return minRttNanos == Long.MAX_VALUE ? -1 : (double) minRttNanos / unit.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateMinRtt(long rttNanos) {
+        long now = System.nanoTime();
+        if (rttNanos <= minRttNanos || now - minRttTimestamp > minRttWindowNanos) {
+            minRttNanos = rttNanos;
+            minRttTimestamp = now;
+        }
+    }
+
+    private void onCongestion(Counter throttleCounter) {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            if (decrease()) {
+                throttleCounter.increment();
+            }
+            permitReleased.signal();
+            granted = grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Takes slots for as many waiting callers as the window allows. Must be called while holding the lock, and the
+     * returned futures must be completed after releasing it so that no caller code runs under the lock.
+     */
+    private List<CompletableFuture<Void>> grantWaiting() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (!waiting.isEmpty() && inFlight < (int) window) {
+            CompletableFuture<Void> slot = waiting.poll();
+            if (!slot.isDone()) {
+                inFlight++;
+                granted.add(slot);
+            }
+        }
+        return granted;
+    }
+
+    private void complete(List<CompletableFuture<Void>> granted) {
+        for (CompletableFuture<Void> slot : granted) {
+            if (!slot.complete(null)) {
+                // Cancelled after it was granted
+                release();
+            }
+        }
+    }
+
+    private boolean decrease() {
+        long now = System.nanoTime();
+        if (lastDecrease != 0 && now - lastDecrease < smoothedRttNanos) {
+            return false;
+        }
+        lastDecrease = now;
+        window = Math.max(minWindow, window / 2);
+        return true;
+    }
+
+    private static Counter throttleCounter(String name, String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.mms.window.throttles")
+                .description("Number of times the send window was decreased")
+                .tag("connection", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
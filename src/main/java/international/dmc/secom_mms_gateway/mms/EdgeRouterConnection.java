@@ -0,0 +1,467 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.CodedOutputStream;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import international.dmc.secom_mms_gateway.utils.ByteBufferPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.Connect;
+import net.maritimeconnectivity.mmtp.Disconnect;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.MsgType;
+import net.maritimeconnectivity.mmtp.ProtocolMessage;
+import net.maritimeconnectivity.mmtp.ProtocolMessageType;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A single authenticated WebSocket session to the edge router together with its own outbound queue, writer thread
+ * and send window. Every connection is supervised on its own, so losing one only reduces the capacity of the pool.
+ * A lost connection is re-established in the background with jittered exponential backoff, resuming the previous
+ * MMTP session with its reconnect token.
+ */
+@Slf4j
+class EdgeRouterConnection implements MmsConnection {
+
+    /**
+     * The largest message that is read from the edge router. Responses to RECEIVE messages carry several application
+     * messages at once, so they are much larger than anything the gateway sends.
+     */
+    static final int MAX_INBOUND_MESSAGE_SIZE = 16 << 20;
+
+    private final String name;
+    private final URI edgeRouterUri;
+    private final String ownMrn;
+    private final SslContextCache sslContextCache;
+    private final ByteBufferPool bufferPool;
+    private final InFlightTable inFlightTable;
+    private final InboundFrameDecoder frameDecoder;
+    private final CongestionWindow congestionWindow;
+    private final ReconnectPolicy reconnectPolicy;
+    private final ScheduledExecutorService reconnectScheduler;
+    private final AtomicBoolean shuttingDown;
+    private final OutboundQueue outboundQueue;
+    private final Runnable connectedListener;
+    private final Runnable lostListener;
+    private final Consumer<ProtocolMessage> protocolMessageListener;
+    private final StandardWebSocketClient webSocketClient;
+    private final AtomicReference<State> state = new AtomicReference<>(State.DISCONNECTED);
+    private final Set<String> written = ConcurrentHashMap.newKeySet();
+
+    private final Timer recoveryTimer;
+    private final Counter successfulAttempts;
+    private final Counter failedAttempts;
+
+    private volatile WebSocketSession webSocketSession;
+    private volatile String reconnectToken;
+    private volatile long lostAt;
+    private volatile int attempts;
+
+    private enum State {
+        DISCONNECTED, CONNECTING, CONNECTED, WAITING, DISCONNECTING, CLOSED
+    }
+
+    /**
+     * @param congestionWindow  the send window of this connection, or null if sends should not be limited
+     * @param connectedListener called every time the edge router has accepted the CONNECT message of this connection
+     * @param lostListener      called every time this connection is lost after it had connected
+     * @param protocolMessageListener called with the protocol messages the edge router sends on this connection
+     */
+    EdgeRouterConnection(String name, URI edgeRouterUri, String ownMrn, SslContextCache sslContextCache,
+                         ByteBufferPool bufferPool, InFlightTable inFlightTable, InboundFrameDecoder frameDecoder,
+                         CongestionWindow congestionWindow, int queueCapacity, OverflowPolicy overflowPolicy,
+                         ReconnectPolicy reconnectPolicy, ScheduledExecutorService reconnectScheduler,
+                         AtomicBoolean shuttingDown, Runnable connectedListener, Runnable lostListener,
+                         Consumer<ProtocolMessage> protocolMessageListener, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.edgeRouterUri = edgeRouterUri;
+        this.ownMrn = ownMrn;
+        this.sslContextCache = sslContextCache;
+        this.bufferPool = bufferPool;
+        this.inFlightTable = inFlightTable;
+        this.frameDecoder = frameDecoder;
+        this.congestionWindow = congestionWindow;
+        this.reconnectPolicy = reconnectPolicy;
+        this.reconnectScheduler = reconnectScheduler;
+        this.shuttingDown = shuttingDown;
+        this.connectedListener = connectedListener;
+        this.lostListener = lostListener;
+        this.protocolMessageListener = protocolMessageListener;
+        WebSocketContainer webSocketContainer = ContainerProvider.getWebSocketContainer();
+        webSocketContainer.setDefaultMaxBinaryMessageBufferSize(MAX_INBOUND_MESSAGE_SIZE);
+        this.webSocketClient = new StandardWebSocketClient(webSocketContainer);
+        this.outboundQueue = new OutboundQueue(name, queueCapacity, overflowPolicy, this::write, meterRegistry);
+
+        this.recoveryTimer = Timer.builder("gateway.mms.reconnect.time")
+                .description("Time from losing the connection to the edge router until it accepted the CONNECT "
+                        + "message again")
+                .tag("connection", name)
+                .register(meterRegistry);
+        this.successfulAttempts = attemptCounter(name, "success", meterRegistry);
+        this.failedAttempts = attemptCounter(name, "failure", meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return whether the edge router has accepted the CONNECT message of the current session, so messages can be
+     * sent on it
+     */
+    @Override
+    public boolean isOpen() {
+        WebSocketSession session = webSocketSession;
+        return state.get() == State.CONNECTED && session != null && session.isOpen();
+    }
+
+    /**
+     * Starts connecting to the edge router without waiting for the connection to be established. If the attempt fails
+     * the connection keeps retrying in the background until the application shuts down.
+     */
+    @Override
+    public void connect() {
+        attemptConnect();
+    }
+
+    /**
+     * Hands a message to the writer of this connection.
+     *
+     * @return a future that is completed with the response of the edge router to the message, or failed if the
+     * message could not be sent, was rejected or was not responded to in time
+     */
+    @Override
+    public CompletableFuture<ResponseMessage> send(MmtpMessage mmtpMessage) {
+        String uuid = mmtpMessage.getUuid();
+        CompletableFuture<ResponseMessage> response = inFlightTable.register(uuid);
+        outboundQueue.enqueue(mmtpMessage).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                inFlightTable.fail(uuid, throwable);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Sends a DISCONNECT message if the connection is open and stops the writer.
+     */
+    @Override
+    public void disconnect() throws InterruptedException {
+        if (state.compareAndSet(State.CONNECTED, State.DISCONNECTING)) {
+            MmtpMessage disconnect = MmtpMessage.newBuilder()
+                    .setMsgType(MsgType.PROTOCOL_MESSAGE)
+                    .setUuid(UUID.randomUUID().toString())
+                    .setProtocolMessage(ProtocolMessage.newBuilder()
+                            .setProtocolMsgType(ProtocolMessageType.DISCONNECT_MESSAGE)
+                            .setDisconnectMessage(Disconnect.newBuilder())
+                    )
+                    .build();
+            try {
+                send(disconnect).get(2, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("The edge router did not respond to the DISCONNECT message on connection {}", name);
+            }
+        }
+        state.set(State.CLOSED);
+        outboundQueue.close();
+    }
+
+    private void attemptConnect() {
+        if (shuttingDown.get()) {
+            return;
+        }
+        state.set(State.CONNECTING);
+        try {
+            webSocketClient.setSslContext(sslContextCache.get());
+        } catch (GeneralSecurityException e) {
+            log.error("Could not create the SSL context for connection {}", name, e);
+            onAttemptFailed();
+            return;
+        }
+        webSocketClient.execute(new MMSWebsocketHandler(), null, edgeRouterUri).whenComplete((session, throwable) -> {
+            if (throwable != null) {
+                log.error("Connection {} could not connect to the edge router: {}", name, throwable.getMessage());
+                onAttemptFailed();
+            } else {
+                webSocketSession = session;
+            }
+        });
+    }
+
+    private void onAttemptFailed() {
+        failedAttempts.increment();
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedules the next connection attempt unless one is already scheduled. The scheduler thread is only used to
+     * start the attempt, the handshake itself runs on the WebSocket client.
+     */
+    private void scheduleReconnect() {
+        State current;
+        do {
+            current = state.get();
+            if (shuttingDown.get() || current == State.WAITING || current == State.DISCONNECTING
+                    || current == State.CLOSED) {
+                return;
+            }
+        } while (!state.compareAndSet(current, State.WAITING));
+        if (current == State.CONNECTED) {
+            lostAt = System.nanoTime();
+            lostListener.run();
+        }
+        long delay = reconnectPolicy.delayMs(attempts++);
+        log.info("Connection {} reconnects to the edge router in {} ms", name, delay);
+        try {
+            reconnectScheduler.schedule(this::attemptConnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler has been shut down, so the application is stopping
+            state.set(State.CLOSED);
+        }
+    }
+
+    private void onConnectAccepted(ResponseMessage response) {
+        if (!state.compareAndSet(State.CONNECTING, State.CONNECTED)) {
+            // The connection was closed or lost while the edge router was answering
+            return;
+        }
+        if (response.hasReconnectToken()) {
+            reconnectToken = response.getReconnectToken();
+        }
+        if (lostAt != 0) {
+            long recoveryNanos = System.nanoTime() - lostAt;
+            recoveryTimer.record(recoveryNanos, TimeUnit.NANOSECONDS);
+            log.info("Connection {} reconnected to edge router {} after {} ms", name, edgeRouterUri,
+                    TimeUnit.NANOSECONDS.toMillis(recoveryNanos));
+            lostAt = 0;
+        } else {
+            log.info("Connection {} connected to edge router {}", name, edgeRouterUri);
+        }
+        attempts = 0;
+        successfulAttempts.increment();
+        connectedListener.run();
+    }
+
+    private void write(MmtpMessage mmtpMessage) throws IOException, MmsPublishException {
+        // Nothing but the CONNECT message may be written before the edge router has accepted it
+        State current = state.get();
+        WebSocketSession session = webSocketSession;
+        if ((current != State.CONNECTED && current != State.DISCONNECTING) || session == null || !session.isOpen()) {
+            throw new MmsPublishException(MmsPublishFailure.NOT_CONNECTED);
+        }
+        if (congestionWindow == null) {
+            if (claim(mmtpMessage)) {
+                writeFrame(session, mmtpMessage);
+                track(session, inFlightTable.markSent(mmtpMessage.getUuid()), mmtpMessage.getUuid());
+            }
+            return;
+        }
+
+        try {
+            congestionWindow.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MmsPublishException(MmsPublishFailure.SHUTTING_DOWN);
+        }
+        // The message may have been failed while waiting for the window
+        if (!claim(mmtpMessage)) {
+            congestionWindow.release();
+            return;
+        }
+        try {
+            writeFrame(session, mmtpMessage);
+        } catch (IOException e) {
+            congestionWindow.release();
+            throw e;
+        }
+        long sentAt = System.nanoTime();
+        CompletableFuture<ResponseMessage> response = inFlightTable.markSent(mmtpMessage.getUuid());
+        if (response == null) {
+            congestionWindow.release();
+            return;
+        }
+        congestionWindow.onSent(response, sentAt);
+        track(session, response, mmtpMessage.getUuid());
+    }
+
+    /**
+     * @return whether the message is still in flight and may be written, messages that have already been failed, for
+     * example because the connection was lost while they were queued, are dropped
+     */
+    private boolean claim(MmtpMessage mmtpMessage) {
+        if (inFlightTable.claim(mmtpMessage.getUuid())) {
+            return true;
+        }
+        log.debug("Dropping message {} that is no longer in flight", mmtpMessage.getUuid());
+        return false;
+    }
+
+    /**
+     * Remembers a message that has been written on the given session until it is responded to, so that it can be
+     * failed as soon as the session is lost instead of only when it times out.
+     */
+    private void track(WebSocketSession session, CompletableFuture<ResponseMessage> response, String uuid) {
+        if (response == null) {
+            return;
+        }
+        written.add(uuid);
+        response.whenComplete((result, throwable) -> written.remove(uuid));
+        if (!session.isOpen()) {
+            // The session was lost while the message was written, possibly after the others have been failed
+            inFlightTable.fail(uuid, new MmsPublishException(MmsPublishFailure.NOT_CONNECTED));
+        }
+    }
+
+    /**
+     * Fails the messages that were written on a lost session, which gives their send window slots back straight
+     * away. The edge router may still have received some of them, so whoever resends them must expect duplicates.
+     */
+    private void failWritten() {
+        if (written.isEmpty()) {
+            return;
+        }
+        log.warn("Failing {} message(s) that connection {} was waiting for a response to", written.size(), name);
+        MmsPublishException exception = new MmsPublishException(MmsPublishFailure.NOT_CONNECTED,
+                "The connection to the edge router was lost before the message was responded to");
+        for (String uuid : written) {
+            inFlightTable.fail(uuid, exception);
+        }
+    }
+
+    /**
+     * Serializes a message directly into a pooled buffer and writes it as a single binary frame. The buffer is handed
+     * back to the pool once the frame has been written.
+     */
+    private void writeFrame(WebSocketSession session, MmtpMessage mmtpMessage) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(mmtpMessage.getSerializedSize());
+        try {
+            CodedOutputStream outputStream = CodedOutputStream.newInstance(buffer);
+            mmtpMessage.writeTo(outputStream);
+            outputStream.flush();
+            session.sendMessage(new BinaryMessage(buffer.flip()));
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private class MMSWebsocketHandler extends BinaryWebSocketHandler {
+
+        @Override
+        public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+            // Resuming with the token of the previous session lets the router hand over what it queued for us
+            String token = reconnectToken;
+            Connect.Builder connect = Connect.newBuilder().setOwnMrn(ownMrn);
+            if (token != null) {
+                connect.setReconnectToken(token);
+            }
+            MmtpMessage mmtpMessage = MmtpMessage.newBuilder()
+                    .setUuid(UUID.randomUUID().toString())
+                    .setMsgType(MsgType.PROTOCOL_MESSAGE)
+                    .setProtocolMessage(ProtocolMessage.newBuilder()
+                            .setProtocolMsgType(ProtocolMessageType.CONNECT_MESSAGE)
+                            .setConnectMessage(connect)
+                    )
+                    .build();
+            inFlightTable.register(mmtpMessage.getUuid()).whenComplete((response, throwable) -> {
+                if (throwable == null) {
+                    onConnectAccepted(response);
+                    return;
+                }
+                log.error("The edge router did not accept the CONNECT message on connection {}: {}", name,
+                        throwable.getMessage());
+                if (token != null) {
+                    // The token may have expired, so the next attempt starts a fresh session
+                    reconnectToken = null;
+                }
+                try {
+                    session.close(CloseStatus.PROTOCOL_ERROR);
+                } catch (IOException e) {
+                    log.error("Failed to close websocket", e);
+                }
+            });
+            try {
+                inFlightTable.claim(mmtpMessage.getUuid());
+                writeFrame(session, mmtpMessage);
+                inFlightTable.markSent(mmtpMessage.getUuid());
+            } catch (IOException e) {
+                log.error("Failed to send CONNECT message to Edge Router", e);
+                inFlightTable.fail(mmtpMessage.getUuid(), e);
+                session.close(CloseStatus.PROTOCOL_ERROR);
+            }
+        }
+
+        @Override
+        protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+            // The container reuses the buffer of the message once this method returns
+            frameDecoder.onFrame(message.getPayload(), true, protocolMessageListener);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+            failWritten();
+            State current = state.get();
+            if (shuttingDown.get() || current == State.DISCONNECTING || current == State.CLOSED) {
+                return;
+            }
+            if (StringUtils.hasText(status.getReason())) {
+                log.error("The websocket of connection {} was closed with code {} and reason {}", name,
+                        status.getCode(), status.getReason());
+            } else {
+                log.error("The websocket of connection {} was closed with code {}", name, status.getCode());
+            }
+            scheduleReconnect();
+        }
+    }
+
+    private static Counter attemptCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.mms.reconnect.attempts")
+                .description("Number of attempts to connect to the edge router")
+                .tag("connection", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The container format used to split a payload that is too large for one MMS message over several messages. Like a
+ * {@link BatchContainer}, fragments are only looked for on subjects that are known to carry containers, where the
+ * magic number tells them apart from batches:
+ * <pre>
+ * +--------------+---------+-----------------+----------+-------------+---------------+--------------+----------+
+ * | magic "MMSF" | version | transfer id     | sequence | total count | fragment size | payload size | data     |
+ * | 4 bytes      | 1 byte  | 16 bytes (UUID) | 4 bytes  | 4 bytes     | 4 bytes       | 8 bytes      | the rest |
+ * +--------------+---------+-----------------+----------+-------------+---------------+--------------+----------+
+ * </pre>
+ * All integers are big-endian. Sequence numbers start at 0, and all fragments of a payload carry the same transfer id.
+ * Every fragment but the last carries exactly the fragment size in data, so the offset of every fragment follows from
+ * its sequence number, and the total count, fragment size and payload size must agree with each other.
+ * {@link FragmentReassembler} puts the payload back together on the receiving side.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FragmentContainer {
+
+    public static final int HEADER_SIZE = 4 + 1 + 16 + Integer.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final int MAGIC = 0x4D4D5346; // "MMSF"
+    private static final byte VERSION = 2;
+
+    /**
+     * A fragment read from a message body.
+     *
+     * @param fragmentSize the number of payload bytes carried by every fragment of the transfer but the last
+     * @param data         the part of the payload carried by the fragment, sharing the memory of the body
+     */
+    public record Fragment(UUID transferId, int sequence, int total, int fragmentSize, long totalSize,
+                           ByteBuffer data) {
+
+        /**
+         * @return the position of the data of the fragment in the payload
+         */
+        public long offset() {
+            return (long) sequence * fragmentSize;
+        }
+    }
+
+    /**
+     * Splits a payload into fragment bodies that are at most the given size each.
+     */
+    public static List<byte[]> split(byte[] payload, int maxFragmentSize) {
+        int dataPerFragment = maxFragmentSize - HEADER_SIZE;
+        if (dataPerFragment <= 0) {
+            throw new IllegalArgumentException("The fragment size must be larger than " + HEADER_SIZE + " bytes");
+        }
+        UUID transferId = UUID.randomUUID();
+        int total = Math.max(1, (payload.length + dataPerFragment - 1) / dataPerFragment);
+        List<byte[]> fragments = new ArrayList<>(total);
+        for (int sequence = 0; sequence < total; sequence++) {
+            int offset = sequence * dataPerFragment;
+            int length = Math.min(dataPerFragment, payload.length - offset);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+            buffer.putInt(MAGIC)
+                    .put(VERSION)
+                    .putLong(transferId.getMostSignificantBits())
+                    .putLong(transferId.getLeastSignificantBits())
+                    .putInt(sequence)
+                    .putInt(total)
+                    .putInt(dataPerFragment)
+                    .putLong(payload.length)
+                    .put(payload, offset, length);
+            fragments.add(buffer.array());
+        }
+        return fragments;
+    }
+
+    /**
+     * Tells a fragment from a batch in the body of a message that is known to be a container.
+     *
+     * @return whether the body starts like a fragment
+     */
+    public static boolean isFragment(ByteBuffer body) {
+        return body.remaining() >= HEADER_SIZE && body.getInt(body.position()) == MAGIC;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the body is not a valid fragment, or if its header does not add up
+     */
+    public static Fragment parse(ByteBuffer body) {
+        if (!isFragment(body)) {
+            throw new IllegalArgumentException("The body is not a fragment");
+        }
+        ByteBuffer buffer = body.duplicate();
+        buffer.getInt();
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported fragment version " + version);
+        }
+        UUID transferId = new UUID(buffer.getLong(), buffer.getLong());
+        int sequence = buffer.getInt();
+        int total = buffer.getInt();
+        int fragmentSize = buffer.getInt();
+        long totalSize = buffer.getLong();
+        if (total <= 0 || sequence < 0 || sequence >= total || fragmentSize <= 0 || totalSize < 0
+                || total != Math.max(1, (totalSize + fragmentSize - 1) / fragmentSize)) {
+            throw new IllegalArgumentException("Invalid fragment header");
+        }
+        long offset = (long) sequence * fragmentSize;
+        long length = sequence < total - 1 ? fragmentSize : totalSize - offset;
+        if (buffer.remaining() != length) {
+            throw new IllegalArgumentException("Fragment " + sequence + " carries " + buffer.remaining()
+                    + " bytes instead of " + length);
+        }
+        return new Fragment(transferId, sequence, total, fragmentSize, totalSize, buffer.slice());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Puts payloads that were split with {@link FragmentContainer} back together. Fragments may arrive in any order and
+ * more than once. Transfers that are not complete within the timeout are discarded.
+ * <p>
+ * The headers of the fragments come from the sender and are not trusted. Nothing is allocated for a transfer up front,
+ * only the data of the fragments that actually arrived is kept, and the payload is only put together once all of it
+ * is there. The bytes kept across all incomplete transfers are limited, as are the number of transfers and the size
+ * of each payload. So what a sender can make the receiver hold is bounded by the buffer limit, plus the payloads that
+ * are being put together at that moment.
+ * <p>
+ * Instances are thread safe, so fragments of one transfer may be handed in from several threads.
+ */
+@Slf4j
+public class FragmentReassembler {
+
+    /**
+     * Roughly what keeping a fragment costs on top of its data, so that many tiny fragments cannot slip past the
+     * buffer limit.
+     */
+    static final int FRAGMENT_OVERHEAD = 64;
+
+    private static final class Transfer {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long createdAt = System.nanoTime();
+        private final int total;
+        private final int fragmentSize;
+        private final long totalSize;
+        private final Map<Integer, byte[]> fragments = new HashMap<>();
+        private long bufferedBytes;
+        private boolean closed;
+
+        private Transfer(FragmentContainer.Fragment fragment) {
+            this.total = fragment.total();
+            this.fragmentSize = fragment.fragmentSize();
+            this.totalSize = fragment.totalSize();
+        }
+
+        private boolean matches(FragmentContainer.Fragment fragment) {
+            return fragment.total() == total && fragment.fragmentSize() == fragmentSize
+                    && fragment.totalSize() == totalSize;
+        }
+    }
+
+    private final long timeoutNanos;
+    private final long maxPayloadSize;
+    private final int maxTransfers;
+    private final long maxBufferedBytes;
+    private final Map<UUID, Transfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    /**
+     * @param timeoutMs        how long to wait for the missing fragments of a transfer
+     * @param maxPayloadSize   the largest payload that is reassembled
+     * @param maxTransfers     the largest number of incomplete transfers held at the same time
+     * @param maxBufferedBytes the largest number of bytes kept across all incomplete transfers
+     */
+    public FragmentReassembler(long timeoutMs, long maxPayloadSize, int maxTransfers, long maxBufferedBytes) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.maxPayloadSize = Math.min(maxPayloadSize, Integer.MAX_VALUE - 8);
+        this.maxTransfers = maxTransfers;
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * Adds a fragment to its transfer.
+     *
+     * @param body the body of a message that {@link FragmentContainer#isFragment(ByteBuffer)} accepted
+     * @return the complete payload if this was the last missing fragment, otherwise null
+     * @throws IllegalArgumentException if the fragment is invalid, does not fit its transfer or exceeds the limits
+     */
+    public byte[] accept(ByteBuffer body) {
+        FragmentContainer.Fragment fragment = FragmentContainer.parse(body);
+        if (fragment.totalSize() > maxPayloadSize) {
+            throw new IllegalArgumentException("Transfer " + fragment.transferId() + " of " + fragment.totalSize()
+                    + " bytes exceeds the limit of " + maxPayloadSize + " bytes");
+        }
+        evictExpired();
+        Transfer transfer = transfers.computeIfAbsent(fragment.transferId(), id -> {
+            if (transfers.size() >= maxTransfers) {
+                throw new IllegalArgumentException("Too many incomplete transfers");
+            }
+            return new Transfer(fragment);
+        });
+
+        byte[] payload;
+        transfer.lock.lock();
+        try {
+            if (transfer.closed) {
+                throw new IllegalArgumentException("Transfer " + fragment.transferId() + " has expired");
+            }
+            if (!transfer.matches(fragment)) {
+                throw new IllegalArgumentException("Fragment " + fragment.sequence() + " does not fit transfer "
+                        + fragment.transferId());
+            }
+            if (transfer.fragments.containsKey(fragment.sequence())) {
+                return null;
+            }
+            byte[] data = new byte[fragment.data().remaining()];
+            long cost = data.length + FRAGMENT_OVERHEAD;
+            if (bufferedBytes.addAndGet(cost) > maxBufferedBytes) {
+                bufferedBytes.addAndGet(-cost);
+                throw new IllegalArgumentException("Buffering fragment " + fragment.sequence() + " of transfer "
+                        + fragment.transferId() + " would exceed the limit of " + maxBufferedBytes + " bytes");
+            }
+            fragment.data().get(fragment.data().position(), data);
+            transfer.fragments.put(fragment.sequence(), data);
+            transfer.bufferedBytes += cost;
+            if (transfer.fragments.size() < transfer.total) {
+                return null;
+            }
+            payload = new byte[(int) transfer.totalSize];
+            transfer.fragments.forEach((sequence, fragmentData) -> System.arraycopy(fragmentData, 0, payload,
+                    sequence * transfer.fragmentSize, fragmentData.length));
+            close(transfer);
+        } finally {
+            transfer.lock.unlock();
+        }
+        transfers.remove(fragment.transferId(), transfer);
+        return payload;
+    }
+
+    /**
+     * @return the number of transfers that are waiting for fragments
+     */
+    public int getPendingTransfers() {
+        return transfers.size();
+    }
+
+    /**
+     * @return the number of bytes kept for the transfers that are waiting for fragments
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        transfers.entrySet().removeIf(entry -> {
+            Transfer transfer = entry.getValue();
+            if (now - transfer.createdAt < timeoutNanos) {
+                return false;
+            }
+            transfer.lock.lock();
+            try {
+                if (!transfer.closed) {
+                    log.warn("Discarding transfer {} with {} of {} fragments received", entry.getKey(),
+                            transfer.fragments.size(), transfer.total);
+                    close(transfer);
+                }
+            } finally {
+                transfer.lock.unlock();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Releases the fragments of a transfer. Must be called with the lock of the transfer held.
+     */
+    private void close(Transfer transfer) {
+        transfer.closed = true;
+        transfer.fragments.clear();
+        bufferedBytes.addAndGet(-transfer.bufferedBytes);
+        transfer.bufferedBytes = 0;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import international.dmc.secom_mms_gateway.utils.TimerWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.maritimeconnectivity.mmtp.ResponseEnum;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of the MMTP messages that have been sent to the edge router but not yet been responded to. Every
+ * message gets a future that is completed by the response that refers to its UUID, or failed when no response has
+ * arrived within the timeout. The timeout starts once the message has been written, not while it waits in a queue, and
+ * a writer has to {@link #claim} a message before writing it, so a message that has already been failed is never
+ * written behind the back of its caller.
+ */
+class InFlightTable {
+
+    private static final class InFlight {
+        private final CompletableFuture<ResponseMessage> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile long sentAt;
+        private volatile TimerWheel.Timeout timeout;
+    }
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final TimerWheel timerWheel;
+    private final long timeoutMs;
+
+    private final Timer roundTripTimer;
+    private final Counter goodCounter;
+    private final Counter errorCounter;
+    private final Counter timeoutCounter;
+
+    InFlightTable(long timeoutMs, MeterRegistry meterRegistry) {
+        this.timeoutMs = timeoutMs;
+        this.timerWheel = new TimerWheel("mms-response-timeouts", 100, TimeUnit.MILLISECONDS, 512);
+
+        Gauge.builder("gateway.mms.inflight", inFlight, Map::size)
+                .description("Number of messages waiting for a response from the edge router")
+                .register(meterRegistry);
+        this.roundTripTimer = Timer.builder("gateway.mms.response.rtt")
+                .description("Time between writing a message and receiving its response")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.goodCounter = responseCounter("good", meterRegistry);
+        this.errorCounter = responseCounter("error", meterRegistry);
+        this.timeoutCounter = responseCounter("timeout", meterRegistry);
+    }
+
+    /**
+     * Registers a message that is about to be queued for sending.
+     *
+     * @return a future that is completed with the response to the message
+     */
+    CompletableFuture<ResponseMessage> register(String uuid) {
+        InFlight entry = new InFlight();
+        inFlight.put(uuid, entry);
+        return entry.future;
+    }
+
+    /**
+     * Claims a message for writing it to the edge router. A message can only be claimed once, and not at all once it
+     * has been failed, for example because the connection was lost while it was queued.
+     *
+     * @return whether the message may be written, if not it has to be dropped
+     */
+    boolean claim(String uuid) {
+        InFlight entry = inFlight.get(uuid);
+        if (entry == null || !entry.claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        entry.sentAt = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Marks a message as written to the edge router, which is when its round trip and its timeout start.
+     *
+     * @return the future of the message, or null if it is no longer in flight
+     */
+    CompletableFuture<ResponseMessage> markSent(String uuid) {
+        InFlight entry = inFlight.get(uuid);
+        if (entry == null) {
+            return null;
+        }
+        entry.sentAt = System.nanoTime();
+        entry.timeout = timerWheel.schedule(() -> expire(uuid, entry), timeoutMs, TimeUnit.MILLISECONDS);
+        if (inFlight.get(uuid) != entry) {
+            // The response arrived, or the message was failed, before there was a timeout to cancel
+            entry.timeout.cancel();
+        }
+        return entry.future;
+    }
+
+    /**
+     * Completes the message that the given response refers to.
+     *
+     * @return the round trip time of the message in nanoseconds, or -1 if the message was not in flight
+     */
+    long complete(ResponseMessage responseMessage) {
+        InFlight entry = inFlight.remove(responseMessage.getResponseToUuid());
+        if (entry == null) {
+            return -1;
+        }
+        cancelTimeout(entry);
+        long roundTripTime = System.nanoTime() - entry.sentAt;
+        roundTripTimer.record(roundTripTime, TimeUnit.NANOSECONDS);
+        if (responseMessage.getResponse() == ResponseEnum.GOOD) {
+            goodCounter.increment();
+            entry.future.complete(responseMessage);
+        } else {
+            errorCounter.increment();
+            String reason = responseMessage.hasReasonText() ? responseMessage.getReasonText()
+                    : responseMessage.getResponse().name();
+            entry.future.completeExceptionally(new MmsPublishException(MmsPublishFailure.ERROR_RESPONSE, reason));
+        }
+        return roundTripTime;
+    }
+
+    /**
+     * @return whether the message is still waiting for its response
+     */
+    boolean isInFlight(String uuid) {
+        return inFlight.containsKey(uuid);
+    }
+
+    void fail(String uuid, Throwable throwable) {
+        InFlight entry = inFlight.remove(uuid);
+        if (entry != null) {
+            cancelTimeout(entry);
+            entry.future.completeExceptionally(throwable);
+        }
+    }
+
+    void failAll(Throwable throwable) {
+        for (String uuid : inFlight.keySet()) {
+            fail(uuid, throwable);
+        }
+    }
+
+    int size() {
+        return inFlight.size();
+    }
+
+    void close() {
+        failAll(new MmsPublishException(MmsPublishFailure.SHUTTING_DOWN));
+        timerWheel.close();
+    }
+
+    private static void cancelTimeout(InFlight entry) {
+        TimerWheel.Timeout timeout = entry.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void expire(String uuid, InFlight entry) {
+        if (inFlight.remove(uuid, entry)) {
+            timeoutCounter.increment();
+            entry.future.completeExceptionally(new MmsPublishException(MmsPublishFailure.TIMEOUT));
+        }
+    }
+
+    private static Counter responseCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.mms.responses")
+                .description("Number of responses received from the edge router")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.MsgType;
+import net.maritimeconnectivity.mmtp.ProtocolMessage;
+import net.maritimeconnectivity.mmtp.ResponseEnum;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the frames received from the edge router. Only the few fields needed to route a frame are read on the thread
+ * that received it: the kind of message, the UUID a response refers to and whether the response carries any messages.
+ * Plain responses, like those to SEND messages, are then decoded and completed right away, as they are small. Frames
+ * that may carry many messages, that is NOTIFY messages and responses to RECEIVE messages, are decoded on a worker
+ * instead, so a large batch does not hold up the responses that arrive behind it. Responses to messages that are not
+ * in flight any more are dropped without being decoded.
+ * <p>
+ * Decoding aliases the frame, so the bodies of the decoded application messages share its memory rather than being
+ * copied. Frames whose buffer is reused by the WebSocket container once it has been handled are copied once before
+ * they are handed to a worker.
+ */
+@Slf4j
+class InboundFrameDecoder {
+
+    private static final int MSG_TYPE_TAG = tag(MmtpMessage.MSGTYPE_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT);
+    private static final int PROTOCOL_MESSAGE_TAG =
+            tag(MmtpMessage.PROTOCOLMESSAGE_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int RESPONSE_MESSAGE_TAG =
+            tag(MmtpMessage.RESPONSEMESSAGE_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int RESPONSE_TO_UUID_TAG =
+            tag(ResponseMessage.RESPONSETOUUID_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int MESSAGE_METADATA_TAG =
+            tag(ResponseMessage.MESSAGEMETADATA_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private static final int APPLICATION_MESSAGES_TAG =
+            tag(ResponseMessage.APPLICATIONMESSAGES_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
+    /**
+     * The routing fields of a frame.
+     *
+     * @param msgType        the kind of message, or null if it is unknown to this version of MMTP
+     * @param responseToUuid the UUID the response refers to, or null if the frame does not carry a response
+     * @param batch          whether the frame may carry many messages
+     */
+    record Peek(MsgType msgType, String responseToUuid, boolean batch) {
+    }
+
+    private final InFlightTable inFlightTable;
+    private final Executor decodeExecutor;
+
+    private final Timer inlineTimer;
+    private final Timer offloadedTimer;
+    private final Counter unknownResponseCounter;
+    private final Counter invalidCounter;
+
+    /**
+     * @param decodeExecutor the workers that decode the frames that may carry many messages
+     */
+    InboundFrameDecoder(InFlightTable inFlightTable, Executor decodeExecutor, MeterRegistry meterRegistry) {
+        this.inFlightTable = inFlightTable;
+        this.decodeExecutor = decodeExecutor;
+        this.inlineTimer = handlingTimer("inline", meterRegistry);
+        this.offloadedTimer = handlingTimer("offloaded", meterRegistry);
+        this.unknownResponseCounter = Counter.builder("gateway.mms.inbound.frames.unknown")
+                .description("Number of responses to messages that were no longer in flight")
+                .register(meterRegistry);
+        this.invalidCounter = Counter.builder("gateway.mms.inbound.frames.invalid")
+                .description("Number of frames from the edge router that could not be parsed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Handles a frame received from the edge router.
+     *
+     * @param frame                   the frame, from its position to its limit
+     * @param reused                  whether the buffer of the frame is reused once this method has returned
+     * @param protocolMessageListener called with the protocol message if the frame carries one
+     */
+    void onFrame(ByteBuffer frame, boolean reused, Consumer<ProtocolMessage> protocolMessageListener) {
+        long receivedAt = System.nanoTime();
+        Peek peek;
+        try {
+            peek = peek(frame);
+        } catch (IOException e) {
+            invalidCounter.increment();
+            log.warn("Received a message that we could not parse");
+            return;
+        }
+        if (peek.msgType() == MsgType.RESPONSE_MESSAGE && peek.responseToUuid() != null
+                && !inFlightTable.isInFlight(peek.responseToUuid())) {
+            unknownResponseCounter.increment();
+            log.warn("Received a response to unknown message {}", peek.responseToUuid());
+            return;
+        }
+        if (!peek.batch()) {
+            // Plain responses carry no bytes fields, only unknown fields could still refer to a reused buffer
+            decode(frame, !reused, protocolMessageListener);
+            inlineTimer.record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        ByteBuffer batch = reused ? ByteBuffer.allocate(frame.remaining()).put(frame.duplicate()).flip() : frame;
+        try {
+            decodeExecutor.execute(() -> {
+                decode(batch, true, protocolMessageListener);
+                offloadedTimer.record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+            });
+        } catch (RejectedExecutionException e) {
+            // The workers have been shut down, so the application is stopping
+            log.debug("Dropping a message that arrived while shutting down");
+        }
+    }
+
+    /**
+     * Reads the routing fields of a frame, skipping over the messages it carries without decoding them.
+     */
+    static Peek peek(ByteBuffer frame) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(frame.duplicate());
+        MsgType msgType = MsgType.UNSPECIFIED_MESSAGE;
+        String responseToUuid = null;
+        boolean batch = false;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            if (tag == MSG_TYPE_TAG) {
+                msgType = MsgType.forNumber(input.readEnum());
+            } else if (tag == PROTOCOL_MESSAGE_TAG) {
+                // The edge router only sends NOTIFY messages, which may announce many messages at once
+                batch = true;
+                input.skipField(tag);
+            } else if (tag == RESPONSE_MESSAGE_TAG) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                responseToUuid = "";
+                for (int field = input.readTag(); field != 0; field = input.readTag()) {
+                    if (field == RESPONSE_TO_UUID_TAG) {
+                        responseToUuid = input.readStringRequireUtf8();
+                    } else {
+                        batch |= field == MESSAGE_METADATA_TAG || field == APPLICATION_MESSAGES_TAG;
+                        input.skipField(field);
+                    }
+                }
+                input.popLimit(limit);
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return new Peek(msgType, responseToUuid, batch);
+    }
+
+    private void decode(ByteBuffer frame, boolean aliasing, Consumer<ProtocolMessage> protocolMessageListener) {
+        MmtpMessage mmtpMessage;
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(frame.duplicate());
+            input.enableAliasing(aliasing);
+            mmtpMessage = MmtpMessage.parseFrom(input, ExtensionRegistryLite.getEmptyRegistry());
+        } catch (IOException e) {
+            invalidCounter.increment();
+            log.warn("Received a message that we could not parse");
+            return;
+        }
+        if (mmtpMessage.hasProtocolMessage()) {
+            protocolMessageListener.accept(mmtpMessage.getProtocolMessage());
+            return;
+        }
+        if (mmtpMessage.hasResponseMessage()) {
+            ResponseMessage responseMessage = mmtpMessage.getResponseMessage();
+            if (inFlightTable.complete(responseMessage) < 0) {
+                unknownResponseCounter.increment();
+                log.warn("Received a response to unknown message {}", responseMessage.getResponseToUuid());
+            } else if (responseMessage.getResponse() != ResponseEnum.GOOD && responseMessage.hasReasonText()) {
+                log.error("Received a response with an error: {}", responseMessage.getReasonText());
+            }
+        }
+    }
+
+    private static int tag(int fieldNumber, int wireType) {
+        return fieldNumber << 3 | wireType;
+    }
+
+    private static Timer handlingTimer(String decoding, MeterRegistry meterRegistry) {
+        return Timer.builder("gateway.mms.inbound.frame.time")
+                .description("Time from receiving a frame from the edge router until it has been handled")
+                .tag("decoding", decoding)
+                .register(meterRegistry);
+    }
+}
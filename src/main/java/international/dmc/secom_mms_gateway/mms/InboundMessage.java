@@ -0,0 +1,28 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.mms;
+
+/**
+ * A dataset received from the edge router on one of the subjects the gateway subscribes to. Datasets that were
+ * published in a {@link BatchContainer} are handed over one by one, and datasets that were split into
+ * {@link FragmentContainer} fragments only once they have been put back together.
+ *
+ * @param subject    the subject the dataset was published on, or null if it was sent directly to the gateway
+ * @param sender     the MRN of the agent that published the dataset
+ * @param receivedAt the {@link System#nanoTime()} at which the message carrying the dataset was received
+ */
+public record InboundMessage(String subject, String sender, byte[] payload, long receivedAt) {
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.mms;
+
+/**
+ * Receives the datasets that arrive on the subjects the {@link MMSAgent} subscribes to.
+ */
+@FunctionalInterface
+public interface InboundMessageHandler {
+
+    /**
+     * Called on a worker of the frame decoder of the {@link MMSAgent} (the {@code mms-frame-decoder-} threads), which
+     * decodes the frame that carried the message. The messages of one frame are passed on one after the other in the
+     * order they arrived, but frames are decoded by several workers and on several connections at once, so calls may
+     * run concurrently and implementations must be thread-safe. A slow handler holds up the decoding of the frames
+     * behind it, so implementations should hand the message off instead of processing it in place.
+     */
+    void onMessage(InboundMessage message);
+}
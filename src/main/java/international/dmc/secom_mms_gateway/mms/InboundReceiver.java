@@ -0,0 +1,271 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.mms;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.ApplicationMessage;
+import net.maritimeconnectivity.mmtp.ApplicationMessageHeader;
+import net.maritimeconnectivity.mmtp.Filter;
+import net.maritimeconnectivity.mmtp.MessageMetadata;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.MsgType;
+import net.maritimeconnectivity.mmtp.ProtocolMessage;
+import net.maritimeconnectivity.mmtp.ProtocolMessageType;
+import net.maritimeconnectivity.mmtp.Receive;
+import net.maritimeconnectivity.mmtp.ResponseEnum;
+import net.maritimeconnectivity.mmtp.Subscribe;
+import net.maritimeconnectivity.mmtp.Unsubscribe;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Receives the messages published on the subjects the gateway subscribes to. The subscriptions are kept on a single
+ * connection, so that every message arrives once. That is whichever connection is up first, and when it is lost the
+ * subscriptions move to another open connection, or to the next one that connects. Every time a connection takes over
+ * the subscriptions, it subscribes to the subjects and receives whatever the edge router kept for it in the meantime.
+ * A connection that lost the subscriptions while it was down unsubscribes from them when it is back. Every NOTIFY
+ * message on the connection carrying the subscriptions is answered with a RECEIVE message for the announced messages.
+ * Messages on the subjects that are configured to carry containers are unpacked from {@link BatchContainer}s and
+ * reassembled from {@link FragmentContainer}s before they are handed to the {@link InboundMessageHandler}, while the
+ * bodies of all other messages are handed on as they are. Messages the gateway published itself are skipped.
+ */
+@Slf4j
+class InboundReceiver {
+
+    private final List<String> subjects;
+    private final Set<String> containerSubjects;
+    private final boolean directMessageContainers;
+    private final String ownMrn;
+    private final FragmentReassembler reassembler;
+    private final InboundMessageHandler handler;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<MmsConnection> formerlySubscribed = new HashSet<>();
+    private volatile MmsConnection subscribedConnection;
+
+    private final Counter messageCounter;
+    private final Counter datasetCounter;
+    private final Counter invalidCounter;
+
+    /**
+     * @param containerSubjects       the subjects whose messages are all batch or fragment containers
+     * @param directMessageContainers whether direct messages to the gateway are batch or fragment containers
+     */
+    InboundReceiver(List<String> subjects, Set<String> containerSubjects, boolean directMessageContainers,
+                    String ownMrn, FragmentReassembler reassembler, InboundMessageHandler handler,
+                    MeterRegistry meterRegistry) {
+        this.subjects = List.copyOf(subjects);
+        this.containerSubjects = Set.copyOf(containerSubjects);
+        this.directMessageContainers = directMessageContainers;
+        this.ownMrn = ownMrn;
+        this.reassembler = reassembler;
+        this.handler = handler;
+        this.messageCounter = Counter.builder("gateway.mms.inbound.messages")
+                .description("Number of application messages received from the edge router")
+                .register(meterRegistry);
+        this.datasetCounter = Counter.builder("gateway.mms.inbound.datasets")
+                .description("Number of datasets handed on after unpacking and reassembling received messages")
+                .register(meterRegistry);
+        this.invalidCounter = Counter.builder("gateway.mms.inbound.invalid")
+                .description("Number of received containers that could not be read")
+                .register(meterRegistry);
+        Gauge.builder("gateway.mms.inbound.pending.transfers", reassembler, FragmentReassembler::getPendingTransfers)
+                .description("Number of fragmented datasets waiting for more fragments")
+                .register(meterRegistry);
+        Gauge.builder("gateway.mms.inbound.buffered", reassembler, FragmentReassembler::getBufferedBytes)
+                .description("Number of bytes kept for fragmented datasets waiting for more fragments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    void onConnected(MmsConnection connection) {
+        boolean takeOver;
+        boolean unsubscribe;
+        lock.lock();
+        try {
+            MmsConnection current = subscribedConnection;
+            takeOver = current == null || current == connection || !current.isOpen();
+            if (takeOver) {
+                subscribedConnection = connection;
+                unsubscribe = false;
+                if (current != null && current != connection) {
+                    formerlySubscribed.add(current);
+                }
+            } else {
+                unsubscribe = formerlySubscribed.contains(connection);
+            }
+            formerlySubscribed.remove(connection);
+        } finally {
+            lock.unlock();
+        }
+        if (takeOver) {
+            subscribe(connection);
+        } else if (unsubscribe) {
+            unsubscribe(connection);
+        }
+    }
+
+    /**
+     * Moves the subscriptions to another open connection if the lost connection carried them.
+     */
+    void onLost(MmsConnection connection, List<MmsConnection> connections) {
+        MmsConnection next = null;
+        lock.lock();
+        try {
+            if (subscribedConnection != connection) {
+                return;
+            }
+            for (MmsConnection candidate : connections) {
+                if (candidate != connection && candidate.isOpen()) {
+                    next = candidate;
+                    break;
+                }
+            }
+            // Without an open connection the next one to connect takes over
+            subscribedConnection = next;
+            formerlySubscribed.add(connection);
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            log.info("Moving the subscriptions from connection {} to connection {}", connection.getName(),
+                    next.getName());
+            subscribe(next);
+        }
+    }
+
+    private void subscribe(MmsConnection connection) {
+        for (String subject : subjects) {
+            MmtpMessage subscribe = protocolMessage(ProtocolMessage.newBuilder()
+                    .setProtocolMsgType(ProtocolMessageType.SUBSCRIBE_MESSAGE)
+                    .setSubscribeMessage(Subscribe.newBuilder().setSubject(subject)));
+            connection.send(subscribe).whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    log.error("Could not subscribe to {} on connection {}: {}", subject, connection.getName(),
+                            throwable.getMessage());
+                } else if (response.getResponse() == ResponseEnum.GOOD) {
+                    log.info("Subscribed to {} on connection {}", subject, connection.getName());
+                }
+            });
+        }
+        // Pick up whatever the edge router kept for us while we were not connected
+        receive(connection, Receive.newBuilder());
+    }
+
+    private void unsubscribe(MmsConnection connection) {
+        for (String subject : subjects) {
+            MmtpMessage unsubscribe = protocolMessage(ProtocolMessage.newBuilder()
+                    .setProtocolMsgType(ProtocolMessageType.UNSUBSCRIBE_MESSAGE)
+                    .setUnsubscribeMessage(Unsubscribe.newBuilder().setSubject(subject)));
+            connection.send(unsubscribe).whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    log.debug("Could not unsubscribe from {} on connection {}: {}", subject, connection.getName(),
+                            throwable.getMessage());
+                }
+            });
+        }
+    }
+
+    void onProtocolMessage(MmsConnection connection, ProtocolMessage protocolMessage) {
+        if (protocolMessage.getProtocolMsgType() != ProtocolMessageType.NOTIFY_MESSAGE) {
+            log.warn("Received a {} message that we cannot handle", protocolMessage.getProtocolMsgType());
+            return;
+        }
+        if (connection != subscribedConnection) {
+            // The messages are picked up on the connection that carries the subscriptions now
+            log.debug("Ignoring a NOTIFY message on connection {}", connection.getName());
+            return;
+        }
+        Filter.Builder filter = Filter.newBuilder();
+        for (MessageMetadata messageMetadata : protocolMessage.getNotifyMessage().getMessageMetadataList()) {
+            filter.addMessageUuids(messageMetadata.getUuid());
+        }
+        if (filter.getMessageUuidsCount() > 0) {
+            receive(connection, Receive.newBuilder().setFilter(filter));
+        }
+    }
+
+    private void receive(MmsConnection connection, Receive.Builder receive) {
+        MmtpMessage mmtpMessage = protocolMessage(ProtocolMessage.newBuilder()
+                .setProtocolMsgType(ProtocolMessageType.RECEIVE_MESSAGE)
+                .setReceiveMessage(receive));
+        connection.send(mmtpMessage).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                log.error("Could not receive messages on connection {}: {}", connection.getName(),
+                        throwable.getMessage());
+                return;
+            }
+            for (ApplicationMessage applicationMessage : response.getApplicationMessagesList()) {
+                onApplicationMessage(applicationMessage);
+            }
+        });
+    }
+
+    private void onApplicationMessage(ApplicationMessage applicationMessage) {
+        long receivedAt = System.nanoTime();
+        ApplicationMessageHeader header = applicationMessage.getHeader();
+        if (ownMrn.equals(header.getSender())) {
+            return;
+        }
+        messageCounter.increment();
+        String subject = header.getSubjectOrRecipientCase() == ApplicationMessageHeader.SubjectOrRecipientCase.SUBJECT
+                ? header.getSubject()
+                : null;
+        boolean container = subject != null ? containerSubjects.contains(subject) : directMessageContainers;
+        if (!container) {
+            deliver(subject, header.getSender(), applicationMessage.getBody().toByteArray(), receivedAt);
+            return;
+        }
+        ByteBuffer body = applicationMessage.getBody().asReadOnlyByteBuffer();
+        try {
+            if (FragmentContainer.isFragment(body)) {
+                byte[] payload = reassembler.accept(body);
+                if (payload != null) {
+                    deliver(subject, header.getSender(), payload, receivedAt);
+                }
+                return;
+            }
+            for (ByteBuffer dataset : BatchContainer.unpack(body)) {
+                byte[] payload = new byte[dataset.remaining()];
+                dataset.get(payload);
+                deliver(subject, header.getSender(), payload, receivedAt);
+            }
+        } catch (IllegalArgumentException e) {
+            invalidCounter.increment();
+            log.warn("Discarding a message from {} on {}: {}", header.getSender(), subject, e.getMessage());
+        }
+    }
+
+    private void deliver(String subject, String sender, byte[] payload, long receivedAt) {
+        datasetCounter.increment();
+        handler.onMessage(new InboundMessage(subject, sender, payload, receivedAt));
+    }
+
+    private static MmtpMessage protocolMessage(ProtocolMessage.Builder protocolMessage) {
+        return MmtpMessage.newBuilder()
+                .setMsgType(MsgType.PROTOCOL_MESSAGE)
+                .setUuid(UUID.randomUUID().toString())
+                .setProtocolMessage(protocolMessage)
+                .build();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Forwards the messages of a {@link MessageJournal} to the edge router in the order they were appended. A single
+ * forwarder thread reads the journal with a cursor and hands every message to the connection pool. Messages are
+ * acknowledged in the journal once the edge router has accepted them or has rejected them for good. Messages that
+ * could not be delivered because of the connection are sent again from the commit pointer after a reconnect, or
+ * after the retry interval if the connection stayed up.
+ */
+@Slf4j
+class JournalForwarder {
+
+    private final MessageJournal journal;
+    private final Function<MmtpMessage, CompletableFuture<ResponseMessage>> sender;
+    private final BooleanSupplier connected;
+    private final long retryIntervalNanos;
+    private final Set<Long> outstanding = ConcurrentHashMap.newKeySet();
+    private final Thread forwarderThread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private boolean signalled;
+    private volatile boolean rewind = true;
+    private volatile boolean deliveryFailed;
+    private volatile boolean running = true;
+
+    JournalForwarder(MessageJournal journal, Function<MmtpMessage, CompletableFuture<ResponseMessage>> sender,
+                     BooleanSupplier connected, long retryIntervalMs, ThreadFactory threadFactory) {
+        this.journal = journal;
+        this.sender = sender;
+        this.connected = connected;
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMs);
+        this.forwarderThread = threadFactory.newThread(this::run);
+        this.forwarderThread.start();
+    }
+
+    /**
+     * Stores a message in the journal and wakes up the forwarder.
+     */
+    void publish(MmtpMessage mmtpMessage) throws IOException {
+        journal.append(mmtpMessage);
+        signal();
+    }
+
+    /**
+     * Makes the forwarder go through all unacknowledged messages again, e.g. after a connection has been
+     * re-established.
+     */
+    void onConnected() {
+        rewind = true;
+        signal();
+    }
+
+    void close() {
+        running = false;
+        forwarderThread.interrupt();
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            signalled = true;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        MessageJournal.Cursor cursor = null;
+        while (running) {
+            try {
+                awaitWork();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (rewind || cursor == null) {
+                rewind = false;
+                cursor = journal.cursorAtCommit();
+            }
+            MessageJournal.Entry entry;
+            while (running && connected.getAsBoolean() && (entry = cursor.next()) != null) {
+                forward(entry);
+            }
+        }
+    }
+
+    private void awaitWork() throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = retryIntervalNanos;
+            while (!signalled) {
+                if (remaining <= 0) {
+                    if (deliveryFailed) {
+                        // Give the messages that failed while the connection stayed up another chance
+                        deliveryFailed = false;
+                        rewind = true;
+                        break;
+                    }
+                    remaining = retryIntervalNanos;
+                }
+                remaining = workAvailable.awaitNanos(remaining);
+            }
+            signalled = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forward(MessageJournal.Entry entry) {
+        long sequence = entry.sequence();
+        if (journal.isAcknowledged(sequence) || !outstanding.add(sequence)) {
+            return;
+        }
+        MmtpMessage mmtpMessage;
+        try {
+            mmtpMessage = entry.parse();
+        } catch (IOException e) {
+            log.error("Dropping journaled message {} as it could not be parsed", sequence, e);
+            outstanding.remove(sequence);
+            journal.acknowledge(sequence);
+            return;
+        }
+        sender.apply(mmtpMessage).whenComplete((response, throwable) -> {
+            outstanding.remove(sequence);
+            if (throwable == null) {
+                journal.acknowledge(sequence);
+            } else if (throwable instanceof MmsPublishException e
+                    && e.getMmsPublishFailure() == MmsPublishFailure.ERROR_RESPONSE) {
+                log.error("The edge router rejected journaled message {}: {}", mmtpMessage.getUuid(), e.getMessage());
+                journal.acknowledge(sequence);
+            } else {
+                deliveryFailed = true;
+            }
+        });
+    }
+}
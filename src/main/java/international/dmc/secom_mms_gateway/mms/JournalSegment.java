@@ -0,0 +1,169 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.CodedOutputStream;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed size, memory-mapped file holding consecutive journal records. Every record consists of a header with the
+ * length of the serialized message, its CRC-32 and its sequence number, followed by the serialized
+ * {@link MmtpMessage}. The length is written last, so a record that was only partially written before a crash reads
+ * as the end of the segment.
+ */
+class JournalSegment {
+
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final Path path;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private volatile int writePosition;
+    private volatile long lastSequence;
+
+    private JournalSegment(Path path, long firstSequence, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    static JournalSegment create(Path directory, long firstSequence, int size) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        return new JournalSegment(path, firstSequence, map(path, size));
+    }
+
+    /**
+     * Opens an existing segment and finds the end of its valid records.
+     */
+    static JournalSegment open(Path path, int size) throws IOException {
+        String fileName = path.getFileName().toString();
+        long firstSequence = Long.parseLong(fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length()));
+        JournalSegment segment = new JournalSegment(path, firstSequence, map(path, size));
+        segment.recover();
+        return segment;
+    }
+
+    static boolean isSegmentFile(Path path) {
+        String fileName = path.getFileName().toString();
+        return fileName.startsWith(PREFIX) && fileName.endsWith(SUFFIX);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    boolean hasRoomFor(int messageSize) {
+        return writePosition + HEADER_SIZE + messageSize <= buffer.capacity();
+    }
+
+    /**
+     * Appends a message to the segment. Must only be called by one thread at a time.
+     */
+    void append(long sequence, MmtpMessage mmtpMessage, int messageSize) throws IOException {
+        int position = writePosition;
+        ByteBuffer payload = buffer.slice(position + HEADER_SIZE, messageSize);
+        CodedOutputStream outputStream = CodedOutputStream.newInstance(payload);
+        mmtpMessage.writeTo(outputStream);
+        outputStream.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.flip());
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.putLong(position + 2 * Integer.BYTES, sequence);
+        buffer.putInt(position, messageSize);
+
+        lastSequence = sequence;
+        writePosition = position + HEADER_SIZE + messageSize;
+    }
+
+    /**
+     * @return the serialized message of the record at the given position
+     */
+    ByteBuffer readMessage(int position) {
+        int length = buffer.getInt(position);
+        return buffer.slice(position + HEADER_SIZE, length).asReadOnlyBuffer();
+    }
+
+    long readSequence(int position) {
+        return buffer.getLong(position + 2 * Integer.BYTES);
+    }
+
+    int nextPosition(int position) {
+        return position + HEADER_SIZE + buffer.getInt(position);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private void recover() {
+        int position = 0;
+        long expectedSequence = firstSequence;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()
+                    || buffer.getLong(position + 2 * Integer.BYTES) != expectedSequence) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_SIZE, length));
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            lastSequence = expectedSequence++;
+            position += HEADER_SIZE + length;
+        }
+        writePosition = position;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
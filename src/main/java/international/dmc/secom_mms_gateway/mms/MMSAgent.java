@@ -16,244 +16,510 @@
 
 package international.dmc.secom_mms_gateway.mms;
 
-import com.google.protobuf.ByteString;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import international.dmc.secom_mms_gateway.components.SigningEngine;
+import international.dmc.secom_mms_gateway.utils.ByteBufferPool;
 import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import international.dmc.secom_mms_gateway.utils.TlsProvider;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.maritimeconnectivity.mmtp.ApplicationMessage;
 import net.maritimeconnectivity.mmtp.ApplicationMessageHeader;
-import net.maritimeconnectivity.mmtp.Connect;
-import net.maritimeconnectivity.mmtp.Disconnect;
 import net.maritimeconnectivity.mmtp.MmtpMessage;
 import net.maritimeconnectivity.mmtp.MsgType;
 import net.maritimeconnectivity.mmtp.ProtocolMessage;
 import net.maritimeconnectivity.mmtp.ProtocolMessageType;
-import net.maritimeconnectivity.mmtp.ResponseEnum;
-import net.maritimeconnectivity.mmtp.ResponseMessage;
+import net.maritimeconnectivity.mmtp.Recipients;
 import net.maritimeconnectivity.mmtp.Send;
-import org.apache.commons.lang3.ArrayUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
-import org.springframework.web.socket.BinaryMessage;
-import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.client.standard.StandardWebSocketClient;
-import org.springframework.web.socket.handler.BinaryWebSocketHandler;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
-import java.security.UnrecoverableEntryException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Component
 @Slf4j
 public class MMSAgent {
 
+    /**
+     * The largest body that is published in a single MMS message.
+     */
+    public static final int PAYLOAD_SIZE_LIMIT = 48 * (1 << 10); // 48 KiB
+
+    /**
+     * Where a message is published to: either a subject, or the recipients of a direct message.
+     */
+    private record Destination(String subject, List<String> recipients) {
+
+        static Destination ofSubject(String subject) {
+            return new Destination(subject, null);
+        }
+
+        static Destination ofRecipients(List<String> recipients) {
+            return new Destination(null, recipients);
+        }
+
+        /**
+         * @return the fields that stand for the destination in the signed content of a message
+         */
+        List<String> signedFields() {
+            return subject != null ? List.of(subject) : recipients;
+        }
+
+        String shardKey() {
+            return subject != null ? subject : recipients.getFirst();
+        }
+    }
+
     @Value("${international.dmc.secom_mms_gateway.mms.mms-edgerouter.url}")
     private String edgeRouterURL;
     @Value("${international.dmc.secom_mms_gateway.mms.own-mrn}")
     private String ownMrn;
+    @Value("${international.dmc.secom_mms_gateway.mms.connections:1}")
+    private int connectionCount;
+    @Value("${international.dmc.secom_mms_gateway.mms.buffer-pool.buffer-size:65536}")
+    private int bufferSize;
+    @Value("${international.dmc.secom_mms_gateway.mms.buffer-pool.max-buffers:64}")
+    private int maxBuffers;
+    @Value("${international.dmc.secom_mms_gateway.mms.buffer-pool.direct:false}")
+    private boolean directBuffers;
+    @Value("${international.dmc.secom_mms_gateway.mms.outbound-queue.capacity:1024}")
+    private int outboundQueueCapacity;
+    @Value("${international.dmc.secom_mms_gateway.mms.outbound-queue.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+    @Value("${international.dmc.secom_mms_gateway.mms.response-timeout-ms:30000}")
+    private long responseTimeoutMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.window.enabled:false}")
+    private boolean windowEnabled;
+    @Value("${international.dmc.secom_mms_gateway.mms.window.initial:8}")
+    private int initialWindow;
+    @Value("${international.dmc.secom_mms_gateway.mms.window.min:1}")
+    private int minWindow;
+    @Value("${international.dmc.secom_mms_gateway.mms.window.max:256}")
+    private int maxWindow;
+    @Value("${international.dmc.secom_mms_gateway.mms.window.rtt-threshold:2.0}")
+    private double rttThreshold;
+    @Value("${international.dmc.secom_mms_gateway.mms.window.min-rtt-window-ms:10000}")
+    private long minRttWindowMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.journal.enabled:false}")
+    private boolean journalEnabled;
+    @Value("${international.dmc.secom_mms_gateway.mms.journal.directory:${user.home}/.secom-mms-gateway/journal}")
+    private Path journalDirectory;
+    @Value("${international.dmc.secom_mms_gateway.mms.journal.segment-size:67108864}")
+    private int journalSegmentSize;
+    @Value("${international.dmc.secom_mms_gateway.mms.journal.force-on-append:false}")
+    private boolean journalForceOnAppend;
+    @Value("${international.dmc.secom_mms_gateway.mms.journal.retry-interval-ms:60000}")
+    private long journalRetryIntervalMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.batching.enabled:false}")
+    private boolean batchingEnabled;
+    @Value("${international.dmc.secom_mms_gateway.mms.batching.max-delay-ms:50}")
+    private long batchingMaxDelayMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.batching.max-size:" + PAYLOAD_SIZE_LIMIT + "}")
+    private int batchingMaxSize;
+    @Value("${international.dmc.secom_mms_gateway.mms.fragmentation.enabled:false}")
+    private boolean fragmentationEnabled;
+    @Value("${international.dmc.secom_mms_gateway.mms.direct.max-recipients:100}")
+    private int directMaxRecipients;
+    @Value("${international.dmc.secom_mms_gateway.mms.direct.max-recipients-size:8192}")
+    private int directMaxRecipientsSize;
+    @Value("${international.dmc.secom_mms_gateway.mms.reconnect.initial-delay-ms:100}")
+    private long reconnectInitialDelayMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.reconnect.max-delay-ms:30000}")
+    private long reconnectMaxDelayMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.tls.session-timeout-seconds:86400}")
+    private int tlsSessionTimeoutSeconds;
+    @Value("${international.dmc.secom_mms_gateway.tls.provider:JDK}")
+    private TlsProvider tlsProvider;
+    @Value("${international.dmc.secom_mms_gateway.mms.transport:STANDARD}")
+    private MmsTransport transport;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.subjects:}")
+    private List<String> inboundSubjects;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.container-subjects:}")
+    private Set<String> inboundContainerSubjects;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.direct-message-containers:false}")
+    private boolean inboundDirectMessageContainers;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.reassembly.timeout-ms:300000}")
+    private long reassemblyTimeoutMs;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.reassembly.max-size:104857600}")
+    private long reassemblyMaxSize;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.reassembly.max-transfers:64}")
+    private int reassemblyMaxTransfers;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.reassembly.max-buffered-bytes:268435456}")
+    private long reassemblyMaxBufferedBytes;
+    @Value("${international.dmc.secom_mms_gateway.mms.inbound.decode-threads:2}")
+    private int decodeThreads;
+    @Value("${" + ThreadFactories.VIRTUAL_THREADS_PROPERTY + ":false}")
+    private boolean virtualThreads;
 
     private final KeystoreUtil keystoreUtil;
-    private final AtomicReference<MmtpMessage> lastSentMessage = new AtomicReference<>();
+    private final SigningEngine signingEngine;
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<InboundMessageHandler> inboundMessageHandler;
     private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
+    private final List<MmsConnection> connections = new ArrayList<>();
 
-    private WebSocketSession webSocketSession;
+    private InFlightTable inFlightTable;
+    private ScheduledExecutorService reconnectScheduler;
+    private ExecutorService decodeExecutor;
+    private MessageJournal journal;
+    private JournalForwarder journalForwarder;
+    private SubjectBatcher batcher;
+    private InboundReceiver inboundReceiver;
 
     @Autowired
-    public MMSAgent(KeystoreUtil keystoreUtil) {
+    public MMSAgent(KeystoreUtil keystoreUtil, SigningEngine signingEngine, MeterRegistry meterRegistry,
+                    ObjectProvider<InboundMessageHandler> inboundMessageHandler) {
         this.keystoreUtil = keystoreUtil;
+        this.signingEngine = signingEngine;
+        this.meterRegistry = meterRegistry;
+        this.inboundMessageHandler = inboundMessageHandler;
     }
 
     @PostConstruct
-    public void init() throws URISyntaxException, ExecutionException, InterruptedException, NoSuchAlgorithmException,
-            CertificateException, KeyStoreException, IOException, UnrecoverableKeyException, KeyManagementException {
-        setupWebSocket();
+    public void init() throws URISyntaxException, IOException {
+        ByteBufferPool bufferPool = new ByteBufferPool(bufferSize, maxBuffers, directBuffers);
+        inFlightTable = new InFlightTable(responseTimeoutMs, meterRegistry);
+        SslContextCache sslContextCache = new SslContextCache(keystoreUtil, tlsProvider,
+                tlsSessionTimeoutSeconds);
+        ReconnectPolicy reconnectPolicy = new ReconnectPolicy(reconnectInitialDelayMs, reconnectMaxDelayMs);
+        reconnectScheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactories.create("mms-reconnect", false));
+        decodeExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(ThreadFactories.create("mms-frame-decoder-", true))
+                : Executors.newFixedThreadPool(decodeThreads, ThreadFactories.create("mms-frame-decoder-", false));
+        InboundFrameDecoder frameDecoder = new InboundFrameDecoder(inFlightTable, decodeExecutor, meterRegistry);
+        if (journalEnabled) {
+            journal = new MessageJournal(journalDirectory, journalSegmentSize, journalForceOnAppend, meterRegistry);
+            journalForwarder = new JournalForwarder(journal,
+                    mmtpMessage -> selectConnection(getShardKey(mmtpMessage)).send(mmtpMessage),
+                    () -> connections.stream().anyMatch(MmsConnection::isOpen), journalRetryIntervalMs,
+                    ThreadFactories.create("mms-journal-forwarder", virtualThreads));
+        }
+        if (batchingEnabled) {
+            batcher = new SubjectBatcher(batchingMaxDelayMs, Math.min(batchingMaxSize, PAYLOAD_SIZE_LIMIT),
+                    this::signAndSend, meterRegistry);
+        }
+        if (!inboundSubjects.isEmpty()) {
+            InboundMessageHandler handler = inboundMessageHandler.getIfAvailable();
+            if (handler == null) {
+                log.warn("Not subscribing to {} as there is nothing to hand the received messages to",
+                        inboundSubjects);
+            } else {
+                inboundReceiver = new InboundReceiver(inboundSubjects, inboundContainerSubjects,
+                        inboundDirectMessageContainers, ownMrn, new FragmentReassembler(reassemblyTimeoutMs,
+                        reassemblyMaxSize, reassemblyMaxTransfers, reassemblyMaxBufferedBytes), handler,
+                        meterRegistry);
+            }
+        }
+        URI edgeRouterUri = new URI(edgeRouterURL);
+        for (int i = 0; i < Math.max(1, connectionCount); i++) {
+            String name = "edge-router-" + i;
+            int index = i;
+            Runnable connectedListener = () -> onConnected(index);
+            Runnable lostListener = () -> onLost(index);
+            Consumer<ProtocolMessage> protocolMessageListener = message -> onProtocolMessage(index, message);
+            CongestionWindow congestionWindow = null;
+            if (windowEnabled) {
+                congestionWindow = new CongestionWindow(name, initialWindow, minWindow, maxWindow, rttThreshold,
+                        Duration.ofMillis(minRttWindowMs), meterRegistry);
+            }
+            if (transport == MmsTransport.REACTOR_NETTY) {
+                connections.add(new ReactiveEdgeRouterConnection(name, edgeRouterUri, ownMrn, sslContextCache,
+                        inFlightTable, frameDecoder, congestionWindow, outboundQueueCapacity, reconnectPolicy,
+                        shuttingDown, connectedListener, lostListener, protocolMessageListener, meterRegistry));
+                continue;
+            }
+            connections.add(new EdgeRouterConnection(name, edgeRouterUri, ownMrn, sslContextCache, bufferPool,
+                    inFlightTable, frameDecoder, congestionWindow, outboundQueueCapacity, overflowPolicy,
+                    reconnectPolicy, reconnectScheduler, shuttingDown, connectedListener, lostListener,
+                    protocolMessageListener, meterRegistry));
+        }
+        for (MmsConnection connection : connections) {
+            connection.connect();
+        }
+        log.info("Connecting {} session(s) to edge router {} using the {} transport", connections.size(),
+                edgeRouterURL, transport);
     }
 
     @PreDestroy
-    public void preDestroy() throws IOException, InterruptedException {
+    public void preDestroy() throws InterruptedException {
+        if (batcher != null) {
+            batcher.close();
+        }
         shuttingDown.set(true);
-        if (webSocketSession.isOpen()) {
-            MmtpMessage disconnect = MmtpMessage.newBuilder()
-                    .setMsgType(MsgType.PROTOCOL_MESSAGE)
-                    .setUuid(UUID.randomUUID().toString())
-                    .setProtocolMessage(ProtocolMessage.newBuilder()
-                            .setProtocolMsgType(ProtocolMessageType.DISCONNECT_MESSAGE)
-                            .setDisconnectMessage(Disconnect.newBuilder())
-                    )
-                    .build();
-            sendMessage(disconnect);
-            lastSentMessage.set(disconnect);
-            Thread.sleep(2000);
+        reconnectScheduler.shutdownNow();
+        for (MmsConnection connection : connections) {
+            connection.disconnect();
+        }
+        decodeExecutor.shutdownNow();
+        if (journal != null) {
+            journalForwarder.close();
+            journal.close();
+        }
+        inFlightTable.close();
+    }
+
+    /**
+     * Signs and publishes a payload on the given subject. The payload is not copied, so it must not be modified after
+     * it has been handed to this method. With batching enabled the payload may be published together with other
+     * payloads on the same subject in a {@link BatchContainer}. With fragmentation enabled a payload that does not
+     * fit into one message is split over several messages in {@link FragmentContainer}s. With either of them
+     * enabled every message is published in a container, even if it only holds a single payload, so the subject must
+     * be listed in the container subjects of whoever receives it.
+     *
+     * @return a future that is completed once the message has been accepted for delivery. Without a journal this is
+     * when the edge router has responded to it, with a journal it is when the message has been stored in the journal
+     */
+    public CompletableFuture<Void> publishMessage(byte[] payload, String subject) throws SignatureException,
+            NoSuchAlgorithmException, InvalidKeyException {
+        if (fragmentationEnabled && !fitsInMessage(payload.length)) {
+            return publishFragmented(payload, Destination.ofSubject(subject));
+        }
+        if (batcher != null) {
+            return batcher.add(payload, subject);
+        }
+        return signAndSend(wrap(payload), subject);
+    }
+
+    /**
+     * Signs and sends a payload directly to a list of recipients. Rather than one message per recipient, a single
+     * message carries all of them in its header, so the payload is signed and sent once. Lists that are longer than
+     * the configured number or size of recipients per message are split over several messages. Direct messages are
+     * not batched, but are fragmented like {@link #publishMessage(byte[], String)} does. The messages for all chunks
+     * are signed before any of them is sent, so if signing fails no recipient gets the payload.
+     *
+     * @return a future that is completed once the messages to all recipients have been accepted for delivery
+     */
+    public CompletableFuture<Void> publishDirect(byte[] payload, List<String> recipients) throws SignatureException,
+            NoSuchAlgorithmException, InvalidKeyException {
+        List<List<String>> chunks = chunkRecipients(recipients, directMaxRecipients, directMaxRecipientsSize);
+        List<byte[]> bodies = fragmentationEnabled && !fitsInMessage(payload.length)
+                ? FragmentContainer.split(payload, PAYLOAD_SIZE_LIMIT)
+                : List.of(wrap(payload));
+        List<Destination> destinations = chunks.stream().map(Destination::ofRecipients).toList();
+        CompletableFuture<Void> sent = signAndSend(bodies, destinations);
+        log.debug("Sent payload of {} bytes to {} recipients in {} messages", payload.length, recipients.size(),
+                chunks.size() * bodies.size());
+        return sent;
+    }
+
+    /**
+     * @return whether a payload of the given size can be published
+     */
+    public boolean canPublish(int payloadSize) {
+        return fitsInMessage(payloadSize) || fragmentationEnabled;
+    }
+
+    /**
+     * Splits a list of recipients into chunks that each hold at most the given number of recipients, and whose
+     * recipients take up at most the given number of bytes. A recipient that is larger than that on its own gets a
+     * chunk of its own.
+     */
+    static List<List<String>> chunkRecipients(List<String> recipients, int maxRecipients, int maxSize) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int chunkSize = 0;
+        for (String recipient : recipients) {
+            int size = CodedOutputStream.computeStringSize(Recipients.RECIPIENTS_FIELD_NUMBER, recipient);
+            if (!chunk.isEmpty() && (chunk.size() >= maxRecipients || chunkSize + size > maxSize)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkSize = 0;
+            }
+            chunk.add(recipient);
+            chunkSize += size;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
         }
+        return chunks;
     }
 
-    public void publishMessage(byte[] payload, String subject) throws UnrecoverableEntryException, CertificateException,
-            SignatureException, NoSuchAlgorithmException, KeyStoreException, IOException, InvalidKeyException {
+    /**
+     * @return whether a payload of the given size fits into a single message, including its container if it needs one
+     */
+    private boolean fitsInMessage(int payloadSize) {
+        return (usesContainers() ? BatchContainer.containerSize(1, payloadSize) : payloadSize) <= PAYLOAD_SIZE_LIMIT;
+    }
+
+    /**
+     * @return the payload in a batch container of its own if messages are published in containers
+     */
+    private byte[] wrap(byte[] payload) {
+        return usesContainers() ? BatchContainer.pack(List.of(payload)) : payload;
+    }
+
+    private boolean usesContainers() {
+        return batchingEnabled || fragmentationEnabled;
+    }
+
+    private CompletableFuture<Void> signAndSend(byte[] payload, String subject) throws SignatureException,
+            NoSuchAlgorithmException, InvalidKeyException {
+        return signAndSend(payload, Destination.ofSubject(subject));
+    }
+
+    private CompletableFuture<Void> signAndSend(byte[] payload, Destination destination) throws SignatureException,
+            NoSuchAlgorithmException, InvalidKeyException {
         long expires = Instant.now().plus(30, ChronoUnit.DAYS).getEpochSecond();
-        byte[] signature = generateSignature(subject, expires, ownMrn, payload);
+        byte[] signature = destination.subject() != null
+                ? signingEngine.signMms(destination.subject(), expires, ownMrn, payload)
+                : signingEngine.signMmsDirect(destination.recipients(), expires, ownMrn, payload);
+        return send(buildMessage(payload, destination, expires, signature), destination.shardKey());
+    }
 
-        MmtpMessage mmtpMessage = MmtpMessage.newBuilder()
+    /**
+     * Splits a payload into {@link FragmentContainer} fragments that each fit into one message, signs them in
+     * parallel and publishes them in order to the same destination.
+     */
+    private CompletableFuture<Void> publishFragmented(byte[] payload, Destination destination)
+            throws SignatureException, NoSuchAlgorithmException, InvalidKeyException {
+        List<byte[]> fragments = FragmentContainer.split(payload, PAYLOAD_SIZE_LIMIT);
+        CompletableFuture<Void> sent = signAndSend(fragments, List.of(destination));
+        log.debug("Published payload of {} bytes to {} in {} fragments", payload.length, destination,
+                fragments.size());
+        return sent;
+    }
+
+    /**
+     * Signs every body for every destination in parallel, and only sends the messages once all of them have been
+     * signed. The bodies are sent in order to each destination.
+     */
+    private CompletableFuture<Void> signAndSend(List<byte[]> bodies, List<Destination> destinations)
+            throws SignatureException, NoSuchAlgorithmException, InvalidKeyException {
+        long expires = Instant.now().plus(30, ChronoUnit.DAYS).getEpochSecond();
+        List<SigningEngine.MmsSigningRequest> signingRequests = new ArrayList<>(bodies.size() * destinations.size());
+        for (Destination destination : destinations) {
+            for (byte[] body : bodies) {
+                signingRequests.add(new SigningEngine.MmsSigningRequest(destination.signedFields(), expires, ownMrn,
+                        body));
+            }
+        }
+        List<byte[]> signatures = signingEngine.signMmsBatch(signingRequests);
+
+        CompletableFuture<?>[] sent = new CompletableFuture<?>[signingRequests.size()];
+        int i = 0;
+        for (Destination destination : destinations) {
+            for (byte[] body : bodies) {
+                sent[i] = send(buildMessage(body, destination, expires, signatures.get(i)), destination.shardKey());
+                i++;
+            }
+        }
+        return CompletableFuture.allOf(sent);
+    }
+
+    private MmtpMessage buildMessage(byte[] payload, Destination destination, long expires, byte[] signature) {
+        ApplicationMessageHeader.Builder header = ApplicationMessageHeader.newBuilder()
+                .setExpires(expires)
+                .setBodySizeNumBytes(payload.length)
+                .setSender(ownMrn);
+        if (destination.subject() != null) {
+            header.setSubject(destination.subject());
+        } else {
+            header.setRecipients(Recipients.newBuilder().addAllRecipients(destination.recipients()));
+        }
+        return MmtpMessage.newBuilder()
                 .setMsgType(MsgType.PROTOCOL_MESSAGE)
                 .setUuid(UUID.randomUUID().toString())
                 .setProtocolMessage(ProtocolMessage.newBuilder()
                         .setProtocolMsgType(ProtocolMessageType.SEND_MESSAGE)
                         .setSendMessage(Send.newBuilder()
                                 .setApplicationMessage(ApplicationMessage.newBuilder()
-                                        .setHeader(ApplicationMessageHeader.newBuilder()
-                                                .setExpires(expires)
-                                                .setBodySizeNumBytes(payload.length)
-                                                .setSubject(subject)
-                                                .setSender(ownMrn)
-                                        )
-                                        .setSignature(ByteString.copyFrom(signature))
-                                        .setBody(ByteString.copyFrom(payload))
+                                        .setHeader(header)
+                                        .setSignature(UnsafeByteOperations.unsafeWrap(signature))
+                                        .setBody(UnsafeByteOperations.unsafeWrap(payload))
                                 )
                         )
                 )
                 .build();
-        sendMessage(mmtpMessage);
     }
 
-    public void sendMessage(MmtpMessage mmtpMessage) throws IOException {
-        byte[] bytes = mmtpMessage.toByteArray();
-        webSocketSession.sendMessage(new BinaryMessage(bytes));
-        lastSentMessage.set(mmtpMessage);
+    private CompletableFuture<Void> send(MmtpMessage mmtpMessage, String shardKey) {
+        if (journalForwarder == null) {
+            return selectConnection(shardKey).send(mmtpMessage).thenApply(response -> null);
+        }
+        try {
+            journalForwarder.publish(mmtpMessage);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    private void setupWebSocket() throws NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException,
-            CertificateException, IOException, KeyManagementException, URISyntaxException, InterruptedException,
-            ExecutionException {
-        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
-
-        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        keyManagerFactory.init(keystoreUtil.getMmsKeystore(), keystoreUtil.getMmsKeystorePassword());
-
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
-
-        webSocketClient.setSslContext(sslContext);
-        URI uri = new URI(edgeRouterURL);
-        webSocketSession = webSocketClient.execute(new MMSWebsocketHandler(), null, uri).get();
-        log.info("Connected to edge router {}", edgeRouterURL);
+    private void onConnected(int index) {
+        if (journalForwarder != null) {
+            journalForwarder.onConnected();
+        }
+        if (inboundReceiver != null) {
+            inboundReceiver.onConnected(connections.get(index));
+        }
     }
 
-    private byte[] generateSignature(String subject, long expires, String ownMrn, byte[] body)
-            throws SignatureException, UnrecoverableEntryException, CertificateException, NoSuchAlgorithmException,
-            KeyStoreException, IOException, InvalidKeyException {
-        List<byte[]> byteArrays = new ArrayList<>();
-        byteArrays.add(subject.getBytes());
-        byteArrays.add(Long.toString(expires).getBytes());
-        byteArrays.add(ownMrn.getBytes());
-        byteArrays.add(Integer.toString(body.length).getBytes());
-        byteArrays.add(body);
-        byte[] bytesToBeSigned = new byte[0];
-        for (byte[] bytes : byteArrays) {
-            bytesToBeSigned = ArrayUtils.addAll(bytesToBeSigned, bytes);
+    private void onLost(int index) {
+        if (inboundReceiver != null) {
+            inboundReceiver.onLost(connections.get(index), connections);
         }
-
-        return keystoreUtil.signDataMMS(bytesToBeSigned);
     }
 
-    private class MMSWebsocketHandler extends BinaryWebSocketHandler {
-
-        @Override
-        public void afterConnectionEstablished(WebSocketSession session) throws IOException {
-            MmtpMessage mmtpMessage = MmtpMessage.newBuilder()
-                    .setUuid(UUID.randomUUID().toString())
-                    .setMsgType(MsgType.PROTOCOL_MESSAGE)
-                    .setProtocolMessage(ProtocolMessage.newBuilder()
-                            .setProtocolMsgType(ProtocolMessageType.CONNECT_MESSAGE)
-                            .setConnectMessage(Connect.newBuilder()
-                                    .setOwnMrn(ownMrn)
-                            )
-                    )
-                    .build();
-            byte[] bytes = mmtpMessage.toByteArray();
-            try {
-                session.sendMessage(new BinaryMessage(bytes));
-            } catch (IOException e) {
-                log.error("Failed to send CONNECT message to Edge Router", e);
-                session.close(CloseStatus.PROTOCOL_ERROR);
-            }
-            lastSentMessage.set(mmtpMessage);
+    private void onProtocolMessage(int index, ProtocolMessage protocolMessage) {
+        if (inboundReceiver == null) {
+            log.warn("Received a {} message that we cannot handle", protocolMessage.getProtocolMsgType());
+            return;
         }
+        inboundReceiver.onProtocolMessage(connections.get(index), protocolMessage);
+    }
 
-        @Override
-        protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
-            try {
-                MmtpMessage mmtpMessage = MmtpMessage.parseFrom(message.getPayload());
-                if (mmtpMessage.hasProtocolMessage()) {
-                    log.warn("Received a Protocol Message that we cannot handle right now");
-                    return;
-                }
-
-                if (mmtpMessage.hasResponseMessage()) {
-                    ResponseMessage responseMessage = mmtpMessage.getResponseMessage();
-                    if (!responseMessage.getResponseToUuid().equals(lastSentMessage.get().getUuid())) {
-                        log.error("Received a response to the wrong message");
-                    } else if (responseMessage.getResponse() != ResponseEnum.GOOD && responseMessage.hasReasonText()) {
-                        log.error("Received a response with an error: {}", responseMessage.getReasonText());
-                    }
-                }
-            } catch (InvalidProtocolBufferException e) {
-                log.warn("Received a message that we could not parse");
-            }
-        }
+    /**
+     * @return the subject of a message, or the first recipient of a direct message
+     */
+    private static String getShardKey(MmtpMessage mmtpMessage) {
+        ApplicationMessageHeader header = mmtpMessage.getProtocolMessage().getSendMessage().getApplicationMessage()
+                .getHeader();
+        return header.hasRecipients() ? header.getRecipients().getRecipients(0) : header.getSubject();
+    }
 
-        @Override
-        public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-            if (!status.equalsCode(CloseStatus.NORMAL) && !shuttingDown.get()) {
-                if (StringUtils.hasText(status.getReason())) {
-                    log.error("The websocket was closed with code {} and reason {}", status.getCode(), status.getReason());
-                } else {
-                    log.error("The websocket was closed with code {}", status.getCode());
-                }
-                try {
-                    session.close();
-                } catch (IOException e) {
-                    log.error("Failed to close websocket", e);
-                }
-                int retryCount = 0;
-                while (retryCount < 10 && !shuttingDown.get()) {
-                    try {
-                        Thread.sleep(5000);
-                        setupWebSocket();
-                        return;
-                    } catch (IOException | ExecutionException e) {
-                        log.error("Couldn't connect to the websocket, trying again: {}", e.getMessage());
-                        // If we fail, we just try again
-                        retryCount++;
-                    }
-                }
-                if (!shuttingDown.get()) {
-                    log.error("Failed to connect to edge router after {} attempts", retryCount);
-                    System.exit(1);
-                }
+    /**
+     * Picks the connection for a subject by hashing it, so all messages on one subject go through the same writer and
+     * keep their order. Direct messages are placed by their first recipient. If that connection is down the next open
+     * one in the pool takes over.
+     * <p>
+     * The order of messages on a subject is therefore only kept on a best effort basis: while a connection fails
+     * over, messages that are still queued on the lost connection can arrive after newer ones that were sent on the
+     * next connection. Consumers that need a strict order must order by the time the messages were sent.
+     */
+    private MmsConnection selectConnection(String shardKey) {
+        int size = connections.size();
+        int shard = Math.floorMod(shardKey.hashCode(), size);
+        for (int i = 0; i < size; i++) {
+            MmsConnection connection = connections.get((shard + i) % size);
+            if (connection.isOpen()) {
+                return connection;
             }
-            session.close();
         }
+        return connections.get(shard);
     }
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.CodedInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * An append-only store of outbound MMTP messages, split over memory-mapped segment files so that a large backlog
+ * lives in the page cache instead of on the heap. Every message gets a sequence number. A commit pointer, which is
+ * persisted next to the segments, points at the first message that has not been acknowledged yet, and segments
+ * that only hold messages before the commit pointer are deleted.
+ * <p>
+ * Unless every write is forced, the segments and the commit pointer are only guaranteed to be on disk once the
+ * operating system has written back the mapped pages, which survives a crash of the gateway but not of the host.
+ */
+@Slf4j
+class MessageJournal implements AutoCloseable {
+
+    private static final String COMMIT_FILE = "commit";
+
+    /**
+     * A message read from the journal.
+     */
+    record Entry(long sequence, ByteBuffer serializedMessage) {
+
+        /**
+         * Parses the message without copying its body out of the journal.
+         */
+        MmtpMessage parse() throws IOException {
+            CodedInputStream inputStream = CodedInputStream.newInstance(serializedMessage.duplicate());
+            inputStream.enableAliasing(true);
+            return MmtpMessage.parseFrom(inputStream);
+        }
+    }
+
+    /**
+     * Reads the journal from a given point onwards. A cursor is not thread safe.
+     */
+    class Cursor {
+        private JournalSegment segment;
+        private int position;
+
+        private Cursor(JournalSegment segment, int position) {
+            this.segment = segment;
+            this.position = position;
+        }
+
+        /**
+         * @return the next entry, or null if all appended entries have been read
+         */
+        Entry next() {
+            while (segment != null) {
+                if (position < segment.getWritePosition()) {
+                    Entry entry = new Entry(segment.readSequence(position), segment.readMessage(position));
+                    position = segment.nextPosition(position);
+                    return entry;
+                }
+                JournalSegment following = segmentAfter(segment);
+                if (following == null) {
+                    return null;
+                }
+                segment = following;
+                position = 0;
+            }
+            return null;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<JournalSegment> segments = new ArrayList<>();
+    private final NavigableSet<Long> acknowledgedAhead = new ConcurrentSkipListSet<>();
+
+    private final MappedByteBuffer commitBuffer;
+    private volatile long commitSequence;
+    private volatile long nextSequence;
+
+    private final Counter appendedCounter;
+    private final Counter acknowledgedCounter;
+
+    /**
+     * @param forceOnAppend whether every appended message and every move of the commit pointer is forced to disk
+     *                      before the call returns
+     */
+    MessageJournal(Path directory, int segmentSize, boolean forceOnAppend, MeterRegistry meterRegistry)
+            throws IOException {
+        this.directory = directory.toAbsolutePath();
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(this.directory);
+
+        try (FileChannel channel = FileChannel.open(this.directory.resolve(COMMIT_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            commitBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : files.filter(JournalSegment::isSegmentFile).sorted(Comparator.naturalOrder()).toList()) {
+                segments.add(JournalSegment.open(file, segmentSize));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.add(JournalSegment.create(this.directory, Math.max(1, commitBuffer.getLong(0)), segmentSize));
+        }
+        nextSequence = segments.getLast().getLastSequence() + 1;
+        commitSequence = Math.clamp(commitBuffer.getLong(0), segments.getFirst().getFirstSequence(), nextSequence);
+        reclaimSegments();
+
+        Gauge.builder("gateway.mms.journal.backlog", this, MessageJournal::getBacklog)
+                .description("Number of journaled messages that have not been acknowledged by the edge router")
+                .register(meterRegistry);
+        Gauge.builder("gateway.mms.journal.segments", segments, List::size)
+                .description("Number of journal segment files")
+                .register(meterRegistry);
+        this.appendedCounter = Counter.builder("gateway.mms.journal.appended")
+                .description("Number of messages appended to the journal")
+                .register(meterRegistry);
+        this.acknowledgedCounter = Counter.builder("gateway.mms.journal.acknowledged")
+                .description("Number of journaled messages acknowledged by the edge router")
+                .register(meterRegistry);
+        log.info("Opened journal in {} with {} unacknowledged message(s)", this.directory, getBacklog());
+    }
+
+    /**
+     * Appends a message to the journal.
+     *
+     * @return the sequence number of the message
+     */
+    long append(MmtpMessage mmtpMessage) throws IOException {
+        int messageSize = mmtpMessage.getSerializedSize();
+        if (JournalSegment.HEADER_SIZE + messageSize > segmentSize) {
+            throw new IOException("Message of " + messageSize + " bytes does not fit into a journal segment");
+        }
+        lock.lock();
+        try {
+            JournalSegment segment = segments.getLast();
+            if (!segment.hasRoomFor(messageSize)) {
+                segment.force();
+                segment = JournalSegment.create(directory, nextSequence, segmentSize);
+                segments.add(segment);
+            }
+            long sequence = nextSequence;
+            segment.append(sequence, mmtpMessage, messageSize);
+            if (forceOnAppend) {
+                segment.force();
+            }
+            nextSequence = sequence + 1;
+            appendedCounter.increment();
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a message as acknowledged, moves the commit pointer past all consecutively acknowledged messages and
+     * deletes the segments that are no longer needed.
+     */
+    void acknowledge(long sequence) {
+        if (sequence < commitSequence) {
+            return;
+        }
+        acknowledgedCounter.increment();
+        acknowledgedAhead.add(sequence);
+        lock.lock();
+        try {
+            long commit = commitSequence;
+            while (acknowledgedAhead.remove(commit)) {
+                commit++;
+            }
+            if (commit != commitSequence) {
+                commitSequence = commit;
+                commitBuffer.putLong(0, commit);
+                if (forceOnAppend) {
+                    // Otherwise a crash could replay messages that the edge router has already accepted
+                    commitBuffer.force();
+                }
+                reclaimSegments();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isAcknowledged(long sequence) {
+        return sequence < commitSequence || acknowledgedAhead.contains(sequence);
+    }
+
+    long getBacklog() {
+        return nextSequence - commitSequence - acknowledgedAhead.size();
+    }
+
+    /**
+     * @return a cursor positioned at the first message that has not been acknowledged
+     */
+    Cursor cursorAtCommit() {
+        lock.lock();
+        try {
+            long commit = commitSequence;
+            for (JournalSegment segment : segments) {
+                if (segment.getLastSequence() >= commit) {
+                    int position = 0;
+                    for (long sequence = segment.getFirstSequence(); sequence < commit; sequence++) {
+                        position = segment.nextPosition(position);
+                    }
+                    return new Cursor(segment, position);
+                }
+            }
+            JournalSegment last = segments.getLast();
+            return new Cursor(last, last.getWritePosition());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (JournalSegment segment : segments) {
+                segment.force();
+            }
+            commitBuffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private JournalSegment segmentAfter(JournalSegment segment) {
+        lock.lock();
+        try {
+            for (JournalSegment candidate : segments) {
+                if (candidate.getFirstSequence() > segment.getFirstSequence()) {
+                    return candidate;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reclaimSegments() {
+        while (segments.size() > 1 && segments.getFirst().getLastSequence() < commitSequence) {
+            JournalSegment segment = segments.removeFirst();
+            try {
+                segment.delete();
+                log.debug("Deleted fully acknowledged journal segment {}", segment.getPath());
+            } catch (IOException e) {
+                log.warn("Could not delete journal segment {}", segment.getPath(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.mms;
+
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An authenticated MMTP session to the edge router, re-established in the background whenever it is lost.
+ */
+interface MmsConnection {
+
+    String getName();
+
+    boolean isOpen();
+
+    /**
+     * Starts connecting to the edge router without waiting for the connection to be established.
+     */
+    void connect();
+
+    /**
+     * @return a future that is completed with the response of the edge router to the message, or failed if the
+     * message could not be sent, was rejected or was not responded to in time
+     */
+    CompletableFuture<ResponseMessage> send(MmtpMessage mmtpMessage);
+
+    /**
+     * Sends a DISCONNECT message if the connection is open and stops reconnecting.
+     */
+    void disconnect() throws InterruptedException;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.mms;
+
+/**
+ * The WebSocket client used for the connections to the edge router.
+ */
+public enum MmsTransport {
+    /**
+     * The blocking Spring {@code StandardWebSocketClient}, with a writer thread per connection.
+     */
+    STANDARD,
+    /**
+     * A non-blocking Reactor Netty client, which writes only as fast as the socket accepts data.
+     */
+    REACTOR_NETTY,
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of outbound MMTP messages that can be filled by any number of threads and is drained by a single
+ * dedicated writer thread, as a WebSocket session does not allow concurrent sends.
+ */
+@Slf4j
+class OutboundQueue {
+
+    /**
+     * Writes a single message to the edge router.
+     */
+    @FunctionalInterface
+    interface FrameWriter {
+        void write(MmtpMessage mmtpMessage) throws IOException, MmsPublishException;
+    }
+
+    private record PendingMessage(MmtpMessage mmtpMessage, CompletableFuture<Void> future, long enqueuedAt) {
+    }
+
+    private final BlockingDeque<PendingMessage> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final FrameWriter frameWriter;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+    private final Timer waitTimer;
+    private final Timer writeTimer;
+
+    OutboundQueue(String name, int capacity, OverflowPolicy overflowPolicy, FrameWriter frameWriter,
+                  MeterRegistry meterRegistry) {
+        this.queue = new LinkedBlockingDeque<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.frameWriter = frameWriter;
+
+        Gauge.builder("gateway.mms.outbound.queue.depth", queue, BlockingDeque::size)
+                .description("Number of messages waiting to be written to the edge router")
+                .tag("queue", name)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("gateway.mms.outbound.queue.overflows")
+                .description("Number of messages that were failed because the outbound queue was full")
+                .tag("queue", name)
+                .tag("policy", "reject")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("gateway.mms.outbound.queue.overflows")
+                .description("Number of messages that were failed because the outbound queue was full")
+                .tag("queue", name)
+                .tag("policy", "drop_oldest")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("gateway.mms.outbound.queue.wait")
+                .description("Time messages spend in the outbound queue")
+                .tag("queue", name)
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("gateway.mms.outbound.write")
+                .description("Time spent writing a message to the edge router")
+                .tag("queue", name)
+                .register(meterRegistry);
+
+        this.writerThread = ThreadFactories.create("mms-writer-" + name, false).newThread(this::drain);
+        this.writerThread.start();
+    }
+
+    /**
+     * Enqueues a message for sending.
+     *
+     * @return a future that is completed once the message has been written to the edge router
+     */
+    CompletableFuture<Void> enqueue(MmtpMessage mmtpMessage) {
+        PendingMessage pendingMessage = new PendingMessage(mmtpMessage, new CompletableFuture<>(), System.nanoTime());
+        if (!running) {
+            pendingMessage.future().completeExceptionally(new MmsPublishException(MmsPublishFailure.SHUTTING_DOWN));
+            return pendingMessage.future();
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    queue.putLast(pendingMessage);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    pendingMessage.future().completeExceptionally(e);
+                }
+            }
+            case REJECT -> {
+                if (!queue.offerLast(pendingMessage)) {
+                    rejectedCounter.increment();
+                    pendingMessage.future().completeExceptionally(new MmsPublishException(MmsPublishFailure.QUEUE_FULL));
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offerLast(pendingMessage)) {
+                    PendingMessage dropped = queue.pollFirst();
+                    if (dropped != null) {
+                        droppedCounter.increment();
+                        dropped.future().completeExceptionally(new MmsPublishException(MmsPublishFailure.DROPPED));
+                    }
+                }
+            }
+        }
+        // close() may have drained the queue between the check above and the insert, or while waiting for room
+        if (!running && queue.removeFirstOccurrence(pendingMessage)) {
+            pendingMessage.future().completeExceptionally(new MmsPublishException(MmsPublishFailure.SHUTTING_DOWN));
+        }
+        return pendingMessage.future();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the writer thread and fails all messages that have not been written yet.
+     */
+    void close() {
+        running = false;
+        writerThread.interrupt();
+        PendingMessage pendingMessage;
+        while ((pendingMessage = queue.pollFirst()) != null) {
+            pendingMessage.future().completeExceptionally(new MmsPublishException(MmsPublishFailure.SHUTTING_DOWN));
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            PendingMessage pendingMessage;
+            try {
+                pendingMessage = queue.takeFirst();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long start = System.nanoTime();
+            waitTimer.record(start - pendingMessage.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                frameWriter.write(pendingMessage.mmtpMessage());
+                pendingMessage.future().complete(null);
+            } catch (IOException e) {
+                log.error("Could not write message {} to the edge router", pendingMessage.mmtpMessage().getUuid(), e);
+                pendingMessage.future().completeExceptionally(new MmsPublishException(MmsPublishFailure.WRITE_FAILED, e));
+            } catch (MmsPublishException e) {
+                pendingMessage.future().completeExceptionally(e);
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while writing message {}", pendingMessage.mmtpMessage().getUuid(), e);
+                pendingMessage.future().completeExceptionally(e);
+            } finally {
+                writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
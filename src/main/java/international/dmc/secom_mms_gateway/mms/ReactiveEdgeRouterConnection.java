@@ -0,0 +1,365 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.JdkSslContext;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.mmtp.Connect;
+import net.maritimeconnectivity.mmtp.Disconnect;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.MsgType;
+import net.maritimeconnectivity.mmtp.ProtocolMessage;
+import net.maritimeconnectivity.mmtp.ProtocolMessageType;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+import reactor.core.Disposable;
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.WebsocketClientSpec;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A connection to the edge router on a Reactor Netty WebSocket client. Outbound messages are buffered in a bounded
+ * sink that the socket only drains as fast as it can write, so no thread is ever blocked on a slow link. When the
+ * buffer is full, further messages fail with {@link MmsPublishFailure#QUEUE_FULL} straight away, which lets callers
+ * push back on whoever is producing them. Nothing but the CONNECT message is written before the edge router has
+ * accepted it, and after that messages are only taken from the buffer as the {@link CongestionWindow}, if any, has
+ * room for them. Like {@link EdgeRouterConnection}, a lost session is resumed with its reconnect token after a
+ * jittered backoff.
+ */
+@Slf4j
+class ReactiveEdgeRouterConnection implements MmsConnection {
+
+    private static final int MAX_FRAME_PAYLOAD_LENGTH = EdgeRouterConnection.MAX_INBOUND_MESSAGE_SIZE;
+
+    private final String name;
+    private final URI edgeRouterUri;
+    private final String ownMrn;
+    private final SslContextCache sslContextCache;
+    private final InFlightTable inFlightTable;
+    private final InboundFrameDecoder frameDecoder;
+    private final CongestionWindow congestionWindow;
+    private final ReconnectPolicy reconnectPolicy;
+    private final AtomicBoolean shuttingDown;
+    private final Runnable connectedListener;
+    private final Runnable lostListener;
+    private final Consumer<ProtocolMessage> protocolMessageListener;
+    private final Sinks.Many<MmtpMessage> outbound;
+    private final ReentrantLock emitLock = new ReentrantLock();
+
+    private final Counter overflowCounter;
+    private final Counter successfulAttempts;
+    private final Counter failedAttempts;
+
+    private volatile boolean open;
+    private volatile String reconnectToken;
+    private volatile int attempts;
+    private volatile Disposable session;
+
+    /**
+     * @param congestionWindow  the send window of this connection, or null if sends should not be limited
+     * @param connectedListener called every time the edge router has accepted the CONNECT message of this connection
+     * @param lostListener      called every time this connection is lost after it had connected
+     */
+    ReactiveEdgeRouterConnection(String name, URI edgeRouterUri, String ownMrn, SslContextCache sslContextCache,
+                                 InFlightTable inFlightTable, InboundFrameDecoder frameDecoder,
+                                 CongestionWindow congestionWindow, int queueCapacity,
+                                 ReconnectPolicy reconnectPolicy, AtomicBoolean shuttingDown,
+                                 Runnable connectedListener, Runnable lostListener,
+                                 Consumer<ProtocolMessage> protocolMessageListener,
+                                 MeterRegistry meterRegistry) {
+        this.name = name;
+        this.edgeRouterUri = edgeRouterUri;
+        this.ownMrn = ownMrn;
+        this.sslContextCache = sslContextCache;
+        this.inFlightTable = inFlightTable;
+        this.frameDecoder = frameDecoder;
+        this.congestionWindow = congestionWindow;
+        this.reconnectPolicy = reconnectPolicy;
+        this.shuttingDown = shuttingDown;
+        this.connectedListener = connectedListener;
+        this.lostListener = lostListener;
+        this.protocolMessageListener = protocolMessageListener;
+        // Without auto-cancel the buffer survives the session, so the next session picks up where the last one ended
+        this.outbound = Sinks.many().multicast().onBackpressureBuffer(queueCapacity, false);
+
+        Gauge.builder("gateway.mms.outbound.queue.depth", outbound,
+                        sink -> sink.scanOrDefault(Scannable.Attr.BUFFERED, 0))
+                .description("Number of messages waiting to be written to the edge router")
+                .tag("queue", name)
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("gateway.mms.outbound.queue.overflows")
+                .description("Number of messages that were failed because the outbound queue was full")
+                .tag("queue", name)
+                .tag("policy", "reject")
+                .register(meterRegistry);
+        this.successfulAttempts = attemptCounter(name, "success", meterRegistry);
+        this.failedAttempts = attemptCounter(name, "failure", meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void connect() {
+        session = Mono.defer(this::runSession)
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                    if (shuttingDown.get()) {
+                        return Mono.error(signal.failure());
+                    }
+                    failedAttempts.increment();
+                    long delay = reconnectPolicy.delayMs(attempts++);
+                    log.error("Connection {} lost the edge router ({}), reconnecting in {} ms", name,
+                            signal.failure().getMessage(), delay);
+                    return Mono.delay(Duration.ofMillis(delay));
+                })))
+                .subscribe(null, throwable -> log.debug("Connection {} stopped: {}", name, throwable.getMessage()));
+    }
+
+    @Override
+    public CompletableFuture<ResponseMessage> send(MmtpMessage mmtpMessage) {
+        String uuid = mmtpMessage.getUuid();
+        CompletableFuture<ResponseMessage> response = inFlightTable.register(uuid);
+        Sinks.EmitResult result;
+        // The sink does not accept concurrent emissions, they would fail instead of waiting
+        emitLock.lock();
+        try {
+            result = outbound.tryEmitNext(mmtpMessage);
+        } finally {
+            emitLock.unlock();
+        }
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+            overflowCounter.increment();
+            inFlightTable.fail(uuid, new MmsPublishException(MmsPublishFailure.QUEUE_FULL));
+        } else if (result.isFailure()) {
+            inFlightTable.fail(uuid, new MmsPublishException(MmsPublishFailure.SHUTTING_DOWN));
+        }
+        return response;
+    }
+
+    @Override
+    public void disconnect() throws InterruptedException {
+        if (open) {
+            MmtpMessage disconnect = MmtpMessage.newBuilder()
+                    .setMsgType(MsgType.PROTOCOL_MESSAGE)
+                    .setUuid(UUID.randomUUID().toString())
+                    .setProtocolMessage(ProtocolMessage.newBuilder()
+                            .setProtocolMsgType(ProtocolMessageType.DISCONNECT_MESSAGE)
+                            .setDisconnectMessage(Disconnect.newBuilder())
+                    )
+                    .build();
+            try {
+                send(disconnect).get(2, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("The edge router did not respond to the DISCONNECT message on connection {}", name);
+            }
+        }
+        Disposable current = session;
+        if (current != null) {
+            current.dispose();
+        }
+        outbound.tryEmitComplete();
+    }
+
+    /**
+     * Runs a single WebSocket session, which always ends with an error so that it is retried.
+     */
+    private Mono<Void> runSession() {
+        JdkSslContext sslContext;
+        try {
+            sslContext = new JdkSslContext(sslContextCache.get(), true, ClientAuth.NONE);
+        } catch (GeneralSecurityException e) {
+            return Mono.error(e);
+        }
+        return HttpClient.create()
+                .secure(spec -> spec.sslContext(sslContext))
+                .websocket(WebsocketClientSpec.builder().maxFramePayloadLength(MAX_FRAME_PAYLOAD_LENGTH).build())
+                .uri(edgeRouterUri)
+                .handle(this::handle)
+                .then(Mono.<Void>error(() -> new IOException("The websocket was closed")))
+                .doFinally(signal -> {
+                    boolean wasOpen = open;
+                    open = false;
+                    if (wasOpen && !shuttingDown.get()) {
+                        lostListener.run();
+                    }
+                });
+    }
+
+    private Mono<Void> handle(WebsocketInbound inbound, WebsocketOutbound outboundStream) {
+        String token = reconnectToken;
+        MmtpMessage connect = connectMessage(token);
+        Mono<ResponseMessage> connectAccepted = Mono.fromFuture(inFlightTable.register(connect.getUuid()))
+                .doOnNext(this::onConnectAccepted)
+                .onErrorMap(throwable -> {
+                    if (token != null) {
+                        // The token may have expired, so the next attempt starts a fresh session
+                        reconnectToken = null;
+                    }
+                    return new IOException("The edge router did not accept the CONNECT message: "
+                            + throwable.getMessage(), throwable);
+                })
+                .cache();
+
+        ByteBufAllocator allocator = outboundStream.alloc();
+        // The buffer is only subscribed to once the CONNECT message has been accepted, until then it keeps filling up
+        Flux<BinaryWebSocketFrame> frames = Flux.concat(
+                Mono.just(connect).mapNotNull(mmtpMessage -> frame(allocator, mmtpMessage, false)),
+                connectAccepted.thenMany(throttle(outbound.asFlux()))
+                        .mapNotNull(mmtpMessage -> frame(allocator, mmtpMessage, congestionWindow != null)));
+        Mono<Void> send = outboundStream.sendObject(frames).then();
+        Mono<Void> receive = inbound.receive()
+                .asByteArray()
+                .doOnNext(this::onFrame)
+                .then();
+        // Whichever ends first ends the session: the socket closing, or the edge router rejecting the CONNECT message
+        return Mono.firstWithSignal(send, receive, connectAccepted.then(Mono.never()));
+    }
+
+    /**
+     * Only lets a message through once the congestion window has a slot for it. Taking one message at a time leaves
+     * the rest in the bounded buffer, so a full window shows up as {@link MmsPublishFailure#QUEUE_FULL} to callers.
+     */
+    private Flux<MmtpMessage> throttle(Flux<MmtpMessage> messages) {
+        if (congestionWindow == null) {
+            return messages;
+        }
+        return messages.concatMap(mmtpMessage -> Mono.fromFuture(congestionWindow::acquireAsync)
+                .thenReturn(mmtpMessage), 1);
+    }
+
+    /**
+     * @return the frame of the message, or null if the message has already been failed, for example because it was
+     * still buffered when the previous session was lost, and is dropped
+     */
+    private BinaryWebSocketFrame frame(ByteBufAllocator allocator, MmtpMessage mmtpMessage, boolean windowed) {
+        if (!inFlightTable.claim(mmtpMessage.getUuid())) {
+            log.debug("Dropping message {} that is no longer in flight", mmtpMessage.getUuid());
+            if (windowed) {
+                congestionWindow.release();
+            }
+            return null;
+        }
+        BinaryWebSocketFrame frame;
+        try {
+            frame = new BinaryWebSocketFrame(serialize(allocator, mmtpMessage));
+        } catch (RuntimeException e) {
+            if (windowed) {
+                congestionWindow.release();
+            }
+            throw e;
+        }
+        long sentAt = System.nanoTime();
+        CompletableFuture<ResponseMessage> response = inFlightTable.markSent(mmtpMessage.getUuid());
+        if (!windowed) {
+            return frame;
+        }
+        if (response == null) {
+            congestionWindow.release();
+            return frame;
+        }
+        congestionWindow.onSent(response, sentAt);
+        return frame;
+    }
+
+    private void onConnectAccepted(ResponseMessage response) {
+        if (response.hasReconnectToken()) {
+            reconnectToken = response.getReconnectToken();
+        }
+        open = true;
+        attempts = 0;
+        successfulAttempts.increment();
+        log.info("Connection {} connected to edge router {}", name, edgeRouterUri);
+        connectedListener.run();
+    }
+
+    private void onFrame(byte[] frame) {
+        // The frame has already been copied out of the Netty buffer, so it is ours to keep
+        frameDecoder.onFrame(ByteBuffer.wrap(frame), false, protocolMessageListener);
+    }
+
+    private MmtpMessage connectMessage(String token) {
+        Connect.Builder connect = Connect.newBuilder().setOwnMrn(ownMrn);
+        if (token != null) {
+            connect.setReconnectToken(token);
+        }
+        return MmtpMessage.newBuilder()
+                .setUuid(UUID.randomUUID().toString())
+                .setMsgType(MsgType.PROTOCOL_MESSAGE)
+                .setProtocolMessage(ProtocolMessage.newBuilder()
+                        .setProtocolMsgType(ProtocolMessageType.CONNECT_MESSAGE)
+                        .setConnectMessage(connect)
+                )
+                .build();
+    }
+
+    /**
+     * Serializes a message straight into a pooled Netty buffer, which Netty releases once the frame has been written.
+     */
+    private static ByteBuf serialize(ByteBufAllocator allocator, MmtpMessage mmtpMessage) {
+        ByteBuf buffer = allocator.buffer(mmtpMessage.getSerializedSize());
+        try (ByteBufOutputStream outputStream = new ByteBufOutputStream(buffer)) {
+            mmtpMessage.writeTo(outputStream);
+        } catch (IOException e) {
+            buffer.release();
+            throw new IllegalStateException("Could not serialize message " + mmtpMessage.getUuid(), e);
+        }
+        return buffer;
+    }
+
+    private static Counter attemptCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.mms.reconnect.attempts")
+                .description("Number of attempts to connect to the edge router")
+                .tag("connection", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
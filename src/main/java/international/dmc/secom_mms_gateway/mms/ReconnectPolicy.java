@@ -0,0 +1,43 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter for reconnecting to the edge router. The delay before an attempt is picked at random
+ * between half and all of the exponentially growing cap, so connections that were lost at the same time do not all
+ * hit the router at the same moment when it comes back.
+ *
+ * @param initialDelayMs the cap of the delay before the first attempt
+ * @param maxDelayMs     the largest cap the delay may grow to
+ */
+record ReconnectPolicy(long initialDelayMs, long maxDelayMs) {
+
+    /**
+     * @param attempt the number of attempts that have already failed since the connection was lost
+     * @return the number of milliseconds to wait before the next attempt
+     */
+    long delayMs(int attempt) {
+        long cap = initialDelayMs << Math.min(attempt, 30);
+        if (cap <= 0 || cap > maxDelayMs) {
+            cap = maxDelayMs;
+        }
+        long half = cap / 2;
+        return half + ThreadLocalRandom.current().nextLong(cap - half + 1);
+    }
+}
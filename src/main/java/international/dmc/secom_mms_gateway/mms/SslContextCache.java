@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
+import international.dmc.secom_mms_gateway.utils.OpenSslContextFactory;
+import international.dmc.secom_mms_gateway.utils.TlsProvider;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the client {@link SSLContext} used for the connections to the edge router. The context is only rebuilt when
+ * the MMS credentials have been reloaded, so all connections share its client session cache and reconnects can resume
+ * a previous TLS session instead of doing a full handshake. With {@link TlsProvider#OPENSSL} the context is backed by
+ * OpenSSL, falling back to the JDK if the native library is not available on this platform.
+ */
+@Slf4j
+class SslContextCache {
+
+    private final KeystoreUtil keystoreUtil;
+    private final TlsProvider tlsProvider;
+    private final int sessionTimeoutSeconds;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private SSLContext sslContext;
+    private long generation = -1;
+
+    SslContextCache(KeystoreUtil keystoreUtil, TlsProvider tlsProvider, int sessionTimeoutSeconds) {
+        this.keystoreUtil = keystoreUtil;
+        if (tlsProvider == TlsProvider.OPENSSL && !OpenSslContextFactory.isAvailable()) {
+            log.warn("OpenSSL is not available on this platform, using the TLS implementation of the JDK instead");
+            tlsProvider = TlsProvider.JDK;
+        }
+        this.tlsProvider = tlsProvider;
+        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+    }
+
+    SSLContext get() throws GeneralSecurityException {
+        KeystoreUtil.Credentials credentials = keystoreUtil.getCredentials();
+        lock.lock();
+        try {
+            if (sslContext == null || generation != credentials.generation()) {
+                KeyManagerFactory keyManagerFactory =
+                        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                keyManagerFactory.init(credentials.mmsKeyStore(), keystoreUtil.getMmsKeystorePassword());
+
+                sslContext = switch (tlsProvider) {
+                    case JDK -> createJdkContext(keyManagerFactory);
+                    case OPENSSL -> createOpenSslContext(keyManagerFactory);
+                };
+                generation = credentials.generation();
+                log.debug("Created {} edge router SSL context for credential generation {}", tlsProvider, generation);
+            }
+            return sslContext;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SSLContext createJdkContext(KeyManagerFactory keyManagerFactory) throws GeneralSecurityException {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagerFactory.getKeyManagers(), null, null);
+        context.getClientSessionContext().setSessionTimeout(sessionTimeoutSeconds);
+        return context;
+    }
+
+    private SSLContext createOpenSslContext(KeyManagerFactory keyManagerFactory) throws GeneralSecurityException {
+        try {
+            return OpenSslContextFactory.createClientContext(keyManagerFactory, sessionTimeoutSeconds);
+        } catch (SSLException e) {
+            throw new GeneralSecurityException("Could not create the OpenSSL context", e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the datasets published on a subject for a short time and publishes them together in one
+ * {@link BatchContainer}, so that a burst of small datasets costs one signature and one message instead of one per
+ * dataset. A batch is published when its delay has passed or when the next dataset would make it exceed the maximum
+ * size. A batch that only holds a single dataset is still published in a container, so that the receivers never need
+ * to guess whether a body is one.
+ */
+class SubjectBatcher {
+
+    /**
+     * Publishes a message body on a subject.
+     */
+    @FunctionalInterface
+    interface Publisher {
+        CompletableFuture<Void> publish(byte[] body, String subject) throws GeneralSecurityException;
+    }
+
+    private static final class Batch {
+        private final List<byte[]> payloads = new ArrayList<>();
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private int payloadSize;
+        private ScheduledFuture<?> flushTask;
+    }
+
+    private final long maxDelayMs;
+    private final int maxBatchSize;
+    private final Publisher publisher;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSizeSummary;
+
+    /**
+     * @param maxBatchSize the maximum size of a batch container in bytes
+     */
+    SubjectBatcher(long maxDelayMs, int maxBatchSize, Publisher publisher, MeterRegistry meterRegistry) {
+        this.maxDelayMs = maxDelayMs;
+        this.maxBatchSize = maxBatchSize;
+        this.publisher = publisher;
+        this.executor = new ScheduledThreadPoolExecutor(1, ThreadFactories.create("mms-batcher", false));
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.batchSizeSummary = DistributionSummary.builder("gateway.mms.batch.datasets")
+                .description("Number of datasets published together in one MMS message")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds a dataset to the batch of its subject.
+     *
+     * @return a future that is completed when the batch holding the dataset has been published
+     */
+    CompletableFuture<Void> add(byte[] payload, String subject) {
+        if (BatchContainer.containerSize(1, payload.length) > maxBatchSize) {
+            return publish(List.of(payload), subject);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Batch[] full = new Batch[1];
+        batches.compute(subject, (key, batch) -> {
+            if (batch != null && BatchContainer.containerSize(batch.payloads.size() + 1,
+                    batch.payloadSize + payload.length) > maxBatchSize) {
+                batch.flushTask.cancel(false);
+                full[0] = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                Batch created = new Batch();
+                created.flushTask = executor.schedule(() -> flush(subject, created), maxDelayMs,
+                        TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+            batch.payloads.add(payload);
+            batch.futures.add(future);
+            batch.payloadSize += payload.length;
+            return batch;
+        });
+        if (full[0] != null) {
+            Batch batch = full[0];
+            executor.execute(() -> complete(batch, publish(batch.payloads, subject)));
+        }
+        return future;
+    }
+
+    /**
+     * Publishes all pending batches and stops the batcher.
+     */
+    void close() {
+        for (String subject : List.copyOf(batches.keySet())) {
+            Batch batch = batches.remove(subject);
+            if (batch != null) {
+                batch.flushTask.cancel(false);
+                complete(batch, publish(batch.payloads, subject));
+            }
+        }
+        executor.shutdown();
+    }
+
+    private void flush(String subject, Batch batch) {
+        // The batch may already have been published because it was full
+        if (batches.remove(subject, batch)) {
+            complete(batch, publish(batch.payloads, subject));
+        }
+    }
+
+    private CompletableFuture<Void> publish(List<byte[]> payloads, String subject) {
+        batchSizeSummary.record(payloads.size());
+        try {
+            return publisher.publish(BatchContainer.pack(payloads), subject);
+        } catch (GeneralSecurityException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static void complete(Batch batch, CompletableFuture<Void> published) {
+        published.whenComplete((result, throwable) -> {
+            for (CompletableFuture<Void> future : batch.futures) {
+                if (throwable == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(throwable);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.Table;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Entity
+@Table(name = "recipient_groups")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@Schema(description = "Model object representing a named group of MMS recipients that subscriptions can send to")
+public class RecipientGroup implements JsonSerializable {
+
+    @Id
+    @Column(name = "name", nullable = false)
+    @Schema(description = "The name of the group", requiredMode = Schema.RequiredMode.REQUIRED)
+    private String name;
+
+    @Column(name = "created_at", updatable = false)
+    private Date createdAt;
+
+    @Column(name = "updated_at")
+    private Date updatedAt;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "recipient_group_members", joinColumns = @JoinColumn(name = "group_name"))
+    @Column(name = "recipient", nullable = false)
+    @Schema(description = "The MRNs of the members of the group", requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<String> recipients = new ArrayList<>();
+}
@@ -26,14 +26,20 @@ import org.grad.secom.core.models.enums.ContainerTypeEnum;
 import org.grad.secom.core.models.enums.SECOM_DataProductType;
 import org.grad.secom.springboot3.components.SecomClient;
 
+import jakarta.persistence.CollectionTable;
 import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 @Entity
@@ -81,9 +87,19 @@ public class Subscription implements JsonSerializable {
     private UUID subscriptionId;
 
     @Column(name = "mms_subject")
-    @Schema(description = "The MMS subject where messages received from the SECOM service shall be published to", requiredMode = Schema.RequiredMode.REQUIRED)
+    @Schema(description = "The MMS subject where messages received from the SECOM service shall be published to, unless they are sent directly to recipients. A subscription needs a subject, recipients or a recipient group")
     private String mmsSubject;
 
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "subscription_recipients", joinColumns = @JoinColumn(name = "subscription_id"))
+    @Column(name = "recipient", nullable = false)
+    @Schema(description = "The MRNs of the MMS recipients that messages received from the SECOM service shall be sent to directly")
+    private List<String> recipients = new ArrayList<>();
+
+    @Column(name = "recipient_group")
+    @Schema(description = "The name of a recipient group whose members messages received from the SECOM service shall be sent to directly")
+    private String recipientGroup;
+
     @JsonIgnore
     @Transient
     private SecomClient secomClient;
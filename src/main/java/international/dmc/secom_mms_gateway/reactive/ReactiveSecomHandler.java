@@ -0,0 +1,102 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.reactive;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.services.SubscriptionService;
+import international.dmc.secom_mms_gateway.services.UploadService;
+import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.models.PingResponseObject;
+import org.grad.secom.core.models.SubscriptionNotificationObject;
+import org.grad.secom.core.models.SubscriptionNotificationResponseObject;
+import org.grad.secom.core.models.UploadObject;
+import org.grad.secom.core.models.enums.SubscriptionEventEnum;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The SECOM endpoints of the reactive mode. Uploads are handled by the {@link UploadService} without blocking the
+ * event loop: a subscription that is not cached is looked up, and compressing, signing and publishing run, on the
+ * bounded elastic scheduler, and the response is only sent once the message has been accepted for delivery. When the
+ * message cannot be handed to the edge router, most often because the outbound queues are full, the upload is answered
+ * with 503 and a Retry-After header, so a slow MMS link slows down the uploading services instead of filling up the
+ * memory of the gateway.
+ */
+@Component
+@Profile("reactive")
+@Slf4j
+public class ReactiveSecomHandler {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final Executor WORKERS = task -> Schedulers.boundedElastic().schedule(task);
+
+    @Value("${international.dmc.secom_mms_gateway.upload.max-size:104857600}")
+    private long maxUploadSize;
+
+    private final SubscriptionService subscriptionService;
+    private final UploadService uploadService;
+
+    @Autowired
+    public ReactiveSecomHandler(SubscriptionService subscriptionService, UploadService uploadService) {
+        this.subscriptionService = subscriptionService;
+        this.uploadService = uploadService;
+    }
+
+    public Mono<ServerResponse> ping(ServerRequest request) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(new PingResponseObject());
+    }
+
+    public Mono<ServerResponse> upload(ServerRequest request) {
+        if (request.headers().contentLength().orElse(-1) > maxUploadSize) {
+            return ServerResponse.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        return request.bodyToMono(UploadObject.class)
+                .flatMap(uploadObject -> Mono.fromFuture(() -> uploadService.upload(uploadObject, WORKERS)))
+                .flatMap(response -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(response))
+                // The dataset was not handed to the edge router and has not been acknowledged, so it can be sent again
+                .onErrorResume(MmsPublishException.class, e -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                        .build());
+    }
+
+    public Mono<ServerResponse> subscriptionNotification(ServerRequest request) {
+        return request.bodyToMono(SubscriptionNotificationObject.class)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(notification -> {
+                    var subscriptionIdentifier = notification.getSubscriptionIdentifier();
+                    if (subscriptionIdentifier != null
+                            && notification.getEventEnum() == SubscriptionEventEnum.SUBSCRIPTION_REMOVED) {
+                        var subscription = subscriptionService.getSubscriptionById(subscriptionIdentifier.toString());
+                        if (subscription != null) {
+                            subscriptionService.removeSubscription(subscription.getServiceMrn());
+                        }
+                    }
+                })
+                .then(ServerResponse.ok().contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new SubscriptionNotificationResponseObject()));
+    }
+}
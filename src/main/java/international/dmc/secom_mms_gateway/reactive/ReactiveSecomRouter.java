@@ -0,0 +1,44 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.reactive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Routes the SECOM endpoints of the gateway to the {@link ReactiveSecomHandler} when the application runs with the
+ * {@code reactive} profile, which replaces the servlet stack with WebFlux on Reactor Netty.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveSecomRouter {
+
+    @Bean
+    public RouterFunction<ServerResponse> secomRoutes(
+            ReactiveSecomHandler handler,
+            @Value("${international.dmc.secom_mms_gateway.reactive.secom-base-path:/api/secom}") String basePath) {
+        return RouterFunctions.route()
+                .GET(basePath + "/v1/ping", handler::ping)
+                .POST(basePath + "/v1/object", handler::upload)
+                .POST(basePath + "/v1/subscription/notification", handler::subscriptionNotification)
+                .build();
+    }
+}
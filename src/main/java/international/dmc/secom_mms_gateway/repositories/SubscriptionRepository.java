@@ -31,4 +31,6 @@ public interface SubscriptionRepository extends PagingAndSortingRepository<Subsc
     void deleteByServiceMrn(String serviceMrn);
 
     boolean existsByServiceMrn(String serviceMrn);
+
+    boolean existsByRecipientGroup(String recipientGroup);
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.services;
+
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.models.AcknowledgementObject;
+import org.grad.secom.springboot3.components.SecomClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends SECOM acknowledgements in the background, so that the response to an upload does not wait for a call back to
+ * the uploading service. Every service has its own bounded {@link ServiceQueue} which is served by at most one task
+ * at a time, in order. Failed acknowledgements are retried with exponential backoff, and a {@link CircuitBreaker} per
+ * service stops calls to a service that keeps failing until it has had time to recover.
+ */
+@Service
+@Slf4j
+public class AcknowledgementDispatcher {
+
+    @Value("${international.dmc.secom_mms_gateway.ack.threads:4}")
+    private int threads;
+    @Value("${international.dmc.secom_mms_gateway.ack.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${international.dmc.secom_mms_gateway.ack.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${international.dmc.secom_mms_gateway.ack.retry.initial-delay-ms:500}")
+    private long retryInitialDelayMs;
+    @Value("${international.dmc.secom_mms_gateway.ack.retry.max-delay-ms:30000}")
+    private long retryMaxDelayMs;
+    @Value("${international.dmc.secom_mms_gateway.ack.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+    @Value("${international.dmc.secom_mms_gateway.ack.circuit-breaker.open-duration-ms:30000}")
+    private long openDurationMs;
+    @Value("${" + ThreadFactories.VIRTUAL_THREADS_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    private record PendingAck(SecomClient secomClient, AcknowledgementObject acknowledgement, long submittedAt) {
+    }
+
+    private final Map<String, ServiceQueue<PendingAck>> serviceQueues = new ConcurrentHashMap<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    private final Timer deliveredTimer;
+    private final Timer failedTimer;
+    private final Counter queueFullCounter;
+    private final Counter rejectedCounter;
+    private final Counter exhaustedCounter;
+    private final Counter circuitOpenedCounter;
+
+    private ScheduledThreadPoolExecutor scheduler;
+    private ExecutorService sendExecutor;
+
+    @Autowired
+    public AcknowledgementDispatcher(MeterRegistry meterRegistry) {
+        this.deliveredTimer = latencyTimer("delivered", meterRegistry);
+        this.failedTimer = latencyTimer("failed", meterRegistry);
+        this.queueFullCounter = droppedCounter("queue-full", meterRegistry);
+        this.rejectedCounter = droppedCounter("rejected", meterRegistry);
+        this.exhaustedCounter = droppedCounter("attempts-exhausted", meterRegistry);
+        this.circuitOpenedCounter = Counter.builder("gateway.ack.circuit.opened")
+                .description("Number of times the circuit to a SECOM service was opened")
+                .register(meterRegistry);
+        Gauge.builder("gateway.ack.backlog", backlog, AtomicInteger::get)
+                .description("Number of acknowledgements waiting to be sent")
+                .register(meterRegistry);
+        Gauge.builder("gateway.ack.circuit.open", serviceQueues, queues -> queues.values().stream()
+                        .filter(q -> q.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN)
+                        .count())
+                .description("Number of SECOM services whose circuit is open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * With virtual threads the acknowledgements are sent on a virtual thread each, and the platform threads of the
+     * scheduler only time the retries. Otherwise the scheduler threads send the acknowledgements themselves.
+     */
+    @PostConstruct
+    public void init() {
+        scheduler = new ScheduledThreadPoolExecutor(virtualThreads ? 1 : threads,
+                ThreadFactories.create("ack-dispatcher-", false));
+        scheduler.setRemoveOnCancelPolicy(true);
+        sendExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(ThreadFactories.create("ack-sender-", true))
+                : scheduler;
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        scheduler.shutdownNow();
+        sendExecutor.shutdownNow();
+        if (backlog.get() > 0) {
+            log.warn("Discarding {} acknowledgements that have not been sent", backlog.get());
+        }
+    }
+
+    /**
+     * Queues an acknowledgement for the given service. Returns immediately.
+     *
+     * @return false if the queue of the service was full and the acknowledgement has been dropped
+     */
+    public boolean submit(String serviceMrn, SecomClient secomClient, AcknowledgementObject acknowledgement) {
+        ServiceQueue<PendingAck> serviceQueue = serviceQueues.computeIfAbsent(serviceMrn, mrn -> new ServiceQueue<>(
+                mrn, queueCapacity, new CircuitBreaker(failureThreshold, TimeUnit.MILLISECONDS.toNanos(openDurationMs)),
+                this::send, sendExecutor, scheduler, backlog));
+        if (!serviceQueue.offer(new PendingAck(secomClient, acknowledgement, System.nanoTime()))) {
+            queueFullCounter.increment();
+            log.warn("Dropping acknowledgement for {} as its queue is full", serviceMrn);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 0 if the acknowledgement is done with, otherwise the number of milliseconds to wait before retrying it
+     */
+    private long send(ServiceQueue<PendingAck> serviceQueue, PendingAck pendingAck) {
+        try {
+            pendingAck.secomClient().acknowledgment(pendingAck.acknowledgement());
+            serviceQueue.getCircuitBreaker().onSuccess();
+            deliveredTimer.record(System.nanoTime() - pendingAck.submittedAt(), TimeUnit.NANOSECONDS);
+            return 0;
+        } catch (WebClientResponseException e) {
+            if (e.getStatusCode().is4xxClientError()) {
+                // The service is reachable but does not accept the acknowledgement, trying again will not help
+                serviceQueue.getCircuitBreaker().onSuccess();
+                rejectedCounter.increment();
+                failedTimer.record(System.nanoTime() - pendingAck.submittedAt(), TimeUnit.NANOSECONDS);
+                log.error("Acknowledgement was rejected by {}: {}", serviceQueue.getServiceMrn(),
+                        e.getResponseBodyAsString(), e);
+                return 0;
+            }
+            return onFailure(serviceQueue, pendingAck, e);
+        } catch (RuntimeException e) {
+            return onFailure(serviceQueue, pendingAck, e);
+        }
+    }
+
+    private long onFailure(ServiceQueue<PendingAck> serviceQueue, PendingAck pendingAck, RuntimeException e) {
+        if (serviceQueue.getCircuitBreaker().onFailure()) {
+            circuitOpenedCounter.increment();
+            log.warn("Opened the circuit to {} after repeated failures", serviceQueue.getServiceMrn());
+        }
+        int attempts = serviceQueue.getAttempts() + 1;
+        if (attempts >= maxAttempts) {
+            exhaustedCounter.increment();
+            failedTimer.record(System.nanoTime() - pendingAck.submittedAt(), TimeUnit.NANOSECONDS);
+            log.error("Giving up acknowledging to {} after {} attempts", serviceQueue.getServiceMrn(), attempts, e);
+            return 0;
+        }
+        long delayMs = retryDelayMs(attempts - 1);
+        log.warn("Could not acknowledge to {}, retrying in {} ms: {}", serviceQueue.getServiceMrn(), delayMs,
+                e.getMessage());
+        return delayMs;
+    }
+
+    private long retryDelayMs(int attempt) {
+        long cap = retryInitialDelayMs << Math.min(attempt, 30);
+        if (cap <= 0 || cap > retryMaxDelayMs) {
+            cap = retryMaxDelayMs;
+        }
+        long half = cap / 2;
+        return half + ThreadLocalRandom.current().nextLong(cap - half + 1);
+    }
+
+    private static Timer latencyTimer(String result, MeterRegistry meterRegistry) {
+        return Timer.builder("gateway.ack.latency")
+                .description("Time from queueing an acknowledgement until it was sent or given up on")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter droppedCounter(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.ack.dropped")
+                .description("Number of acknowledgements that were not delivered")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
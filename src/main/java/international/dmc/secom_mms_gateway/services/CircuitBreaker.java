@@ -0,0 +1,82 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.services;
+
+/**
+ * A circuit breaker for the calls to one SECOM service. After a number of consecutive failures the circuit opens and
+ * no calls are made until the open duration has passed. Then a single trial call is let through, which either closes
+ * the circuit again or reopens it.
+ * <p>
+ * Instances are not thread safe; every breaker is only used by the task currently serving its service.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private volatile State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openDurationNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDurationNanos;
+    }
+
+    /**
+     * @return 0 if a call may be made now, otherwise the number of nanoseconds until the next call may be tried
+     */
+    long remainingOpenNanos() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long remaining = openedAt + openDurationNanos - System.nanoTime();
+        if (remaining > 0) {
+            return remaining;
+        }
+        state = State.HALF_OPEN;
+        return 0;
+    }
+
+    void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * @return whether the failure has opened the circuit
+     */
+    boolean onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            boolean opened = state != State.OPEN;
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            return opened;
+        }
+        return false;
+    }
+
+    State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.services;
+
+import international.dmc.secom_mms_gateway.codec.CompressibilityEstimator;
+import international.dmc.secom_mms_gateway.codec.PayloadCompressor;
+import international.dmc.secom_mms_gateway.mms.InboundMessage;
+import international.dmc.secom_mms_gateway.mms.InboundMessageHandler;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.grad.secom.core.models.SECOM_ExchangeMetadataObject;
+import org.grad.secom.core.models.UploadObject;
+import org.grad.secom.core.models.enums.AckRequestEnum;
+import org.grad.secom.core.models.enums.ContainerTypeEnum;
+import org.grad.secom.core.models.enums.SECOM_DataProductType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Bridges the datasets received from MMS back to SECOM, by uploading every dataset the {@link MMSAgent} receives to
+ * every SECOM service the gateway has a subscription with. Every service has its own bounded {@link ServiceQueue}, the
+ * same as for acknowledgements, so a slow service only holds up its own deliveries. As for acknowledgements,
+ * a {@link CircuitBreaker} per service stops uploads to a service that keeps failing until it has had time to recover.
+ * Datasets that do not fit into the queue of a service, or that the service does not accept, are dropped. Datasets that
+ * the publishing gateway encoded in a format SECOM cannot flag are decoded by the {@link PayloadCompressor} first.
+ * <p>
+ * A dataset is labelled with the data product type of the subscriptions whose MMS subject it was received on, as the
+ * gateways publish the uploads for a subscription on its subject. Datasets that were sent directly to the gateway, or
+ * whose subject has no data product type or more than one, are uploaded without one.
+ *
+ * @see international.dmc.secom_mms_gateway.mms.MMSAgent
+ */
+@Service
+@Slf4j
+public class InboundBridge implements InboundMessageHandler {
+
+    @Value("${international.dmc.secom_mms_gateway.inbound.threads:8}")
+    private int threads;
+    @Value("${international.dmc.secom_mms_gateway.inbound.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${international.dmc.secom_mms_gateway.inbound.consumer-refresh-ms:30000}")
+    private long consumerRefreshMs;
+    @Value("${international.dmc.secom_mms_gateway.inbound.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+    @Value("${international.dmc.secom_mms_gateway.inbound.circuit-breaker.open-duration-ms:30000}")
+    private long openDurationMs;
+    @Value("${" + ThreadFactories.VIRTUAL_THREADS_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    private record Consumer(ServiceQueue<InboundMessage> queue, Timer deliveredTimer, Timer failedTimer) {
+    }
+
+    private final SubscriptionService subscriptionService;
+    private final PayloadCompressor payloadCompressor;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Consumer> consumerQueues = new ConcurrentHashMap<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    private final Counter queueFullCounter;
+    private final Counter noClientCounter;
+    private final Counter undecodableCounter;
+    private final Counter failedCounter;
+    private final Counter circuitOpenedCounter;
+
+    private volatile Set<String> consumers = Set.of();
+    private volatile Map<String, SECOM_DataProductType> productTypes = Map.of();
+    private ScheduledThreadPoolExecutor scheduler;
+    private ExecutorService deliveryExecutor;
+
+    @Autowired
+    public InboundBridge(SubscriptionService subscriptionService, PayloadCompressor payloadCompressor,
+                         MeterRegistry meterRegistry) {
+        this.subscriptionService = subscriptionService;
+        this.payloadCompressor = payloadCompressor;
+        this.meterRegistry = meterRegistry;
+        this.queueFullCounter = droppedCounter("queue-full", meterRegistry);
+        this.noClientCounter = droppedCounter("no-client", meterRegistry);
+        this.undecodableCounter = droppedCounter("undecodable", meterRegistry);
+        this.failedCounter = droppedCounter("failed", meterRegistry);
+        this.circuitOpenedCounter = Counter.builder("gateway.inbound.circuit.opened")
+                .description("Number of times the circuit to a SECOM service was opened")
+                .register(meterRegistry);
+        Gauge.builder("gateway.inbound.backlog", backlog, AtomicInteger::get)
+                .description("Number of received datasets waiting to be uploaded to SECOM services")
+                .register(meterRegistry);
+    }
+
+    /**
+     * With virtual threads every service queue is drained on a virtual thread of its own, otherwise the queues share
+     * a fixed number of platform threads.
+     */
+    @PostConstruct
+    public void init() {
+        scheduler = new ScheduledThreadPoolExecutor(1, ThreadFactories.create("inbound-scheduler", false));
+        scheduler.setRemoveOnCancelPolicy(true);
+        deliveryExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(ThreadFactories.create("inbound-delivery-", true))
+                : Executors.newFixedThreadPool(threads, ThreadFactories.create("inbound-delivery-", false));
+        scheduler.scheduleWithFixedDelay(this::refreshConsumers, 0, consumerRefreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        scheduler.shutdownNow();
+        deliveryExecutor.shutdownNow();
+        if (backlog.get() > 0) {
+            log.warn("Discarding {} received datasets that have not been uploaded", backlog.get());
+        }
+    }
+
+    /**
+     * Queues a received dataset for every SECOM service. Returns immediately.
+     */
+    @Override
+    public void onMessage(InboundMessage message) {
+        for (String serviceMrn : consumers) {
+            Consumer consumer = consumerQueues.computeIfAbsent(serviceMrn, this::createConsumer);
+            if (!consumer.queue().offer(message)) {
+                queueFullCounter.increment();
+                log.warn("Dropping dataset from {} for {} as its queue is full", message.sender(), serviceMrn);
+            }
+        }
+    }
+
+    private Consumer createConsumer(String serviceMrn) {
+        Timer deliveredTimer = latencyTimer(serviceMrn, "delivered");
+        Timer failedTimer = latencyTimer(serviceMrn, "failed");
+        ServiceQueue<InboundMessage> queue = new ServiceQueue<>(serviceMrn, queueCapacity,
+                new CircuitBreaker(failureThreshold, TimeUnit.MILLISECONDS.toNanos(openDurationMs)),
+                (serviceQueue, message) -> upload(serviceQueue, message, deliveredTimer, failedTimer),
+                deliveryExecutor, scheduler, backlog);
+        return new Consumer(queue, deliveredTimer, failedTimer);
+    }
+
+    /**
+     * Uploads a dataset to a service once, and drops it if that fails.
+     *
+     * @return always 0, as the dataset is done with either way
+     */
+    private long upload(ServiceQueue<InboundMessage> serviceQueue, InboundMessage message, Timer deliveredTimer,
+                        Timer failedTimer) {
+        String serviceMrn = serviceQueue.getServiceMrn();
+        Subscription subscription = subscriptionService.getSubscriptionByMrn(serviceMrn);
+        if (subscription == null || subscription.getSecomClient() == null) {
+            noClientCounter.increment();
+            return 0;
+        }
+        byte[] payload;
+        try {
+            payload = payloadCompressor.decompress(message.payload());
+        } catch (IOException e) {
+            undecodableCounter.increment();
+            log.error("Could not decode dataset from {} for {}: {}", message.sender(), serviceMrn, e.getMessage());
+            return 0;
+        }
+        try {
+            SECOM_DataProductType productType = message.subject() == null ? null : productTypes.get(message.subject());
+            subscription.getSecomClient().upload(buildUploadObject(subscription, productType, payload));
+            serviceQueue.getCircuitBreaker().onSuccess();
+            deliveredTimer.record(System.nanoTime() - message.receivedAt(), TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            if (serviceQueue.getCircuitBreaker().onFailure()) {
+                circuitOpenedCounter.increment();
+                log.warn("Opened the circuit to {} after repeated failures", serviceMrn);
+            }
+            failedCounter.increment();
+            failedTimer.record(System.nanoTime() - message.receivedAt(), TimeUnit.NANOSECONDS);
+            log.error("Could not upload dataset from {} to {}: {}", message.sender(), serviceMrn, e.getMessage());
+        }
+        return 0;
+    }
+
+    private static UploadObject buildUploadObject(Subscription subscription, SECOM_DataProductType productType,
+                                                  byte[] payload) {
+        SECOM_ExchangeMetadataObject exchangeMetadata = new SECOM_ExchangeMetadataObject();
+        exchangeMetadata.setDataProtection(false);
+        // Datasets that a gateway or the uploader zipped can be passed on as they are
+        exchangeMetadata.setCompressionFlag(CompressibilityEstimator.isZip(payload));
+
+        EnvelopeUploadObject envelope = new EnvelopeUploadObject();
+        envelope.setData(payload);
+        envelope.setContainerType(subscription.getContainerType() == null
+                ? ContainerTypeEnum.S100_DataSet
+                : subscription.getContainerType());
+        envelope.setDataProductType(productType);
+        envelope.setExchangeMetadata(exchangeMetadata);
+        envelope.setFromSubscription(true);
+        envelope.setAckRequest(AckRequestEnum.NO_ACK_REQUESTED);
+        envelope.setTransactionIdentifier(UUID.randomUUID());
+
+        UploadObject uploadObject = new UploadObject();
+        uploadObject.setEnvelope(envelope);
+        return uploadObject;
+    }
+
+    /**
+     * Reads the services to deliver to and the data product types of the subjects from the database, and removes the
+     * queues and meters of services whose subscription is gone once their queue is empty.
+     */
+    private void refreshConsumers() {
+        try {
+            List<Subscription> subscriptions = subscriptionService.getAllSubscriptions();
+            Set<String> current = subscriptions.stream()
+                    .map(Subscription::getServiceMrn)
+                    .collect(Collectors.toUnmodifiableSet());
+            consumers = current;
+            productTypes = productTypesBySubject(subscriptions);
+            for (Consumer consumer : List.copyOf(consumerQueues.values())) {
+                // No new datasets are queued for a service that is no longer a consumer
+                if (!current.contains(consumer.queue().getServiceMrn()) && consumer.queue().isIdle()) {
+                    consumerQueues.remove(consumer.queue().getServiceMrn());
+                    meterRegistry.remove(consumer.deliveredTimer());
+                    meterRegistry.remove(consumer.failedTimer());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not refresh the SECOM services to deliver received datasets to", e);
+        }
+    }
+
+    private static Map<String, SECOM_DataProductType> productTypesBySubject(List<Subscription> subscriptions) {
+        return subscriptions.stream()
+                .filter(subscription -> subscription.getMmsSubject() != null)
+                .filter(subscription -> subscription.getDataProductType() != null)
+                .collect(Collectors.groupingBy(Subscription::getMmsSubject,
+                        Collectors.mapping(Subscription::getDataProductType, Collectors.toSet())))
+                .entrySet().stream()
+                // A subject that carries more than one data product type does not tell which one a dataset is
+                .filter(entry -> entry.getValue().size() == 1)
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey,
+                        entry -> entry.getValue().iterator().next()));
+    }
+
+    private Timer latencyTimer(String serviceMrn, String result) {
+        return Timer.builder("gateway.inbound.delivery.latency")
+                .description("Time from receiving a dataset from MMS until it was uploaded to a SECOM service")
+                .tag("consumer", serviceMrn)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter droppedCounter(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("gateway.inbound.dropped")
+                .description("Number of received datasets that were not uploaded to a SECOM service")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
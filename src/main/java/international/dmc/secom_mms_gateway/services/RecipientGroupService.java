@@ -0,0 +1,131 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import international.dmc.secom_mms_gateway.model.RecipientGroup;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import international.dmc.secom_mms_gateway.repositories.RecipientGroupRepository;
+import international.dmc.secom_mms_gateway.repositories.SubscriptionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Manages the recipient groups that subscriptions can send to, and works out the recipients a subscription sends its
+ * datasets to directly. The members of a group are cached for a short time, so changes made through another instance
+ * using the same database take effect once the cached members have expired.
+ */
+@Service
+@Slf4j
+public class RecipientGroupService {
+
+    private final RecipientGroupRepository recipientGroupRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${international.dmc.secom_mms_gateway.recipient-groups.cache-seconds:60}")
+    private long cacheSeconds;
+
+    private LoadingCache<String, List<String>> members;
+
+    @Autowired
+    public RecipientGroupService(RecipientGroupRepository recipientGroupRepository,
+                                 SubscriptionRepository subscriptionRepository, MeterRegistry meterRegistry) {
+        this.recipientGroupRepository = recipientGroupRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        members = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(cacheSeconds))
+                .recordStats()
+                .build(name -> recipientGroupRepository.findById(name)
+                        .map(recipientGroup -> List.copyOf(recipientGroup.getRecipients()))
+                        .orElse(List.of()));
+        CaffeineCacheMetrics.monitor(meterRegistry, members, "gateway.recipient-groups");
+    }
+
+    /**
+     * @return the recipients the subscription sends to directly, which are those it names followed by the members of
+     * its recipient group without duplicates, or an empty list if it publishes on its subject
+     */
+    public List<String> getRecipients(Subscription subscription) {
+        List<String> named = subscription.getRecipients() != null ? subscription.getRecipients() : List.of();
+        boolean hasGroup = StringUtils.hasText(subscription.getRecipientGroup());
+        if (named.isEmpty() && !hasGroup) {
+            return List.of();
+        }
+        Set<String> recipients = new LinkedHashSet<>(named);
+        if (hasGroup) {
+            recipients.addAll(members.get(subscription.getRecipientGroup()));
+        }
+        return List.copyOf(recipients);
+    }
+
+    public boolean existsRecipientGroup(String name) {
+        return recipientGroupRepository.existsById(name);
+    }
+
+    public RecipientGroup getRecipientGroup(String name) {
+        return recipientGroupRepository.findById(name).orElse(null);
+    }
+
+    public List<RecipientGroup> getAllRecipientGroups() {
+        return (List<RecipientGroup>) recipientGroupRepository.findAll();
+    }
+
+    /**
+     * Creates a recipient group, or replaces the members of an existing one.
+     */
+    public RecipientGroup saveRecipientGroup(RecipientGroup recipientGroup) {
+        Date now = new Date();
+        RecipientGroup existing = getRecipientGroup(recipientGroup.getName());
+        recipientGroup.setCreatedAt(existing != null ? existing.getCreatedAt() : now);
+        recipientGroup.setUpdatedAt(now);
+        RecipientGroup saved = recipientGroupRepository.save(recipientGroup);
+        members.invalidate(recipientGroup.getName());
+        return saved;
+    }
+
+    /**
+     * @return whether the group was removed, which it is not while a subscription still sends to it
+     */
+    public boolean removeRecipientGroup(String name) {
+        if (subscriptionRepository.existsByRecipientGroup(name)) {
+            log.warn("Not removing recipient group {} as subscriptions still send to it", name);
+            return false;
+        }
+        recipientGroupRepository.deleteById(name);
+        members.invalidate(name);
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of calls to one SECOM service, which is served by at most one task at a time, in order, so that a
+ * slow service only holds up its own calls. While the {@link CircuitBreaker} of the service is open, and while a
+ * failed call waits to be retried, the queue is not served at all and no thread is held up by it.
+ *
+ * @param <T> the type of the queued items
+ */
+final class ServiceQueue<T> {
+
+    /**
+     * Makes the call for a queued item. It is only ever called by the task serving the queue.
+     */
+    @FunctionalInterface
+    interface Handler<T> {
+
+        /**
+         * @return 0 if the item is done with, otherwise the number of milliseconds to wait before handling it again
+         */
+        long handle(ServiceQueue<T> queue, T item);
+    }
+
+    private final String serviceMrn;
+    private final int capacity;
+    private final CircuitBreaker circuitBreaker;
+    private final Handler<T> handler;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger backlog;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<T> queue = new ArrayDeque<>();
+    private boolean scheduled;
+    private int attempts;
+
+    /**
+     * @param executor  runs the task serving the queue
+     * @param scheduler only times the retries and the end of an open circuit, and hands the work on to the executor
+     * @param backlog   the number of queued items, shared with the other queues of the same kind
+     */
+    ServiceQueue(String serviceMrn, int capacity, CircuitBreaker circuitBreaker, Handler<T> handler,
+                 Executor executor, ScheduledExecutorService scheduler, AtomicInteger backlog) {
+        this.serviceMrn = serviceMrn;
+        this.capacity = capacity;
+        this.circuitBreaker = circuitBreaker;
+        this.handler = handler;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.backlog = backlog;
+    }
+
+    String getServiceMrn() {
+        return serviceMrn;
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the number of times the item at the head of the queue has already been handled without being done with
+     */
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Queues an item and makes sure a task is serving the queue. Returns immediately.
+     *
+     * @return false if the queue was full and the item has not been queued
+     */
+    boolean offer(T item) {
+        lock.lock();
+        try {
+            if (queue.size() >= capacity) {
+                return false;
+            }
+            queue.add(item);
+            backlog.incrementAndGet();
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this::drain);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether nothing is queued and no task is serving the queue
+     */
+    boolean isIdle() {
+        lock.lock();
+        try {
+            return queue.isEmpty() && !scheduled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Handles the queued items until the queue is empty, the circuit is open or an item has to be retried later.
+     */
+    private void drain() {
+        while (true) {
+            T item;
+            lock.lock();
+            try {
+                item = queue.peek();
+                if (item == null) {
+                    scheduled = false;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            long remainingOpenNanos = circuitBreaker.remainingOpenNanos();
+            if (remainingOpenNanos > 0) {
+                scheduler.schedule(() -> executor.execute(this::drain), remainingOpenNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+
+            long retryDelayMs = handler.handle(this, item);
+            if (retryDelayMs > 0) {
+                attempts++;
+                scheduler.schedule(() -> executor.execute(this::drain), retryDelayMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+            attempts = 0;
+            lock.lock();
+            try {
+                queue.poll();
+                backlog.decrementAndGet();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A read-through cache of subscriptions by service MRN and by subscription id. Unknown MRNs and ids are cached as well,
+ * but only for a short time, so that uploads from unknown services do not reach the database every time.
+ * <p>
+ * Entries are reloaded in the background once they are older than the refresh interval. While such a reload fails,
+ * for example because the database is briefly unavailable, the cached subscription keeps being served until it
+ * expires.
+ */
+class SubscriptionCache {
+
+    private final LoadingCache<String, Optional<Subscription>> byMrn;
+    private final LoadingCache<UUID, Optional<Subscription>> byId;
+
+    SubscriptionCache(Function<String, Subscription> mrnLoader, Function<UUID, Subscription> idLoader, long maxSize,
+                      Duration refreshAfter, Duration expireAfter, Duration negativeExpireAfter,
+                      MeterRegistry meterRegistry) {
+        this.byMrn = build(mrnLoader, maxSize, refreshAfter, expireAfter, negativeExpireAfter);
+        this.byId = build(idLoader, maxSize, refreshAfter, expireAfter, negativeExpireAfter);
+        CaffeineCacheMetrics.monitor(meterRegistry, byMrn, "gateway.subscriptions.by-mrn");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "gateway.subscriptions.by-id");
+    }
+
+    Subscription getByMrn(String serviceMrn) {
+        return byMrn.get(serviceMrn).orElse(null);
+    }
+
+    /**
+     * @return whether the service MRN has been looked up before and can be answered without the database
+     */
+    boolean isCached(String serviceMrn) {
+        return byMrn.getIfPresent(serviceMrn) != null;
+    }
+
+    Subscription getById(UUID subscriptionId) {
+        return byId.get(subscriptionId).orElse(null);
+    }
+
+    /**
+     * Drops everything cached about the subscription to the given service, including unknown subscription ids that
+     * may have been created for it in the meantime.
+     */
+    void invalidate(String serviceMrn) {
+        byMrn.invalidate(serviceMrn);
+        byId.asMap().values().removeIf(subscription -> subscription.isEmpty()
+                || serviceMrn.equals(subscription.get().getServiceMrn()));
+    }
+
+    void invalidateAll() {
+        byMrn.invalidateAll();
+        byId.invalidateAll();
+    }
+
+    private static <K> LoadingCache<K, Optional<Subscription>> build(Function<K, Subscription> loader, long maxSize,
+                                                                     Duration refreshAfter, Duration expireAfter,
+                                                                     Duration negativeExpireAfter) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .<K, Optional<Subscription>>expireAfter(Expiry.writing((key, value) ->
+                        value.isPresent() ? expireAfter : negativeExpireAfter))
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .build(key -> Optional.ofNullable(loader.apply(key)));
+    }
+}
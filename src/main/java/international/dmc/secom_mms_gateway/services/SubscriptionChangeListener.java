@@ -0,0 +1,113 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tells the other gateway instances sharing the database about changed subscriptions, using Postgres LISTEN/NOTIFY
+ * with the service MRN as payload. A dedicated thread keeps a connection listening on the channel. Notifications that
+ * are sent while it is not connected are lost, so the listener is told to drop everything whenever it (re)connects.
+ */
+@Slf4j
+class SubscriptionChangeListener {
+
+    static final String CHANNEL = "subscription_changes";
+
+    private final DataSource dataSource;
+    private final long reconnectDelayMs;
+    private final Consumer<String> changeListener;
+    private final Runnable connectedListener;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    SubscriptionChangeListener(DataSource dataSource, long reconnectDelayMs, Consumer<String> changeListener,
+                               Runnable connectedListener, ThreadFactory threadFactory) {
+        this.dataSource = dataSource;
+        this.reconnectDelayMs = reconnectDelayMs;
+        this.changeListener = changeListener;
+        this.connectedListener = connectedListener;
+        this.thread = threadFactory.newThread(this::run);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Notifies all instances, including this one, that the subscription to the given service has changed.
+     */
+    void notifyChange(String serviceMrn) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            statement.setString(1, CHANNEL);
+            statement.setString(2, serviceMrn);
+            statement.execute();
+        } catch (SQLException e) {
+            log.warn("Could not notify other instances about the change of subscription {}", serviceMrn, e);
+        }
+    }
+
+    void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.debug("Listening for subscription changes");
+                connectedListener.run();
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) reconnectDelayMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        changeListener.accept(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Lost the connection listening for subscription changes, retrying in {} ms",
+                        reconnectDelayMs, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
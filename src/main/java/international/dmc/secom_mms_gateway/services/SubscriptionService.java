@@ -19,7 +19,10 @@ package international.dmc.secom_mms_gateway.services;
 import international.dmc.secom_mms_gateway.exceptions.SubscriptionException;
 import international.dmc.secom_mms_gateway.exceptions.SubscriptionFailure;
 import international.dmc.secom_mms_gateway.model.Subscription;
+import international.dmc.secom_mms_gateway.repositories.RecipientGroupRepository;
 import international.dmc.secom_mms_gateway.repositories.SubscriptionRepository;
+import international.dmc.secom_mms_gateway.utils.ThreadFactories;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.grad.secom.core.base.SecomCertificateProvider;
 import org.grad.secom.core.base.SecomSignatureProvider;
@@ -29,10 +32,15 @@ import org.grad.secom.core.models.SubscriptionResponseObject;
 import org.grad.secom.springboot3.components.SecomClient;
 import org.grad.secom.springboot3.components.SecomConfigProperties;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
 import java.net.URI;
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -40,39 +48,86 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Manages the subscriptions of the gateway. Lookups are served from a {@link SubscriptionCache}, which is invalidated
+ * whenever a subscription is added or removed, on this instance or, through Postgres LISTEN/NOTIFY, on any other
+ * instance using the same database.
+ */
 @Service
 @Slf4j
 public class SubscriptionService {
     private final SubscriptionRepository subscriptionRepository;
+    private final RecipientGroupRepository recipientGroupRepository;
 
     private final SecomConfigProperties secomConfigProperties;
     private final SecomCertificateProvider secomCertificateProvider;
     private final SecomSignatureProvider secomSignatureProvider;
+    private final DataSource dataSource;
+    private final MeterRegistry meterRegistry;
     private final Map<String, SecomClient> secomClients = new ConcurrentHashMap<>();
 
+    @Value("${international.dmc.secom_mms_gateway.subscription-cache.max-size:10000}")
+    private long cacheMaxSize;
+    @Value("${international.dmc.secom_mms_gateway.subscription-cache.refresh-after-seconds:60}")
+    private long cacheRefreshAfterSeconds;
+    @Value("${international.dmc.secom_mms_gateway.subscription-cache.expire-after-seconds:3600}")
+    private long cacheExpireAfterSeconds;
+    @Value("${international.dmc.secom_mms_gateway.subscription-cache.negative-expire-after-seconds:10}")
+    private long cacheNegativeExpireAfterSeconds;
+    @Value("${international.dmc.secom_mms_gateway.subscription-cache.notify.enabled:true}")
+    private boolean notifyEnabled;
+    @Value("${international.dmc.secom_mms_gateway.subscription-cache.notify.reconnect-delay-ms:5000}")
+    private long notifyReconnectDelayMs;
+    @Value("${" + ThreadFactories.VIRTUAL_THREADS_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    private SubscriptionCache subscriptionCache;
+    private SubscriptionChangeListener changeListener;
+
     @Autowired
-    public SubscriptionService(SubscriptionRepository subscriptionRepository, SecomConfigProperties secomConfigProperties, SecomCertificateProvider secomCertificateProvider, SecomSignatureProvider secomSignatureProvider) {
+    public SubscriptionService(SubscriptionRepository subscriptionRepository, RecipientGroupRepository recipientGroupRepository, SecomConfigProperties secomConfigProperties, SecomCertificateProvider secomCertificateProvider, SecomSignatureProvider secomSignatureProvider, DataSource dataSource, MeterRegistry meterRegistry) {
         this.subscriptionRepository = subscriptionRepository;
+        this.recipientGroupRepository = recipientGroupRepository;
         this.secomConfigProperties = secomConfigProperties;
         this.secomCertificateProvider = secomCertificateProvider;
         this.secomSignatureProvider = secomSignatureProvider;
+        this.dataSource = dataSource;
+        this.meterRegistry = meterRegistry;
     }
 
-    public Subscription getSubscriptionByMrn(String serviceMrn) {
-        var subscription = subscriptionRepository.getSubscriptionByServiceMrn(serviceMrn);
-        if (subscription != null && populateSecomClient(subscription)) {
-            return subscription;
+    @PostConstruct
+    public void init() {
+        subscriptionCache = new SubscriptionCache(this::loadSubscriptionByMrn, this::loadSubscriptionById,
+                cacheMaxSize, Duration.ofSeconds(cacheRefreshAfterSeconds), Duration.ofSeconds(cacheExpireAfterSeconds),
+                Duration.ofSeconds(cacheNegativeExpireAfterSeconds), meterRegistry);
+        if (notifyEnabled) {
+            changeListener = new SubscriptionChangeListener(dataSource, notifyReconnectDelayMs,
+                    this::onSubscriptionChanged, subscriptionCache::invalidateAll,
+                    ThreadFactories.create("subscription-listener", virtualThreads));
+            changeListener.start();
         }
-        return null;
     }
 
-    public Subscription getSubscriptionById(String subscriptionId) {
-        UUID uuid = UUID.fromString(subscriptionId);
-        var subscription = subscriptionRepository.getSubscriptionBySubscriptionId(uuid);
-        if (subscription != null && populateSecomClient(subscription)) {
-            return subscription;
+    @PreDestroy
+    public void preDestroy() {
+        if (changeListener != null) {
+            changeListener.close();
         }
-        return null;
+    }
+
+    public Subscription getSubscriptionByMrn(String serviceMrn) {
+        return subscriptionCache.getByMrn(serviceMrn);
+    }
+
+    /**
+     * @return whether {@link #getSubscriptionByMrn(String)} can answer for the service MRN without the database
+     */
+    public boolean isSubscriptionCached(String serviceMrn) {
+        return subscriptionCache.isCached(serviceMrn);
+    }
+
+    public Subscription getSubscriptionById(String subscriptionId) {
+        return subscriptionCache.getById(UUID.fromString(subscriptionId));
     }
 
     public List<Subscription> getAllSubscriptions() {
@@ -80,9 +135,19 @@ public class SubscriptionService {
     }
 
     public Subscription addSubscription(Subscription subscription) throws SubscriptionException {
+        // Without any of them the datasets received from the service could not be published anywhere
+        if (!StringUtils.hasText(subscription.getMmsSubject())
+                && (subscription.getRecipients() == null || subscription.getRecipients().isEmpty())
+                && !StringUtils.hasText(subscription.getRecipientGroup())) {
+            throw new SubscriptionException(SubscriptionFailure.NO_DESTINATION);
+        }
         if (subscriptionRepository.existsByServiceMrn(subscription.getServiceMrn())) {
             throw new SubscriptionException(SubscriptionFailure.SUBSCRIPTION_ALREADY_EXISTS);
         }
+        if (StringUtils.hasText(subscription.getRecipientGroup())
+                && !recipientGroupRepository.existsById(subscription.getRecipientGroup())) {
+            throw new SubscriptionException(SubscriptionFailure.UNKNOWN_RECIPIENT_GROUP);
+        }
         if (!populateSecomClient(subscription)) {
             throw new SubscriptionException(SubscriptionFailure.SECOM_CLIENT_CREATION_FAILED);
         }
@@ -105,18 +170,51 @@ public class SubscriptionService {
         subscription.setUpdatedAt(now);
 
         subscriptionRepository.save(subscription);
+        publishChange(subscription.getServiceMrn());
         return subscription;
     }
 
     public boolean unsubscribeAndRemoveSubscription(String serviceMrn) {
         if (!unsubscribeFromService(serviceMrn)) return false;
         subscriptionRepository.deleteByServiceMrn(serviceMrn);
+        publishChange(serviceMrn);
         return true;
     }
 
     public void removeSubscription(String serviceMrn) {
         subscriptionRepository.deleteByServiceMrn(serviceMrn);
         secomClients.remove(serviceMrn);
+        publishChange(serviceMrn);
+    }
+
+    private Subscription loadSubscriptionByMrn(String serviceMrn) {
+        var subscription = subscriptionRepository.getSubscriptionByServiceMrn(serviceMrn);
+        if (subscription != null && populateSecomClient(subscription)) {
+            return subscription;
+        }
+        return null;
+    }
+
+    private Subscription loadSubscriptionById(UUID subscriptionId) {
+        var subscription = subscriptionRepository.getSubscriptionBySubscriptionId(subscriptionId);
+        if (subscription != null && populateSecomClient(subscription)) {
+            return subscription;
+        }
+        return null;
+    }
+
+    private void publishChange(String serviceMrn) {
+        subscriptionCache.invalidate(serviceMrn);
+        if (changeListener != null) {
+            changeListener.notifyChange(serviceMrn);
+        }
+    }
+
+    private void onSubscriptionChanged(String serviceMrn) {
+        log.debug("Subscription to {} has changed", serviceMrn);
+        // The service URL may have changed as well
+        secomClients.remove(serviceMrn);
+        subscriptionCache.invalidate(serviceMrn);
     }
 
     private boolean unsubscribeFromService(String serviceMrn) {
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import international.dmc.secom_mms_gateway.codec.PayloadCompressor;
+import international.dmc.secom_mms_gateway.components.CertificateValidator;
+import international.dmc.secom_mms_gateway.components.SignatureVerifier;
+import international.dmc.secom_mms_gateway.components.UploaderCertificateCache;
+import international.dmc.secom_mms_gateway.exceptions.CertificateValidationException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import international.dmc.secom_mms_gateway.mms.MMSAgent;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import international.dmc.secom_mms_gateway.utils.Base64Scanner;
+import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.models.AcknowledgementObject;
+import org.grad.secom.core.models.EnvelopeAckObject;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.grad.secom.core.models.UploadObject;
+import org.grad.secom.core.models.UploadResponseObject;
+import org.grad.secom.core.models.enums.AckRequestEnum;
+import org.grad.secom.core.models.enums.AckTypeEnum;
+import org.grad.secom.core.models.enums.SECOM_ResponseCodeEnum;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Handles SECOM uploads for both the servlet and the reactive endpoints: the uploader certificate is checked, the
+ * subscription of the uploader is looked up, the dataset is decoded and compressed, and once the certificate chain and
+ * the signature have been verified in the background it is published to the subject or the recipients of the
+ * subscription. The uploader is only acknowledged once the dataset has been accepted for delivery, an upload that
+ * could not be published fails instead, so that the uploader knows it has to send it again.
+ */
+@Service
+@Slf4j
+public class UploadService {
+
+    @Value("${international.dmc.secom_mms_gateway.upload.require-signature:true}")
+    private boolean requireSignature;
+
+    private final SubscriptionService subscriptionService;
+    private final RecipientGroupService recipientGroupService;
+    private final MMSAgent mmsAgent;
+    private final PayloadCompressor payloadCompressor;
+    private final UploaderCertificateCache uploaderCertificateCache;
+    private final AcknowledgementDispatcher acknowledgementDispatcher;
+    private final SignatureVerifier signatureVerifier;
+    private final CertificateValidator certificateValidator;
+
+    @Autowired
+    public UploadService(SubscriptionService subscriptionService, RecipientGroupService recipientGroupService,
+                         MMSAgent mmsAgent, PayloadCompressor payloadCompressor,
+                         UploaderCertificateCache uploaderCertificateCache,
+                         AcknowledgementDispatcher acknowledgementDispatcher, SignatureVerifier signatureVerifier,
+                         CertificateValidator certificateValidator) {
+        this.subscriptionService = subscriptionService;
+        this.recipientGroupService = recipientGroupService;
+        this.mmsAgent = mmsAgent;
+        this.payloadCompressor = payloadCompressor;
+        this.uploaderCertificateCache = uploaderCertificateCache;
+        this.acknowledgementDispatcher = acknowledgementDispatcher;
+        this.signatureVerifier = signatureVerifier;
+        this.certificateValidator = certificateValidator;
+    }
+
+    /**
+     * Handles an upload. Only the uploader certificate, which is usually cached, is looked at on the calling thread.
+     * Looking up a subscription that is not cached, compressing, recipient lookups and signing run on the given
+     * executor, which may be a direct executor for callers that are allowed to block.
+     *
+     * @param executor runs the steps of the upload that may block or take a while
+     * @return a future of the response to the uploader, which fails with an {@link MmsPublishException} if the dataset
+     * could not be handed to the edge router, for example because the outbound queues are full, so that the uploader
+     * can be told to retry later, and with any other exception if it could not be published at all
+     */
+    public CompletableFuture<UploadResponseObject> upload(UploadObject uploadObject, Executor executor) {
+        EnvelopeUploadObject envelope = uploadObject.getEnvelope();
+        UploaderCertificateCache.UploaderCertificate uploaderCertificate;
+        try {
+            uploaderCertificate = uploaderCertificateCache.get(envelope.getEnvelopeSignatureCertificate());
+        } catch (CertificateException e) {
+            log.error("Could not parse certificate in upload object", e);
+            return CompletableFuture.completedFuture(responseWithCode(SECOM_ResponseCodeEnum.INVALID_CERTIFICATE));
+        }
+        if (!uploaderCertificate.isValidAt(Instant.now())) {
+            log.warn("The certificate in the upload object is not valid between {} and {}",
+                    uploaderCertificate.notBefore(), uploaderCertificate.notAfter());
+            return CompletableFuture.completedFuture(responseWithCode(SECOM_ResponseCodeEnum.INVALID_CERTIFICATE));
+        }
+        // The chain and the signature are checked in the background while the subscription is looked up and the data
+        // is compressed, and only waited for before publishing
+        CompletableFuture<Boolean> certificateValid = certificateValidator.validate(uploaderCertificate.certificate())
+                .handle((result, throwable) -> isCertificateValid(throwable));
+        CompletableFuture<Boolean> signatureValid = (requireSignature
+                ? signatureVerifier.verifyUpload(envelope, uploaderCertificate.certificate())
+                : CompletableFuture.completedFuture(true))
+                .handle(UploadService::isSignatureValid);
+        String uploaderMrn = uploaderCertificate.mrn();
+        log.debug("Uploader MRN is {}", uploaderMrn);
+
+        return findSubscription(uploaderMrn, executor).thenComposeAsync(subscription -> {
+            if (subscription == null) {
+                UploadResponseObject uploadResponseObject =
+                        responseWithCode(SECOM_ResponseCodeEnum.MISSING_REQUIRED_DATA_FOR_SERVICE);
+                uploadResponseObject.setResponseText("No subscription found");
+                return CompletableFuture.completedFuture(uploadResponseObject);
+            }
+            byte[] data = compress(envelope, subscription);
+            return certificateValid.thenCombine(signatureValid, (certificate, signature) -> {
+                if (!certificate) {
+                    return SECOM_ResponseCodeEnum.INVALID_CERTIFICATE;
+                }
+                if (!signature) {
+                    log.warn("The signature of the upload from {} could not be verified", uploaderMrn);
+                    return SECOM_ResponseCodeEnum.FAILED_SIGNATURE_VERIFICATION;
+                }
+                return null;
+            }).thenComposeAsync(failure -> {
+                if (failure != null) {
+                    return CompletableFuture.completedFuture(responseWithCode(failure));
+                }
+                if (!mmsAgent.canPublish(data.length)) {
+                    log.warn("The dataset from {} exceeds the MMS payload size limit", uploaderMrn);
+                    UploadResponseObject uploadResponseObject =
+                            responseWithCode(SECOM_ResponseCodeEnum.INVALID_REQUEST);
+                    uploadResponseObject.setResponseText("The dataset exceeds the MMS payload size limit");
+                    return CompletableFuture.completedFuture(uploadResponseObject);
+                }
+                return publish(data, subscription).thenApply(published -> {
+                    acknowledge(envelope, subscription);
+                    return new UploadResponseObject();
+                });
+            }, executor);
+        }, executor);
+    }
+
+    private CompletableFuture<Subscription> findSubscription(String uploaderMrn, Executor executor) {
+        if (uploaderMrn == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (subscriptionService.isSubscriptionCached(uploaderMrn)) {
+            return CompletableFuture.completedFuture(subscriptionService.getSubscriptionByMrn(uploaderMrn));
+        }
+        return CompletableFuture.supplyAsync(() -> subscriptionService.getSubscriptionByMrn(uploaderMrn), executor);
+    }
+
+    private byte[] compress(EnvelopeUploadObject envelope, Subscription subscription) {
+        // The signature covers the data as it was sent, so a second Base64 encoding is decoded into a copy
+        byte[] data = Base64Scanner.decodeIfBase64(envelope.getData());
+        try {
+            data = payloadCompressor.compress(data, subscription.getDataProductType(),
+                    envelope.getExchangeMetadata().getCompressionFlag());
+        } catch (IOException e) {
+            log.error("Could not compress received dataset", e);
+        }
+        return data;
+    }
+
+    /**
+     * @return a future that is completed once the dataset has been accepted for delivery, and that fails if it could
+     * not be published
+     */
+    private CompletableFuture<Void> publish(byte[] data, Subscription subscription) {
+        CompletableFuture<Void> published;
+        try {
+            List<String> recipients = recipientGroupService.getRecipients(subscription);
+            published = recipients.isEmpty()
+                    ? mmsAgent.publishMessage(data, subscription.getMmsSubject())
+                    : mmsAgent.publishDirect(data, recipients);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
+            published = CompletableFuture.failedFuture(e);
+        }
+        return published.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof MmsPublishException publishException
+                    && publishException.getMmsPublishFailure() == MmsPublishFailure.QUEUE_FULL) {
+                log.warn("Could not publish received dataset as the outbound queues are full");
+            } else {
+                log.error("Could not publish received dataset", cause);
+            }
+        });
+    }
+
+    private void acknowledge(EnvelopeUploadObject envelope, Subscription subscription) {
+        AckRequestEnum ackRequest = envelope.getAckRequest();
+        if (ackRequest == null || ackRequest == AckRequestEnum.NO_ACK_REQUESTED) {
+            return;
+        }
+        EnvelopeAckObject envelopeAckObject = new EnvelopeAckObject();
+        envelopeAckObject.setCreatedAt(LocalDateTime.now());
+        envelopeAckObject.setTransactionIdentifier(envelope.getTransactionIdentifier());
+        envelopeAckObject.setAckType(AckTypeEnum.DELIVERED_ACK);
+
+        AcknowledgementObject acknowledgementObject = new AcknowledgementObject();
+        acknowledgementObject.setEnvelope(envelopeAckObject);
+        acknowledgementDispatcher.submit(subscription.getServiceMrn(), subscription.getSecomClient(),
+                acknowledgementObject);
+    }
+
+    private static boolean isCertificateValid(Throwable throwable) {
+        if (throwable == null) {
+            return true;
+        }
+        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        if (cause instanceof CertificateValidationException validationException) {
+            log.warn("The certificate in the upload object is not valid: {}", validationException.getMessage());
+        } else {
+            log.error("Could not validate the certificate in the upload object", cause);
+        }
+        return false;
+    }
+
+    private static boolean isSignatureValid(Boolean valid, Throwable throwable) {
+        if (throwable != null) {
+            log.error("Could not verify the signature of the upload", throwable);
+            return false;
+        }
+        return valid;
+    }
+
+    private static UploadResponseObject responseWithCode(SECOM_ResponseCodeEnum responseCode) {
+        UploadResponseObject uploadResponseObject = new UploadResponseObject();
+        uploadResponseObject.setSECOM_ResponseCode(responseCode);
+        return uploadResponseObject;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+
+/**
+ * Detects and decodes Base64 in byte arrays without allocating. Data is only treated as Base64 if the basic decoder of
+ * {@link java.util.Base64} would accept it, so a single pass over the bytes replaces trying to decode them and
+ * catching the exception, which is expensive for the binary payloads it fails on.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Base64Scanner {
+
+    private static final byte[] DECODE_TABLE = new byte[256];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * @return whether the first length bytes of the data are Base64 with an optional padding
+     */
+    public static boolean isBase64(byte[] data, int length) {
+        if (length == 0) {
+            return false;
+        }
+        int padding = 0;
+        while (padding < 2 && padding < length && data[length - 1 - padding] == '=') {
+            padding++;
+        }
+        if (padding > 0 ? length % 4 != 0 : length % 4 == 1) {
+            return false;
+        }
+        for (int i = 0; i < length - padding; i++) {
+            if (DECODE_TABLE[data[i] & 0xff] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the first length bytes of the data into the start of the same array. The data must have been checked
+     * with {@link #isBase64(byte[], int)} first.
+     *
+     * @return the number of decoded bytes
+     */
+    public static int decodeInPlace(byte[] data, int length) {
+        while (length > 0 && data[length - 1] == '=') {
+            length--;
+        }
+        int in = 0;
+        int out = 0;
+        int fullQuads = length - length % 4;
+        while (in < fullQuads) {
+            int bits = DECODE_TABLE[data[in++] & 0xff] << 18
+                    | DECODE_TABLE[data[in++] & 0xff] << 12
+                    | DECODE_TABLE[data[in++] & 0xff] << 6
+                    | DECODE_TABLE[data[in++] & 0xff];
+            data[out++] = (byte) (bits >> 16);
+            data[out++] = (byte) (bits >> 8);
+            data[out++] = (byte) bits;
+        }
+        int remaining = length - in;
+        if (remaining >= 2) {
+            int bits = DECODE_TABLE[data[in] & 0xff] << 18 | DECODE_TABLE[data[in + 1] & 0xff] << 12;
+            if (remaining == 3) {
+                bits |= DECODE_TABLE[data[in + 2] & 0xff] << 6;
+            }
+            data[out++] = (byte) (bits >> 16);
+            if (remaining == 3) {
+                data[out++] = (byte) (bits >> 8);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decodes data that is Base64 encoded into a new array, leaving the given array untouched.
+     *
+     * @return the decoded data, or the given array if it is not Base64
+     */
+    public static byte[] decodeIfBase64(byte[] data) {
+        if (!isBase64(data, data.length)) {
+            return data;
+        }
+        byte[] decoded = data.clone();
+        return Arrays.copyOf(decoded, decodeInPlace(decoded, decoded.length));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of equally sized byte buffers. Requests for buffers larger than the pooled size are served with a
+ * freshly allocated buffer which is simply dropped when it is released.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    public ByteBufferPool(int bufferSize, int maxBuffers, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.buffers = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * Returns a cleared buffer with at least the given capacity. The buffer must be handed back using
+     * {@link #release(ByteBuffer)} once it is no longer used.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            return allocate(minCapacity);
+        }
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return allocate(bufferSize);
+        }
+        return buffer.clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+            buffers.offer(buffer.clear());
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getAvailable() {
+        return buffers.size();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -16,37 +16,63 @@
 
 package international.dmc.secom_mms_gateway.utils;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.grad.secom.core.base.DigitalSignatureCertificate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.InvalidKeyException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.Signature;
-import java.security.SignatureException;
-import java.security.UnrecoverableEntryException;
+import java.security.PrivateKey;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Holds the key material of the gateway in memory. The keystores and the root certificate are loaded once on startup
+ * and atomically replaced whenever one of the underlying files changes on disk, so keys can be rotated without a
+ * restart.
+ */
 @Slf4j
 @Component
 public class KeystoreUtil {
 
+    @Value("${spring.application.name}")
+    private String applicationName;
+
     @Value("${international.dmc.secom_mms_gateway.keystore.path}")
     private String mmsKeystorePath;
     @Value("${international.dmc.secom_mms_gateway.keystore.password}")
     private String mmsKeystorePassword;
-    @Value("${international.dmc.secom_mms_gateway.mms.keypair.signing-algorithm:SHA384withECDSA}")
-    private String mmsSignatureAlgorithm;
     @Value("${international.dmc.secom_mms_gateway.keystore.alias}")
     private String mmsKeyAlias;
+    @Value("${international.dmc.secom_mms_gateway.keystore.watch:true}")
+    private boolean watchForChanges;
+    @Value("${international.dmc.secom_mms_gateway.keystore.reload-delay-ms:500}")
+    private long reloadDelayMs;
 
     @Value("${secom.security.ssl.keystore}")
     private String secomKeystorePath;
@@ -58,56 +84,227 @@ public class KeystoreUtil {
     @Value("${international.dmc.secom_mms_gateway.rootCA.path:root.pem}")
     private String rootCertificatePath;
 
-    private final SecureRandom secureRandom = new SecureRandom();
+    private final AtomicReference<Credentials> credentials = new AtomicReference<>();
+
+    private final Counter reloadSuccessCounter;
+    private final Counter reloadFailureCounter;
+    private final Timer reloadTimer;
+
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    /**
+     * An immutable snapshot of all key material used by the gateway.
+     *
+     * @param generation increased by one every time the credentials are reloaded
+     */
+    public record Credentials(long generation,
+                              KeyStore mmsKeyStore,
+                              PrivateKey mmsPrivateKey,
+                              KeyStore secomKeyStore,
+                              PrivateKey secomPrivateKey,
+                              X509Certificate secomCertificate,
+                              X509Certificate rootCertificate,
+                              DigitalSignatureCertificate digitalSignatureCertificate) {
+    }
 
-    public byte[] signDataMMS(byte[] data) throws NoSuchAlgorithmException, CertificateException, KeyStoreException,
-            IOException, UnrecoverableEntryException, InvalidKeyException, SignatureException {
-        return signData(data, mmsSignatureAlgorithm, mmsKeystorePath, mmsKeystorePassword, mmsKeyAlias);
+    @Autowired
+    public KeystoreUtil(MeterRegistry meterRegistry) {
+        this.reloadSuccessCounter = Counter.builder("gateway.credentials.reloads")
+                .description("Number of times the credentials have been loaded")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.reloadFailureCounter = Counter.builder("gateway.credentials.reloads")
+                .description("Number of times the credentials have been loaded")
+                .tag("result", "failure")
+                .register(meterRegistry);
+        this.reloadTimer = Timer.builder("gateway.credentials.reload.time")
+                .description("Time spent loading keystores and certificates")
+                .register(meterRegistry);
+        Gauge.builder("gateway.credentials.generation", credentials, c -> c.get() == null ? 0 : c.get().generation())
+                .description("Generation of the credentials currently in use")
+                .register(meterRegistry);
     }
 
-    public byte[] signDataSecom(byte[] data, String secomSignatureAlgorithm) throws CertificateException,
-            KeyStoreException, IOException, NoSuchAlgorithmException, UnrecoverableEntryException, InvalidKeyException,
-            SignatureException {
-        return signData(data, secomSignatureAlgorithm, secomKeystorePath, secomKeystorePassword, secomKeyAlias);
+    @PostConstruct
+    public void init() throws GeneralSecurityException, IOException {
+        long start = System.nanoTime();
+        credentials.set(loadCredentials(1));
+        reloadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        reloadSuccessCounter.increment();
+        if (watchForChanges) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
     }
 
-    private byte[] signData(byte[] data, String signatureAlgorithm, String keyStorePath, String keystorePassword, String keystoreAlias) throws CertificateException, KeyStoreException,
-            IOException, NoSuchAlgorithmException, UnrecoverableEntryException, InvalidKeyException,
-            SignatureException {
-        KeyStore keyStore = KeyStore.getInstance(new File(keyStorePath), keystorePassword.toCharArray());
-        KeyStore.ProtectionParameter protectionParameter = new KeyStore.PasswordProtection(keystorePassword.toCharArray());
-        KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) keyStore.getEntry(keystoreAlias, protectionParameter);
+    public Credentials getCredentials() {
+        return credentials.get();
+    }
 
-        Signature signature = Signature.getInstance(signatureAlgorithm);
-        signature.initSign(privateKeyEntry.getPrivateKey(), secureRandom);
-        signature.update(data);
-        return signature.sign();
+    /**
+     * Loads all key material from disk again and swaps it in if successful. If loading fails the current credentials
+     * are kept.
+     *
+     * @return whether the credentials were reloaded
+     */
+    public boolean reload() {
+        long start = System.nanoTime();
+        try {
+            Credentials current = credentials.get();
+            credentials.set(loadCredentials(current == null ? 1 : current.generation() + 1));
+            reloadSuccessCounter.increment();
+            log.info("Reloaded credentials from {}", mmsKeystorePath);
+            return true;
+        } catch (GeneralSecurityException | IOException e) {
+            reloadFailureCounter.increment();
+            log.error("Could not reload credentials, keeping the current ones", e);
+            return false;
+        } finally {
+            reloadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
-    public KeyStore getMmsKeystore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
-        return KeyStore.getInstance(new File(mmsKeystorePath), mmsKeystorePassword.toCharArray());
+    public KeyStore getMmsKeystore() {
+        return credentials.get().mmsKeyStore();
     }
 
     public char[] getMmsKeystorePassword() {
         return mmsKeystorePassword.toCharArray();
     }
 
-    public KeyStore getSecomKeystore() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
-        return KeyStore.getInstance(new File(secomKeystorePath), secomKeystorePassword.toCharArray());
+    public KeyStore getSecomKeystore() {
+        return credentials.get().secomKeyStore();
     }
 
-    public X509Certificate getSigningSecomCertificate() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException {
-        KeyStore keyStore = getSecomKeystore();
-        return (X509Certificate) keyStore.getCertificate(secomKeyAlias);
+    public X509Certificate getSigningSecomCertificate() {
+        return credentials.get().secomCertificate();
     }
 
     public X509Certificate getRootCertificate() {
+        return credentials.get().rootCertificate();
+    }
+
+    public DigitalSignatureCertificate getDigitalSignatureCertificate() {
+        return credentials.get().digitalSignatureCertificate();
+    }
+
+    private Credentials loadCredentials(long generation) throws GeneralSecurityException, IOException {
+        KeyStore mmsKeyStore = KeyStore.getInstance(new File(mmsKeystorePath), mmsKeystorePassword.toCharArray());
+        KeyStore secomKeyStore;
+        if (mmsKeystorePath.equals(secomKeystorePath) && mmsKeystorePassword.equals(secomKeystorePassword)) {
+            secomKeyStore = mmsKeyStore;
+        } else {
+            secomKeyStore = KeyStore.getInstance(new File(secomKeystorePath), secomKeystorePassword.toCharArray());
+        }
+
+        PrivateKey mmsPrivateKey = getPrivateKey(mmsKeyStore, mmsKeyAlias, mmsKeystorePassword);
+        PrivateKey secomPrivateKey = getPrivateKey(secomKeyStore, secomKeyAlias, secomKeystorePassword);
+        X509Certificate secomCertificate = (X509Certificate) secomKeyStore.getCertificate(secomKeyAlias);
+        if (secomCertificate == null) {
+            throw new KeyStoreException("No certificate found for alias " + secomKeyAlias);
+        }
+        X509Certificate rootCertificate = loadRootCertificate();
+
+        DigitalSignatureCertificate digitalSignatureCertificate = new DigitalSignatureCertificate();
+        digitalSignatureCertificate.setCertificateAlias(applicationName);
+        digitalSignatureCertificate.setCertificate(secomCertificate);
+        digitalSignatureCertificate.setPublicKey(secomCertificate.getPublicKey());
+        digitalSignatureCertificate.setRootCertificate(rootCertificate);
+
+        return new Credentials(generation, mmsKeyStore, mmsPrivateKey, secomKeyStore, secomPrivateKey,
+                secomCertificate, rootCertificate, digitalSignatureCertificate);
+    }
+
+    private PrivateKey getPrivateKey(KeyStore keyStore, String alias, String password) throws GeneralSecurityException {
+        KeyStore.ProtectionParameter protectionParameter = new KeyStore.PasswordProtection(password.toCharArray());
+        KeyStore.Entry entry = keyStore.getEntry(alias, protectionParameter);
+        if (!(entry instanceof KeyStore.PrivateKeyEntry privateKeyEntry)) {
+            throw new KeyStoreException("No private key found for alias " + alias);
+        }
+        return privateKeyEntry.getPrivateKey();
+    }
+
+    /**
+     * Uploads are validated against the root certificate, so a file that cannot be read, for example because it is
+     * being replaced, fails loading like a broken keystore does rather than leaving the gateway without a trust anchor.
+     */
+    private X509Certificate loadRootCertificate() throws CertificateException, IOException {
         log.debug("Getting root certificate");
         try (FileInputStream fis = new FileInputStream(rootCertificatePath)) {
-            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(fis);
-        } catch (IOException | CertificateException e) {
-            log.debug("Error getting root certificate", e);
-            return null;
+            if (!(CertificateFactory.getInstance("X.509").generateCertificate(fis)
+                    instanceof X509Certificate rootCertificate)) {
+                throw new CertificateException("The root certificate in " + rootCertificatePath + " is not X.509");
+            }
+            return rootCertificate;
+        }
+    }
+
+    private void startWatcher() throws IOException {
+        Set<Path> watchedFiles = new HashSet<>();
+        for (String path : new String[]{mmsKeystorePath, secomKeystorePath, rootCertificatePath}) {
+            if (StringUtils.hasText(path)) {
+                watchedFiles.add(Path.of(path).toAbsolutePath().normalize());
+            }
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        for (Path file : watchedFiles) {
+            Path directory = file.getParent();
+            if (directory != null && directory.toFile().isDirectory() && directories.add(directory)) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+
+        watcherThread = ThreadFactories.create("credential-watcher", false)
+                .newThread(() -> watchForChanges(watchedFiles));
+        watcherThread.start();
+    }
+
+    private void watchForChanges(Set<Path> watchedFiles) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey watchKey = watchService.take();
+                boolean changed = isRelevant(watchKey, watchedFiles);
+                if (changed) {
+                    // Keystores are usually replaced by writing them in several steps, so wait for things to settle
+                    Thread.sleep(reloadDelayMs);
+                    WatchKey pending;
+                    while ((pending = watchService.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Credential watcher was closed");
+        }
+    }
+
+    private boolean isRelevant(WatchKey watchKey, Set<Path> watchedFiles) {
+        Path directory = (Path) watchKey.watchable();
+        boolean relevant = false;
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || watchedFiles.contains(directory.resolve((Path) event.context()))) {
+                relevant = true;
+            }
         }
+        watchKey.reset();
+        return relevant;
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.security.SecureRandom;
+
+/**
+ * Creates {@link SSLContext}s that are backed by OpenSSL through netty-tcnative. The returned contexts only support
+ * creating {@link SSLEngine}s, which is all that engine based clients such as the Tomcat WebSocket client need.
+ */
+public final class OpenSslContextFactory {
+
+    private OpenSslContextFactory() {
+    }
+
+    /**
+     * @return whether the native OpenSSL library could be loaded on this platform
+     */
+    public static boolean isAvailable() {
+        return OpenSsl.isAvailable();
+    }
+
+    /**
+     * Creates a client context that authenticates with the keys of the given key manager factory and trusts the
+     * default trust store of the JDK.
+     */
+    public static SSLContext createClientContext(KeyManagerFactory keyManagerFactory, int sessionTimeoutSeconds)
+            throws SSLException {
+        SslContext sslContext = SslContextBuilder.forClient()
+                .sslProvider(SslProvider.OPENSSL)
+                .keyManager(keyManagerFactory)
+                .sessionTimeout(sessionTimeoutSeconds)
+                .build();
+        return new EngineOnlySslContext(sslContext);
+    }
+
+    private static final class EngineOnlySslContext extends SSLContext {
+        private EngineOnlySslContext(SslContext sslContext) {
+            super(new EngineOnlySslContextSpi(sslContext), null, "TLS");
+        }
+    }
+
+    private static final class EngineOnlySslContextSpi extends SSLContextSpi {
+        private final SslContext sslContext;
+
+        private EngineOnlySslContextSpi(SslContext sslContext) {
+            this.sslContext = sslContext;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) {
+            throw new UnsupportedOperationException("The OpenSSL context is initialized when it is created");
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            throw new UnsupportedOperationException("The OpenSSL context only supports SSL engines");
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            throw new UnsupportedOperationException("The OpenSSL context only supports SSL engines");
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return sslContext.newEngine(ByteBufAllocator.DEFAULT);
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            // Passing the peer lets OpenSSL look up a cached session to resume
+            return sslContext.newEngine(ByteBufAllocator.DEFAULT, host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return sslContext.isServer() ? sslContext.sessionContext() : null;
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return sslContext.isClient() ? sslContext.sessionContext() : null;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.utils;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream that collects the written bytes in a heap buffer taken from a {@link ByteBufferPool}. When the
+ * buffer is full it is replaced by one of twice the size. The buffer is handed back to the pool when the stream is
+ * closed, so the bytes have to be used or copied before that.
+ */
+public class PooledOutputStream extends OutputStream {
+
+    private final ByteBufferPool pool;
+    private ByteBuffer buffer;
+
+    public PooledOutputStream(ByteBufferPool pool, int initialCapacity) {
+        this.pool = pool;
+        this.buffer = acquire(initialCapacity);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        buffer.put(b, off, len);
+    }
+
+    /**
+     * @return the backing array of the buffer, of which the first {@link #size()} bytes have been written
+     */
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int required = buffer.position() + length;
+        if (required < 0) {
+            throw new OutOfMemoryError("Required buffer size too large");
+        }
+        ByteBuffer larger = acquire((int) Math.min(Integer.MAX_VALUE - 8, Math.max(required,
+                2L * buffer.capacity())));
+        larger.put(buffer.flip());
+        pool.release(buffer);
+        buffer = larger;
+    }
+
+    private ByteBuffer acquire(int capacity) {
+        ByteBuffer acquired = pool.acquire(capacity);
+        if (!acquired.hasArray()) {
+            pool.release(acquired);
+            throw new IllegalStateException("The buffer pool must provide heap buffers");
+        }
+        return acquired;
+    }
+}
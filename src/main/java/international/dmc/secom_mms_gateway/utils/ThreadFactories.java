@@ -0,0 +1,46 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads of the gateway's own background tasks. Tasks that spend their time blocked on I/O get virtual
+ * threads when the application runs with {@code spring.threads.virtual.enabled}, the same switch that moves request
+ * handling onto virtual threads. Platform threads are always daemon threads, so they never keep the JVM alive.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ThreadFactories {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "spring.threads.virtual.enabled";
+
+    /**
+     * @param name    the name of the threads, which are numbered from 1 if the name ends with a dash
+     * @param virtual whether to create virtual threads
+     */
+    public static ThreadFactory create(String name, boolean virtual) {
+        Thread.Builder builder = virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        if (name.endsWith("-")) {
+            builder.name(name, 1);
+        } else {
+            builder.name(name);
+        }
+        return builder.factory();
+    }
+}
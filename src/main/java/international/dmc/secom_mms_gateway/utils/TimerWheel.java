@@ -0,0 +1,156 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A hashed timer wheel for large numbers of short lived timeouts that are usually cancelled before they expire.
+ * Scheduling and cancelling are constant time operations, and expired tasks are run on the thread of the wheel, so
+ * they should be quick and must not block.
+ */
+@Slf4j
+public class TimerWheel implements AutoCloseable {
+
+    /**
+     * A handle to a scheduled task.
+     */
+    public interface Timeout {
+        /**
+         * Cancels the task if it has not been run yet.
+         *
+         * @return whether the task was cancelled by this call
+         */
+        boolean cancel();
+    }
+
+    private static final class Entry implements Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private long remainingRounds;
+
+        private Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Queue<Entry>[] buckets;
+    private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<>();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("The wheel size must be a power of two");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.mask = wheelSize - 1;
+        this.buckets = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startTime = System.nanoTime();
+        this.worker = ThreadFactories.create(name, false).newThread(this::run);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task to be run once the given delay has passed. The task is run at the earliest on the first tick
+     * after the delay.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Entry entry = new Entry(task, System.nanoTime() + unit.toNanos(delay));
+        newEntries.add(entry);
+        return entry;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTick = startTime + (tick + 1) * tickNanos;
+            long sleepNanos = nextTick - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            tick++;
+            transferNewEntries();
+            expire(buckets[(int) (tick & mask)]);
+        }
+    }
+
+    private void transferNewEntries() {
+        Entry entry;
+        while ((entry = newEntries.poll()) != null) {
+            if (entry.done.get()) {
+                continue;
+            }
+            long ticks = Math.max((entry.deadline - startTime + tickNanos - 1) / tickNanos, tick);
+            entry.remainingRounds = (ticks - tick) / buckets.length;
+            buckets[(int) (ticks & mask)].add(entry);
+        }
+    }
+
+    private void expire(Queue<Entry> bucket) {
+        Iterator<Entry> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.done.get()) {
+                iterator.remove();
+            } else if (entry.remainingRounds <= 0) {
+                iterator.remove();
+                if (entry.done.compareAndSet(false, true)) {
+                    try {
+                        entry.task.run();
+                    } catch (RuntimeException e) {
+                        log.error("A timer task failed", e);
+                    }
+                }
+            } else {
+                entry.remainingRounds--;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+/**
+ * The TLS implementation used for outbound connections to the edge router and to SECOM services.
+ */
+public enum TlsProvider {
+    /**
+     * The TLS implementation of the JDK (JSSE).
+     */
+    JDK,
+    /**
+     * BoringSSL through netty-tcnative, which does the handshake and record encryption in native code.
+     */
+    OPENSSL
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+CREATE TABLE recipient_groups
+(
+    name       VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP WITHOUT TIME ZONE,
+    updated_at TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_recipient_groups PRIMARY KEY (name)
+);
+
+CREATE TABLE recipient_group_members
+(
+    group_name VARCHAR(255) NOT NULL,
+    recipient  VARCHAR(255) NOT NULL,
+    CONSTRAINT fk_recipient_group_members_group FOREIGN KEY (group_name) REFERENCES recipient_groups (name)
+        ON DELETE CASCADE
+);
+
+CREATE INDEX idx_recipient_group_members_group ON recipient_group_members (group_name);
+
+ALTER TABLE subscriptions
+    ADD COLUMN recipient_group VARCHAR(255)
+        CONSTRAINT fk_subscriptions_recipient_group REFERENCES recipient_groups (name);
+
+CREATE TABLE subscription_recipients
+(
+    subscription_id BIGINT       NOT NULL,
+    recipient       VARCHAR(255) NOT NULL,
+    CONSTRAINT fk_subscription_recipients_subscription FOREIGN KEY (subscription_id) REFERENCES subscriptions (id)
+        ON DELETE CASCADE
+);
+
+CREATE INDEX idx_subscription_recipients_subscription ON subscription_recipients (subscription_id);
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares how many slow uploads can be handled at the same time with a platform thread pool the size of Tomcat's
+ * default, against one virtual thread per request as with {@code spring.threads.virtual.enabled}. Each request reads
+ * its body and then blocks for the given time, standing in for the database lookup, the acknowledgement and a slow
+ * uploader. Run the main method with the test classpath on Java 21, optionally passing the blocking time in
+ * milliseconds and the numbers of concurrent uploaders.
+ */
+public class UploadConcurrencyBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final byte[] BODY = new byte[16 * 1024];
+
+    public static void main(String[] args) throws Exception {
+        long blockingMs = args.length > 0 ? Long.parseLong(args[0]) : 500;
+        int[] uploaders = {100, 500, 1000, 2000, 5000};
+        if (args.length > 1) {
+            uploaders = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                uploaders[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("Each upload blocks for %d ms%n", blockingMs);
+        for (int concurrency : uploaders) {
+            Result platform = run(Executors.newFixedThreadPool(PLATFORM_THREADS), concurrency, blockingMs);
+            Result virtual = run(Executors.newVirtualThreadPerTaskExecutor(), concurrency, blockingMs);
+            System.out.printf("%5d uploaders  platform(%d) %6d ms, %5d in parallel  virtual %6d ms, %5d in parallel%n",
+                    concurrency, PLATFORM_THREADS, platform.millis(), platform.maxInParallel(), virtual.millis(),
+                    virtual.maxInParallel());
+        }
+    }
+
+    private record Result(long millis, int maxInParallel) {
+    }
+
+    private static Result run(ExecutorService executor, int concurrency, long blockingMs) throws Exception {
+        AtomicInteger inParallel = new AtomicInteger();
+        AtomicInteger maxInParallel = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), concurrency);
+        server.createContext("/upload", exchange -> {
+            int current = inParallel.incrementAndGet();
+            maxInParallel.accumulateAndGet(current, Math::max);
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                inputStream.readAllBytes();
+                TimeUnit.MILLISECONDS.sleep(blockingMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inParallel.decrementAndGet();
+            }
+            exchange.sendResponseHeaders(200, 2);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write("{}".getBytes());
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/upload");
+        try (HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build()) {
+            long start = System.nanoTime();
+            List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(BODY))
+                        .build();
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+            }
+            CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+            return new Result(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), maxInParallel.get());
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares the single threaded {@link ZipOutputStream} the gateway used to compress uploads with, against the
+ * {@link ParallelDeflater} for inputs between 1 and 50 MB. Run the main method with the test classpath, optionally
+ * passing a sample file that is repeated to the input sizes instead of the generated gridded data.
+ */
+public class CompressionBenchmark {
+
+    private static final int[] SIZES_MB = {1, 5, 10, 25, 50};
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        byte[] sample = args.length > 0 ? Files.readAllBytes(Path.of(args[0])) : generateSample();
+        ParallelDeflater parallelDeflater = new ParallelDeflater(ForkJoinPool.commonPool(), 128 * 1024,
+                Deflater.DEFAULT_COMPRESSION);
+        ZipCodec zipCodec = new ZipCodec(Deflater.DEFAULT_COMPRESSION);
+        System.out.printf("Using %d threads%n", ForkJoinPool.commonPool().getParallelism());
+
+        for (int sizeMb : SIZES_MB) {
+            byte[] data = repeat(sample, sizeMb * 1_000_000);
+            // Warm up and check that the parallel output inflates to the input
+            if (!Arrays.equals(zipCodec.decode(parallelDeflater.deflate(data, CodecType.ZIP, null), null), data)) {
+                throw new IllegalStateException("The parallel output does not match the input");
+            }
+
+            long sequentialNanos = Long.MAX_VALUE;
+            long parallelNanos = Long.MAX_VALUE;
+            int sequentialSize = 0;
+            int parallelSize = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                sequentialSize = zipSequentially(data).length;
+                sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                parallelSize = parallelDeflater.deflate(data, CodecType.ZIP, null).length;
+                parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+            }
+            System.out.printf("%3d MB  sequential %7.1f ms %9d bytes  parallel %7.1f ms %9d bytes  speedup %.1fx%n",
+                    sizeMb, sequentialNanos / 1e6, sequentialSize, parallelNanos / 1e6, parallelSize,
+                    (double) sequentialNanos / parallelNanos);
+        }
+    }
+
+    private static byte[] zipSequentially(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            zos.putNextEntry(new ZipEntry("data"));
+            zos.write(data);
+            zos.closeEntry();
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Generates GML like gridded depth values, roughly resembling an S-102 or S-104 coverage.
+     */
+    private static byte[] generateSample() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 4_000_000) {
+            builder.append("<gml:pos>")
+                    .append(55 + random.nextInt(10_000) / 10_000.0).append(' ')
+                    .append(10 + random.nextInt(10_000) / 10_000.0)
+                    .append("</gml:pos><depth>").append(random.nextInt(5_000) / 10.0).append("</depth>\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] repeat(byte[] sample, int size) {
+        byte[] data = new byte[size];
+        for (int offset = 0; offset < size; offset += sample.length) {
+            System.arraycopy(sample, 0, data, offset, Math.min(sample.length, size - offset));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the output of the {@link ParallelDeflater} can be read by the standard inflaters of the JDK, for payloads
+ * that end exactly on, just before and just after a block boundary.
+ */
+class ParallelDeflaterTest {
+
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+    private static final ParallelDeflater parallelDeflater =
+            new ParallelDeflater(pool, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+
+    @AfterAll
+    static void tearDown() {
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 3 * BLOCK_SIZE, 5 * BLOCK_SIZE + 123})
+    void zlibCanBeInflated(int size) throws Exception {
+        byte[] payload = payload(size);
+
+        byte[] deflated = parallelDeflater.deflate(payload, CodecType.DEFLATE, null);
+
+        assertArrayEquals(payload, inflate(deflated, null));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 3 * BLOCK_SIZE, 5 * BLOCK_SIZE + 123})
+    void gzipCanBeRead(int size) throws IOException {
+        byte[] payload = payload(size);
+
+        byte[] deflated = parallelDeflater.deflate(payload, CodecType.GZIP, null);
+
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(deflated))) {
+            assertArrayEquals(payload, gzipInputStream.readAllBytes());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 3 * BLOCK_SIZE, 5 * BLOCK_SIZE + 123})
+    void zipCanBeRead(int size) throws IOException {
+        byte[] payload = payload(size);
+
+        byte[] deflated = parallelDeflater.deflate(payload, CodecType.ZIP, null);
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(deflated))) {
+            ZipEntry entry = zipInputStream.getNextEntry();
+            assertNotNull(entry);
+            assertEquals("data", entry.getName());
+            assertArrayEquals(payload, zipInputStream.readAllBytes());
+            assertNull(zipInputStream.getNextEntry());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, BLOCK_SIZE, 3 * BLOCK_SIZE + 123})
+    void zlibWithDictionaryCanBeInflated(int size) throws Exception {
+        byte[] payload = payload(size);
+        CompressionDictionary dictionary = CompressionDictionary.of("S124", payload(4096));
+
+        byte[] deflated = parallelDeflater.deflate(payload, CodecType.DEFLATE, dictionary);
+
+        assertEquals(dictionary.id(), DeflateCodec.getDictionaryId(deflated));
+        assertArrayEquals(payload, inflate(deflated, dictionary));
+        assertArrayEquals(payload, new DeflateCodec(Deflater.DEFAULT_COMPRESSION).decode(deflated, dictionary));
+    }
+
+    @Test
+    void dictionaryIsIgnoredForGzip() throws IOException {
+        byte[] payload = payload(2 * BLOCK_SIZE);
+
+        byte[] deflated = parallelDeflater.deflate(payload, CodecType.GZIP,
+                CompressionDictionary.of("S124", payload(4096)));
+
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(deflated))) {
+            assertArrayEquals(payload, gzipInputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void compressesAboutAsWellAsSingleDeflater() {
+        byte[] payload = payload(8 * BLOCK_SIZE);
+        Deflater deflater = new Deflater();
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] buffer = new byte[payload.length];
+        int sequentialSize = deflater.deflate(buffer);
+        deflater.end();
+
+        int parallelSize = parallelDeflater.deflate(payload, CodecType.DEFLATE, null).length;
+
+        // Priming every block with the end of the block before it keeps the loss to the flush markers
+        assertTrue(parallelSize < sequentialSize * 1.05 + 64, parallelSize + " vs " + sequentialSize);
+    }
+
+    private static byte[] inflate(byte[] deflated, CompressionDictionary dictionary) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0 && inflater.needsDictionary()) {
+                    assertNotNull(dictionary);
+                    assertEquals(dictionary.id(), inflater.getAdler());
+                    inflater.setDictionary(dictionary.data());
+                } else if (length == 0 && !inflater.finished() && inflater.needsInput()) {
+                    throw new DataFormatException("Truncated stream");
+                }
+                outputStream.write(chunk, 0, length);
+            }
+            assertEquals(0, inflater.getRemaining());
+            return outputStream.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return text with repetitions that reach across block boundaries, mixed with some random bytes
+     */
+    private static byte[] payload(int size) {
+        Random random = new Random(size);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(size);
+        while (outputStream.size() < size) {
+            if (random.nextInt(10) == 0) {
+                byte[] noise = new byte[16];
+                random.nextBytes(noise);
+                outputStream.writeBytes(noise);
+            } else {
+                outputStream.writeBytes(("<member id=\"" + random.nextInt(500) + "\">Light unlit</member>")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        byte[] payload = new byte[size];
+        System.arraycopy(outputStream.toByteArray(), 0, payload, 0, size);
+        return payload;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.codec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.grad.secom.core.models.enums.SECOM_DataProductType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PayloadCompressorTest {
+
+    private static final int THRESHOLD = 1024;
+    private static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    @TempDir
+    private Path dictionaryDirectory;
+
+    private final List<PayloadCompressor> compressors = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        compressors.forEach(PayloadCompressor::preDestroy);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CodecType.class)
+    void decodesWhatWasCompressed(CodecType codecType) throws IOException {
+        PayloadCompressor compressor = compressor(codecType, null);
+        byte[] payload = warnings(200);
+
+        byte[] published = compressor.compress(payload, SECOM_DataProductType.S124, false);
+
+        if (codecType != CodecType.NONE) {
+            assertTrue(published.length < payload.length);
+        }
+        assertArrayEquals(payload, received(codecType, compressor.decompress(published)));
+        byte[] publishedWithoutType = compressor.compress(payload, null, false);
+        assertArrayEquals(payload, received(codecType, compressor.decompress(publishedWithoutType)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CodecType.class, names = {"ZIP", "GZIP", "DEFLATE"})
+    void decodesWhatWasCompressedInParallel(CodecType codecType) throws IOException {
+        PayloadCompressor compressor = compressor(codecType, null);
+        byte[] payload = warnings(4000);
+        assertTrue(payload.length > PARALLEL_THRESHOLD);
+
+        byte[] published = compressor.compress(payload, SECOM_DataProductType.S124, false);
+
+        assertTrue(published.length < payload.length);
+        assertArrayEquals(payload, received(codecType, compressor.decompress(published)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CodecType.class, names = {"GZIP", "DEFLATE"})
+    void encodesEveryPayloadWithPrivateFormat(CodecType codecType) throws IOException {
+        PayloadCompressor compressor = compressor(codecType, null);
+        byte[] small = "<S124/>".getBytes(StandardCharsets.UTF_8);
+        byte[] incompressible = randomBytes(4 * THRESHOLD);
+        byte[] zipped = new ZipCodec(-1).encode(warnings(50), null);
+
+        for (byte[] payload : List.of(small, incompressible, zipped)) {
+            byte[] published = compressor.compress(payload, null, payload == zipped);
+            assertArrayEquals(payload, compressor.decompress(published));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CodecType.class, names = {"NONE", "ZIP"})
+    void publishesUncompressedPayloadAsItIsWithSecomFormat(CodecType codecType) throws IOException {
+        PayloadCompressor compressor = compressor(codecType, null);
+        byte[] small = "<S124/>".getBytes(StandardCharsets.UTF_8);
+        byte[] zipped = new ZipCodec(-1).encode(warnings(50), null);
+
+        assertSame(small, compressor.compress(small, null, false));
+        assertSame(zipped, compressor.compress(zipped, null, true));
+        assertSame(zipped, compressor.decompress(zipped));
+    }
+
+    @Test
+    void deflateCarriesDictionaryId() throws IOException {
+        byte[] dictionary = DictionaryTrainer.train(List.of(warnings(20), warnings(30)), 4096);
+        Files.write(dictionaryDirectory.resolve("S124.dict"), dictionary);
+        PayloadCompressor compressor = compressor(CodecType.DEFLATE, dictionaryDirectory);
+        PayloadCompressor withoutDictionary = compressor(CodecType.DEFLATE, null);
+        byte[] payload = warnings(10);
+
+        byte[] published = compressor.compress(payload, SECOM_DataProductType.S124, false);
+
+        assertEquals(CompressionDictionary.of("S124", dictionary).id(), DeflateCodec.getDictionaryId(published));
+        assertTrue(published.length < withoutDictionary.compress(payload, SECOM_DataProductType.S124, false).length);
+        assertArrayEquals(payload, compressor.decompress(published));
+        assertThrows(IOException.class, () -> withoutDictionary.decompress(published));
+    }
+
+    @Test
+    void deflateWithoutDictionaryHasNoDictionaryId() throws IOException {
+        byte[] published = compressor(CodecType.DEFLATE, null).compress(warnings(10), null, false);
+
+        assertNull(DeflateCodec.getDictionaryId(published));
+    }
+
+    @Test
+    void rejectsPayloadInOtherFormat() throws IOException {
+        PayloadCompressor compressor = compressor(CodecType.GZIP, null);
+        byte[] zipped = new ZipCodec(-1).encode(warnings(10), null);
+
+        assertThrows(IOException.class, () -> compressor.decompress(zipped));
+    }
+
+    @Test
+    void trainsDictionaryFromDirectory(@TempDir Path sampleDirectory) throws IOException {
+        Files.write(sampleDirectory.resolve("first.gml"), warnings(20));
+        Files.write(sampleDirectory.resolve("second.gml"), warnings(30));
+
+        byte[] dictionary = DictionaryTrainer.train(sampleDirectory, 2048);
+
+        assertNotNull(dictionary);
+        assertTrue(dictionary.length > 0 && dictionary.length <= 2048);
+    }
+
+    /**
+     * @return the payload a SECOM service gets out of what the receiving gateway uploads to it
+     */
+    private static byte[] received(CodecType codecType, byte[] uploaded) throws IOException {
+        return codecType == CodecType.ZIP ? new ZipCodec(-1).decode(uploaded, null) : uploaded;
+    }
+
+    private PayloadCompressor compressor(CodecType codecType, Path dictionaries) throws IOException {
+        PayloadCompressor compressor = new PayloadCompressor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(compressor, "codecType", codecType);
+        ReflectionTestUtils.setField(compressor, "level", -1);
+        ReflectionTestUtils.setField(compressor, "threshold", THRESHOLD);
+        ReflectionTestUtils.setField(compressor, "maxEntropy", 7.5);
+        ReflectionTestUtils.setField(compressor, "dictionaryDirectory",
+                dictionaries != null ? dictionaries.toString() : "");
+        ReflectionTestUtils.setField(compressor, "parallelThreshold", PARALLEL_THRESHOLD);
+        ReflectionTestUtils.setField(compressor, "parallelBlockSize", 64 * 1024);
+        ReflectionTestUtils.setField(compressor, "parallelThreads", 2);
+        compressor.init();
+        compressors.add(compressor);
+        return compressor;
+    }
+
+    /**
+     * @return a GML like document with the given number of navigational warnings
+     */
+    private static byte[] warnings(int count) {
+        StringBuilder document = new StringBuilder("<S124:Dataset xmlns:S124=\"http://www.iho.int/S124/1.0\">");
+        for (int i = 0; i < count; i++) {
+            document.append("<member><S124:NavwarnPart gml:id=\"NW.").append(i).append("\"><warningInformation>")
+                    .append("<information><text>Buoy ").append(i * 7919 % 1000)
+                    .append(" unlit</text></information></warningInformation></S124:NavwarnPart></member>");
+        }
+        return document.append("</S124:Dataset>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.components;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import international.dmc.secom_mms_gateway.exceptions.CertificateValidationException;
+import international.dmc.secom_mms_gateway.exceptions.CertificateValidationFailure;
+import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validates certificates issued by a test CA whose OCSP responder and CRL distribution point are served by a local
+ * {@link HttpServer}, so that no real PKI is contacted.
+ */
+class CertificateValidatorTest {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final X500Name ROOT_NAME = new X500Name("CN=Test Root,O=Test,C=DK");
+
+    private final Set<BigInteger> revokedSerials = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger ocspRequests = new AtomicInteger();
+    private final AtomicInteger crlRequests = new AtomicInteger();
+    private volatile boolean ocspAvailable = true;
+    private volatile boolean crlAvailable = true;
+
+    private HttpServer server;
+    private KeyPair rootKeyPair;
+    private X509Certificate rootCertificate;
+    private String baseUrl;
+    private long nextSerial = 1;
+    private CertificateValidator certificateValidator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ocsp", this::handleOcsp);
+        server.createContext("/crl", this::handleCrl);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        rootKeyPair = generateKeyPair();
+        JcaX509v3CertificateBuilder rootBuilder = new JcaX509v3CertificateBuilder(ROOT_NAME,
+                BigInteger.valueOf(nextSerial++), Date.from(Instant.now().minus(Duration.ofDays(1))),
+                Date.from(Instant.now().plus(Duration.ofDays(365))), ROOT_NAME, rootKeyPair.getPublic());
+        rootBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        rootBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+        rootCertificate = toCertificate(rootBuilder.build(signer(rootKeyPair)));
+
+        KeystoreUtil keystoreUtil = mock(KeystoreUtil.class);
+        when(keystoreUtil.getRootCertificate()).thenReturn(rootCertificate);
+        certificateValidator = new CertificateValidator(keystoreUtil, true, "", 100, true, false, 2000, 86400, 30,
+                300, new SimpleMeterRegistry());
+        certificateValidator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        certificateValidator.preDestroy();
+        server.stop(0);
+    }
+
+    @Test
+    void acceptsGoodCertificateAndCachesStatus() throws Exception {
+        X509Certificate certificate = issue(ROOT_NAME, rootKeyPair);
+
+        assertDoesNotThrow(() -> certificateValidator.validate(certificate).join());
+        assertDoesNotThrow(() -> certificateValidator.validate(certificate).join());
+        assertEquals(1, ocspRequests.get());
+        assertEquals(0, crlRequests.get());
+    }
+
+    @Test
+    void rejectsCertificateRevokedByOcsp() throws Exception {
+        X509Certificate certificate = issue(ROOT_NAME, rootKeyPair);
+        revokedSerials.add(certificate.getSerialNumber());
+
+        assertFailure(CertificateValidationFailure.REVOKED, certificate);
+    }
+
+    @Test
+    void fallsBackToCrlWhenOcspIsUnavailable() throws Exception {
+        ocspAvailable = false;
+        X509Certificate goodCertificate = issue(ROOT_NAME, rootKeyPair);
+        X509Certificate revokedCertificate = issue(ROOT_NAME, rootKeyPair);
+        revokedSerials.add(revokedCertificate.getSerialNumber());
+
+        assertDoesNotThrow(() -> certificateValidator.validate(goodCertificate).join());
+        assertFailure(CertificateValidationFailure.REVOKED, revokedCertificate);
+        // Both certificates are checked against the same CRL, which is only downloaded once
+        assertEquals(1, crlRequests.get());
+    }
+
+    @Test
+    void rejectsUnknownStatusWhenNoResponderAnswers() throws Exception {
+        ocspAvailable = false;
+        crlAvailable = false;
+
+        assertFailure(CertificateValidationFailure.REVOCATION_UNKNOWN, issue(ROOT_NAME, rootKeyPair));
+    }
+
+    @Test
+    void rejectsCertificateOfOtherCa() throws Exception {
+        X509Certificate certificate = issue(new X500Name("CN=Other Root,O=Test,C=DK"), generateKeyPair());
+
+        assertFailure(CertificateValidationFailure.UNTRUSTED_CHAIN, certificate);
+        assertEquals(0, ocspRequests.get());
+    }
+
+    private void assertFailure(CertificateValidationFailure expected, X509Certificate certificate) {
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> certificateValidator.validate(certificate).join());
+        CertificateValidationException cause =
+                assertInstanceOf(CertificateValidationException.class, exception.getCause());
+        assertEquals(expected, cause.getCertificateValidationFailure());
+    }
+
+    private X509Certificate issue(X500Name issuerName, KeyPair issuerKeyPair) throws Exception {
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuerName,
+                BigInteger.valueOf(nextSerial++), Date.from(Instant.now().minus(Duration.ofDays(1))),
+                Date.from(Instant.now().plus(Duration.ofDays(30))),
+                new X500Name("UID=urn:mrn:mcp:device:test:" + nextSerial + ",CN=Test Service,O=Test,C=DK"),
+                generateKeyPair().getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(
+                AccessDescription.id_ad_ocsp, new GeneralName(GeneralName.uniformResourceIdentifier,
+                baseUrl + "/ocsp")));
+        GeneralNames crlNames = new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier,
+                baseUrl + "/crl"));
+        builder.addExtension(Extension.cRLDistributionPoints, false, new CRLDistPoint(new DistributionPoint[]{
+                new DistributionPoint(new DistributionPointName(crlNames), null, null)}));
+        return toCertificate(builder.build(signer(issuerKeyPair)));
+    }
+
+    private void handleOcsp(HttpExchange exchange) throws IOException {
+        ocspRequests.incrementAndGet();
+        if (!ocspAvailable) {
+            respond(exchange, 503, new byte[0]);
+            return;
+        }
+        try {
+            OCSPReq request = new OCSPReq(exchange.getRequestBody().readAllBytes());
+            Date now = new Date();
+            Date nextUpdate = Date.from(Instant.now().plus(Duration.ofHours(1)));
+            JcaBasicOCSPRespBuilder builder = new JcaBasicOCSPRespBuilder(rootKeyPair.getPublic(),
+                    new JcaDigestCalculatorProviderBuilder().build().get(RespID.HASH_SHA1));
+            for (Req req : request.getRequestList()) {
+                CertificateStatus status = revokedSerials.contains(req.getCertID().getSerialNumber())
+                        ? new RevokedStatus(now, CRLReason.keyCompromise)
+                        : CertificateStatus.GOOD;
+                builder.addResponse(req.getCertID(), status, now, nextUpdate, null);
+            }
+            BasicOCSPResp basicResponse = builder.build(signer(rootKeyPair), null, now);
+            respond(exchange, 200, new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResponse)
+                    .getEncoded());
+        } catch (Exception e) {
+            respond(exchange, 500, new byte[0]);
+        }
+    }
+
+    private void handleCrl(HttpExchange exchange) throws IOException {
+        crlRequests.incrementAndGet();
+        if (!crlAvailable) {
+            respond(exchange, 503, new byte[0]);
+            return;
+        }
+        try {
+            Date now = new Date();
+            X509v2CRLBuilder builder = new X509v2CRLBuilder(ROOT_NAME, now);
+            builder.setNextUpdate(Date.from(Instant.now().plus(Duration.ofHours(1))));
+            for (BigInteger serial : revokedSerials) {
+                builder.addCRLEntry(serial, now, CRLReason.keyCompromise);
+            }
+            respond(exchange, 200, builder.build(signer(rootKeyPair)).getEncoded());
+        } catch (Exception e) {
+            respond(exchange, 500, new byte[0]);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    private static ContentSigner signer(KeyPair keyPair) throws Exception {
+        return new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(keyPair.getPrivate());
+    }
+
+    private static X509Certificate toCertificate(X509CertificateHolder holder) throws Exception {
+        return new JcaX509CertificateConverter().getCertificate(holder);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package international.dmc.secom_mms_gateway.components;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import international.dmc.secom_mms_gateway.codec.ZipCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Deflater;
+
+/**
+ * Measures what verifying the signature of an upload adds to handling it, for payloads between 1 KB and 25 MB. The
+ * unverified path only compresses the payload, as the gateway did before, the sequential path verifies with a new
+ * {@link Signature} and then compresses, and the overlapped path verifies with the {@link SignatureVerifier} while
+ * compressing, as the upload endpoints do. Run the main method with the test classpath.
+ */
+public class SignatureVerificationBenchmark {
+
+    private static final String ALGORITHM = "SHA384withECDSA";
+    private static final int[] SIZES_KB = {1, 64, 1024, 10 * 1024, 25 * 1024};
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp384r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        ZipCodec zipCodec = new ZipCodec(Deflater.DEFAULT_COMPRESSION);
+        SignatureVerifier signatureVerifier = new SignatureVerifier(new ObjectMapper().findAndRegisterModules(),
+                new UploaderCertificateCache(1000, 86400, new SimpleMeterRegistry()), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(signatureVerifier, "asyncThreshold", 65536);
+        signatureVerifier.init();
+
+        try {
+            for (int sizeKb : SIZES_KB) {
+                byte[] data = generateData(sizeKb * 1024);
+                Signature signer = Signature.getInstance(ALGORITHM);
+                signer.initSign(keyPair.getPrivate());
+                signer.update(data);
+                byte[] signature = signer.sign();
+
+                long unverifiedNanos = Long.MAX_VALUE;
+                long sequentialNanos = Long.MAX_VALUE;
+                long overlappedNanos = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    zipCodec.encode(data, null);
+                    unverifiedNanos = Math.min(unverifiedNanos, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    Signature verifier = Signature.getInstance(ALGORITHM);
+                    verifier.initVerify(keyPair.getPublic());
+                    verifier.update(data);
+                    boolean valid = verifier.verify(signature);
+                    zipCodec.encode(data, null);
+                    sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    CompletableFuture<Boolean> verification =
+                            signatureVerifier.verifyAsync(keyPair.getPublic(), ALGORITHM, signature, data);
+                    zipCodec.encode(data, null);
+                    valid &= verification.join();
+                    overlappedNanos = Math.min(overlappedNanos, System.nanoTime() - start);
+                    if (!valid) {
+                        throw new IllegalStateException("The signature was not verified");
+                    }
+                }
+                System.out.printf("%6d KB  unverified %8.2f ms  sequential %8.2f ms  overlapped %8.2f ms%n", sizeKb,
+                        unverifiedNanos / 1e6, sequentialNanos / 1e6, overlappedNanos / 1e6);
+            }
+        } finally {
+            signatureVerifier.preDestroy();
+        }
+    }
+
+    private static byte[] generateData(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("<depth>").append(i % 5_000 / 10.0).append("</depth>\n");
+        }
+        return builder.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+}
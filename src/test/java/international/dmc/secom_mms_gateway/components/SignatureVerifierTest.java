@@ -0,0 +1,206 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.components;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.grad.secom.core.models.DigitalSignatureValue;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.grad.secom.core.models.SECOM_ExchangeMetadataObject;
+import org.grad.secom.core.models.enums.DigitalSignatureAlgorithmEnum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignatureVerifierTest {
+
+    private static final DigitalSignatureAlgorithmEnum ALGORITHM = DigitalSignatureAlgorithmEnum.ECDSA;
+    private static final byte[] DATASET = "<S124:Dataset/>".getBytes(StandardCharsets.UTF_8);
+
+    private final SignatureVerifier signatureVerifier = new SignatureVerifier(
+            new ObjectMapper().findAndRegisterModules(),
+            new UploaderCertificateCache(100, 3600, new SimpleMeterRegistry()), new SimpleMeterRegistry());
+    private KeyPair envelopeKeyPair;
+    private X509Certificate envelopeCertificate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(signatureVerifier, "verificationThreads", 1);
+        ReflectionTestUtils.setField(signatureVerifier, "asyncThreshold", 65536);
+        signatureVerifier.init();
+        envelopeKeyPair = generateKeyPair();
+        envelopeCertificate = selfSigned("CN=Uploader,O=Test,C=DK", envelopeKeyPair);
+    }
+
+    @AfterEach
+    void tearDown() {
+        signatureVerifier.preDestroy();
+    }
+
+    @Test
+    void buildsEnvelopeSignatureContentFromTransmittedFields() {
+        EnvelopeUploadObject envelope = new EnvelopeUploadObject();
+        envelope.setData(DATASET);
+        envelope.setFromSubscription(false);
+        UUID transactionIdentifier = UUID.randomUUID();
+        envelope.setTransactionIdentifier(transactionIdentifier);
+        envelope.setEnvelopeSignatureCertificate("certificate");
+        envelope.setEnvelopeRootCertificateThumbprint("thumbprint");
+        envelope.setEnvelopeSignature("ignored");
+        SECOM_ExchangeMetadataObject exchangeMetadata = new SECOM_ExchangeMetadataObject();
+        exchangeMetadata.setCompressionFlag(false);
+        DigitalSignatureValue signatureValue = new DigitalSignatureValue();
+        signatureValue.setPublicCertificate("dataset certificate");
+        signatureValue.setDigitalSignature("abcd");
+        exchangeMetadata.setDigitalSignatureValue(signatureValue);
+        envelope.setExchangeMetadata(exchangeMetadata);
+
+        // The envelope signature itself is not part of what it signs
+        String expected = String.join(".", List.of(Base64.getEncoder().encodeToString(DATASET), "", "", "", "", "",
+                "", "dataset certificate", "abcd", "false", "false", "", transactionIdentifier.toString(),
+                "certificate", "thumbprint", ""));
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8),
+                signatureVerifier.envelopeSignatureContent(envelope));
+    }
+
+    @Test
+    void acceptsValidEnvelopeSignature() throws Exception {
+        EnvelopeUploadObject envelope = envelope(DATASET);
+        signEnvelope(envelope);
+
+        assertTrue(signatureVerifier.verifyUpload(envelope, envelopeCertificate).join());
+    }
+
+    @Test
+    void rejectsEnvelopeWhoseFieldsWereChanged() throws Exception {
+        EnvelopeUploadObject envelope = envelope(DATASET);
+        signEnvelope(envelope);
+
+        envelope.setTransactionIdentifier(UUID.randomUUID());
+
+        assertFalse(signatureVerifier.verifyUpload(envelope, envelopeCertificate).join());
+    }
+
+    @Test
+    void rejectsEnvelopeWithoutSignature() {
+        assertFalse(signatureVerifier.verifyUpload(envelope(DATASET), envelopeCertificate).join());
+    }
+
+    @Test
+    void verifiesLargeEnvelopeOnThePool() throws Exception {
+        ReflectionTestUtils.setField(signatureVerifier, "asyncThreshold", 16);
+        EnvelopeUploadObject envelope = envelope(new byte[4096]);
+        signEnvelope(envelope);
+
+        assertTrue(signatureVerifier.verifyUpload(envelope, envelopeCertificate).join());
+    }
+
+    @Test
+    void verifiesDatasetSignatureAgainstItsOwnCertificate() throws Exception {
+        KeyPair datasetKeyPair = generateKeyPair();
+        EnvelopeUploadObject envelope = envelope(DATASET);
+        envelope.getExchangeMetadata().setDigitalSignatureValue(datasetSignature(datasetKeyPair.getPrivate(),
+                selfSigned("CN=Data Producer,O=Test,C=DK", datasetKeyPair)));
+        signEnvelope(envelope);
+
+        assertTrue(signatureVerifier.verifyUpload(envelope, envelopeCertificate).join());
+    }
+
+    @Test
+    void rejectsDatasetSignatureThatDoesNotMatchItsCertificate() throws Exception {
+        EnvelopeUploadObject envelope = envelope(DATASET);
+        envelope.getExchangeMetadata().setDigitalSignatureValue(datasetSignature(envelopeKeyPair.getPrivate(),
+                selfSigned("CN=Data Producer,O=Test,C=DK", generateKeyPair())));
+        signEnvelope(envelope);
+
+        assertFalse(signatureVerifier.verifyUpload(envelope, envelopeCertificate).join());
+    }
+
+    private static EnvelopeUploadObject envelope(byte[] data) {
+        EnvelopeUploadObject envelope = new EnvelopeUploadObject();
+        envelope.setData(data);
+        envelope.setTransactionIdentifier(UUID.randomUUID());
+        envelope.setEnvelopeSignatureCertificate("certificate");
+        SECOM_ExchangeMetadataObject exchangeMetadata = new SECOM_ExchangeMetadataObject();
+        exchangeMetadata.setDigitalSignatureReference(ALGORITHM);
+        exchangeMetadata.setCompressionFlag(false);
+        envelope.setExchangeMetadata(exchangeMetadata);
+        return envelope;
+    }
+
+    private void signEnvelope(EnvelopeUploadObject envelope) throws Exception {
+        byte[] signature = sign(envelopeKeyPair.getPrivate(), signatureVerifier.envelopeSignatureContent(envelope));
+        envelope.setEnvelopeSignature(HexFormat.of().formatHex(signature));
+    }
+
+    private static DigitalSignatureValue datasetSignature(PrivateKey privateKey, X509Certificate certificate)
+            throws Exception {
+        DigitalSignatureValue signatureValue = new DigitalSignatureValue();
+        signatureValue.setPublicCertificate("-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder().encodeToString(certificate.getEncoded())
+                + "\n-----END CERTIFICATE-----\n");
+        signatureValue.setDigitalSignature(HexFormat.of().formatHex(sign(privateKey, DATASET)));
+        return signatureValue;
+    }
+
+    private static byte[] sign(PrivateKey privateKey, byte[] content) throws Exception {
+        Signature signer = Signature.getInstance(ALGORITHM.getValue());
+        signer.initSign(privateKey);
+        signer.update(content);
+        return signer.sign();
+    }
+
+    private static X509Certificate selfSigned(String name, KeyPair keyPair) throws Exception {
+        X500Name x500Name = new X500Name(name);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(x500Name, BigInteger.ONE,
+                Date.from(Instant.now().minus(Duration.ofDays(1))), Date.from(Instant.now().plus(Duration.ofDays(30))),
+                x500Name, keyPair.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp384r1"));
+        return keyPairGenerator.generateKeyPair();
+    }
+}
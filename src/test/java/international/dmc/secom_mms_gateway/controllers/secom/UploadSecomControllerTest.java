@@ -0,0 +1,208 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.controllers.secom;
+
+import international.dmc.secom_mms_gateway.codec.PayloadCompressor;
+import international.dmc.secom_mms_gateway.components.CertificateValidator;
+import international.dmc.secom_mms_gateway.components.SignatureVerifier;
+import international.dmc.secom_mms_gateway.components.UploaderCertificateCache;
+import international.dmc.secom_mms_gateway.config.UploadConfig;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import international.dmc.secom_mms_gateway.mms.MMSAgent;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import international.dmc.secom_mms_gateway.services.AcknowledgementDispatcher;
+import international.dmc.secom_mms_gateway.services.RecipientGroupService;
+import international.dmc.secom_mms_gateway.services.SubscriptionService;
+import international.dmc.secom_mms_gateway.services.UploadService;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.grad.secom.core.models.enums.SECOM_DataProductType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.jersey.JerseyAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sends uploads through the Jersey application that serves the SECOM interface, to check that the envelope data is
+ * read by the {@link international.dmc.secom_mms_gateway.config.UploadDataDeserializer} of the object mapper Jersey
+ * actually uses, and not by the default byte array deserializer of Jackson.
+ */
+@SpringBootTest(classes = UploadSecomControllerTest.TestConfig.class,
+        properties = "international.dmc.secom_mms_gateway.upload.require-signature=false")
+class UploadSecomControllerTest {
+
+    private static final String UPLOADER_MRN = "urn:mrn:mcp:device:mcc:dmc:uploader";
+
+    @Configuration
+    @ImportAutoConfiguration({JacksonAutoConfiguration.class, JerseyAutoConfiguration.class})
+    @Import({UploadConfig.class, UploadSecomController.class, UploadService.class})
+    static class TestConfig {
+
+        @Bean
+        ResourceConfig resourceConfig(UploadSecomController uploadSecomController,
+                                      ApplicationContext applicationContext) {
+            // Outside a servlet container the Spring integration of Jersey has to be told about the context
+            return new ResourceConfig()
+                    .register(uploadSecomController)
+                    .property("contextConfig", applicationContext);
+        }
+    }
+
+    @MockitoBean
+    private SubscriptionService subscriptionService;
+    @MockitoBean
+    private RecipientGroupService recipientGroupService;
+    @MockitoBean
+    private MMSAgent mmsAgent;
+    @MockitoBean
+    private PayloadCompressor payloadCompressor;
+    @MockitoBean
+    private UploaderCertificateCache uploaderCertificateCache;
+    @MockitoBean
+    private AcknowledgementDispatcher acknowledgementDispatcher;
+    @MockitoBean
+    private SignatureVerifier signatureVerifier;
+    @MockitoBean
+    private CertificateValidator certificateValidator;
+
+    @Autowired
+    private ResourceConfig resourceConfig;
+    @Autowired
+    private UploadService uploadService;
+
+    private ApplicationHandler applicationHandler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        applicationHandler = new ApplicationHandler(resourceConfig);
+        when(uploaderCertificateCache.get(anyString())).thenReturn(new UploaderCertificateCache.UploaderCertificate(
+                null, UPLOADER_MRN, Instant.MIN, Instant.MAX));
+        when(certificateValidator.validate(any())).thenReturn(CompletableFuture.completedFuture(null));
+        Subscription subscription = new Subscription();
+        subscription.setDataProductType(SECOM_DataProductType.S124);
+        when(subscriptionService.getSubscriptionByMrn(UPLOADER_MRN)).thenReturn(subscription);
+        when(payloadCompressor.compress(any(), any(), anyBoolean()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void decodesBase64Data() throws Exception {
+        byte[] dataset = {0x50, 0x4B, 0x03, 0x04, 0, (byte) 0xFF, 0x7F, (byte) 0x80};
+
+        assertEquals(200, upload(Base64.getEncoder().encodeToString(dataset)));
+
+        assertArrayEquals(dataset, uploadedData());
+    }
+
+    @Test
+    void decodesDataThatIsBase64EncodedTwice() throws Exception {
+        byte[] dataset = "<S124:Dataset/>".getBytes(StandardCharsets.UTF_8);
+        String encodedTwice = Base64.getEncoder().encodeToString(Base64.getEncoder().encode(dataset));
+
+        assertEquals(200, upload(encodedTwice));
+
+        // Jackson on its own would only decode once
+        assertArrayEquals(dataset, uploadedData());
+    }
+
+    @Test
+    void verifiesSignatureOverDataAsTransmitted() throws Exception {
+        ReflectionTestUtils.setField(uploadService, "requireSignature", true);
+        ArgumentCaptor<EnvelopeUploadObject> envelope = ArgumentCaptor.forClass(EnvelopeUploadObject.class);
+        when(signatureVerifier.verifyUpload(envelope.capture(), any()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        byte[] dataset = "<S124:Dataset/>".getBytes(StandardCharsets.UTF_8);
+        byte[] encodedOnce = Base64.getEncoder().encode(dataset);
+
+        try {
+            assertEquals(200, upload(Base64.getEncoder().encodeToString(encodedOnce)));
+        } finally {
+            ReflectionTestUtils.setField(uploadService, "requireSignature", false);
+        }
+
+        // The uploader signed the data field, so only the Base64 of the JSON string may be removed before verifying
+        assertArrayEquals(encodedOnce, envelope.getValue().getData());
+        assertArrayEquals(dataset, uploadedData());
+    }
+
+    @Test
+    void answersUploadThatCouldNotBePublishedWithServiceUnavailable() throws Exception {
+        when(mmsAgent.canPublish(anyInt())).thenReturn(true);
+        when(mmsAgent.publishMessage(any(), any())).thenReturn(
+                CompletableFuture.failedFuture(new MmsPublishException(MmsPublishFailure.NOT_CONNECTED)));
+
+        byte[] dataset = "<S124:Dataset/>".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(503, upload(Base64.getEncoder().encodeToString(dataset)));
+
+        verifyNoInteractions(acknowledgementDispatcher);
+    }
+
+    private int upload(String data) throws Exception {
+        String json = """
+                {"envelope": {"data": "%s", "envelopeSignatureCertificate": "certificate",
+                 "exchangeMetadata": {"compressionFlag": false}, "ackRequest": "NO_ACK_REQUESTED"}}
+                """.formatted(data);
+        ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"),
+                URI.create("http://localhost/v1/object"), "POST", null, new MapPropertiesDelegate(), null);
+        request.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        request.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        request.setEntityStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        ContainerResponse response = applicationHandler.apply(request).get();
+        return response.getStatus();
+    }
+
+    private byte[] uploadedData() throws Exception {
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        verify(payloadCompressor).compress(data.capture(), any(), anyBoolean());
+        return data.getValue();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchContainerTest {
+
+    @Test
+    void unpacksWhatWasPacked() {
+        List<byte[]> payloads = List.of(bytes("first"), new byte[0], bytes("third dataset"));
+
+        byte[] container = BatchContainer.pack(payloads);
+        List<ByteBuffer> unpacked = BatchContainer.unpack(ByteBuffer.wrap(container));
+
+        assertEquals(BatchContainer.containerSize(3, 18), container.length);
+        assertEquals(payloads.size(), unpacked.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            assertArrayEquals(payloads.get(i), toArray(unpacked.get(i)));
+        }
+    }
+
+    @Test
+    void unpacksBatchOfOne() {
+        byte[] payload = bytes("a single dataset");
+
+        List<ByteBuffer> unpacked = BatchContainer.unpack(ByteBuffer.wrap(BatchContainer.pack(List.of(payload))));
+
+        assertEquals(1, unpacked.size());
+        assertArrayEquals(payload, toArray(unpacked.getFirst()));
+    }
+
+    @Test
+    void tellsBatchFromFragment() {
+        ByteBuffer batch = ByteBuffer.wrap(BatchContainer.pack(List.of(bytes("dataset"))));
+        ByteBuffer fragment = ByteBuffer.wrap(FragmentContainer.split(bytes("dataset"), 100).getFirst());
+
+        assertTrue(BatchContainer.isBatch(batch));
+        assertFalse(BatchContainer.isBatch(fragment));
+        assertFalse(FragmentContainer.isFragment(batch));
+    }
+
+    @Test
+    void rejectsTruncatedContainer() {
+        byte[] container = BatchContainer.pack(List.of(bytes("first"), bytes("second")));
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(container, container.length - 1));
+
+        assertThrows(IllegalArgumentException.class, () -> BatchContainer.unpack(truncated));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] container = BatchContainer.pack(List.of(bytes("dataset")));
+        container[4] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> BatchContainer.unpack(ByteBuffer.wrap(container)));
+    }
+
+    @Test
+    void rejectsImpossibleCount() {
+        ByteBuffer container = ByteBuffer.wrap(BatchContainer.pack(List.of(bytes("dataset"))));
+        container.putInt(5, Integer.MAX_VALUE);
+
+        assertThrows(IllegalArgumentException.class, () -> BatchContainer.unpack(container));
+    }
+
+    @Test
+    void rejectsBodyThatIsNotBatch() {
+        ByteBuffer body = ByteBuffer.wrap(bytes("<S124>plain dataset</S124>"));
+
+        assertThrows(IllegalArgumentException.class, () -> BatchContainer.unpack(body));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CongestionWindowTest {
+
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void growsByOneMessagePerWindowOfGoodResponses() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(4, Duration.ofSeconds(10));
+
+        respond(congestionWindow, 4, RTT_NANOS);
+
+        assertTrue(congestionWindow.getWindow() > 4.9 && congestionWindow.getWindow() < 5,
+                "window is " + congestionWindow.getWindow());
+        assertEquals(0, congestionWindow.getInFlight());
+    }
+
+    @Test
+    void doesNotGrowBeyondMaximum() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(64, Duration.ofSeconds(10));
+
+        respond(congestionWindow, 100, RTT_NANOS);
+
+        assertEquals(64, congestionWindow.getWindow());
+    }
+
+    @Test
+    void halvesOnErrorAtMostOncePerRoundTrip() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(16, Duration.ofSeconds(10));
+        respond(congestionWindow, 1, TimeUnit.MILLISECONDS.toNanos(50));
+        double window = congestionWindow.getWindow();
+
+        congestionWindow.acquire();
+        congestionWindow.onErrorResponse();
+        congestionWindow.acquire();
+        congestionWindow.onErrorResponse();
+
+        assertEquals(window / 2, congestionWindow.getWindow());
+        assertEquals(1, throttles("error"));
+
+        Thread.sleep(60);
+        congestionWindow.acquire();
+        congestionWindow.onTimeout();
+
+        assertEquals(window / 4, congestionWindow.getWindow());
+        assertEquals(1, throttles("timeout"));
+        assertEquals(0, congestionWindow.getInFlight());
+    }
+
+    @Test
+    void doesNotShrinkBelowMinimum() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(2, Duration.ofSeconds(10));
+
+        for (int i = 0; i < 3; i++) {
+            congestionWindow.acquire();
+            congestionWindow.onTimeout();
+        }
+
+        assertEquals(1, congestionWindow.getWindow());
+    }
+
+    @Test
+    void halvesWhenRoundTripTimeRisesAboveThreshold() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(16, Duration.ofSeconds(10));
+        respond(congestionWindow, 1, RTT_NANOS);
+        double window = congestionWindow.getWindow();
+
+        respond(congestionWindow, 1, 3 * RTT_NANOS);
+
+        assertEquals(window / 2, congestionWindow.getWindow());
+        assertEquals(1, throttles("latency"));
+    }
+
+    @Test
+    void recoversAfterBackoff() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(16, Duration.ofSeconds(10));
+        congestionWindow.acquire();
+        congestionWindow.onTimeout();
+        assertEquals(8, congestionWindow.getWindow());
+
+        respond(congestionWindow, 8 + 9 + 10, RTT_NANOS);
+
+        assertTrue(congestionWindow.getWindow() > 10.5, "window is " + congestionWindow.getWindow());
+    }
+
+    @Test
+    void forgetsMinimumRoundTripTimeAfterItsWindow() throws InterruptedException {
+        CongestionWindow congestionWindow = congestionWindow(16, Duration.ofMillis(50));
+        respond(congestionWindow, 1, RTT_NANOS);
+
+        // The route to the edge router becomes slower for good, which first looks like congestion
+        respond(congestionWindow, 1, 10 * RTT_NANOS);
+        assertEquals(1, throttles("latency"));
+        double window = congestionWindow.getWindow();
+
+        Thread.sleep(60);
+        respond(congestionWindow, 20, 10 * RTT_NANOS);
+
+        assertEquals(10, congestionWindow.getMinRtt(TimeUnit.MILLISECONDS));
+        assertEquals(1, throttles("latency"));
+        assertTrue(congestionWindow.getWindow() > window, "window is " + congestionWindow.getWindow());
+    }
+
+    @Test
+    void acquireWaitsForFreeSlot() throws Exception {
+        CongestionWindow congestionWindow = congestionWindow(1, Duration.ofSeconds(10));
+        congestionWindow.acquire();
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                congestionWindow.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+
+        congestionWindow.release();
+        waiting.get(1, TimeUnit.SECONDS);
+        assertEquals(1, congestionWindow.getInFlight());
+    }
+
+    @Test
+    void acquireAsyncGrantsSlotsInOrderAsTheyFreeUp() {
+        CongestionWindow congestionWindow = congestionWindow(1, Duration.ofSeconds(10));
+        CompletableFuture<Void> first = congestionWindow.acquireAsync();
+        CompletableFuture<Void> second = congestionWindow.acquireAsync();
+        CompletableFuture<Void> third = congestionWindow.acquireAsync();
+
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        congestionWindow.release();
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(1, congestionWindow.getInFlight());
+    }
+
+    @Test
+    void cancelledAsyncWaiterDoesNotKeepItsSlot() {
+        CongestionWindow congestionWindow = congestionWindow(1, Duration.ofSeconds(10));
+        congestionWindow.acquireAsync();
+        CompletableFuture<Void> cancelled = congestionWindow.acquireAsync();
+        CompletableFuture<Void> waiting = congestionWindow.acquireAsync();
+
+        cancelled.cancel(false);
+        congestionWindow.release();
+
+        assertTrue(waiting.isDone());
+        assertEquals(1, congestionWindow.getInFlight());
+    }
+
+    @Test
+    void onSentAdjustsWindowToResponse() {
+        CongestionWindow congestionWindow = congestionWindow(16, Duration.ofSeconds(10));
+        CompletableFuture<ResponseMessage> good = new CompletableFuture<>();
+        CompletableFuture<ResponseMessage> timedOut = new CompletableFuture<>();
+        congestionWindow.acquireAsync();
+        congestionWindow.onSent(good, System.nanoTime());
+        congestionWindow.acquireAsync();
+        congestionWindow.onSent(timedOut, System.nanoTime());
+        assertEquals(2, congestionWindow.getInFlight());
+
+        good.complete(ResponseMessage.getDefaultInstance());
+        timedOut.completeExceptionally(new MmsPublishException(MmsPublishFailure.TIMEOUT));
+
+        assertEquals(0, congestionWindow.getInFlight());
+        assertEquals(1, throttles("timeout"));
+    }
+
+    private CongestionWindow congestionWindow(int initialWindow, Duration minRttWindow) {
+        return new CongestionWindow("test", initialWindow, 1, 64, 2.0, minRttWindow, meterRegistry);
+    }
+
+    private double throttles(String reason) {
+        return meterRegistry.get("gateway.mms.window.throttles").tag("reason", reason).counter().count();
+    }
+
+    private static void respond(CongestionWindow congestionWindow, int count, long rttNanos)
+            throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            congestionWindow.acquire();
+            congestionWindow.onGoodResponse(rttNanos);
+        }
+    }
+}
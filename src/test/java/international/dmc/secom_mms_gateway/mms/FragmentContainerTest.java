@@ -0,0 +1,128 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FragmentContainerTest {
+
+    private static final int FRAGMENT_SIZE = FragmentContainer.HEADER_SIZE + 100;
+
+    @Test
+    void parsesWhatWasSplit() {
+        byte[] payload = randomBytes(250);
+
+        List<byte[]> bodies = FragmentContainer.split(payload, FRAGMENT_SIZE);
+
+        assertEquals(3, bodies.size());
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < bodies.size(); i++) {
+            assertTrue(bodies.get(i).length <= FRAGMENT_SIZE);
+            FragmentContainer.Fragment fragment = FragmentContainer.parse(ByteBuffer.wrap(bodies.get(i)));
+            assertEquals(i, fragment.sequence());
+            assertEquals(3, fragment.total());
+            assertEquals(100, fragment.fragmentSize());
+            assertEquals(i * 100L, fragment.offset());
+            assertEquals(payload.length, fragment.totalSize());
+            byte[] data = new byte[fragment.data().remaining()];
+            fragment.data().get(data);
+            joined.writeBytes(data);
+        }
+        assertArrayEquals(payload, joined.toByteArray());
+    }
+
+    @Test
+    void fragmentsShareTransferId() {
+        List<byte[]> bodies = FragmentContainer.split(randomBytes(250), FRAGMENT_SIZE);
+
+        FragmentContainer.Fragment first = FragmentContainer.parse(ByteBuffer.wrap(bodies.getFirst()));
+        FragmentContainer.Fragment last = FragmentContainer.parse(ByteBuffer.wrap(bodies.getLast()));
+
+        assertEquals(first.transferId(), last.transferId());
+    }
+
+    @Test
+    void rejectsFragmentSizeWithoutRoomForData() {
+        assertThrows(IllegalArgumentException.class,
+                () -> FragmentContainer.split(randomBytes(10), FragmentContainer.HEADER_SIZE));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] body = FragmentContainer.split(randomBytes(10), FRAGMENT_SIZE).getFirst();
+        body[4] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> FragmentContainer.parse(ByteBuffer.wrap(body)));
+    }
+
+    @Test
+    void rejectsSequenceOutsideTransfer() {
+        ByteBuffer body = ByteBuffer.wrap(FragmentContainer.split(randomBytes(10), FRAGMENT_SIZE).getFirst());
+        body.putInt(4 + 1 + 16, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> FragmentContainer.parse(body));
+    }
+
+    @Test
+    void rejectsCountThatDisagreesWithSizes() {
+        ByteBuffer body = ByteBuffer.wrap(FragmentContainer.split(randomBytes(250), FRAGMENT_SIZE).getFirst());
+        body.putInt(4 + 1 + 16 + 4, 4);
+
+        assertThrows(IllegalArgumentException.class, () -> FragmentContainer.parse(body));
+    }
+
+    @Test
+    void rejectsDataThatDisagreesWithFragmentSize() {
+        byte[] body = FragmentContainer.split(randomBytes(250), FRAGMENT_SIZE).getFirst();
+        ByteBuffer truncated = ByteBuffer.wrap(body, 0, body.length - 1);
+
+        assertThrows(IllegalArgumentException.class, () -> FragmentContainer.parse(truncated));
+    }
+
+    @Test
+    void splitsEmptyPayloadIntoOneFragment() {
+        List<byte[]> bodies = FragmentContainer.split(new byte[0], FRAGMENT_SIZE);
+
+        assertEquals(1, bodies.size());
+        FragmentContainer.Fragment fragment = FragmentContainer.parse(ByteBuffer.wrap(bodies.getFirst()));
+        assertEquals(1, fragment.total());
+        assertEquals(0, fragment.data().remaining());
+    }
+
+    @Test
+    void rejectsBodyThatIsNotFragment() {
+        ByteBuffer body = ByteBuffer.wrap(BatchContainer.pack(List.of(randomBytes(100))));
+
+        assertThrows(IllegalArgumentException.class, () -> FragmentContainer.parse(body));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
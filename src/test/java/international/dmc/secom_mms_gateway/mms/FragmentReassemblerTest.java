@@ -0,0 +1,235 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FragmentReassemblerTest {
+
+    private static final int FRAGMENT_SIZE = FragmentContainer.HEADER_SIZE + 100;
+    private static final int MAX_PAYLOAD_SIZE = 1 << 20;
+    private static final int MAX_BUFFERED_BYTES = 10_000;
+
+    private final FragmentReassembler reassembler =
+            new FragmentReassembler(60_000, MAX_PAYLOAD_SIZE, 4, MAX_BUFFERED_BYTES);
+
+    @Test
+    void reassemblesFragmentsInOrder() {
+        byte[] payload = randomBytes(450);
+        List<byte[]> bodies = FragmentContainer.split(payload, FRAGMENT_SIZE);
+
+        for (int i = 0; i < bodies.size() - 1; i++) {
+            assertNull(reassembler.accept(ByteBuffer.wrap(bodies.get(i))));
+        }
+
+        assertArrayEquals(payload, reassembler.accept(ByteBuffer.wrap(bodies.getLast())));
+        assertEquals(0, reassembler.getPendingTransfers());
+        assertEquals(0, reassembler.getBufferedBytes());
+    }
+
+    @Test
+    void reassemblesFragmentsOutOfOrder() {
+        byte[] payload = randomBytes(1000);
+        List<byte[]> bodies = new ArrayList<>(FragmentContainer.split(payload, FRAGMENT_SIZE));
+        Collections.shuffle(bodies, new Random(1));
+
+        byte[] reassembled = null;
+        for (byte[] body : bodies) {
+            assertNull(reassembled);
+            reassembled = reassembler.accept(ByteBuffer.wrap(body));
+        }
+
+        assertArrayEquals(payload, reassembled);
+    }
+
+    @Test
+    void reassemblesSingleFragment() {
+        byte[] payload = randomBytes(10);
+
+        assertArrayEquals(payload, reassembler.accept(ByteBuffer.wrap(FragmentContainer.split(payload,
+                FRAGMENT_SIZE).getFirst())));
+    }
+
+    @Test
+    void ignoresDuplicateFragments() {
+        byte[] payload = randomBytes(250);
+        List<byte[]> bodies = FragmentContainer.split(payload, FRAGMENT_SIZE);
+
+        assertNull(reassembler.accept(ByteBuffer.wrap(bodies.get(0))));
+        long bufferedBytes = reassembler.getBufferedBytes();
+        assertNull(reassembler.accept(ByteBuffer.wrap(bodies.get(0))));
+        assertEquals(bufferedBytes, reassembler.getBufferedBytes());
+        assertNull(reassembler.accept(ByteBuffer.wrap(bodies.get(1))));
+
+        assertArrayEquals(payload, reassembler.accept(ByteBuffer.wrap(bodies.get(2))));
+    }
+
+    @Test
+    void keepsTransfersApart() {
+        byte[] first = randomBytes(200);
+        byte[] second = randomBytes(201);
+        List<byte[]> firstBodies = FragmentContainer.split(first, FRAGMENT_SIZE);
+        List<byte[]> secondBodies = FragmentContainer.split(second, FRAGMENT_SIZE);
+
+        assertNull(reassembler.accept(ByteBuffer.wrap(firstBodies.get(0))));
+        assertNull(reassembler.accept(ByteBuffer.wrap(secondBodies.get(0))));
+        assertNull(reassembler.accept(ByteBuffer.wrap(secondBodies.get(2))));
+        assertEquals(2, reassembler.getPendingTransfers());
+
+        assertArrayEquals(first, reassembler.accept(ByteBuffer.wrap(firstBodies.get(1))));
+        assertArrayEquals(second, reassembler.accept(ByteBuffer.wrap(secondBodies.get(1))));
+    }
+
+    @Test
+    void discardsExpiredTransfers() throws InterruptedException {
+        FragmentReassembler expiring = new FragmentReassembler(50, MAX_PAYLOAD_SIZE, 4, MAX_BUFFERED_BYTES);
+        List<byte[]> bodies = FragmentContainer.split(randomBytes(250), FRAGMENT_SIZE);
+        assertNull(expiring.accept(ByteBuffer.wrap(bodies.get(0))));
+        assertNull(expiring.accept(ByteBuffer.wrap(bodies.get(1))));
+
+        Thread.sleep(100);
+        // Evicting happens whenever a fragment arrives, so the late fragment starts a transfer of its own
+        assertNull(expiring.accept(ByteBuffer.wrap(bodies.get(2))));
+
+        assertEquals(1, expiring.getPendingTransfers());
+        assertEquals(100 - 50 + FragmentReassembler.FRAGMENT_OVERHEAD, expiring.getBufferedBytes());
+    }
+
+    @Test
+    void doesNotAllocateForAnnouncedPayloadSize() {
+        // Announces the largest allowed payload but only ever sends its first fragment
+        ByteBuffer body = fragment(UUID.randomUUID(), 0, MAX_PAYLOAD_SIZE / 100, 100, MAX_PAYLOAD_SIZE / 100 * 100,
+                new byte[100]);
+
+        assertNull(reassembler.accept(body));
+
+        assertEquals(100 + FragmentReassembler.FRAGMENT_OVERHEAD, reassembler.getBufferedBytes());
+    }
+
+    @Test
+    void rejectsFragmentsAboveBufferLimit() {
+        UUID transferId = UUID.randomUUID();
+        int fragments = MAX_BUFFERED_BYTES / (1000 + FragmentReassembler.FRAGMENT_OVERHEAD);
+        for (int sequence = 0; sequence < fragments; sequence++) {
+            assertNull(reassembler.accept(fragment(transferId, sequence, 100, 1000, 100_000, new byte[1000])));
+        }
+
+        ByteBuffer body = fragment(UUID.randomUUID(), 0, 100, 1000, 100_000, new byte[1000]);
+        assertThrows(IllegalArgumentException.class, () -> reassembler.accept(body));
+        assertEquals(fragments * (1000L + FragmentReassembler.FRAGMENT_OVERHEAD), reassembler.getBufferedBytes());
+    }
+
+    @Test
+    void releasesBufferOfExpiredTransfers() throws InterruptedException {
+        FragmentReassembler expiring = new FragmentReassembler(50, MAX_PAYLOAD_SIZE, 4, MAX_BUFFERED_BYTES);
+        UUID transferId = UUID.randomUUID();
+        for (int sequence = 0; sequence < 9; sequence++) {
+            assertNull(expiring.accept(fragment(transferId, sequence, 100, 1000, 100_000, new byte[1000])));
+        }
+
+        Thread.sleep(100);
+
+        assertNull(expiring.accept(fragment(UUID.randomUUID(), 0, 100, 1000, 100_000, new byte[1000])));
+        assertEquals(1000 + FragmentReassembler.FRAGMENT_OVERHEAD, expiring.getBufferedBytes());
+    }
+
+    @Test
+    void rejectsPayloadAboveSizeLimit() {
+        ByteBuffer body = fragment(UUID.randomUUID(), 0, 2, MAX_PAYLOAD_SIZE, MAX_PAYLOAD_SIZE + 1L,
+                new byte[MAX_PAYLOAD_SIZE]);
+
+        assertThrows(IllegalArgumentException.class, () -> reassembler.accept(body));
+    }
+
+    @Test
+    void rejectsTooManyTransfers() {
+        for (int i = 0; i < 4; i++) {
+            assertNull(reassembler.accept(fragment(UUID.randomUUID(), 0, 2, 10, 20, new byte[10])));
+        }
+
+        ByteBuffer body = fragment(UUID.randomUUID(), 0, 2, 10, 20, new byte[10]);
+        assertThrows(IllegalArgumentException.class, () -> reassembler.accept(body));
+    }
+
+    @Test
+    void rejectsFragmentThatDisagreesWithItsTransfer() {
+        UUID transferId = UUID.randomUUID();
+        assertNull(reassembler.accept(fragment(transferId, 0, 3, 100, 250, new byte[100])));
+
+        ByteBuffer otherFragmentSize = fragment(transferId, 1, 3, 120, 250, new byte[120]);
+        ByteBuffer otherTotalSize = fragment(transferId, 1, 3, 100, 260, new byte[100]);
+        ByteBuffer otherTotal = fragment(transferId, 1, 4, 100, 350, new byte[100]);
+        assertThrows(IllegalArgumentException.class, () -> reassembler.accept(otherFragmentSize));
+        assertThrows(IllegalArgumentException.class, () -> reassembler.accept(otherTotalSize));
+        assertThrows(IllegalArgumentException.class, () -> reassembler.accept(otherTotal));
+
+        assertNull(reassembler.accept(fragment(transferId, 2, 3, 100, 250, new byte[50])));
+        assertEquals(250, reassembler.accept(fragment(transferId, 1, 3, 100, 250, new byte[100])).length);
+    }
+
+    @Test
+    void rejectsInconsistentHeaders() {
+        UUID transferId = UUID.randomUUID();
+        // The count does not match the sizes
+        assertThrows(IllegalArgumentException.class,
+                () -> reassembler.accept(fragment(transferId, 0, 5, 100, 250, new byte[100])));
+        // A fragment that is not the last one carries less than the fragment size
+        assertThrows(IllegalArgumentException.class,
+                () -> reassembler.accept(fragment(transferId, 0, 3, 100, 250, new byte[99])));
+        // The last fragment carries more than what is left of the payload
+        assertThrows(IllegalArgumentException.class,
+                () -> reassembler.accept(fragment(transferId, 2, 3, 100, 250, new byte[100])));
+        // Fragment size of zero
+        assertThrows(IllegalArgumentException.class,
+                () -> reassembler.accept(fragment(transferId, 0, 1, 0, 0, new byte[0])));
+        assertEquals(0, reassembler.getPendingTransfers());
+        assertEquals(0, reassembler.getBufferedBytes());
+    }
+
+    private static ByteBuffer fragment(UUID transferId, int sequence, int total, int fragmentSize, long totalSize,
+                                       byte[] data) {
+        byte[] template = FragmentContainer.split(new byte[0], FRAGMENT_SIZE).getFirst();
+        ByteBuffer buffer = ByteBuffer.allocate(FragmentContainer.HEADER_SIZE + data.length);
+        buffer.put(template, 0, 5)
+                .putLong(transferId.getMostSignificantBits())
+                .putLong(transferId.getLeastSignificantBits())
+                .putInt(sequence)
+                .putInt(total)
+                .putInt(fragmentSize)
+                .putLong(totalSize)
+                .put(data);
+        return buffer.flip();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.mmtp.ResponseEnum;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightTableTest {
+
+    private static final long TIMEOUT_MS = 300;
+
+    private final InFlightTable inFlightTable = new InFlightTable(TIMEOUT_MS, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        inFlightTable.close();
+    }
+
+    @Test
+    void goodResponseCompletesMessage() throws Exception {
+        CompletableFuture<ResponseMessage> future = inFlightTable.register("1");
+        assertTrue(inFlightTable.isInFlight("1"));
+
+        long roundTripTime = inFlightTable.complete(response("1", ResponseEnum.GOOD));
+
+        assertTrue(roundTripTime >= 0);
+        assertEquals("1", future.get(1, TimeUnit.SECONDS).getResponseToUuid());
+        assertFalse(inFlightTable.isInFlight("1"));
+        assertNull(inFlightTable.markSent("1"));
+        assertEquals(0, inFlightTable.size());
+    }
+
+    @Test
+    void errorResponseFailsMessageWithReason() {
+        CompletableFuture<ResponseMessage> future = inFlightTable.register("1");
+
+        inFlightTable.complete(response("1", ResponseEnum.ERROR).toBuilder().setReasonText("no such subject").build());
+
+        MmsPublishException exception = assertFailure(MmsPublishFailure.ERROR_RESPONSE, future);
+        assertEquals("no such subject", exception.getMessage());
+    }
+
+    @Test
+    void responseToUnknownMessageIsIgnored() {
+        assertEquals(-1, inFlightTable.complete(response("unknown", ResponseEnum.GOOD)));
+    }
+
+    @Test
+    void messageWithoutResponseTimesOut() {
+        CompletableFuture<ResponseMessage> future = send("1");
+        long sentAt = System.nanoTime();
+
+        assertFailure(MmsPublishFailure.TIMEOUT, future);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentAt) >= TIMEOUT_MS);
+        assertFalse(inFlightTable.isInFlight("1"));
+        assertEquals(-1, inFlightTable.complete(response("1", ResponseEnum.GOOD)));
+    }
+
+    @Test
+    void responsesRacingTimeoutsCompleteEveryMessageOnce() throws Exception {
+        int count = 200;
+        List<CompletableFuture<ResponseMessage>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(send(Integer.toString(i)));
+        }
+        // Respond around the deadline, so that some responses win and some lose against the timer wheel
+        Thread.sleep(TIMEOUT_MS - 50);
+        int completed = 0;
+        for (int i = 0; i < count; i++) {
+            if (inFlightTable.complete(response(Integer.toString(i), ResponseEnum.GOOD)) >= 0) {
+                completed++;
+            }
+            if (i % 20 == 0) {
+                Thread.sleep(10);
+            }
+        }
+
+        int good = 0;
+        for (CompletableFuture<ResponseMessage> future : futures) {
+            try {
+                future.get(2, TimeUnit.SECONDS);
+                good++;
+            } catch (ExecutionException e) {
+                MmsPublishException exception = assertInstanceOf(MmsPublishException.class, e.getCause());
+                assertEquals(MmsPublishFailure.TIMEOUT, exception.getMmsPublishFailure());
+            }
+        }
+        assertEquals(completed, good);
+        assertEquals(0, inFlightTable.size());
+    }
+
+    @Test
+    void queuedMessageDoesNotTimeOut() throws Exception {
+        CompletableFuture<ResponseMessage> future = inFlightTable.register("1");
+
+        Thread.sleep(2 * TIMEOUT_MS);
+
+        assertFalse(future.isDone());
+        assertTrue(inFlightTable.claim("1"));
+    }
+
+    @Test
+    void messageCanOnlyBeClaimedOnce() {
+        inFlightTable.register("1");
+
+        assertTrue(inFlightTable.claim("1"));
+        assertFalse(inFlightTable.claim("1"));
+    }
+
+    @Test
+    void failedMessageCannotBeClaimed() {
+        CompletableFuture<ResponseMessage> future = inFlightTable.register("1");
+        inFlightTable.fail("1", new MmsPublishException(MmsPublishFailure.NOT_CONNECTED));
+
+        assertFalse(inFlightTable.claim("1"));
+        assertFailure(MmsPublishFailure.NOT_CONNECTED, future);
+    }
+
+    @Test
+    void responseBeforeMarkSentLeavesNoTimeout() throws Exception {
+        CompletableFuture<ResponseMessage> future = send("1");
+        inFlightTable.register("2");
+        assertTrue(inFlightTable.claim("2"));
+
+        // The response can overtake the writer between writing the frame and marking it as sent
+        assertTrue(inFlightTable.complete(response("2", ResponseEnum.GOOD)) >= 0);
+        inFlightTable.markSent("2");
+
+        assertFailure(MmsPublishFailure.TIMEOUT, future);
+        assertEquals(0, inFlightTable.size());
+    }
+
+    @Test
+    void failAllFailsEveryMessage() {
+        CompletableFuture<ResponseMessage> first = inFlightTable.register("1");
+        CompletableFuture<ResponseMessage> second = inFlightTable.register("2");
+
+        inFlightTable.failAll(new MmsPublishException(MmsPublishFailure.NOT_CONNECTED));
+
+        assertFailure(MmsPublishFailure.NOT_CONNECTED, first);
+        assertFailure(MmsPublishFailure.NOT_CONNECTED, second);
+        assertEquals(0, inFlightTable.size());
+    }
+
+    @Test
+    void closeFailsMessagesInFlight() {
+        CompletableFuture<ResponseMessage> future = inFlightTable.register("1");
+
+        inFlightTable.close();
+
+        assertFailure(MmsPublishFailure.SHUTTING_DOWN, future);
+    }
+
+    private CompletableFuture<ResponseMessage> send(String uuid) {
+        CompletableFuture<ResponseMessage> future = inFlightTable.register(uuid);
+        assertTrue(inFlightTable.claim(uuid));
+        inFlightTable.markSent(uuid);
+        return future;
+    }
+
+    private static MmsPublishException assertFailure(MmsPublishFailure expected,
+                                                     CompletableFuture<ResponseMessage> future) {
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+        MmsPublishException publishException = assertInstanceOf(MmsPublishException.class, exception.getCause());
+        assertEquals(expected, publishException.getMmsPublishFailure());
+        return publishException;
+    }
+
+    private static ResponseMessage response(String uuid, ResponseEnum response) {
+        return ResponseMessage.newBuilder().setResponseToUuid(uuid).setResponse(response).build();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.mmtp.ApplicationMessage;
+import net.maritimeconnectivity.mmtp.ApplicationMessageHeader;
+import net.maritimeconnectivity.mmtp.MessageMetadata;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.Notify;
+import net.maritimeconnectivity.mmtp.ProtocolMessage;
+import net.maritimeconnectivity.mmtp.ProtocolMessageType;
+import net.maritimeconnectivity.mmtp.Recipients;
+import net.maritimeconnectivity.mmtp.ResponseEnum;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InboundReceiverTest {
+
+    private static final String OWN_MRN = "urn:mrn:mcp:device:mcc:dmc:gateway";
+    private static final String SENDER = "urn:mrn:mcp:device:mcc:dmc:sender";
+    private static final String PLAIN_SUBJECT = "plain";
+    private static final String CONTAINER_SUBJECT = "containers";
+
+    private final List<InboundMessage> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InboundReceiver receiver = new InboundReceiver(List.of(PLAIN_SUBJECT, CONTAINER_SUBJECT),
+            Set.of(CONTAINER_SUBJECT), false, OWN_MRN, new FragmentReassembler(60_000, 1 << 20, 10, 1 << 22),
+            delivered::add, meterRegistry);
+
+    @Test
+    void deliversBodyOnPlainSubjectAsItIs() {
+        // Starts with the magic number of a batch container, but the subject does not carry containers
+        byte[] body = BatchContainer.pack(List.of(bytes("first"), bytes("second")));
+
+        receive(subjectMessage(PLAIN_SUBJECT, SENDER, body));
+
+        assertEquals(1, delivered.size());
+        assertEquals(PLAIN_SUBJECT, delivered.getFirst().subject());
+        assertArrayEquals(body, delivered.getFirst().payload());
+    }
+
+    @Test
+    void unpacksBatchOnContainerSubject() {
+        byte[] body = BatchContainer.pack(List.of(bytes("first"), bytes("second")));
+
+        receive(subjectMessage(CONTAINER_SUBJECT, SENDER, body));
+
+        assertEquals(2, delivered.size());
+        assertArrayEquals(bytes("first"), delivered.get(0).payload());
+        assertArrayEquals(bytes("second"), delivered.get(1).payload());
+        assertEquals(SENDER, delivered.get(1).sender());
+    }
+
+    @Test
+    void reassemblesFragmentsOnContainerSubject() {
+        byte[] payload = new byte[1000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        List<byte[]> bodies = FragmentContainer.split(payload, FragmentContainer.HEADER_SIZE + 300);
+
+        receive(bodies.stream().map(body -> subjectMessage(CONTAINER_SUBJECT, SENDER, body)).toList());
+
+        assertEquals(1, delivered.size());
+        assertArrayEquals(payload, delivered.getFirst().payload());
+    }
+
+    @Test
+    void discardsInvalidContainer() {
+        receive(subjectMessage(CONTAINER_SUBJECT, SENDER, bytes("<S124>not a container</S124>")));
+
+        assertEquals(0, delivered.size());
+        assertEquals(1, meterRegistry.counter("gateway.mms.inbound.invalid").count());
+    }
+
+    @Test
+    void deliversDirectMessageAsItIs() {
+        byte[] body = BatchContainer.pack(List.of(bytes("dataset")));
+        ApplicationMessage message = ApplicationMessage.newBuilder()
+                .setHeader(ApplicationMessageHeader.newBuilder()
+                        .setRecipients(Recipients.newBuilder().addRecipients(OWN_MRN))
+                        .setSender(SENDER))
+                .setBody(ByteString.copyFrom(body))
+                .build();
+
+        receive(message);
+
+        assertEquals(1, delivered.size());
+        assertNull(delivered.getFirst().subject());
+        assertArrayEquals(body, delivered.getFirst().payload());
+    }
+
+    @Test
+    void skipsOwnMessages() {
+        receive(subjectMessage(PLAIN_SUBJECT, OWN_MRN, bytes("dataset")));
+
+        assertEquals(0, delivered.size());
+    }
+
+    @Test
+    void subscribesOnFirstConnectionOnly() {
+        RecordingConnection first = new RecordingConnection("first");
+        RecordingConnection second = new RecordingConnection("second");
+
+        receiver.onConnected(first);
+        receiver.onConnected(second);
+
+        assertEquals(List.of(ProtocolMessageType.SUBSCRIBE_MESSAGE, ProtocolMessageType.SUBSCRIBE_MESSAGE,
+                ProtocolMessageType.RECEIVE_MESSAGE), first.sentTypes());
+        assertEquals(List.of(), second.sentTypes());
+    }
+
+    @Test
+    void movesSubscriptionsToOpenConnectionWhenLost() {
+        RecordingConnection first = new RecordingConnection("first");
+        RecordingConnection second = new RecordingConnection("second");
+        receiver.onConnected(first);
+        receiver.onConnected(second);
+
+        first.open = false;
+        receiver.onLost(first, List.of(first, second));
+
+        assertEquals(List.of(ProtocolMessageType.SUBSCRIBE_MESSAGE, ProtocolMessageType.SUBSCRIBE_MESSAGE,
+                ProtocolMessageType.RECEIVE_MESSAGE), second.sentTypes());
+
+        // The resumed session of the first connection may still hold the old subscriptions
+        first.sent.clear();
+        first.open = true;
+        receiver.onConnected(first);
+
+        assertEquals(List.of(ProtocolMessageType.UNSUBSCRIBE_MESSAGE, ProtocolMessageType.UNSUBSCRIBE_MESSAGE),
+                first.sentTypes());
+    }
+
+    @Test
+    void nextConnectionTakesOverWhenNoneIsOpen() {
+        RecordingConnection first = new RecordingConnection("first");
+        RecordingConnection second = new RecordingConnection("second");
+        second.open = false;
+        receiver.onConnected(first);
+
+        first.open = false;
+        receiver.onLost(first, List.of(first, second));
+        assertEquals(List.of(), second.sentTypes());
+
+        second.open = true;
+        receiver.onConnected(second);
+
+        assertEquals(List.of(ProtocolMessageType.SUBSCRIBE_MESSAGE, ProtocolMessageType.SUBSCRIBE_MESSAGE,
+                ProtocolMessageType.RECEIVE_MESSAGE), second.sentTypes());
+    }
+
+    @Test
+    void ignoresNotifyOnConnectionWithoutSubscriptions() {
+        RecordingConnection first = new RecordingConnection("first");
+        RecordingConnection second = new RecordingConnection("second");
+        receiver.onConnected(first);
+        receiver.onConnected(second);
+        first.sent.clear();
+        ProtocolMessage notify = ProtocolMessage.newBuilder()
+                .setProtocolMsgType(ProtocolMessageType.NOTIFY_MESSAGE)
+                .setNotifyMessage(Notify.newBuilder().addMessageMetadata(MessageMetadata.newBuilder().setUuid("1")))
+                .build();
+
+        receiver.onProtocolMessage(second, notify);
+        receiver.onProtocolMessage(first, notify);
+
+        assertEquals(List.of(), second.sentTypes());
+        assertEquals(List.of(ProtocolMessageType.RECEIVE_MESSAGE), first.sentTypes());
+    }
+
+    private void receive(ApplicationMessage applicationMessage) {
+        receive(List.of(applicationMessage));
+    }
+
+    private void receive(List<ApplicationMessage> applicationMessages) {
+        receiver.onConnected(new ReceivingConnection(applicationMessages));
+    }
+
+    private static ApplicationMessage subjectMessage(String subject, String sender, byte[] body) {
+        return ApplicationMessage.newBuilder()
+                .setHeader(ApplicationMessageHeader.newBuilder().setSubject(subject).setSender(sender))
+                .setBody(ByteString.copyFrom(body))
+                .build();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records the messages sent on it and answers all of them with GOOD.
+     */
+    private static final class RecordingConnection implements MmsConnection {
+
+        private final String name;
+        private final List<MmtpMessage> sent = new ArrayList<>();
+        private boolean open = true;
+
+        private RecordingConnection(String name) {
+            this.name = name;
+        }
+
+        List<ProtocolMessageType> sentTypes() {
+            return sent.stream().map(message -> message.getProtocolMessage().getProtocolMsgType()).toList();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public CompletableFuture<ResponseMessage> send(MmtpMessage mmtpMessage) {
+            sent.add(mmtpMessage);
+            return CompletableFuture.completedFuture(ResponseMessage.newBuilder()
+                    .setResponseToUuid(mmtpMessage.getUuid())
+                    .setResponse(ResponseEnum.GOOD)
+                    .build());
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+
+    /**
+     * Answers every RECEIVE message with the given application messages and every other message with GOOD.
+     */
+    private record ReceivingConnection(List<ApplicationMessage> applicationMessages) implements MmsConnection {
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public CompletableFuture<ResponseMessage> send(MmtpMessage mmtpMessage) {
+            ResponseMessage.Builder response = ResponseMessage.newBuilder()
+                    .setResponseToUuid(mmtpMessage.getUuid())
+                    .setResponse(ResponseEnum.GOOD);
+            if (mmtpMessage.getProtocolMessage().getProtocolMsgType() == ProtocolMessageType.RECEIVE_MESSAGE) {
+                response.addAllApplicationMessages(applicationMessages);
+            }
+            return CompletableFuture.completedFuture(response.build());
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.CodedOutputStream;
+import international.dmc.secom_mms_gateway.components.SigningEngine;
+import international.dmc.secom_mms_gateway.utils.KeystoreUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.Recipients;
+import net.maritimeconnectivity.mmtp.ResponseEnum;
+import net.maritimeconnectivity.mmtp.ResponseMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MMSAgentTest {
+
+    private static final String RECIPIENT = "urn:mrn:mcp:device:mcc:dmc:vessel-";
+
+    private final SigningEngine signingEngine = mock(SigningEngine.class);
+    private final SendingConnection connection = new SendingConnection();
+    private MMSAgent mmsAgent;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mmsAgent = new MMSAgent(mock(KeystoreUtil.class), signingEngine, new SimpleMeterRegistry(),
+                mock(ObjectProvider.class));
+        ReflectionTestUtils.setField(mmsAgent, "ownMrn", "urn:mrn:mcp:service:mcc:dmc:gateway");
+        ReflectionTestUtils.setField(mmsAgent, "directMaxRecipients", 2);
+        ReflectionTestUtils.setField(mmsAgent, "directMaxRecipientsSize", 65536);
+        ((List<MmsConnection>) ReflectionTestUtils.getField(mmsAgent, "connections")).add(connection);
+    }
+
+    @Test
+    void chunksByNumberOfRecipients() {
+        List<String> recipients = recipients(5);
+
+        List<List<String>> chunks = MMSAgent.chunkRecipients(recipients, 2, Integer.MAX_VALUE);
+
+        assertEquals(List.of(recipients.subList(0, 2), recipients.subList(2, 4), recipients.subList(4, 5)), chunks);
+    }
+
+    @Test
+    void chunksBySizeOfRecipients() {
+        List<String> recipients = recipients(5);
+        int size = CodedOutputStream.computeStringSize(Recipients.RECIPIENTS_FIELD_NUMBER, recipients.getFirst());
+
+        List<List<String>> chunks = MMSAgent.chunkRecipients(recipients, 100, 3 * size);
+
+        assertEquals(List.of(recipients.subList(0, 3), recipients.subList(3, 5)), chunks);
+    }
+
+    @Test
+    void givesOversizedRecipientChunkOfItsOwn() {
+        String oversized = RECIPIENT + "x".repeat(200);
+        List<String> recipients = List.of(RECIPIENT + 1, oversized, RECIPIENT + 2);
+
+        List<List<String>> chunks = MMSAgent.chunkRecipients(recipients, 100, 100);
+
+        assertEquals(List.of(List.of(RECIPIENT + 1), List.of(oversized), List.of(RECIPIENT + 2)), chunks);
+    }
+
+    @Test
+    void chunksNothingIntoNothing() {
+        assertTrue(MMSAgent.chunkRecipients(List.of(), 2, 100).isEmpty());
+    }
+
+    @Test
+    void sendsOneMessagePerChunkOfRecipients() throws Exception {
+        when(signingEngine.signMmsBatch(anyList())).thenAnswer(invocation -> IntStream
+                .range(0, invocation.<List<?>>getArgument(0).size())
+                .mapToObj(i -> new byte[]{(byte) i})
+                .toList());
+
+        mmsAgent.publishDirect(bytes("<S124:Dataset/>"), recipients(5)).join();
+
+        List<List<String>> sentRecipients = connection.sent.stream()
+                .map(message -> List.copyOf(message.getProtocolMessage().getSendMessage().getApplicationMessage()
+                        .getHeader().getRecipients().getRecipientsList()))
+                .toList();
+        assertEquals(List.of(recipients(5).subList(0, 2), recipients(5).subList(2, 4), recipients(5).subList(4, 5)),
+                sentRecipients);
+    }
+
+    @Test
+    void sendsNothingIfAnyChunkCannotBeSigned() throws Exception {
+        when(signingEngine.signMmsBatch(anyList())).thenThrow(new SignatureException("Signer failed"));
+
+        assertThrows(SignatureException.class, () -> mmsAgent.publishDirect(bytes("<S124:Dataset/>"), recipients(5)));
+
+        assertTrue(connection.sent.isEmpty());
+    }
+
+    private static List<String> recipients(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(i -> RECIPIENT + i).toList();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records the messages sent on it and answers all of them with GOOD.
+     */
+    private static final class SendingConnection implements MmsConnection {
+
+        private final List<MmtpMessage> sent = new ArrayList<>();
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public CompletableFuture<ResponseMessage> send(MmtpMessage mmtpMessage) {
+            sent.add(mmtpMessage);
+            return CompletableFuture.completedFuture(ResponseMessage.newBuilder()
+                    .setResponseToUuid(mmtpMessage.getUuid())
+                    .setResponse(ResponseEnum.GOOD)
+                    .build());
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package international.dmc.secom_mms_gateway.mms;
+
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.mmtp.ApplicationMessage;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import net.maritimeconnectivity.mmtp.ProtocolMessage;
+import net.maritimeconnectivity.mmtp.Send;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reopens journals in a temporary directory to check what survives a restart, and damages segment files in place to
+ * simulate records that were only partially written before a crash.
+ */
+class MessageJournalTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int BODY_SIZE = 100;
+
+    @TempDir
+    private Path directory;
+
+    private final List<MessageJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(MessageJournal::close);
+    }
+
+    @Test
+    void readsAppendedMessagesInOrder() throws IOException {
+        MessageJournal journal = open(false);
+
+        assertEquals(1, journal.append(message("1")));
+        assertEquals(2, journal.append(message("2")));
+        assertEquals(3, journal.append(message("3")));
+
+        assertEquals(List.of("1", "2", "3"), readFromCommit(journal));
+        assertEquals(3, journal.getBacklog());
+    }
+
+    @Test
+    void replaysFromCommitPointerAfterRestart() throws IOException {
+        MessageJournal journal = open(true);
+        for (int i = 1; i <= 5; i++) {
+            journal.append(message(Integer.toString(i)));
+        }
+        journal.acknowledge(1);
+        journal.acknowledge(2);
+        journal.acknowledge(4);
+        assertTrue(journal.isAcknowledged(4));
+        assertFalse(journal.isAcknowledged(3));
+        journal.close();
+
+        MessageJournal reopened = open(false);
+
+        // Acknowledgements past the commit pointer are not persisted, so message 4 is sent again
+        assertEquals(List.of("3", "4", "5"), readFromCommit(reopened));
+        assertEquals(3, reopened.getBacklog());
+        assertEquals(6, reopened.append(message("6")));
+    }
+
+    @Test
+    void rollsOverToNewSegmentWhenFull() throws IOException {
+        MessageJournal journal = open(false);
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            journal.append(message(Integer.toString(i)));
+            expected.add(Integer.toString(i));
+        }
+
+        assertTrue(segmentFiles().size() > 2);
+        assertEquals(expected, readFromCommit(journal));
+        journal.close();
+        assertEquals(expected, readFromCommit(open(false)));
+    }
+
+    @Test
+    void cursorFollowsMessagesAppendedIntoNewSegments() throws IOException {
+        MessageJournal journal = open(false);
+        journal.append(message("1"));
+        MessageJournal.Cursor cursor = journal.cursorAtCommit();
+        assertEquals(1, cursor.next().sequence());
+        assertNull(cursor.next());
+
+        for (int i = 2; i <= 20; i++) {
+            journal.append(message(Integer.toString(i)));
+        }
+
+        for (long sequence = 2; sequence <= 20; sequence++) {
+            assertEquals(sequence, cursor.next().sequence());
+        }
+        assertNull(cursor.next());
+    }
+
+    @Test
+    void deletesSegmentsOnceAllTheirMessagesAreAcknowledged() throws IOException {
+        MessageJournal journal = open(false);
+        for (int i = 1; i <= 25; i++) {
+            journal.append(message(Integer.toString(i)));
+        }
+        int segments = segmentFiles().size();
+
+        for (long sequence = 1; sequence <= 25; sequence++) {
+            journal.acknowledge(sequence);
+        }
+
+        assertTrue(segments > 1);
+        assertEquals(1, segmentFiles().size());
+        assertEquals(0, journal.getBacklog());
+        assertNull(journal.cursorAtCommit().next());
+        journal.close();
+        MessageJournal reopened = open(false);
+        assertEquals(0, reopened.getBacklog());
+        assertEquals(26, reopened.append(message("26")));
+    }
+
+    @Test
+    void keepsSegmentsWithUnacknowledgedMessages() throws IOException {
+        MessageJournal journal = open(false);
+        for (int i = 1; i <= 25; i++) {
+            journal.append(message(Integer.toString(i)));
+        }
+        int segments = segmentFiles().size();
+
+        for (long sequence = 2; sequence <= 25; sequence++) {
+            journal.acknowledge(sequence);
+        }
+
+        assertEquals(segments, segmentFiles().size());
+        assertEquals(1, journal.getBacklog());
+        journal.acknowledge(1);
+        assertEquals(1, segmentFiles().size());
+    }
+
+    @Test
+    void recoversUpToRecordWhoseLengthWasNotWritten() throws IOException {
+        MessageJournal journal = open(true);
+        for (int i = 1; i <= 3; i++) {
+            journal.append(message(Integer.toString(i)));
+        }
+        journal.close();
+
+        // The length is written last, so a record without it was interrupted while being written
+        writeInt(segmentFiles().getFirst(), 2 * recordSize(), 0);
+        MessageJournal reopened = open(false);
+
+        assertEquals(List.of("1", "2"), readFromCommit(reopened));
+        assertEquals(3, reopened.append(message("3b")));
+        assertEquals(List.of("1", "2", "3b"), readFromCommit(reopened));
+    }
+
+    @Test
+    void recoversUpToRecordWithBrokenChecksum() throws IOException {
+        MessageJournal journal = open(true);
+        for (int i = 1; i <= 3; i++) {
+            journal.append(message(Integer.toString(i)));
+        }
+        journal.close();
+
+        // Damage the body of the second record, which also makes the third unreachable
+        writeInt(segmentFiles().getFirst(), recordSize() + JournalSegment.HEADER_SIZE + 10, 0x5A5A5A5A);
+        MessageJournal reopened = open(false);
+
+        assertEquals(List.of("1"), readFromCommit(reopened));
+        assertEquals(1, reopened.getBacklog());
+    }
+
+    @Test
+    void rejectsMessageLargerThanSegment() throws IOException {
+        MessageJournal journal = open(false);
+
+        assertThrows(IOException.class, () -> journal.append(message("large", SEGMENT_SIZE)));
+        assertEquals(0, journal.getBacklog());
+    }
+
+    private MessageJournal open(boolean forceOnAppend) throws IOException {
+        MessageJournal journal = new MessageJournal(directory, SEGMENT_SIZE, forceOnAppend, new SimpleMeterRegistry());
+        journals.add(journal);
+        return journal;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegmentFile).sorted().toList();
+        }
+    }
+
+    private static List<String> readFromCommit(MessageJournal journal) throws IOException {
+        List<String> uuids = new ArrayList<>();
+        MessageJournal.Cursor cursor = journal.cursorAtCommit();
+        MessageJournal.Entry entry;
+        while ((entry = cursor.next()) != null) {
+            uuids.add(entry.parse().getUuid());
+        }
+        return uuids;
+    }
+
+    private static void writeInt(Path file, int position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), position);
+        }
+    }
+
+    /**
+     * @return the size of a record holding a message with a single digit UUID
+     */
+    private static int recordSize() {
+        return JournalSegment.HEADER_SIZE + message("1").getSerializedSize();
+    }
+
+    private static MmtpMessage message(String uuid) {
+        return message(uuid, BODY_SIZE);
+    }
+
+    private static MmtpMessage message(String uuid, int bodySize) {
+        return MmtpMessage.newBuilder()
+                .setUuid(uuid)
+                .setProtocolMessage(ProtocolMessage.newBuilder()
+                        .setSendMessage(Send.newBuilder()
+                                .setApplicationMessage(ApplicationMessage.newBuilder()
+                                        .setBody(ByteString.copyFrom(new byte[bodySize])))))
+                .build();
+    }
+}
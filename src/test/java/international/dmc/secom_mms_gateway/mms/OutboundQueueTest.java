@@ -0,0 +1,249 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package international.dmc.secom_mms_gateway.mms;
+
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.mmtp.MmtpMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fills the queue behind a writer that is held on a latch, so that the overflow policies can be observed without
+ * timing assumptions.
+ */
+class OutboundQueueTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final CountDownLatch writerEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseWriter = new CountDownLatch(1);
+    private OutboundQueue outboundQueue;
+    private CompletableFuture<Void> queueHead;
+
+    @AfterEach
+    void tearDown() {
+        releaseWriter.countDown();
+        if (outboundQueue != null) {
+            outboundQueue.close();
+        }
+    }
+
+    @Test
+    void writesMessagesInOrder() throws Exception {
+        releaseWriter.countDown();
+        outboundQueue = new OutboundQueue("test", 4, OverflowPolicy.REJECT, this::holdingWriter,
+                new SimpleMeterRegistry());
+
+        CompletableFuture<Void> first = outboundQueue.enqueue(message("1"));
+        CompletableFuture<Void> second = outboundQueue.enqueue(message("2"));
+        CompletableFuture<Void> third = outboundQueue.enqueue(message("3"));
+
+        CompletableFuture.allOf(first, second, third).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(List.of("1", "2", "3"), written);
+    }
+
+    @Test
+    void rejectFailsNewMessageWhenFull() throws Exception {
+        outboundQueue = new OutboundQueue("test", 2, OverflowPolicy.REJECT, this::holdingWriter,
+                new SimpleMeterRegistry());
+        CompletableFuture<Void> inWriter = fillQueue();
+
+        CompletableFuture<Void> rejected = outboundQueue.enqueue(message("4"));
+
+        assertFailure(MmsPublishFailure.QUEUE_FULL, rejected);
+        releaseWriter.countDown();
+        inWriter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        awaitWritten(3);
+        assertEquals(List.of("1", "2", "3"), written);
+    }
+
+    @Test
+    void dropOldestFailsOldestQueuedMessageWhenFull() throws Exception {
+        outboundQueue = new OutboundQueue("test", 2, OverflowPolicy.DROP_OLDEST, this::holdingWriter,
+                new SimpleMeterRegistry());
+        fillQueue();
+        CompletableFuture<Void> newest = outboundQueue.enqueue(message("4"));
+        assertFailure(MmsPublishFailure.DROPPED, queueHead);
+
+        releaseWriter.countDown();
+        newest.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        awaitWritten(3);
+        assertEquals(List.of("1", "3", "4"), written);
+    }
+
+    @Test
+    void blockWaitsForRoomInTheQueue() throws Exception {
+        outboundQueue = new OutboundQueue("test", 2, OverflowPolicy.BLOCK, this::holdingWriter,
+                new SimpleMeterRegistry());
+        fillQueue();
+
+        CompletableFuture<CompletableFuture<Void>> blocked = CompletableFuture.supplyAsync(
+                () -> outboundQueue.enqueue(message("4")));
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+
+        releaseWriter.countDown();
+        blocked.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(List.of("1", "2", "3", "4"), written);
+    }
+
+    @Test
+    void writeFailureFailsOnlyThatMessage() throws Exception {
+        IOException failure = new IOException("broken pipe");
+        outboundQueue = new OutboundQueue("test", 4, OverflowPolicy.REJECT, mmtpMessage -> {
+            if (mmtpMessage.getUuid().equals("2")) {
+                throw failure;
+            }
+            written.add(mmtpMessage.getUuid());
+        }, new SimpleMeterRegistry());
+
+        CompletableFuture<Void> first = outboundQueue.enqueue(message("1"));
+        CompletableFuture<Void> second = outboundQueue.enqueue(message("2"));
+        CompletableFuture<Void> third = outboundQueue.enqueue(message("3"));
+
+        third.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        MmsPublishException exception = assertFailure(MmsPublishFailure.WRITE_FAILED, second);
+        assertSame(failure, exception.getCause());
+        assertEquals(List.of("1", "3"), written);
+    }
+
+    @Test
+    void writerPublishExceptionIsPassedOn() throws Exception {
+        outboundQueue = new OutboundQueue("test", 4, OverflowPolicy.REJECT, mmtpMessage -> {
+            throw new MmsPublishException(MmsPublishFailure.NOT_CONNECTED);
+        }, new SimpleMeterRegistry());
+
+        assertFailure(MmsPublishFailure.NOT_CONNECTED, outboundQueue.enqueue(message("1")));
+    }
+
+    @Test
+    void unexpectedWriterErrorDoesNotStopTheWriter() throws Exception {
+        outboundQueue = new OutboundQueue("test", 4, OverflowPolicy.REJECT, mmtpMessage -> {
+            if (mmtpMessage.getUuid().equals("1")) {
+                throw new IllegalStateException("bug");
+            }
+            written.add(mmtpMessage.getUuid());
+        }, new SimpleMeterRegistry());
+
+        CompletableFuture<Void> first = outboundQueue.enqueue(message("1"));
+        CompletableFuture<Void> second = outboundQueue.enqueue(message("2"));
+
+        second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertEquals(List.of("2"), written);
+    }
+
+    @Test
+    void closeFailsQueuedAndLaterMessages() throws Exception {
+        outboundQueue = new OutboundQueue("test", 2, OverflowPolicy.REJECT, this::holdingWriter,
+                new SimpleMeterRegistry());
+        fillQueue();
+        CompletableFuture<Void> queued = queueHead;
+
+        outboundQueue.close();
+
+        assertFailure(MmsPublishFailure.SHUTTING_DOWN, queued);
+        assertFailure(MmsPublishFailure.SHUTTING_DOWN, outboundQueue.enqueue(message("4")));
+        assertEquals(0, outboundQueue.size());
+        assertFalse(written.contains("2"));
+    }
+
+    @Test
+    void closeFailsMessageOfBlockedCaller() throws Exception {
+        outboundQueue = new OutboundQueue("test", 2, OverflowPolicy.BLOCK, this::holdingWriter,
+                new SimpleMeterRegistry());
+        fillQueue();
+        CompletableFuture<CompletableFuture<Void>> blocked = CompletableFuture.supplyAsync(
+                () -> outboundQueue.enqueue(message("4")));
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+
+        outboundQueue.close();
+
+        // The drain makes room for the blocked caller, whose message must not be left behind in the queue
+        assertFailure(MmsPublishFailure.SHUTTING_DOWN, blocked.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, outboundQueue.size());
+        assertFalse(written.contains("4"));
+    }
+
+    /**
+     * Leaves message 1 in the held writer and messages 2 and 3 in the queue.
+     *
+     * @return the future of the message that is held in the writer
+     */
+    private CompletableFuture<Void> fillQueue() throws InterruptedException {
+        CompletableFuture<Void> inWriter = outboundQueue.enqueue(message("1"));
+        assertTrue(writerEntered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        queueHead = outboundQueue.enqueue(message("2"));
+        outboundQueue.enqueue(message("3"));
+        assertEquals(2, outboundQueue.size());
+        return inWriter;
+    }
+
+    private void holdingWriter(MmtpMessage mmtpMessage) throws IOException {
+        writerEntered.countDown();
+        try {
+            if (!releaseWriter.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("writer was not released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        written.add(mmtpMessage.getUuid());
+    }
+
+    private void awaitWritten(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (written.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static MmsPublishException assertFailure(MmsPublishFailure expected, CompletableFuture<Void> future) {
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        MmsPublishException publishException = assertInstanceOf(MmsPublishException.class, exception.getCause());
+        assertEquals(expected, publishException.getMmsPublishFailure());
+        return publishException;
+    }
+
+    private static MmtpMessage message(String uuid) {
+        return MmtpMessage.newBuilder().setUuid(uuid).build();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.repositories;
+
+import international.dmc.secom_mms_gateway.model.RecipientGroup;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the Flyway migrations on H2 in PostgreSQL mode and lets Hibernate validate the entities against the resulting
+ * schema, so that a mapping that does not match the migrations fails here instead of at startup.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:mapping;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class PersistenceMappingTest {
+
+    private static final String SERVICE_MRN = "urn:mrn:mcp:service:mcc:dmc:navwarnings";
+    private static final String RECIPIENT = "urn:mrn:mcp:device:mcc:dmc:vessel-";
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+    @Autowired
+    private RecipientGroupRepository recipientGroupRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void storesRecipientsOfSubscription() {
+        Subscription subscription = subscription();
+        subscription.setRecipients(List.of(RECIPIENT + 1, RECIPIENT + 2, RECIPIENT + 3));
+        Long id = subscriptionRepository.save(subscription).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        Subscription stored = subscriptionRepository.getSubscriptionByServiceMrn(SERVICE_MRN);
+
+        assertEquals(id, stored.getId());
+        assertEquals(Set.of(RECIPIENT + 1, RECIPIENT + 2, RECIPIENT + 3), Set.copyOf(stored.getRecipients()));
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM subscription_recipients WHERE subscription_id = ?", Integer.class, id));
+    }
+
+    @Test
+    void deletesRecipientsWithSubscription() {
+        Subscription subscription = subscription();
+        subscription.setRecipients(List.of(RECIPIENT + 1));
+        subscriptionRepository.save(subscription);
+        entityManager.flush();
+
+        subscriptionRepository.deleteByServiceMrn(SERVICE_MRN);
+        entityManager.flush();
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM subscription_recipients", Integer.class));
+    }
+
+    @Test
+    void storesMembersOfRecipientGroup() {
+        RecipientGroup recipientGroup = new RecipientGroup();
+        recipientGroup.setName("fleet");
+        recipientGroup.setRecipients(List.of(RECIPIENT + 1, RECIPIENT + 2));
+        recipientGroupRepository.save(recipientGroup);
+        Subscription subscription = subscription();
+        subscription.setRecipientGroup("fleet");
+        subscriptionRepository.save(subscription);
+        entityManager.flush();
+        entityManager.clear();
+
+        RecipientGroup stored = recipientGroupRepository.findById("fleet").orElseThrow();
+
+        assertEquals(Set.of(RECIPIENT + 1, RECIPIENT + 2), Set.copyOf(stored.getRecipients()));
+        assertTrue(subscriptionRepository.existsByRecipientGroup("fleet"));
+    }
+
+    @Test
+    void rejectsSubscriptionToUnknownRecipientGroup() {
+        Subscription subscription = subscription();
+        subscription.setRecipientGroup("unknown");
+
+        // Subscriptions get their ID from the database, so they are inserted right away
+        assertThrows(DataIntegrityViolationException.class, () -> subscriptionRepository.save(subscription));
+    }
+
+    private static Subscription subscription() {
+        Subscription subscription = new Subscription();
+        subscription.setServiceMrn(SERVICE_MRN);
+        subscription.setServiceUrl("https://navwarnings.example.com/secom");
+        return subscription;
+    }
+}
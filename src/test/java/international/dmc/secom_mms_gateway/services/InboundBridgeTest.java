@@ -0,0 +1,192 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import international.dmc.secom_mms_gateway.codec.PayloadCompressor;
+import international.dmc.secom_mms_gateway.mms.InboundMessage;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.grad.secom.core.models.UploadObject;
+import org.grad.secom.core.models.enums.SECOM_DataProductType;
+import org.grad.secom.springboot3.components.SecomClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InboundBridgeTest {
+
+    private static final String FAST_SERVICE = "urn:mrn:mcp:service:mcc:dmc:fast";
+    private static final String SLOW_SERVICE = "urn:mrn:mcp:service:mcc:dmc:slow";
+    private static final String S124_SUBJECT = "urn:mrn:mcp:mms:subject:s124";
+    private static final String S421_SUBJECT = "urn:mrn:mcp:mms:subject:s421";
+    private static final int QUEUE_CAPACITY = 4;
+
+    private final SubscriptionService subscriptionService = mock(SubscriptionService.class);
+    private final PayloadCompressor payloadCompressor = mock(PayloadCompressor.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SecomClient fastClient = mock(SecomClient.class);
+    private final SecomClient slowClient = mock(SecomClient.class);
+    private final CountDownLatch slowClientReleased = new CountDownLatch(1);
+
+    private InboundBridge inboundBridge;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Subscription fast = subscription(FAST_SERVICE, fastClient, S124_SUBJECT, SECOM_DataProductType.S124);
+        Subscription slow = subscription(SLOW_SERVICE, slowClient, S421_SUBJECT, SECOM_DataProductType.S421);
+        when(subscriptionService.getAllSubscriptions()).thenReturn(List.of(fast, slow));
+        when(subscriptionService.getSubscriptionByMrn(FAST_SERVICE)).thenReturn(fast);
+        when(subscriptionService.getSubscriptionByMrn(SLOW_SERVICE)).thenReturn(slow);
+        when(payloadCompressor.decompress(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(slowClient.upload(any())).thenAnswer(invocation -> {
+            slowClientReleased.await();
+            return Optional.empty();
+        });
+
+        inboundBridge = new InboundBridge(subscriptionService, payloadCompressor, meterRegistry);
+        ReflectionTestUtils.setField(inboundBridge, "threads", 4);
+        ReflectionTestUtils.setField(inboundBridge, "queueCapacity", QUEUE_CAPACITY);
+        ReflectionTestUtils.setField(inboundBridge, "consumerRefreshMs", 60_000L);
+        ReflectionTestUtils.setField(inboundBridge, "failureThreshold", 5);
+        ReflectionTestUtils.setField(inboundBridge, "openDurationMs", 30_000L);
+        inboundBridge.init();
+        ReflectionTestUtils.invokeMethod(inboundBridge, "refreshConsumers");
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowClientReleased.countDown();
+        inboundBridge.preDestroy();
+    }
+
+    @Test
+    void labelsDatasetWithProductTypeOfItsSubject() {
+        slowClientReleased.countDown();
+        byte[] payload = "<S124:Dataset/>".getBytes(StandardCharsets.UTF_8);
+
+        inboundBridge.onMessage(message(S124_SUBJECT, payload));
+
+        // Every service gets the dataset as an S-124 dataset, whatever the product type of its own subscription
+        ArgumentCaptor<UploadObject> fastUpload = ArgumentCaptor.forClass(UploadObject.class);
+        ArgumentCaptor<UploadObject> slowUpload = ArgumentCaptor.forClass(UploadObject.class);
+        verify(fastClient, timeout(1000)).upload(fastUpload.capture());
+        verify(slowClient, timeout(1000)).upload(slowUpload.capture());
+        assertEquals(SECOM_DataProductType.S124, fastUpload.getValue().getEnvelope().getDataProductType());
+        assertEquals(SECOM_DataProductType.S124, slowUpload.getValue().getEnvelope().getDataProductType());
+        assertArrayEquals(payload, slowUpload.getValue().getEnvelope().getData());
+    }
+
+    @Test
+    void leavesProductTypeOfDatasetWithUnknownSubjectUnset() {
+        slowClientReleased.countDown();
+
+        inboundBridge.onMessage(message("urn:mrn:mcp:mms:subject:unknown", new byte[]{1}));
+        inboundBridge.onMessage(message(null, new byte[]{2}));
+
+        ArgumentCaptor<UploadObject> upload = ArgumentCaptor.forClass(UploadObject.class);
+        verify(fastClient, timeout(1000).times(2)).upload(upload.capture());
+        assertNull(upload.getAllValues().get(0).getEnvelope().getDataProductType());
+        assertNull(upload.getAllValues().get(1).getEnvelope().getDataProductType());
+    }
+
+    @Test
+    void leavesProductTypeOfSubjectWithSeveralProductTypesUnset() {
+        slowClientReleased.countDown();
+        Subscription other = subscription("urn:mrn:mcp:service:mcc:dmc:other", null, S124_SUBJECT,
+                SECOM_DataProductType.S421);
+        Subscription fast = subscriptionService.getSubscriptionByMrn(FAST_SERVICE);
+        when(subscriptionService.getAllSubscriptions()).thenReturn(List.of(fast, other));
+        ReflectionTestUtils.invokeMethod(inboundBridge, "refreshConsumers");
+
+        inboundBridge.onMessage(message(S124_SUBJECT, new byte[]{1}));
+
+        ArgumentCaptor<UploadObject> upload = ArgumentCaptor.forClass(UploadObject.class);
+        verify(fastClient, timeout(1000)).upload(upload.capture());
+        assertNull(upload.getValue().getEnvelope().getDataProductType());
+    }
+
+    @Test
+    void slowServiceOnlyHoldsUpItsOwnDeliveries() {
+        int messages = QUEUE_CAPACITY + 2;
+        for (int i = 1; i <= messages; i++) {
+            inboundBridge.onMessage(message(new byte[]{(byte) i}));
+            verify(fastClient, timeout(1000).times(i)).upload(any());
+        }
+
+        // The slow service is still busy with the first dataset and only had room for the first few
+        verify(slowClient, timeout(1000).times(1)).upload(any());
+        assertEquals(messages - QUEUE_CAPACITY, meterRegistry.get("gateway.inbound.dropped")
+                .tag("reason", "queue-full").counter().count());
+
+        slowClientReleased.countDown();
+        verify(slowClient, timeout(1000).times(QUEUE_CAPACITY)).upload(any());
+    }
+
+    @Test
+    void failingServiceDoesNotStopDeliveriesToOthers() {
+        ReflectionTestUtils.setField(inboundBridge, "failureThreshold", 2);
+        doThrow(new IllegalStateException("Service unavailable")).when(slowClient).upload(any());
+
+        for (int i = 1; i <= QUEUE_CAPACITY; i++) {
+            inboundBridge.onMessage(message(new byte[]{(byte) i}));
+        }
+
+        verify(fastClient, timeout(1000).times(QUEUE_CAPACITY)).upload(any());
+        // The circuit to the failing service opens after two failures, and the remaining datasets wait for it
+        verify(slowClient, timeout(1000).times(2)).upload(any());
+        assertEquals(1, meterRegistry.counter("gateway.inbound.circuit.opened").count());
+        assertEquals(2, meterRegistry.get("gateway.inbound.dropped").tag("reason", "failed").counter().count());
+    }
+
+    private static Subscription subscription(String serviceMrn, SecomClient secomClient, String mmsSubject,
+                                             SECOM_DataProductType dataProductType) {
+        Subscription subscription = new Subscription();
+        subscription.setServiceMrn(serviceMrn);
+        subscription.setSecomClient(secomClient);
+        subscription.setMmsSubject(mmsSubject);
+        subscription.setDataProductType(dataProductType);
+        return subscription;
+    }
+
+    private static InboundMessage message(byte[] payload) {
+        return message(S124_SUBJECT, payload);
+    }
+
+    private static InboundMessage message(String subject, byte[] payload) {
+        return new InboundMessage(subject, "urn:mrn:mcp:device:mcc:dmc:sender", payload, System.nanoTime());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServiceQueueTest {
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void handlesItemsInOrderOneAtATime() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(100);
+        ServiceQueue<String> queue = queue(100, (serviceQueue, item) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            handled.add(item);
+            running.decrementAndGet();
+            done.countDown();
+            return 0;
+        });
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(Integer.toString(i)));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), handled.get(i));
+        }
+        awaitIdle(queue);
+        assertEquals(0, backlog.get());
+    }
+
+    @Test
+    void retriesItemBeforeMovingOn() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(2);
+        ServiceQueue<String> queue = queue(10, (serviceQueue, item) -> {
+            handled.add(item + "@" + serviceQueue.getAttempts());
+            if (item.equals("first") && serviceQueue.getAttempts() < 2) {
+                return 10;
+            }
+            done.countDown();
+            return 0;
+        });
+
+        queue.offer("first");
+        queue.offer("second");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first@0", "first@1", "first@2", "second@0"), handled);
+    }
+
+    @Test
+    void rejectsItemsWhenFull() {
+        CountDownLatch released = new CountDownLatch(1);
+        ServiceQueue<String> queue = queue(2, (serviceQueue, item) -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        });
+
+        assertTrue(queue.offer("first"));
+        assertTrue(queue.offer("second"));
+        assertFalse(queue.offer("third"));
+        assertEquals(2, backlog.get());
+        assertFalse(queue.isIdle());
+        released.countDown();
+    }
+
+    @Test
+    void waitsWhileCircuitIsOpen() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, TimeUnit.MILLISECONDS.toNanos(100));
+        circuitBreaker.onFailure();
+        CountDownLatch done = new CountDownLatch(1);
+        ServiceQueue<String> queue = new ServiceQueue<>("service", 10, circuitBreaker, (serviceQueue, item) -> {
+            serviceQueue.getCircuitBreaker().onSuccess();
+            done.countDown();
+            return 0;
+        }, executor, executor, backlog);
+        long start = System.nanoTime();
+
+        queue.offer("item");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    private ServiceQueue<String> queue(int capacity, ServiceQueue.Handler<String> handler) {
+        return new ServiceQueue<>("service", capacity, new CircuitBreaker(5, TimeUnit.SECONDS.toNanos(30)), handler,
+                executor, executor, backlog);
+    }
+
+    private static void awaitIdle(ServiceQueue<?> queue) throws InterruptedException {
+        for (int i = 0; i < 100 && !queue.isIdle(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(queue.isIdle());
+    }
+}
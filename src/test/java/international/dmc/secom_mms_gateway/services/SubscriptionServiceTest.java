@@ -0,0 +1,58 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import international.dmc.secom_mms_gateway.exceptions.SubscriptionException;
+import international.dmc.secom_mms_gateway.exceptions.SubscriptionFailure;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import international.dmc.secom_mms_gateway.repositories.RecipientGroupRepository;
+import international.dmc.secom_mms_gateway.repositories.SubscriptionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.grad.secom.core.base.SecomCertificateProvider;
+import org.grad.secom.core.base.SecomSignatureProvider;
+import org.grad.secom.springboot3.components.SecomConfigProperties;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class SubscriptionServiceTest {
+
+    private final SubscriptionRepository subscriptionRepository = mock(SubscriptionRepository.class);
+    private final RecipientGroupRepository recipientGroupRepository = mock(RecipientGroupRepository.class);
+    private final SubscriptionService subscriptionService = new SubscriptionService(subscriptionRepository,
+            recipientGroupRepository, mock(SecomConfigProperties.class), mock(SecomCertificateProvider.class),
+            mock(SecomSignatureProvider.class), mock(DataSource.class), new SimpleMeterRegistry());
+
+    @Test
+    void rejectsSubscriptionWithoutDestination() {
+        Subscription subscription = new Subscription();
+        subscription.setServiceMrn("urn:mrn:mcp:service:mcc:dmc:s124");
+        subscription.setServiceUrl("https://s124.example.com");
+        subscription.setMmsSubject(" ");
+
+        SubscriptionException exception = assertThrows(SubscriptionException.class,
+                () -> subscriptionService.addSubscription(subscription));
+
+        assertEquals(SubscriptionFailure.NO_DESTINATION, exception.getSubscriptionFailure());
+        verifyNoInteractions(subscriptionRepository, recipientGroupRepository);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.services;
+
+import international.dmc.secom_mms_gateway.codec.PayloadCompressor;
+import international.dmc.secom_mms_gateway.components.CertificateValidator;
+import international.dmc.secom_mms_gateway.components.SignatureVerifier;
+import international.dmc.secom_mms_gateway.components.UploaderCertificateCache;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishException;
+import international.dmc.secom_mms_gateway.exceptions.MmsPublishFailure;
+import international.dmc.secom_mms_gateway.mms.MMSAgent;
+import international.dmc.secom_mms_gateway.model.Subscription;
+import org.grad.secom.core.models.EnvelopeUploadObject;
+import org.grad.secom.core.models.SECOM_ExchangeMetadataObject;
+import org.grad.secom.core.models.UploadObject;
+import org.grad.secom.core.models.UploadResponseObject;
+import org.grad.secom.core.models.enums.AckRequestEnum;
+import org.grad.secom.core.models.enums.SECOM_ResponseCodeEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class UploadServiceTest {
+
+    private static final String UPLOADER_MRN = "urn:mrn:mcp:service:mcc:dmc:s124";
+    private static final String SUBJECT = "urn:mrn:mcp:mms:subject:s124";
+
+    private final SubscriptionService subscriptionService = mock(SubscriptionService.class);
+    private final RecipientGroupService recipientGroupService = mock(RecipientGroupService.class);
+    private final MMSAgent mmsAgent = mock(MMSAgent.class);
+    private final PayloadCompressor payloadCompressor = mock(PayloadCompressor.class);
+    private final UploaderCertificateCache uploaderCertificateCache = mock(UploaderCertificateCache.class);
+    private final AcknowledgementDispatcher acknowledgementDispatcher = mock(AcknowledgementDispatcher.class);
+    private final CertificateValidator certificateValidator = mock(CertificateValidator.class);
+    private final UploadService uploadService = new UploadService(subscriptionService, recipientGroupService,
+            mmsAgent, payloadCompressor, uploaderCertificateCache, acknowledgementDispatcher,
+            mock(SignatureVerifier.class), certificateValidator);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(uploadService, "requireSignature", false);
+        when(uploaderCertificateCache.get(anyString())).thenReturn(new UploaderCertificateCache.UploaderCertificate(
+                null, UPLOADER_MRN, Instant.MIN, Instant.MAX));
+        when(certificateValidator.validate(any())).thenReturn(CompletableFuture.completedFuture(null));
+        Subscription subscription = new Subscription();
+        subscription.setServiceMrn(UPLOADER_MRN);
+        subscription.setMmsSubject(SUBJECT);
+        when(subscriptionService.getSubscriptionByMrn(UPLOADER_MRN)).thenReturn(subscription);
+        when(recipientGroupService.getRecipients(subscription)).thenReturn(List.of());
+        when(payloadCompressor.compress(any(), any(), anyBoolean()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(mmsAgent.canPublish(anyInt())).thenReturn(true);
+    }
+
+    @Test
+    void acknowledgesDatasetOnceItHasBeenPublished() throws Exception {
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        when(mmsAgent.publishMessage(any(), eq(SUBJECT))).thenReturn(published);
+
+        CompletableFuture<UploadResponseObject> response = uploadService.upload(upload(), Runnable::run);
+
+        assertFalse(response.isDone());
+        verifyNoInteractions(acknowledgementDispatcher);
+        published.complete(null);
+        assertNull(response.join().getSECOM_ResponseCode());
+        verify(acknowledgementDispatcher).submit(eq(UPLOADER_MRN), any(), any());
+    }
+
+    @Test
+    void failsAndDoesNotAcknowledgeDatasetThatCouldNotBePublished() throws Exception {
+        when(mmsAgent.publishMessage(any(), eq(SUBJECT))).thenReturn(
+                CompletableFuture.failedFuture(new MmsPublishException(MmsPublishFailure.TIMEOUT)));
+
+        CompletableFuture<UploadResponseObject> response = uploadService.upload(upload(), Runnable::run);
+
+        CompletionException exception = assertThrows(CompletionException.class, response::join);
+        assertInstanceOf(MmsPublishException.class, exception.getCause());
+        verifyNoInteractions(acknowledgementDispatcher);
+    }
+
+    @Test
+    void failsAndDoesNotAcknowledgeDatasetThatCouldNotBeSigned() throws Exception {
+        when(mmsAgent.publishMessage(any(), eq(SUBJECT))).thenThrow(new SignatureException("Signer failed"));
+
+        CompletableFuture<UploadResponseObject> response = uploadService.upload(upload(), Runnable::run);
+
+        CompletionException exception = assertThrows(CompletionException.class, response::join);
+        assertInstanceOf(SignatureException.class, exception.getCause());
+        verifyNoInteractions(acknowledgementDispatcher);
+    }
+
+    @Test
+    void rejectsAndDoesNotAcknowledgeDatasetThatExceedsPayloadSizeLimit() throws Exception {
+        when(mmsAgent.canPublish(anyInt())).thenReturn(false);
+
+        UploadResponseObject response = uploadService.upload(upload(), Runnable::run).join();
+
+        assertEquals(SECOM_ResponseCodeEnum.INVALID_REQUEST, response.getSECOM_ResponseCode());
+        assertNotNull(response.getResponseText());
+        verify(mmsAgent, never()).publishMessage(any(), any());
+        verifyNoInteractions(acknowledgementDispatcher);
+    }
+
+    private static UploadObject upload() {
+        EnvelopeUploadObject envelope = new EnvelopeUploadObject();
+        envelope.setData("<S124:Dataset/>".getBytes(StandardCharsets.UTF_8));
+        envelope.setEnvelopeSignatureCertificate("certificate");
+        envelope.setAckRequest(AckRequestEnum.DELIVERED_ACK_REQUESTED);
+        envelope.setTransactionIdentifier(UUID.randomUUID());
+        SECOM_ExchangeMetadataObject exchangeMetadata = new SECOM_ExchangeMetadataObject();
+        exchangeMetadata.setCompressionFlag(false);
+        envelope.setExchangeMetadata(exchangeMetadata);
+        UploadObject uploadObject = new UploadObject();
+        uploadObject.setEnvelope(envelope);
+        return uploadObject;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the {@link Base64Scanner} against the basic decoder of {@link java.util.Base64}, which it must agree with on
+ * what is Base64 and what it decodes to.
+ */
+class Base64ScannerTest {
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"QQ", "QQ==", "QUI", "QUI=", "QUJD", "PFMxMjQ+", "/+/+", "SGVsbG8gV29ybGQh"})
+    void acceptsAndDecodesBase64(String text) {
+        assertMatchesJdk(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Q", "QQ=", "Q===", "QQ=A", "=QQA", "QUJD\n", "QU JD", "QUJD-_", "<S124/>", "QUI=="})
+    void rejectsWhatJdkRejects(String text) {
+        byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+
+        assertFalse(Base64Scanner.isBase64(data, data.length));
+        assertMatchesJdk(data);
+    }
+
+    @Test
+    void rejectsEmptyData() {
+        assertFalse(Base64Scanner.isBase64(new byte[0], 0));
+    }
+
+    @Test
+    void onlyLooksAtGivenLength() {
+        byte[] data = "QUJDinvalid!".getBytes(StandardCharsets.US_ASCII);
+
+        assertTrue(Base64Scanner.isBase64(data, 4));
+        assertEquals(3, Base64Scanner.decodeInPlace(data, 4));
+        assertArrayEquals("ABC".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(data, 3));
+    }
+
+    @Test
+    void agreesWithJdkOnEncodedData() {
+        Random random = new Random(15);
+        for (int i = 0; i < 2000; i++) {
+            byte[] decoded = new byte[random.nextInt(200)];
+            random.nextBytes(decoded);
+            byte[] encoded = (random.nextBoolean() ? Base64.getEncoder() : Base64.getEncoder().withoutPadding())
+                    .encode(decoded);
+            if (encoded.length > 0) {
+                assertTrue(Base64Scanner.isBase64(encoded, encoded.length));
+            }
+            assertMatchesJdk(encoded);
+        }
+    }
+
+    @Test
+    void agreesWithJdkOnRandomText() {
+        Random random = new Random(16);
+        String characters = ALPHABET + "==-_ \n.";
+        for (int i = 0; i < 20000; i++) {
+            byte[] data = new byte[1 + random.nextInt(12)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) characters.charAt(random.nextInt(characters.length()));
+            }
+            assertMatchesJdk(data);
+        }
+    }
+
+    @Test
+    void rejectsBinaryData() {
+        Random random = new Random(17);
+        for (int i = 0; i < 1000; i++) {
+            byte[] data = new byte[64 + random.nextInt(1000)];
+            random.nextBytes(data);
+            assertMatchesJdk(data);
+        }
+    }
+
+    /**
+     * Asserts that the scanner accepts the data exactly if the JDK decoder does, and then decodes it to the same bytes.
+     */
+    private static void assertMatchesJdk(byte[] data) {
+        byte[] expected;
+        try {
+            expected = Base64.getDecoder().decode(data);
+        } catch (IllegalArgumentException e) {
+            expected = null;
+        }
+        boolean accepted = Base64Scanner.isBase64(data, data.length);
+        if (data.length == 0) {
+            assertFalse(accepted);
+            return;
+        }
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        assertEquals(expected != null, accepted, text);
+        if (accepted) {
+            byte[] copy = data.clone();
+            int length = Base64Scanner.decodeInPlace(copy, copy.length);
+            assertArrayEquals(expected, Arrays.copyOf(copy, length), text);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeystoreUtilTest {
+
+    private static final String PASSWORD = "changeit";
+    private static final String ALIAS = "gateway";
+
+    @TempDir
+    private Path directory;
+
+    private Path rootCertificatePath;
+    private KeystoreUtil keystoreUtil;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path keystorePath = directory.resolve("keystore.p12");
+        rootCertificatePath = directory.resolve("root.pem");
+        KeyPair keyPair = generateKeyPair();
+        X509Certificate certificate = selfSigned("CN=Test Gateway,O=Test,C=DK", keyPair);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, keyPair.getPrivate(), PASSWORD.toCharArray(), new Certificate[]{certificate});
+        try (OutputStream outputStream = Files.newOutputStream(keystorePath)) {
+            keyStore.store(outputStream, PASSWORD.toCharArray());
+        }
+        writeRootCertificate(selfSigned("CN=Test Root,O=Test,C=DK", generateKeyPair()));
+
+        keystoreUtil = new KeystoreUtil(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(keystoreUtil, "applicationName", "secom-mms-gateway");
+        ReflectionTestUtils.setField(keystoreUtil, "mmsKeystorePath", keystorePath.toString());
+        ReflectionTestUtils.setField(keystoreUtil, "mmsKeystorePassword", PASSWORD);
+        ReflectionTestUtils.setField(keystoreUtil, "mmsKeyAlias", ALIAS);
+        ReflectionTestUtils.setField(keystoreUtil, "watchForChanges", false);
+        ReflectionTestUtils.setField(keystoreUtil, "secomKeystorePath", keystorePath.toString());
+        ReflectionTestUtils.setField(keystoreUtil, "secomKeystorePassword", PASSWORD);
+        ReflectionTestUtils.setField(keystoreUtil, "secomKeyAlias", ALIAS);
+        ReflectionTestUtils.setField(keystoreUtil, "rootCertificatePath", rootCertificatePath.toString());
+    }
+
+    @Test
+    void reloadsChangedRootCertificate() throws Exception {
+        keystoreUtil.init();
+        X509Certificate rotated = selfSigned("CN=Rotated Root,O=Test,C=DK", generateKeyPair());
+        writeRootCertificate(rotated);
+
+        assertTrue(keystoreUtil.reload());
+
+        assertEquals(rotated, keystoreUtil.getRootCertificate());
+        assertEquals(2, keystoreUtil.getCredentials().generation());
+    }
+
+    @Test
+    void keepsCredentialsWhenRootCertificateIsCorrupt() throws Exception {
+        keystoreUtil.init();
+        KeystoreUtil.Credentials current = keystoreUtil.getCredentials();
+        // A root certificate that is only half written when the change is noticed
+        Files.writeString(rootCertificatePath, "-----BEGIN CERTIFICATE-----\nMIIB", StandardCharsets.US_ASCII);
+
+        assertFalse(keystoreUtil.reload());
+
+        assertSame(current, keystoreUtil.getCredentials());
+    }
+
+    @Test
+    void keepsCredentialsWhenRootCertificateIsMissing() throws Exception {
+        keystoreUtil.init();
+        KeystoreUtil.Credentials current = keystoreUtil.getCredentials();
+        Files.delete(rootCertificatePath);
+
+        assertFalse(keystoreUtil.reload());
+
+        assertSame(current, keystoreUtil.getCredentials());
+    }
+
+    @Test
+    void failsToStartWithoutRootCertificate() throws Exception {
+        Files.writeString(rootCertificatePath, "not a certificate", StandardCharsets.US_ASCII);
+
+        assertThrows(CertificateException.class, keystoreUtil::init);
+    }
+
+    private void writeRootCertificate(X509Certificate certificate) throws Exception {
+        String pem = "-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(certificate.getEncoded())
+                + "\n-----END CERTIFICATE-----\n";
+        Files.writeString(rootCertificatePath, pem, StandardCharsets.US_ASCII);
+    }
+
+    private static X509Certificate selfSigned(String name, KeyPair keyPair) throws Exception {
+        X500Name x500Name = new X500Name(name);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(x500Name, BigInteger.ONE,
+                Date.from(Instant.now().minus(Duration.ofDays(1))), Date.from(Instant.now().plus(Duration.ofDays(30))),
+                x500Name, keyPair.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        return keyPairGenerator.generateKeyPair();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package international.dmc.secom_mms_gateway.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a small wheel of four 10 ms buckets, so that delays of a few rotations are cheap to test.
+ */
+class TimerWheelTest {
+
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 4;
+
+    private final TimerWheel timerWheel = new TimerWheel("test-timer-wheel", TICK_MS, TimeUnit.MILLISECONDS,
+            WHEEL_SIZE);
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.close();
+    }
+
+    @Test
+    void rejectsWheelSizeThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimerWheel("invalid", TICK_MS, TimeUnit.MILLISECONDS, 6));
+    }
+
+    @Test
+    void runsTaskWithoutDelayOnNextTick() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+
+        timerWheel.schedule(ran::countDown, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void runsTaskNoEarlierThanItsDelay() throws InterruptedException {
+        assertRunsAfter(25);
+    }
+
+    @Test
+    void runsTaskThatExpiresOnBucketBoundaryAfterFullRotation() throws InterruptedException {
+        // The task lands in the bucket that is being expired when it is transferred, so it must wait a full round
+        assertRunsAfter(WHEEL_SIZE * TICK_MS);
+    }
+
+    @Test
+    void runsTaskThatSpansSeveralRotations() throws InterruptedException {
+        assertRunsAfter(3 * WHEEL_SIZE * TICK_MS + TICK_MS / 2);
+    }
+
+    @Test
+    void cancelledTaskIsNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch later = new CountDownLatch(1);
+
+        TimerWheel.Timeout timeout = timerWheel.schedule(runs::incrementAndGet, 2 * TICK_MS, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(later::countDown, 6 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(later.await(1, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void taskThatHasRunCannotBeCancelled() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+
+        TimerWheel.Timeout timeout = timerWheel.schedule(ran::countDown, TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+
+        timerWheel.schedule(() -> {
+            throw new IllegalStateException("task failure");
+        }, 0, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(ran::countDown, 2 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closedWheelDoesNotRunPendingTasks() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+
+        timerWheel.schedule(runs::incrementAndGet, 3 * TICK_MS, TimeUnit.MILLISECONDS);
+        timerWheel.close();
+
+        Thread.sleep(10 * TICK_MS);
+        assertEquals(0, runs.get());
+    }
+
+    private void assertRunsAfter(long delayMs) throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicLong ranAt = new AtomicLong();
+        long scheduledAt = System.nanoTime();
+
+        timerWheel.schedule(() -> {
+            ranAt.set(System.nanoTime());
+            ran.countDown();
+        }, delayMs, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(delayMs + 1000, TimeUnit.MILLISECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(ranAt.get() - scheduledAt);
+        assertTrue(elapsedMs >= delayMs, "ran after " + elapsedMs + " ms instead of " + delayMs + " ms");
+        assertTrue(elapsedMs < delayMs + WHEEL_SIZE * TICK_MS + 500,
+                "ran after " + elapsedMs + " ms instead of " + delayMs + " ms");
+    }
+}
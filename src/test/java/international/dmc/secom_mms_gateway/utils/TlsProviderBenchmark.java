@@ -0,0 +1,184 @@
+/*
+ * Copyright 2025 Digital Maritime Consultancy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package international.dmc.secom_mms_gateway.utils;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+/**
+ * Compares the TLS implementation of the JDK with OpenSSL for the two costs that dominate outbound TLS in the
+ * gateway: full handshakes with an ECDSA certificate and AES-GCM record encryption. Client and server engines talk to
+ * each other in memory, so the numbers only reflect CPU work. Run the main method with the test classpath, optionally
+ * passing the number of handshakes and the number of MiB to encrypt.
+ */
+public class TlsProviderBenchmark {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int BUFFER_SIZE = 1 << 17;
+    private static final int RECORD_SIZE = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        X509Certificate certificate = selfSignedCertificate(keyPair);
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        for (SslProvider provider : new SslProvider[]{SslProvider.JDK, SslProvider.OPENSSL}) {
+            if (provider == SslProvider.OPENSSL && !OpenSslContextFactory.isAvailable()) {
+                System.out.println("OpenSSL is not available on this platform");
+                continue;
+            }
+            SslContext server = SslContextBuilder.forServer(keyPair.getPrivate(), certificate)
+                    .sslProvider(provider)
+                    .build();
+            SslContext client = SslContextBuilder.forClient()
+                    .sslProvider(provider)
+                    .trustManager(certificate)
+                    .build();
+
+            // Warm up both paths before measuring
+            for (int i = 0; i < handshakes / 10; i++) {
+                handshake(client.newEngine(ByteBufAllocator.DEFAULT), server.newEngine(ByteBufAllocator.DEFAULT));
+            }
+
+            long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+            long wallStart = System.nanoTime();
+            for (int i = 0; i < handshakes; i++) {
+                handshake(client.newEngine(ByteBufAllocator.DEFAULT), server.newEngine(ByteBufAllocator.DEFAULT));
+            }
+            double handshakeCpuSeconds = (threadMXBean.getCurrentThreadCpuTime() - cpuStart) / 1e9;
+            double handshakeWallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+            SSLEngine clientEngine = client.newEngine(ByteBufAllocator.DEFAULT);
+            SSLEngine serverEngine = server.newEngine(ByteBufAllocator.DEFAULT);
+            handshake(clientEngine, serverEngine);
+            cpuStart = threadMXBean.getCurrentThreadCpuTime();
+            transfer(clientEngine, serverEngine, (long) megabytes << 20);
+            double bulkCpuSeconds = (threadMXBean.getCurrentThreadCpuTime() - cpuStart) / 1e9;
+
+            System.out.printf("%-8s %s%n", provider, clientEngine.getSession().getCipherSuite());
+            System.out.printf("  handshakes: %.0f/s wall, %.0f/s per CPU second%n",
+                    handshakes / handshakeWallSeconds, handshakes / handshakeCpuSeconds);
+            System.out.printf("  bulk:       %.0f MiB per CPU second (encrypt and decrypt)%n",
+                    megabytes / bulkCpuSeconds);
+        }
+    }
+
+    private static X509Certificate selfSignedCertificate(KeyPair keyPair) throws Exception {
+        X500Name name = new X500Name("CN=localhost");
+        Instant now = Instant.now();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                Date.from(now.minus(1, ChronoUnit.DAYS)), Date.from(now.plus(1, ChronoUnit.DAYS)), name,
+                keyPair.getPublic());
+        return new JcaX509CertificateConverter()
+                .getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+                        .build(keyPair.getPrivate())));
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+        ByteBuffer clientToServer = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer serverToClient = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer application = ByteBuffer.allocate(BUFFER_SIZE);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int round = 0; isHandshaking(client) || isHandshaking(server); round++) {
+            if (round > 100) {
+                throw new SSLException("The handshake did not complete");
+            }
+            step(client, clientToServer, serverToClient, application);
+            step(server, serverToClient, clientToServer, application);
+        }
+    }
+
+    private static void transfer(SSLEngine client, SSLEngine server, long bytes) throws SSLException {
+        ByteBuffer plaintext = ByteBuffer.allocate(RECORD_SIZE);
+        ByteBuffer network = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer application = ByteBuffer.allocate(BUFFER_SIZE);
+        for (long sent = 0; sent < bytes; sent += RECORD_SIZE) {
+            plaintext.clear();
+            network.clear();
+            client.wrap(plaintext, network);
+            network.flip();
+            while (network.hasRemaining()) {
+                application.clear();
+                server.unwrap(network, application);
+            }
+        }
+    }
+
+    /**
+     * Feeds everything the peer has sent to the engine and lets it write whatever it wants to send.
+     */
+    private static void step(SSLEngine engine, ByteBuffer outbound, ByteBuffer inbound, ByteBuffer application)
+            throws SSLException {
+        inbound.flip();
+        while (inbound.hasRemaining()) {
+            application.clear();
+            SSLEngineResult result = engine.unwrap(inbound, application);
+            runDelegatedTasks(engine);
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0) {
+                break;
+            }
+        }
+        inbound.compact();
+        while (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            SSLEngineResult result = engine.wrap(EMPTY, outbound);
+            runDelegatedTasks(engine);
+            if (result.getStatus() != SSLEngineResult.Status.OK) {
+                break;
+            }
+        }
+    }
+
+    private static void runDelegatedTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static boolean isHandshaking(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+}